@@ -9,11 +9,22 @@ import com.google.inject.Injector;
 import com.zextras.carbonio.files.config.impl.FilesConfigImpl;
 import com.zextras.carbonio.files.config.FilesModule;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import com.zextras.carbonio.files.graphql.GraphQLProvider;
+import com.zextras.carbonio.files.graphql.PublicGraphQLProvider;
 import com.zextras.carbonio.files.message_broker.interfaces.MessageBrokerManager;
+import com.zextras.carbonio.files.tasks.FolderAggregatesReconciler;
 import com.zextras.carbonio.files.tasks.PurgeService;
+import com.zextras.carbonio.files.tasks.StorageUsageReconciler;
 import ch.qos.logback.classic.Logger;
 import org.slf4j.LoggerFactory;
 import ch.qos.logback.classic.Level;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class Boot {
 
@@ -28,8 +39,11 @@ public class Boot {
 
   private EbeanDatabaseManager ebeanDatabaseManager;
   private PurgeService purgeService;
+  private FolderAggregatesReconciler folderAggregatesReconciler;
+  private StorageUsageReconciler storageUsageReconciler;
   private NettyServer nettyServer;
   private MessageBrokerManager messageBrokerManager;
+  private DataFetcherExecutors dataFetcherExecutors;
 
   public static void main(String[] args) {
     new Boot().boot();
@@ -46,20 +60,56 @@ public class Boot {
       )
     );
 
-    Injector injector = Guice.createInjector(new FilesModule(new FilesConfigImpl()));
+    long bootStart = System.nanoTime();
+    Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    Injector injector = timed(timings, "injector", () ->
+      Guice.createInjector(new FilesModule(new FilesConfigImpl()))
+    );
     injector.getInstance(FilesConfigImpl.class);
 
     try {
-      ebeanDatabaseManager = injector.getInstance(EbeanDatabaseManager.class);
-      ebeanDatabaseManager.start();
+      ebeanDatabaseManager = timed(timings, "database-config", () ->
+        injector.getInstance(EbeanDatabaseManager.class)
+      );
+
+      // Parsing the GraphQL schemas and wiring the data fetchers do not need the database: they are
+      // done while the database migrations run
+      CompletableFuture<Void> graphQLSetup = CompletableFuture.runAsync(() ->
+        timed(timings, "graphql-schemas", () -> {
+          injector.getInstance(GraphQLProvider.class);
+          return injector.getInstance(PublicGraphQLProvider.class);
+        })
+      );
+
+      timed(timings, "database", () -> {
+        ebeanDatabaseManager.start();
+        return ebeanDatabaseManager;
+      });
 
       purgeService = injector.getInstance(PurgeService.class);
       purgeService.start();
 
-      messageBrokerManager = injector.getInstance(MessageBrokerManager.class);
-      messageBrokerManager.startAllConsumers();
+      folderAggregatesReconciler = injector.getInstance(FolderAggregatesReconciler.class);
+      folderAggregatesReconciler.start();
+
+      storageUsageReconciler = injector.getInstance(StorageUsageReconciler.class);
+      storageUsageReconciler.start();
+
+      messageBrokerManager = timed(timings, "message-broker", () -> {
+        MessageBrokerManager manager = injector.getInstance(MessageBrokerManager.class);
+        manager.startAllConsumers();
+        return manager;
+      });
 
+      dataFetcherExecutors = injector.getInstance(DataFetcherExecutors.class);
+
+      graphQLSetup.join();
       nettyServer = injector.getInstance(NettyServer.class);
+
+      timings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStart));
+      logger.info("Startup timings (ms): {}", timings);
+
       nettyServer.start();
     } catch (RuntimeException exception) {
       logger.error("Service stopped unexpectedly: ", exception);
@@ -67,7 +117,21 @@ public class Boot {
     } finally {
       ebeanDatabaseManager.stop();
       purgeService.stop();
+      folderAggregatesReconciler.stop();
+      storageUsageReconciler.stop();
       messageBrokerManager.close();
+      dataFetcherExecutors.stop();
     }
   }
+
+  private static <T> T timed(
+    Map<String, Long> timings,
+    String phase,
+    Supplier<T> step
+  ) {
+    long start = System.nanoTime();
+    T result = step.get();
+    timings.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return result;
+  }
 }
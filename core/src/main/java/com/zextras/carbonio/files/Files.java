@@ -102,19 +102,88 @@ public final class Files {
 
     public static final class Hikari {
 
-      public static final int MAX_POOL_SIZE        = 2;
-      public static final int MIN_IDLE_CONNECTIONS = 1;
+      public static final String POOL_NAME                          = "files-db-pool";
+      public static final String REPLICA_POOL_NAME                  = "files-db-replica-pool";
+      public static final int    MIN_POOL_SIZE                      = 2;
+      public static final int    CONNECTIONS_PER_CORE               = 2;
+      public static final int    BACKGROUND_CONNECTIONS             = 2;
+      public static final int    MIN_IDLE_CONNECTIONS               = 1;
+      public static final long   CONNECTION_TIMEOUT_IN_MILLIS       = 30_000;
+      public static final long   MIN_CONNECTION_TIMEOUT_IN_MILLIS   = 250;
+      // 0 disables the leak detection
+      public static final long   LEAK_DETECTION_THRESHOLD_IN_MILLIS = 0;
 
       private Hikari() {}
     }
 
+    public static final class Replica {
+
+      public static final long MAX_LAG_IN_MILLIS            = 5_000;
+      public static final long LAG_CHECK_INTERVAL_IN_MILLIS = 2_000;
+      public static final long READ_YOUR_WRITES_IN_SECONDS  = 10;
+      public static final long PINNED_USERS_SIZE            = 100_000;
+
+      private Replica() {}
+    }
+
+    public static final class Backfill {
+
+      public static final int  BATCH_SIZE                = 5_000;
+      // Every owner of a batch sums all the versions of their files
+      public static final int  OWNER_BATCH_SIZE          = 100;
+      public static final int  ATTEMPTS                  = 3;
+      public static final long PAUSE_IN_MILLIS           = 50;
+      // The advisory lock held by the only instance building an index
+      public static final long INDEX_LOCK_KEY            = 0x66696c6573L;
+      public static final long INDEX_LOCK_POLL_IN_MILLIS = 5_000;
+
+      private Backfill() {}
+    }
+
+    public static final class Executors {
+
+      public static final int QUERY_THREADS_PER_CORE    = 4;
+      public static final int MUTATION_THREADS_PER_CORE = 1;
+      public static final int MIN_MUTATION_POOL_SIZE    = 2;
+      public static final int QUEUE_SIZE                = 1_000;
+
+      private Executors() {}
+    }
+
+    public static final class Subscriptions {
+
+      public static final int BUFFER_SIZE                      = 256;
+      public static final int MAX_SUBSCRIPTIONS_PER_CONNECTION = 32;
+      public static final int MAX_FRAME_SIZE                   = 64 * 1024;
+
+      private Subscriptions() {}
+    }
+
+    public static final class PublicQueryCache {
+
+      public static final long TIME_TO_LIVE_IN_MILLIS = 5_000;
+      public static final long SIZE                   = 1_000;
+
+      private PublicQueryCache() {}
+    }
+
+    public static final class Tracing {
+
+      public static final String HEADER                  = "X-Files-Trace";
+      public static final String EXTENSION_KEY           = "tracing";
+      public static final int    MAX_SPANS               = 1_000;
+      public static final long   SQL_THRESHOLD_IN_MILLIS = 1;
+
+      private Tracing() {}
+    }
+
   }
 
   public static final class Db {
 
     private Db() {}
 
-    public static final short DB_VERSION = 4;
+    public static final short DB_VERSION = 9;
 
     /**
      * Names of Files tables
@@ -132,6 +201,7 @@ public final class Files {
       public static final String LINK                   = "LINK";
       public static final String COLLABORATION_LINK     = "COLLABORATION_LINK";
       public static final String TOMBSTONE              = "TOMBSTONE";
+      public static final String STORAGE_USAGE          = "STORAGE_USAGE";
     }
 
     /**
@@ -147,6 +217,8 @@ public final class Files {
       public static final String EDITOR_ID       = "editor_id";
       public static final String PARENT_ID       = "folder_id";
       public static final String ANCESTOR_IDS    = "ancestor_ids";
+      public static final String ANCESTOR_PATH   = "ancestor_path";
+      public static final String SEARCH_VECTOR   = "search_vector";
       public static final String CREATED_AT      = "creation_timestamp";
       public static final String UPDATED_AT      = "updated_timestamp";
       public static final String TYPE            = "node_type";
@@ -157,6 +229,9 @@ public final class Files {
       public static final String INDEX_STATUS    = "index_status";
       public static final String SIZE            = "size";
       public static final String HIDDEN            = "hidden";
+      public static final String SUBTREE_SIZE    = "subtree_size";
+      public static final String SUBTREE_FILES   = "subtree_files";
+      public static final String SUBTREE_FOLDERS = "subtree_folders";
     }
 
     public static final class Trashed {
@@ -258,6 +333,18 @@ public final class Files {
       public static final String VERSION   = "version";
     }
 
+    /**
+     * Attributes name for the FILES.STORAGE_USAGE table
+     */
+    public static final class StorageUsage {
+
+      private StorageUsage() {}
+
+      public static final String OWNER_ID   = "owner_id";
+      public static final String USED_BYTES = "used_bytes";
+      public static final String VERSIONS   = "versions";
+    }
+
     /**
      * Attributes' names for the FILES.COLLABORATION_LINK table
      */
@@ -296,13 +383,19 @@ public final class Files {
 
     public static final int    LIMIT_ELEMENTS_FOR_PAGE = Pagination.LIMIT;
     public static final String ENTITY_TYPE             = "type";
+    /**
+     * Maximum number of operations that can be sent in a single batched GraphQL request
+     */
+    public static final int    MAX_BATCH_OPERATIONS    = 20;
 
     public static final class Context {
 
       private Context() {}
 
-      public static final String REQUESTER = "requester";
-      public static final String COOKIES   = "cookies";
+      public static final String REQUESTER          = "requester";
+      public static final String COOKIES            = "cookies";
+      public static final String PUBLIC_QUERY_SCOPE = "public-query-scope";
+      public static final String TRACE              = "trace";
     }
 
     /**
@@ -336,8 +429,12 @@ public final class Files {
 
       private DataLoaders() {}
 
-      public static final String NODE_BATCH_LOADER  = "NodeBatchLoader";
-      public static final String SHARE_BATCH_LOADER = "ShareBatchLoader";
+      public static final String NODE_BATCH_LOADER               = "NodeBatchLoader";
+      public static final String SHARE_BATCH_LOADER              = "ShareBatchLoader";
+      public static final String LINK_BATCH_LOADER               = "LinkBatchLoader";
+      public static final String COLLABORATION_LINK_BATCH_LOADER = "CollaborationLinkBatchLoader";
+      public static final String FILE_VERSION_BATCH_LOADER       = "FileVersionBatchLoader";
+      public static final String FOLDER_AGGREGATES_BATCH_LOADER  = "FolderAggregatesBatchLoader";
     }
 
     /**
@@ -359,6 +456,7 @@ public final class Files {
       public static final String GET_ACCOUNT_BY_EMAIL    = "getAccountByEmail";
       public static final String GET_ACCOUNTS_BY_EMAIL   = "getAccountsByEmail";
       public static final String GET_CONFIGS             = "getConfigs";
+      public static final String GET_STORAGE_USAGE       = "getStorageUsage";
       public static final String GET_PUBLIC_NODE         = "getPublicNode";
     }
 
@@ -390,6 +488,17 @@ public final class Files {
       public static final String COPY_NODES                 = "copyNodes";
     }
 
+    /**
+     * Names of subscriptions
+     */
+    public static final class Subscriptions {
+
+      private Subscriptions() {}
+
+      public static final String NODE_CHANGED   = "nodeChanged";
+      public static final String SHARES_CHANGED = "sharesChanged";
+    }
+
     /**
      * Names of all GraphQL input parameters divided by queries
      */
@@ -519,6 +628,13 @@ public final class Files {
         public static final String LINK_IDS    = "link_ids";
       }
 
+      public static final class NodeChanged {
+
+        private NodeChanged() {}
+
+        public static final String FOLDER_ID = "folder_id";
+      }
+
       public static final class TrashNodes {
 
         private TrashNodes() {}
@@ -652,7 +768,20 @@ public final class Files {
 
       private Folder() {}
 
-      public static final String CHILDREN = "children";
+      public static final String CHILDREN   = "children";
+      public static final String AGGREGATES = "aggregates";
+    }
+
+    /**
+     * Attributes name for the type FolderAggregates
+     */
+    public static final class FolderAggregates {
+
+      private FolderAggregates() {}
+
+      public static final String SIZE          = "size";
+      public static final String FILES_COUNT   = "files_count";
+      public static final String FOLDERS_COUNT = "folders_count";
     }
 
     /**
@@ -695,6 +824,29 @@ public final class Files {
       public static final String DESCRIPTION = "description";
     }
 
+    /**
+     * Attributes name for the type NodeEvent
+     */
+    public static final class NodeEvent {
+
+      private NodeEvent() {}
+
+      public static final String FOLDER_ID = "folder_id";
+      public static final String NODE_ID   = "node_id";
+      public static final String ACTION    = "action";
+    }
+
+    /**
+     * Attributes name for the type ShareEvent
+     */
+    public static final class ShareEvent {
+
+      private ShareEvent() {}
+
+      public static final String NODE_ID = "node_id";
+      public static final String ACTION  = "action";
+    }
+
     /**
      * Attributes name for the type Collaboration Link
      */
@@ -717,6 +869,17 @@ public final class Files {
       public static final String VALUE = "value";
     }
 
+    /**
+     * Attributes name for the type StorageUsage
+     */
+    public static final class StorageUsage {
+
+      private StorageUsage() {}
+
+      public static final String USED_BYTES     = "used_bytes";
+      public static final String VERSIONS_COUNT = "versions_count";
+    }
+
     /**
      * Attributes name for the type Node exposed by Public API
      */
@@ -755,6 +918,7 @@ public final class Files {
       public static final Pattern HEALTH_READY        = Pattern.compile(
         SERVICE + "health/ready/?$");
       public static final Pattern GRAPHQL             = Pattern.compile(SERVICE + "graphql/?$");
+      public static final Pattern GRAPHQL_WS          = Pattern.compile(SERVICE + "graphql/ws/?$");
       public static final Pattern UPLOAD_FILE         = Pattern.compile(SERVICE + "upload/?$");
       public static final Pattern UPLOAD_FILE_VERSION = Pattern.compile(
         SERVICE + "upload-version/?$");
@@ -843,6 +1007,36 @@ public final class Files {
         public static final String PASSWORD                    = "db-password";
         public static final String HIKARI_MAX_POOL_SIZE        = "hikari-max-pool-size";
         public static final String HIKARI_MIN_IDLE_CONNECTIONS = "hikari-min-idle-connections";
+        public static final String HIKARI_CONNECTION_TIMEOUT   = "hikari-connection-timeout";
+        public static final String HIKARI_LEAK_DETECTION_THRESHOLD =
+          "hikari-leak-detection-threshold";
+        public static final String REPLICA_URL                 = "db-replica-url";
+        public static final String REPLICA_MAX_LAG             = "db-replica-max-lag";
+        public static final String REPLICA_READ_YOUR_WRITES    = "db-replica-read-your-writes";
+      }
+
+      public static final class Executors {
+
+        private Executors() {}
+
+        public static final String QUERY_POOL_SIZE    = "graphql-query-pool-size";
+        public static final String MUTATION_POOL_SIZE = "graphql-mutation-pool-size";
+        public static final String QUEUE_SIZE         = "graphql-executor-queue-size";
+        public static final String VIRTUAL_THREADS    = "graphql-executor-virtual-threads";
+      }
+
+      public static final class Tracing {
+
+        private Tracing() {}
+
+        public static final String SAMPLING_RATE = "graphql-tracing-sampling-rate";
+      }
+
+      public static final class Pagination {
+
+        private Pagination() {}
+
+        public static final String TOKEN_SECRET = "page-token-secret";
       }
     }
   }
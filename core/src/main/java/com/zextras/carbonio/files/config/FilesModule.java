@@ -14,6 +14,7 @@ import com.zextras.carbonio.files.dal.repositories.impl.ebean.FileVersionReposit
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.LinkRepositoryEbean;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.NodeRepositoryEbean;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.ShareRepositoryEbean;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.StorageUsageRepositoryEbean;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.TombstoneRepositoryEbean;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.UserRepositoryRest;
 import com.zextras.carbonio.files.dal.repositories.interfaces.*;
@@ -44,6 +45,7 @@ public class FilesModule extends AbstractModule {
     bind(NodeRepository.class).to(NodeRepositoryEbean.class);
     bind(ShareRepository.class).to(ShareRepositoryEbean.class);
     bind(TombstoneRepository.class).to(TombstoneRepositoryEbean.class);
+    bind(StorageUsageRepository.class).to(StorageUsageRepositoryEbean.class);
     bind(FileVersionRepository.class).to(FileVersionRepositoryEbean.class);
     bind(LinkRepository.class).to(LinkRepositoryEbean.class);
     bind(CollaborationLinkRepository.class).to(CollaborationLinkRepositoryEbean.class);
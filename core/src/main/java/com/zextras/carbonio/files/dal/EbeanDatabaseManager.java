@@ -7,6 +7,7 @@ package com.zextras.carbonio.files.dal;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.Config.Hikari;
 import com.zextras.carbonio.files.Files.Db;
@@ -24,16 +25,27 @@ import com.zextras.carbonio.files.dal.dao.ebean.NodeCustomAttributes;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeCustomAttributesPK;
 import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.dao.ebean.SharePK;
+import com.zextras.carbonio.files.dal.dao.ebean.StorageUsage;
 import com.zextras.carbonio.files.dal.dao.ebean.Tombstone;
 import com.zextras.carbonio.files.dal.dao.ebean.TombstonePK;
 import com.zextras.carbonio.files.dal.dao.ebean.TrashedNode;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import com.zextras.carbonio.files.tasks.PrometheusService;
+import com.zextras.carbonio.files.tracing.SqlTraceListener;
 import io.ebean.Database;
 import io.ebean.DatabaseFactory;
+import io.ebean.Transaction;
+import io.ebean.annotation.TxIsolation;
 import io.ebean.config.DatabaseConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vavr.control.Try;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.MessageFormat;
@@ -42,7 +54,13 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.persistence.PersistenceException;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,36 +73,195 @@ import org.slf4j.LoggerFactory;
  *
  * <p>Every single ebean entity <strong>must</strong> be added in the {@link this#entityList}
  * otherwise the custom builder is not be able to find it and register it in the {@link Database}.
+ *
+ * <p>If the service discover configuration has the url of a streaming read replica, a second
+ * {@link Database} connected to it is created. It is exposed through {@link #getReplicaDatabase()}
+ * only while its replication lag, checked periodically, is below the configured threshold. The
+ * routing of the reads is done by the {@link ReadReplicaRouter}.
+ *
+ * <p>After the migrations, the rows of the node table created before the ancestor_path and the
+ * search_vector columns existed are backfilled in small batches by a background thread, so the
+ * table is never locked for long. The indexes on these columns are not created by the migrations
+ * either, since a build inside their transaction blocks the writes on the table: the same thread
+ * builds them with <code>CREATE INDEX CONCURRENTLY</code>, one at a time and by a single instance
+ * of the service. Until the backfill of the ancestor_path and the build of its index complete,
+ * {@link #isHierarchyIndexed()} returns false and the subtree filters must use the ancestor_ids
+ * column. The keyword search does not need to know: the rows without a search_vector, or without
+ * its index, are still found by the substring filters.
+ *
+ * <p>The same thread computes the storage used by the owners of the versions created before the
+ * storage_usage triggers existed, a batch of owners at a time. Until it completes, the storage usage
+ * of these owners counts only the versions changed after the migration.
  */
 @Singleton
 public class EbeanDatabaseManager {
 
-  private static final Logger         logger = LoggerFactory.getLogger(EbeanDatabaseManager.class);
-  private final        List<Class<?>> entityList;
-  private final        String         jdbcPostgresUrl;
-  private final        String         postgresDatabase;
-  private final        String         postgresUser;
-  private final        String         postgresPassword;
-  private final        int            hikariMaximumPoolSize;
-  private final        int            hikariMinimumIdleConnections;
-  private              Database       ebeanDatabase;
-
-  @Inject
-  public EbeanDatabaseManager(FilesConfig filesConfig) {
-    postgresDatabase = ServiceDiscoverHttpClient
-      .defaultURL(ServiceDiscover.SERVICE_NAME)
-      .getConfig(ServiceDiscover.Config.Db.NAME)
-      .getOrElse(ServiceDiscover.Config.Db.DEFAULT_NAME);
+  private static final Logger logger = LoggerFactory.getLogger(EbeanDatabaseManager.class);
 
-    postgresUser = ServiceDiscoverHttpClient
-      .defaultURL(ServiceDiscover.SERVICE_NAME)
-      .getConfig(ServiceDiscover.Config.Db.USERNAME)
-      .getOrElse(ServiceDiscover.Config.Db.DEFAULT_USERNAME);
+  /**
+   * The replication lag in milliseconds. When the replica has replayed everything it received the
+   * lag is zero even if the last replayed transaction is old (the primary is idle).
+   */
+  private static final String REPLICA_LAG_QUERY = """
+      SELECT CASE
+        WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+        ELSE CAST(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000 AS BIGINT)
+      END
+      """;
+
+  private static final String HIERARCHY_MISSING_QUERY =
+    "SELECT 1 FROM node WHERE ancestor_path IS NULL LIMIT 1";
+
+  private static final String HIERARCHY_BACKFILL_UPDATE = """
+      UPDATE node
+      SET ancestor_path = COALESCE(string_to_array(ancestor_ids, ','), '{}')
+      WHERE node_id IN (
+        SELECT node_id FROM node WHERE ancestor_path IS NULL LIMIT :batchSize
+      )
+      """;
+
+  private static final String HIERARCHY_INDEX            = "node_table_index_ancestor_path";
+  private static final String HIERARCHY_INDEX_DEFINITION = "ON node USING GIN (ancestor_path)";
+
+  // Lets the backfill find the rows still to migrate without scanning the table
+  private static final String HIERARCHY_MISSING_INDEX            =
+    "node_table_index_ancestor_path_missing";
+  private static final String HIERARCHY_MISSING_INDEX_DEFINITION =
+    "ON node (node_id) WHERE ancestor_path IS NULL";
+
+  // Lets the FolderAggregatesReconciler find the folders whose aggregates are still to compute
+  // without scanning the table
+  private static final String SUBTREE_MISSING_INDEX            =
+    "node_table_index_subtree_missing";
+  private static final String SUBTREE_MISSING_INDEX_DEFINITION =
+    "ON node (node_id) WHERE node_type = 'FOLDER' AND subtree_size IS NULL";
+
+  private static final String SEARCH_MISSING_QUERY =
+    "SELECT 1 FROM node WHERE search_vector IS NULL LIMIT 1";
+
+  private static final String SEARCH_INDEX            = "node_table_index_search_vector";
+  private static final String SEARCH_INDEX_DEFINITION = "ON node USING GIN (search_vector)";
+
+  private static final String SEARCH_MISSING_INDEX            =
+    "node_table_index_search_vector_missing";
+  private static final String SEARCH_MISSING_INDEX_DEFINITION =
+    "ON node (node_id) WHERE search_vector IS NULL";
+
+  private static final String SEARCH_BACKFILL_UPDATE = """
+      UPDATE node
+      SET search_vector = node_search_vector(name, description)
+      WHERE node_id IN (
+        SELECT node_id FROM node WHERE search_vector IS NULL LIMIT :batchSize
+      )
+      """;
+
+  private static final String STORAGE_USAGE_MISSING_QUERY = "SELECT 1 FROM storage_usage_backfill";
+
+  private static final String STORAGE_USAGE_CURSOR_QUERY =
+    "SELECT last_owner_id FROM storage_usage_backfill FOR UPDATE";
+
+  private static final String STORAGE_USAGE_OWNERS_QUERY = """
+      SELECT DISTINCT owner_id
+      FROM node
+      WHERE owner_id > :afterOwnerId
+      ORDER BY owner_id
+      LIMIT :batchSize
+      """;
+
+  // Replaces the storage usages of a batch of owners, the deltas already added by the triggers
+  // included, with the sums of all their versions
+  private static final String STORAGE_USAGE_BACKFILL_UPSERT = """
+      INSERT INTO storage_usage (owner_id, used_bytes, versions)
+      SELECT node.owner_id, SUM(revision.size), COUNT(*)
+      FROM node
+      JOIN revision ON revision.node_id = node.node_id
+      WHERE node.owner_id IN (:ownerIds)
+      GROUP BY node.owner_id
+      ON CONFLICT (owner_id) DO UPDATE
+      SET used_bytes = EXCLUDED.used_bytes,
+        versions = EXCLUDED.versions
+      """;
+
+  private static final String STORAGE_USAGE_CURSOR_UPDATE =
+    "UPDATE storage_usage_backfill SET last_owner_id = :lastOwnerId";
+
+  private static final String STORAGE_USAGE_CURSOR_DELETE = "DELETE FROM storage_usage_backfill";
+
+  private static final String SERIALIZATION_FAILURE = "40001";
+
+  private static final String TRIGRAM_EXTENSION_QUERY =
+    "SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm'";
+
+  // The trigram indexes let the substring filters on the names and on the descriptions
+  // (LOWER(name) LIKE '%keyword%') use an index instead of scanning the table
+  private static final String NAME_TRIGRAM_INDEX                   =
+    "node_table_index_name_trigram";
+  private static final String NAME_TRIGRAM_INDEX_DEFINITION        =
+    "ON node USING GIN (LOWER(name) gin_trgm_ops)";
+  private static final String DESCRIPTION_TRIGRAM_INDEX            =
+    "node_table_index_description_trigram";
+  private static final String DESCRIPTION_TRIGRAM_INDEX_DEFINITION =
+    "ON node USING GIN (LOWER(description) gin_trgm_ops)";
+
+  private static final String INDEX_VALID_QUERY = """
+      SELECT pg_index.indisvalid
+      FROM pg_class
+      JOIN pg_index ON pg_index.indexrelid = pg_class.oid
+      WHERE pg_class.relname = ?
+      """;
+
+  // A blocking pg_advisory_lock would deadlock with the build of the holder, since a concurrent
+  // build waits for the end of every running transaction, the waiting one included
+  private static final String INDEX_LOCK_QUERY =
+    "SELECT pg_try_advisory_lock(" + Files.Config.Backfill.INDEX_LOCK_KEY + ")";
+
+  private final        List<Class<?>>           entityList;
+  private final        String                   jdbcPostgresUrl;
+  private final        String                   postgresDatabase;
+  private final        String                   postgresUser;
+  private final        String                   postgresPassword;
+  private final        int                      hikariMaximumPoolSize;
+  private final        int                      hikariMinimumIdleConnections;
+  private final        long                     hikariConnectionTimeout;
+  private final        long                     hikariLeakDetectionThreshold;
+  private final        MeterRegistry            meterRegistry;
+  private final        Optional<String>         replicaJdbcUrl;
+  private final        long                     replicaMaxLag;
+  private              Database                 ebeanDatabase;
+  private              Database                 replicaDatabase;
+  private              ScheduledExecutorService replicaMonitor;
+  private volatile     boolean                  replicaAvailable;
+  private              ExecutorService          backfillExecutor;
+  private volatile     boolean                  hierarchyIndexed;
+  private              boolean                  trigramAvailable;
 
-    postgresPassword = ServiceDiscoverHttpClient
-      .defaultURL(ServiceDiscover.SERVICE_NAME)
-      .getConfig(ServiceDiscover.Config.Db.PASSWORD)
-      .getOrElse("");
+  @Inject
+  public EbeanDatabaseManager(
+    FilesConfig filesConfig,
+    DataFetcherExecutors dataFetcherExecutors,
+    PrometheusService prometheusService
+  ) {
+    // The lookups are independent of each other: they are fired together so the startup waits for
+    // the slowest one instead of their sum
+    CompletableFuture<Try<String>> databaseName = lookupConfig(ServiceDiscover.Config.Db.NAME);
+    CompletableFuture<Try<String>> databaseUser = lookupConfig(ServiceDiscover.Config.Db.USERNAME);
+    CompletableFuture<Try<String>> databasePassword =
+      lookupConfig(ServiceDiscover.Config.Db.PASSWORD);
+    CompletableFuture<Try<String>> maxPoolSize = lookupConfig(Config.Db.HIKARI_MAX_POOL_SIZE);
+    CompletableFuture<Try<String>> minIdleConnections =
+      lookupConfig(Config.Db.HIKARI_MIN_IDLE_CONNECTIONS);
+    CompletableFuture<Try<String>> connectionTimeout =
+      lookupConfig(Config.Db.HIKARI_CONNECTION_TIMEOUT);
+    CompletableFuture<Try<String>> leakDetectionThreshold =
+      lookupConfig(Config.Db.HIKARI_LEAK_DETECTION_THRESHOLD);
+    CompletableFuture<Try<String>> replicaUrl = lookupConfig(Config.Db.REPLICA_URL);
+    CompletableFuture<Try<String>> replicaLag = lookupConfig(Config.Db.REPLICA_MAX_LAG);
+
+    postgresDatabase = databaseName.join().getOrElse(ServiceDiscover.Config.Db.DEFAULT_NAME);
+
+    postgresUser = databaseUser.join().getOrElse(ServiceDiscover.Config.Db.DEFAULT_USERNAME);
+
+    postgresPassword = databasePassword.join().getOrElse("");
 
     jdbcPostgresUrl = String.format(
       "jdbc:postgresql://%s/%s",
@@ -92,18 +269,42 @@ public class EbeanDatabaseManager {
       postgresDatabase
     );
 
-    hikariMaximumPoolSize = ServiceDiscoverHttpClient
-      .defaultURL(ServiceDiscover.SERVICE_NAME)
-      .getConfig(Config.Db.HIKARI_MAX_POOL_SIZE)
+    hikariMaximumPoolSize = maxPoolSize
+      .join()
       .map(Integer::parseInt)
-      .getOrElse(Hikari.MAX_POOL_SIZE);
-
-    hikariMinimumIdleConnections = ServiceDiscoverHttpClient
-      .defaultURL(ServiceDiscover.SERVICE_NAME)
-      .getConfig(Config.Db.HIKARI_MIN_IDLE_CONNECTIONS)
-      .map(minIdleConnections ->
-        Math.min(Integer.parseInt(minIdleConnections), hikariMaximumPoolSize))
-      .getOrElse(Hikari.MIN_IDLE_CONNECTIONS);
+      .filter(poolSize -> poolSize > 0)
+      .getOrElse(() -> defaultMaximumPoolSize(dataFetcherExecutors));
+
+    hikariMinimumIdleConnections = minIdleConnections
+      .join()
+      .map(minIdle -> Math.min(Integer.parseInt(minIdle), hikariMaximumPoolSize))
+      .getOrElse(Math.min(Hikari.MIN_IDLE_CONNECTIONS, hikariMaximumPoolSize));
+
+    hikariConnectionTimeout = connectionTimeout
+      .join()
+      .map(Long::parseLong)
+      .filter(timeout -> timeout >= Hikari.MIN_CONNECTION_TIMEOUT_IN_MILLIS)
+      .getOrElse(Hikari.CONNECTION_TIMEOUT_IN_MILLIS);
+
+    hikariLeakDetectionThreshold = leakDetectionThreshold
+      .join()
+      .map(Long::parseLong)
+      .filter(threshold -> threshold >= 0)
+      .getOrElse(Hikari.LEAK_DETECTION_THRESHOLD_IN_MILLIS);
+
+    replicaJdbcUrl = replicaUrl
+      .join()
+      .filter(url -> !url.isBlank())
+      .map(url -> String.format("jdbc:postgresql://%s/%s", url, postgresDatabase))
+      .toJavaOptional();
+
+    replicaMaxLag = replicaLag
+      .join()
+      .map(Long::parseLong)
+      .filter(lag -> lag >= 0)
+      .getOrElse(Files.Config.Replica.MAX_LAG_IN_MILLIS);
+
+    meterRegistry = prometheusService.getRegistry();
 
     entityList = new ArrayList<>();
     entityList.add(DbInfo.class);
@@ -119,6 +320,7 @@ public class EbeanDatabaseManager {
     entityList.add(TombstonePK.class);
     entityList.add(Tombstone.class);
     entityList.add(TrashedNode.class);
+    entityList.add(StorageUsage.class);
   }
 
   private void checkDatabaseExistence() {
@@ -221,6 +423,70 @@ public class EbeanDatabaseManager {
     return ebeanDatabase;
   }
 
+  /**
+   * @return an {@link Optional} containing the {@link Database} of the read replica if it is
+   * configured and its replication lag is acceptable, an empty {@link Optional} otherwise.
+   */
+  public Optional<Database> getReplicaDatabase() {
+    return replicaAvailable
+      ? Optional.ofNullable(replicaDatabase)
+      : Optional.empty();
+  }
+
+  /**
+   * @return true if the ancestor_path column of every node is populated and its index is built, so
+   * the subtree filters can use it. False while the backfill of the rows created before the column
+   * or the build of the index are running.
+   */
+  public boolean isHierarchyIndexed() {
+    return hierarchyIndexed;
+  }
+
+  /**
+   * @return true if the pg_trgm extension is installed, so the similarity of the names can be used
+   * to rank the nodes found by a keyword search.
+   */
+  public boolean isTrigramAvailable() {
+    return trigramAvailable;
+  }
+
+  /**
+   * Stops routing the reads to the replica after a failure. The periodic lag check makes it
+   * available again when it is back.
+   */
+  public void markReplicaUnavailable() {
+    replicaAvailable = false;
+  }
+
+  /**
+   * Every thread of the GraphQL executors can hold a connection, but more connections than a
+   * small multiple of the cores only add contention on the database. On top of that, some
+   * connections are reserved for the work running outside the executors (the uploads, the
+   * downloads and the purge job).
+   *
+   * @param dataFetcherExecutors is the {@link DataFetcherExecutors} that uses the connections
+   *
+   * @return the maximum size of the connection pool when it is not set in the service discover.
+   */
+  private static int defaultMaximumPoolSize(DataFetcherExecutors dataFetcherExecutors) {
+    int executorThreads =
+      dataFetcherExecutors.getQueryPoolSize() + dataFetcherExecutors.getMutationPoolSize();
+    int coreConnections =
+      Runtime.getRuntime().availableProcessors() * Hikari.CONNECTIONS_PER_CORE;
+
+    return Math.max(
+      Hikari.MIN_POOL_SIZE,
+      Math.min(executorThreads, coreConnections) + Hikari.BACKGROUND_CONNECTIONS
+    );
+  }
+
+  private static CompletableFuture<Try<String>> lookupConfig(String key) {
+    return CompletableFuture.supplyAsync(() -> ServiceDiscoverHttpClient
+      .defaultURL(ServiceDiscover.SERVICE_NAME)
+      .getConfig(key)
+    );
+  }
+
   /**
    * Starts the service:
    * <ul>
@@ -240,28 +506,15 @@ public class EbeanDatabaseManager {
       return;
     }
 
-    Properties dataSourceProperties = new Properties();
-    dataSourceProperties.setProperty("sslmode", "disable");
-
-    HikariDataSource dataSource = new HikariDataSource();
-    dataSource.setJdbcUrl(jdbcPostgresUrl);
-    dataSource.setUsername(postgresUser);
-    dataSource.setPassword(postgresPassword);
-    dataSource.setMaximumPoolSize(hikariMaximumPoolSize);
-    dataSource.setMinimumIdle(hikariMinimumIdleConnections);
-    dataSource.setDataSourceProperties(dataSourceProperties);
+    HikariDataSource dataSource = createDataSource(jdbcPostgresUrl, Hikari.POOL_NAME);
 
     logger.info("Hikari: maximum pool size: {}", hikariMaximumPoolSize);
     logger.info("Hikari: minimum idle connections: {}", hikariMinimumIdleConnections);
+    logger.info("Hikari: connection timeout: {}ms", hikariConnectionTimeout);
+    logger.info("Hikari: leak detection threshold: {}ms", hikariLeakDetectionThreshold);
 
-    DatabaseConfig serverConfig = new DatabaseConfig();
-    serverConfig.setName("carbonio-files-postgres");
-    serverConfig.setDataSource(dataSource);
+    DatabaseConfig serverConfig = createDatabaseConfig("carbonio-files-postgres", dataSource);
     serverConfig.setDefaultServer(true);
-    serverConfig.addAll(entityList);
-    serverConfig.setCacheMaxSize(100_000);
-    serverConfig.setCacheMaxTimeToLive(300);
-    serverConfig.setCacheMaxIdleTime(300);
 
     ebeanDatabase = DatabaseFactory.createWithContextClassLoader(
       serverConfig,
@@ -284,12 +537,424 @@ public class EbeanDatabaseManager {
       stop();
       throw new RuntimeException("Unable to connect to the database");
     }
+
+    trigramAvailable = ebeanDatabase
+      .sqlQuery(TRIGRAM_EXTENSION_QUERY)
+      .findOneOrEmpty()
+      .isPresent();
+    startBackfills();
+    replicaJdbcUrl.ifPresent(this::startReplica);
+  }
+
+  private void startBackfills() {
+    boolean storageUsageBackfilled = isBackfilled(STORAGE_USAGE_MISSING_QUERY);
+    hierarchyIndexed = isBackfilled(HIERARCHY_MISSING_QUERY)
+      && isIndexValid(HIERARCHY_INDEX);
+    boolean subtreeIndexed = isIndexValid(SUBTREE_MISSING_INDEX);
+    boolean searchIndexed = isBackfilled(SEARCH_MISSING_QUERY)
+      && isIndexValid(SEARCH_INDEX);
+    boolean trigramIndexed = !trigramAvailable
+      || (isIndexValid(NAME_TRIGRAM_INDEX) && isIndexValid(DESCRIPTION_TRIGRAM_INDEX));
+    if (storageUsageBackfilled
+      && hierarchyIndexed
+      && subtreeIndexed
+      && searchIndexed
+      && trigramIndexed
+    ) {
+      return;
+    }
+
+    backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "files-db-backfill");
+      thread.setDaemon(true);
+      return thread;
+    });
+    backfillExecutor.execute(() -> {
+      if (!storageUsageBackfilled) {
+        backfillStorageUsages();
+      }
+      if (!hierarchyIndexed) {
+        hierarchyIndexed = backfillAndIndex(
+          "Hierarchy",
+          HIERARCHY_MISSING_QUERY,
+          HIERARCHY_MISSING_INDEX,
+          HIERARCHY_MISSING_INDEX_DEFINITION,
+          HIERARCHY_BACKFILL_UPDATE,
+          HIERARCHY_INDEX,
+          HIERARCHY_INDEX_DEFINITION
+        );
+      }
+      if (!subtreeIndexed) {
+        buildIndex(SUBTREE_MISSING_INDEX, SUBTREE_MISSING_INDEX_DEFINITION);
+      }
+      if (!searchIndexed) {
+        backfillAndIndex(
+          "Search",
+          SEARCH_MISSING_QUERY,
+          SEARCH_MISSING_INDEX,
+          SEARCH_MISSING_INDEX_DEFINITION,
+          SEARCH_BACKFILL_UPDATE,
+          SEARCH_INDEX,
+          SEARCH_INDEX_DEFINITION
+        );
+      }
+      if (!trigramIndexed) {
+        buildIndex(NAME_TRIGRAM_INDEX, NAME_TRIGRAM_INDEX_DEFINITION);
+        buildIndex(DESCRIPTION_TRIGRAM_INDEX, DESCRIPTION_TRIGRAM_INDEX_DEFINITION);
+      }
+    });
+  }
+
+  private boolean isBackfilled(String missingRowsQuery) {
+    return ebeanDatabase.sqlQuery(missingRowsQuery).findOneOrEmpty().isEmpty();
+  }
+
+  private boolean isIndexValid(String indexName) {
+    return ebeanDatabase
+      .sqlQuery(INDEX_VALID_QUERY)
+      .setParameter(indexName)
+      .mapToScalar(Boolean.class)
+      .findOneOrEmpty()
+      .orElse(false);
+  }
+
+  /**
+   * Backfills a column, if some rows do not have it, and then builds its index. The index is built
+   * only after the backfill so that the batches do not have to update it.
+   *
+   * @param name is a {@link String} naming the backfill in the logs
+   * @param missingRowsQuery is the query returning a row if some rows must be backfilled
+   * @param missingRowsIndexName is the name of the partial index on the rows to backfill
+   * @param missingRowsIndexDefinition is the definition of the partial index on the rows to
+   * backfill
+   * @param backfillUpdate is the update populating a batch of at most :batchSize rows
+   * @param indexName is the name of the index of the column
+   * @param indexDefinition is the definition of the index of the column
+   *
+   * @return true if every row has been populated and the index is built, false otherwise.
+   */
+  private boolean backfillAndIndex(
+    String name,
+    String missingRowsQuery,
+    String missingRowsIndexName,
+    String missingRowsIndexDefinition,
+    String backfillUpdate,
+    String indexName,
+    String indexDefinition
+  ) {
+    if (!isBackfilled(missingRowsQuery)) {
+      // The partial index only speeds up the backfill: it runs anyway if the build fails
+      buildIndex(missingRowsIndexName, missingRowsIndexDefinition);
+      if (!backfill(name, backfillUpdate)) {
+        return false;
+      }
+    }
+    return buildIndex(indexName, indexDefinition);
+  }
+
+  /**
+   * Builds an index on the node table without blocking the writes, using a dedicated connection
+   * in autocommit since a concurrent build cannot run in a transaction. The instance building it
+   * holds an advisory lock for the whole build: the others wait for it and then find the index
+   * already valid. An invalid index, left by a build interrupted for example by a restart, is
+   * dropped and built again.
+   *
+   * @param indexName is the name of the index
+   * @param indexDefinition is the definition of the index following its name
+   *
+   * @return true if the index is valid, false if the build has been interrupted or it has failed.
+   */
+  private boolean buildIndex(
+    String indexName,
+    String indexDefinition
+  ) {
+    Properties connectionProperties = new Properties();
+    connectionProperties.setProperty("user", postgresUser);
+    connectionProperties.setProperty("password", postgresPassword);
+    connectionProperties.setProperty("sslmode", "disable");
+
+    // The advisory lock is released when the connection is closed
+    try (
+      Connection connection = DriverManager.getConnection(jdbcPostgresUrl, connectionProperties);
+      Statement statement = connection.createStatement()
+    ) {
+      while (!isLocked(statement)) {
+        Thread.sleep(Files.Config.Backfill.INDEX_LOCK_POLL_IN_MILLIS);
+      }
+
+      Optional<Boolean> optIndexValid = getIndexValidity(connection, indexName);
+      if (optIndexValid.orElse(false)) {
+        return true;
+      }
+      if (optIndexValid.isPresent()) {
+        statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+      }
+
+      long startTime = System.currentTimeMillis();
+      statement.execute("CREATE INDEX CONCURRENTLY " + indexName + " " + indexDefinition);
+      logger.info("Index {} built in {}ms", indexName, System.currentTimeMillis() - startTime);
+      return true;
+    } catch (InterruptedException exception) {
+      logger.info("Build of the index {} interrupted", indexName);
+      Thread.currentThread().interrupt();
+    } catch (SQLException exception) {
+      logger.warn("Unable to build the index {}", indexName, exception);
+    }
+    return false;
+  }
+
+  private static boolean isLocked(Statement statement) throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery(INDEX_LOCK_QUERY)) {
+      return resultSet.next() && resultSet.getBoolean(1);
+    }
+  }
+
+  private static Optional<Boolean> getIndexValidity(
+    Connection connection,
+    String indexName
+  ) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(INDEX_VALID_QUERY)) {
+      statement.setString(1, indexName);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next()
+          ? Optional.of(resultSet.getBoolean(1))
+          : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * Populates a column of the nodes that do not have it. Each batch is executed in its own
+   * transaction, and there is a short pause between two batches to leave room to the requests.
+   *
+   * @param name is a {@link String} naming the backfill in the logs
+   * @param backfillUpdate is the update populating a batch of at most :batchSize rows
+   *
+   * @return true if every row has been populated, false if the backfill has been interrupted or it
+   * has failed.
+   */
+  private boolean backfill(
+    String name,
+    String backfillUpdate
+  ) {
+    long backfilledRows = 0;
+    try {
+      int updatedRows;
+      do {
+        updatedRows = ebeanDatabase
+          .sqlUpdate(backfillUpdate)
+          .setParameter("batchSize", Files.Config.Backfill.BATCH_SIZE)
+          .execute();
+        backfilledRows += updatedRows;
+        Thread.sleep(Files.Config.Backfill.PAUSE_IN_MILLIS);
+      } while (updatedRows > 0);
+
+      logger.info("{} backfill completed: {} nodes updated", name, backfilledRows);
+      return true;
+    } catch (InterruptedException exception) {
+      logger.info("{} backfill interrupted after {} nodes", name, backfilledRows);
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException exception) {
+      logger.warn("{} backfill failed after {} nodes", name, backfilledRows, exception);
+    }
+    return false;
+  }
+
+  /**
+   * Computes the storage used by every owner from all the versions of their files, a batch of
+   * owners at a time, with a short pause between two batches to leave room to the requests.
+   *
+   * <p>Each batch is computed and written in a repeatable read transaction together with the
+   * cursor: a storage usage changed by a trigger after the snapshot fails the batch instead of
+   * being overwritten with a stale value, and the batch is computed again. The cursor row is locked
+   * by the batch, so more instances of the service running the backfill take turns.
+   */
+  private void backfillStorageUsages() {
+    long backfilledOwners = 0;
+    try {
+      int batchOwners;
+      do {
+        batchOwners = backfillStorageUsagesBatch();
+        backfilledOwners += batchOwners;
+        Thread.sleep(Files.Config.Backfill.PAUSE_IN_MILLIS);
+      } while (batchOwners > 0);
+
+      logger.info("Storage usage backfill completed: {} owners updated", backfilledOwners);
+    } catch (InterruptedException exception) {
+      logger.info("Storage usage backfill interrupted after {} owners", backfilledOwners);
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException exception) {
+      logger.warn("Storage usage backfill failed after {} owners", backfilledOwners, exception);
+    }
+  }
+
+  /**
+   * @return the number of owners whose storage usage has been computed, zero when there are no
+   * owners left and the cursor has been deleted.
+   */
+  private int backfillStorageUsagesBatch() {
+    for (int attempt = 1; ; attempt++) {
+      try (Transaction transaction = ebeanDatabase.beginTransaction(TxIsolation.REPEATABLE_READ)) {
+        List<String> ownerIds = ebeanDatabase
+          .sqlQuery(STORAGE_USAGE_CURSOR_QUERY)
+          .mapToScalar(String.class)
+          .findOneOrEmpty()
+          .map(lastOwnerId -> ebeanDatabase
+            .sqlQuery(STORAGE_USAGE_OWNERS_QUERY)
+            .setParameter("afterOwnerId", lastOwnerId)
+            .setParameter("batchSize", Files.Config.Backfill.OWNER_BATCH_SIZE)
+            .mapToScalar(String.class)
+            .findList()
+          )
+          .orElse(List.of());
+
+        if (ownerIds.isEmpty()) {
+          ebeanDatabase.sqlUpdate(STORAGE_USAGE_CURSOR_DELETE).execute();
+        } else {
+          ebeanDatabase
+            .sqlUpdate(STORAGE_USAGE_BACKFILL_UPSERT)
+            .setParameter("ownerIds", ownerIds)
+            .execute();
+          ebeanDatabase
+            .sqlUpdate(STORAGE_USAGE_CURSOR_UPDATE)
+            .setParameter("lastOwnerId", ownerIds.get(ownerIds.size() - 1))
+            .execute();
+        }
+        transaction.commit();
+
+        ebeanDatabase.externalModification(Db.Tables.STORAGE_USAGE, true, true, false);
+        return ownerIds.size();
+      } catch (PersistenceException exception) {
+        if (attempt == Files.Config.Backfill.ATTEMPTS || !isSerializationFailure(exception)) {
+          throw exception;
+        }
+        logger.debug("Storage usages changed concurrently, attempt {} failed", attempt);
+      }
+    }
+  }
+
+  private static boolean isSerializationFailure(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException
+        && SERIALIZATION_FAILURE.equals(((SQLException) cause).getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private HikariDataSource createDataSource(
+    String jdbcUrl,
+    String poolName
+  ) {
+    Properties dataSourceProperties = new Properties();
+    dataSourceProperties.setProperty("sslmode", "disable");
+
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(jdbcUrl);
+    dataSource.setUsername(postgresUser);
+    dataSource.setPassword(postgresPassword);
+    dataSource.setMaximumPoolSize(hikariMaximumPoolSize);
+    dataSource.setMinimumIdle(hikariMinimumIdleConnections);
+    dataSource.setConnectionTimeout(hikariConnectionTimeout);
+    dataSource.setLeakDetectionThreshold(hikariLeakDetectionThreshold);
+    dataSource.setDataSourceProperties(dataSourceProperties);
+    // Exports the pending threads, the active/idle connections and the acquire and usage times
+    dataSource.setPoolName(poolName);
+    dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+    return dataSource;
+  }
+
+  private DatabaseConfig createDatabaseConfig(
+    String name,
+    DataSource dataSource
+  ) {
+    DatabaseConfig serverConfig = new DatabaseConfig();
+    serverConfig.setName(name);
+    serverConfig.setDataSource(dataSource);
+    serverConfig.addAll(entityList);
+    serverConfig.setCacheMaxSize(100_000);
+    serverConfig.setCacheMaxTimeToLive(300);
+    serverConfig.setCacheMaxIdleTime(300);
+    // The slow query listener records the queries in the trace of the running GraphQL operation
+    serverConfig.setSlowQueryMillis(Files.Config.Tracing.SQL_THRESHOLD_IN_MILLIS);
+    serverConfig.setSlowQueryListener(new SqlTraceListener());
+    return serverConfig;
+  }
+
+  /**
+   * Creates the {@link Database} of the read replica and schedules the check of its replication
+   * lag. The replica is optional: if it cannot be created the service keeps running on the
+   * primary.
+   *
+   * @param jdbcUrl is a {@link String} representing the JDBC url of the replica
+   */
+  private void startReplica(String jdbcUrl) {
+    try {
+      HikariDataSource dataSource = createDataSource(jdbcUrl, Hikari.REPLICA_POOL_NAME);
+      dataSource.setReadOnly(true);
+
+      DatabaseConfig replicaConfig =
+        createDatabaseConfig("carbonio-files-postgres-replica", dataSource);
+      replicaConfig.setDefaultServer(false);
+      replicaConfig.setRegister(false);
+      // The writes go to the primary: a bean cache on the replica would never be invalidated
+      replicaConfig.setDisableL2Cache(true);
+
+      replicaDatabase = DatabaseFactory.createWithContextClassLoader(
+        replicaConfig,
+        this.getClass().getClassLoader()
+      );
+    } catch (RuntimeException exception) {
+      logger.warn("Unable to create the read replica database, reads use the primary", exception);
+      return;
+    }
+
+    replicaMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "files-db-replica-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    replicaMonitor.scheduleWithFixedDelay(
+      this::checkReplicaLag,
+      0,
+      Files.Config.Replica.LAG_CHECK_INTERVAL_IN_MILLIS,
+      TimeUnit.MILLISECONDS
+    );
+    logger.info("Read replica: max replication lag: {}ms", replicaMaxLag);
+  }
+
+  private void checkReplicaLag() {
+    boolean available = Try
+      .of(() -> replicaDatabase
+        .sqlQuery(REPLICA_LAG_QUERY)
+        .mapToScalar(Long.class)
+        .findOne()
+      )
+      .onFailure(failure -> logger.warn("Unable to check the read replica lag", failure))
+      .map(lag -> lag != null && lag <= replicaMaxLag)
+      .getOrElse(false);
+
+    if (available != replicaAvailable) {
+      logger.info("Read replica {}", available ? "available" : "unavailable");
+    }
+    replicaAvailable = available;
   }
 
   /**
    * Forcibly shutdown all threads of the EbeanDatabase.
    */
   public void stop() {
+    replicaAvailable = false;
+    if (backfillExecutor != null) {
+      backfillExecutor.shutdownNow();
+    }
+    if (replicaMonitor != null) {
+      replicaMonitor.shutdownNow();
+    }
+    if (replicaDatabase != null) {
+      replicaDatabase.shutdown(true, true);
+    }
     if (ebeanDatabase != null) {
       ebeanDatabase.shutdown(true, true);
     }
@@ -0,0 +1,109 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.Files.ServiceDiscover;
+import com.zextras.carbonio.files.clients.ServiceDiscoverHttpClient;
+import io.ebean.Database;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+import javax.persistence.PersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the {@link Database} where a read-only query runs. A query goes to the read replica
+ * only if all these conditions are true:
+ * <ul>
+ *   <li>the replica is configured and its replication lag is acceptable (see
+ *   {@link EbeanDatabaseManager#getReplicaDatabase()})</li>
+ *   <li>the query runs in a {@link ReadScope} that is not pinned to the primary (see
+ *   {@link ReadScope#pinToPrimary()})</li>
+ *   <li>the requester of the scope has not written anything in the last seconds: after a write
+ *   (see {@link #recordWrite(String)}) its reads are pinned to the primary so that it always reads
+ *   its own writes</li>
+ * </ul>
+ * If the query fails on the replica, the replica is marked as unavailable and the query is
+ * executed again on the primary.
+ */
+@Singleton
+public class ReadReplicaRouter {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReadReplicaRouter.class);
+
+  private final EbeanDatabaseManager  ebeanDatabaseManager;
+  private final Cache<String, Object> pinnedUsers;
+
+  @Inject
+  public ReadReplicaRouter(EbeanDatabaseManager ebeanDatabaseManager) {
+    this(
+      ebeanDatabaseManager,
+      ServiceDiscoverHttpClient
+        .defaultURL(ServiceDiscover.SERVICE_NAME)
+        .getConfig(ServiceDiscover.Config.Db.REPLICA_READ_YOUR_WRITES)
+        .map(Long::parseLong)
+        .filter(seconds -> seconds >= 0)
+        .getOrElse(Files.Config.Replica.READ_YOUR_WRITES_IN_SECONDS)
+    );
+  }
+
+  ReadReplicaRouter(
+    EbeanDatabaseManager ebeanDatabaseManager,
+    long readYourWritesInSeconds
+  ) {
+    this.ebeanDatabaseManager = ebeanDatabaseManager;
+    this.pinnedUsers = Caffeine
+      .newBuilder()
+      .maximumSize(Files.Config.Replica.PINNED_USERS_SIZE)
+      .expireAfterWrite(Duration.ofSeconds(readYourWritesInSeconds))
+      .build();
+  }
+
+  /**
+   * Pins the reads of the user to the primary database for the configured number of seconds.
+   *
+   * @param userId is a {@link String} representing the id of the user that is writing
+   */
+  public void recordWrite(String userId) {
+    pinnedUsers.put(userId, Boolean.TRUE);
+  }
+
+  /**
+   * Executes a read-only query on the replica when allowed, on the primary otherwise.
+   *
+   * @param query is a {@link Function} executing the query on the given {@link Database}
+   *
+   * @return the result of the query.
+   */
+  public <T> T read(Function<Database, T> query) {
+    Optional<Database> optReplica = ReadScope
+      .current()
+      .filter(scope -> !scope.isPinnedToPrimary())
+      .filter(scope -> scope
+        .getRequesterId()
+        .map(requesterId -> pinnedUsers.getIfPresent(requesterId) == null)
+        .orElse(true)
+      )
+      .flatMap(scope -> ebeanDatabaseManager.getReplicaDatabase());
+
+    if (optReplica.isEmpty()) {
+      return query.apply(ebeanDatabaseManager.getEbeanDatabase());
+    }
+
+    try {
+      return query.apply(optReplica.get());
+    } catch (PersistenceException exception) {
+      logger.warn("Read on the replica failed, falling back to the primary", exception);
+      ebeanDatabaseManager.markReplicaUnavailable();
+      return query.apply(ebeanDatabaseManager.getEbeanDatabase());
+    }
+  }
+}
@@ -0,0 +1,120 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal;
+
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Marks the reads executed in the current thread as allowed to be served by the read replica, and
+ * keeps the requester they are executed for so the {@link ReadReplicaRouter} can guarantee that
+ * the requester reads its own writes.
+ * <p>
+ * Like the {@link com.zextras.carbonio.files.tracing.OperationTrace}, the scope is bound to the
+ * current thread and propagated to the tasks of the executors wrapped with
+ * {@link #propagate(Executor)}. The reads executed without a scope (the REST endpoints, the
+ * purge job, the message broker consumers) always go to the primary database.
+ */
+public final class ReadScope {
+
+  private static final ThreadLocal<ReadScope> CURRENT = new ThreadLocal<>();
+
+  private final    String  requesterId;
+  private volatile boolean pinnedToPrimary;
+
+  private ReadScope(String requesterId) {
+    this.requesterId = requesterId;
+  }
+
+  /**
+   * @param requesterId is a {@link String} representing the id of the user executing the reads
+   *
+   * @return a {@link ReadScope} for the reads of an authenticated user.
+   */
+  public static ReadScope of(String requesterId) {
+    return new ReadScope(requesterId);
+  }
+
+  /**
+   * @return a {@link ReadScope} for the reads of an anonymous user, that never writes.
+   */
+  public static ReadScope anonymous() {
+    return new ReadScope(null);
+  }
+
+  /**
+   * @return an {@link Optional} containing the {@link ReadScope} bound to the current thread, or an
+   * empty {@link Optional} if there is none.
+   */
+  public static Optional<ReadScope> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /**
+   * Wraps an {@link Executor} so that each task runs with the scope bound to the thread that
+   * submitted it.
+   *
+   * @param executor is the {@link Executor} to wrap
+   *
+   * @return an {@link Executor} propagating the current scope.
+   */
+  public static Executor propagate(Executor executor) {
+    return runnable -> {
+      ReadScope scope = CURRENT.get();
+      executor.execute(scope == null
+        ? runnable
+        : () -> scope.call(() -> {
+          runnable.run();
+          return null;
+        })
+      );
+    };
+  }
+
+  /**
+   * @return an {@link Optional} containing the id of the requester, or an empty {@link Optional}
+   * if the reads are executed for an anonymous user.
+   */
+  public Optional<String> getRequesterId() {
+    return Optional.ofNullable(requesterId);
+  }
+
+  /**
+   * Sends all the following reads of this scope to the primary database. It must be called when
+   * the operation executed in this scope writes something, so that it reads its own writes.
+   */
+  public void pinToPrimary() {
+    pinnedToPrimary = true;
+  }
+
+  /**
+   * @return true if the reads of this scope must go to the primary database.
+   */
+  public boolean isPinnedToPrimary() {
+    return pinnedToPrimary;
+  }
+
+  /**
+   * Executes the supplier in the current thread with this scope bound to it.
+   *
+   * @param supplier is the {@link Supplier} to execute
+   *
+   * @return the value returned by the supplier.
+   */
+  public <T> T call(Supplier<T> supplier) {
+    ReadScope previousScope = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return supplier.get();
+    } finally {
+      if (previousScope == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previousScope);
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.dao.ebean;
+
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.Files.Db;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * <p>Represents an Ebean {@link StorageUsage} entity that matches a record of the {@link
+ * Files.Db.Tables#STORAGE_USAGE} table.</p>
+ * <p>The records are written only by the database, in the same transaction of every change of
+ * the versions of the files, so this entity is read-only and it is not cached.</p>
+ */
+@Entity
+@Table(name = Files.Db.Tables.STORAGE_USAGE)
+public class StorageUsage {
+
+  @Id
+  @Column(name = Db.StorageUsage.OWNER_ID, nullable = false, length = 256)
+  private String mOwnerId;
+
+  @Column(name = Db.StorageUsage.USED_BYTES, nullable = false)
+  private Long mUsedBytes;
+
+  @Column(name = Db.StorageUsage.VERSIONS, nullable = false)
+  private Integer mVersions;
+
+  public StorageUsage(
+    String ownerId,
+    Long usedBytes,
+    Integer versions
+  ) {
+    mOwnerId = ownerId;
+    mUsedBytes = usedBytes;
+    mVersions = versions;
+  }
+
+  public String getOwnerId() {
+    return mOwnerId;
+  }
+
+  /**
+   * @return the total size in bytes of all the versions of the files of the owner.
+   */
+  public long getUsedBytes() {
+    return mUsedBytes;
+  }
+
+  /**
+   * @return the number of all the versions of the files of the owner.
+   */
+  public int getVersions() {
+    return mVersions;
+  }
+}
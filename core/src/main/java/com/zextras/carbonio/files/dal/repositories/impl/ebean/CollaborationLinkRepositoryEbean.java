@@ -76,6 +76,17 @@ public class CollaborationLinkRepositoryEbean implements CollaborationLinkReposi
       .stream();
   }
 
+  @Override
+  public Stream<CollaborationLink> getLinksByNodeIds(Collection<String> nodeIds) {
+    return ebeanDatabaseManager
+      .getEbeanDatabase()
+      .find(CollaborationLink.class)
+      .where()
+      .in(Files.Db.CollaborationLink.NODE_ID, nodeIds)
+      .findList()
+      .stream();
+  }
+
   @Override
   public void deleteLinks(Collection<UUID> linkIds) {
     ebeanDatabaseManager
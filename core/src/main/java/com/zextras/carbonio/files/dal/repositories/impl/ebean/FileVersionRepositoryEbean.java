@@ -10,6 +10,7 @@ import com.zextras.carbonio.files.Files.Db;
 import com.zextras.carbonio.files.cache.Cache;
 import com.zextras.carbonio.files.cache.CacheHandler;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
 import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FileVersionSort;
@@ -23,14 +24,17 @@ import java.util.stream.Collectors;
 public class FileVersionRepositoryEbean implements FileVersionRepository {
 
   private EbeanDatabaseManager mDB;
+  private ReadReplicaRouter    readReplicaRouter;
   private Cache<FileVersion>   fileVersionCache;
 
   @Inject
   public FileVersionRepositoryEbean(
     EbeanDatabaseManager ebeanDatabaseManager,
+    ReadReplicaRouter readReplicaRouter,
     CacheHandler cacheHandler
   ) {
     mDB = ebeanDatabaseManager;
+    this.readReplicaRouter = readReplicaRouter;
     fileVersionCache = cacheHandler.getFileVersionCache();
   }
 
@@ -144,6 +148,22 @@ public class FileVersionRepositoryEbean implements FileVersionRepository {
     return fileVersions;
   }
 
+  @Override
+  public List<FileVersion> getFileVersionsByNodeIds(
+    Collection<String> nodeIds,
+    Collection<Integer> versions
+  ) {
+    // It does not populate the file version cache, so it can be served by the replica
+    return readReplicaRouter.read(database -> database
+      .find(FileVersion.class)
+      .where()
+      .in(Files.Db.FileVersion.NODE_ID, nodeIds)
+      .and()
+      .in(Files.Db.FileVersion.VERSION, versions)
+      .findList()
+    );
+  }
+
   @Override
   public Optional<FileVersion> getLastFileVersion(String nodeId) {
 
@@ -7,6 +7,7 @@ package com.zextras.carbonio.files.dal.repositories.impl.ebean;
 import com.google.inject.Inject;
 import com.zextras.carbonio.files.Files.Db;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
 import com.zextras.carbonio.files.dal.dao.ebean.Link;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.LinkSort;
@@ -22,10 +23,15 @@ import java.util.stream.Stream;
 public class LinkRepositoryEbean implements LinkRepository {
 
   private final EbeanDatabaseManager ebeanDatabaseManager;
+  private final ReadReplicaRouter    readReplicaRouter;
 
   @Inject
-  public LinkRepositoryEbean(EbeanDatabaseManager ebeanDatabaseManager) {
+  public LinkRepositoryEbean(
+    EbeanDatabaseManager ebeanDatabaseManager,
+    ReadReplicaRouter readReplicaRouter
+  ) {
     this.ebeanDatabaseManager = ebeanDatabaseManager;
+    this.readReplicaRouter = readReplicaRouter;
   }
 
   public Link createLink(
@@ -77,16 +83,24 @@ public class LinkRepositoryEbean implements LinkRepository {
     String nodeId,
     LinkSort sort
   ) {
-    Query<Link> query = ebeanDatabaseManager
-      .getEbeanDatabase()
-      .find(Link.class)
-      .where()
-      .eq(Db.Link.NODE_ID, nodeId)
-      .query();
+    return readReplicaRouter
+      .read(database -> sort
+        .getOrderEbeanQuery(database.find(Link.class).where().eq(Db.Link.NODE_ID, nodeId).query())
+        .findList()
+      )
+      .stream();
+  }
 
-    return sort
-      .getOrderEbeanQuery(query)
-      .findList()
+  @Override
+  public Stream<Link> getLinksByNodeIds(
+    Collection<String> nodeIds,
+    LinkSort sort
+  ) {
+    return readReplicaRouter
+      .read(database -> sort
+        .getOrderEbeanQuery(database.find(Link.class).where().in(Db.Link.NODE_ID, nodeIds).query())
+        .findList()
+      )
       .stream();
   }
 
@@ -116,6 +130,14 @@ public class LinkRepositoryEbean implements LinkRepository {
   }
 
   public boolean hasNodeANotExpiredPublicLink(Node node) {
+    return buildNotExpiredPublicLinksQuery(node).exists();
+  }
+
+  public List<Link> getNotExpiredPublicLinks(Node node) {
+    return buildNotExpiredPublicLinksQuery(node).findList();
+  }
+
+  private Query<Link> buildNotExpiredPublicLinksQuery(Node node) {
     List<String> nodeIds = new ArrayList<>();
     nodeIds.add(node.getId());
     nodeIds.addAll(node.getAncestorsList());
@@ -129,6 +151,6 @@ public class LinkRepositoryEbean implements LinkRepository {
       .isNull(Db.Link.EXPIRES_AT)
       .gt(Db.Link.EXPIRES_AT, System.currentTimeMillis())
       .endOr()
-      .exists();
+      .query();
   }
 }
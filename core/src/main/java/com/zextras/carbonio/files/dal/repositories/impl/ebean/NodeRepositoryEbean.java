@@ -10,24 +10,39 @@ import com.zextras.carbonio.files.Files.Config.Pagination;
 import com.zextras.carbonio.files.Files.Db;
 import com.zextras.carbonio.files.Files.Db.RootId;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeCustomAttributes;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.dao.ebean.TrashedNode;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FindNodeKeySetBuilder;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FolderAggregates;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeProjection;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeSort;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.PageQuery;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.PageTokenCodec;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.SearchBuilder;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.SubtreesDeletion;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import io.ebean.Database;
 import io.ebean.Query;
 import io.ebean.Transaction;
 import io.ebean.annotation.Transactional;
+import io.ebean.annotation.TxIsolation;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
+import javax.persistence.PersistenceException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.slf4j.Logger;
@@ -37,11 +52,280 @@ public class NodeRepositoryEbean implements NodeRepository {
 
   private static final Logger logger = LoggerFactory.getLogger(NodeRepositoryEbean.class);
 
+  /**
+   * Returns the ids of the visible path of a node ordered from the highest visible node. The path
+   * is built from the <code>ancestor_ids</code> of the node and it starts from the root if the user
+   * is the owner of the node, otherwise from the highest ancestor shared with the user. It returns
+   * no rows if the node is hidden or if the user cannot read it.
+   * <p>
+   * The ids are compared as <code>CHARACTER(36)</code> to use the primary keys of the node and
+   * share tables.
+   */
+  private static final String VISIBLE_PATH_QUERY =
+      """
+      WITH path AS (
+        SELECT node_id, owner_id, node_type,
+          string_to_array(ancestor_ids, ',') || CAST(node_id AS TEXT) AS path_ids
+        FROM node
+        WHERE node_id = :nodeId AND NOT hidden
+      ),
+      target AS (
+        SELECT path.*, CAST(path.path_ids AS CHARACTER(36)[]) AS path_keys
+        FROM path
+      ),
+      first_visible AS (
+        SELECT CASE
+          WHEN target.node_type = 'ROOT' OR target.owner_id = :userId THEN 1
+          ELSE (
+            SELECT MIN(array_position(target.path_ids, CAST(share.node_id AS TEXT)))
+            FROM share
+            WHERE share.target_uuid = :userId AND share.node_id = ANY (target.path_keys)
+          )
+        END AS position
+        FROM target
+        WHERE target.node_type = 'ROOT'
+          OR target.owner_id = :userId
+          OR EXISTS (
+            SELECT 1
+            FROM share
+            WHERE share.node_id = target.node_id AND share.target_uuid = :userId
+          )
+      )
+      SELECT CAST(node.node_id AS TEXT)
+      FROM target
+      CROSS JOIN first_visible
+      JOIN node ON node.node_id = ANY (target.path_keys)
+      WHERE array_position(target.path_ids, CAST(node.node_id AS TEXT)) >= first_visible.position
+      ORDER BY array_position(target.path_ids, CAST(node.node_id AS TEXT))
+      """;
+
+  /**
+   * Creates or updates the custom attributes of a list of nodes for a user. Selecting the ids from
+   * the node table skips the nodes that do not exist instead of violating the foreign key.
+   */
+  private static final String FLAG_NODES_UPSERT =
+      """
+      INSERT INTO custom (node_id, user_id, star, extra)
+      SELECT node.node_id, :userId, :flag, ''
+      FROM node
+      WHERE node.node_id IN (:nodeIds)
+      ON CONFLICT (node_id, user_id) DO UPDATE SET star = EXCLUDED.star
+      """;
+
+  /**
+   * Replaces, in the ancestors of every descendant of a node, the part up to the node with the
+   * current path of the node, keeping the ids that follow it. Since the ids have the same length a
+   * node id cannot match inside another one. The %s is the filter of the descendants.
+   */
+  private static final String DESCENDANTS_ANCESTORS_UPDATE =
+      """
+      UPDATE node
+      SET ancestor_ids = :nodePath
+          || substr(ancestor_ids, strpos(ancestor_ids, :nodeId) + length(:nodeId)),
+        updated_timestamp = :updatedAt
+      WHERE %s
+      """;
+
+  private static final String DESCENDANT_OF_NODE = "ancestor_path @> ARRAY[CAST(:nodeId AS TEXT)]";
+
+  private static final String DESCENDANT_OF_NODE_NOT_INDEXED = "strpos(ancestor_ids, :nodeId) > 0";
+
+  /**
+   * Revokes the inherited shares of the moved nodes from them and from their descendants, trashed
+   * ones included. Like the revocation of a share, it does not go below a descendant having a
+   * direct share for the same user. The ids are cast because the union of the children would
+   * lose the length of the CHARACTER(36) type.
+   */
+  private static final String MOVED_INHERITED_SHARES_DELETE =
+      """
+      WITH RECURSIVE revoked(node_id, target_uuid) AS (
+        SELECT CAST(share.node_id AS CHARACTER(36)), share.target_uuid
+        FROM share
+        WHERE share.node_id IN (:nodeIds) AND NOT share.direct
+        UNION
+        SELECT CAST(child.node_id AS CHARACTER(36)), revoked.target_uuid
+        FROM revoked
+        JOIN (
+          SELECT node.node_id, node.folder_id AS parent_id FROM node
+          UNION ALL
+          SELECT trashed.node_id, trashed.parent_id FROM trashed
+        ) child ON child.parent_id = revoked.node_id
+        WHERE NOT EXISTS (
+          SELECT 1
+          FROM share
+          WHERE share.node_id = child.node_id
+            AND share.target_uuid = revoked.target_uuid
+            AND share.direct
+        )
+      )
+      DELETE FROM share
+      USING revoked
+      WHERE share.node_id = revoked.node_id
+        AND share.target_uuid = revoked.target_uuid
+        AND NOT share.direct
+      """;
+
+  /**
+   * Propagates the shares of the destination folder on the moved nodes and on their descendants as
+   * inherited shares, skipping the users having a direct share on the moved node. The existing
+   * direct shares are never overwritten. It runs after the ancestors of the moved subtrees have
+   * been rewritten, so their ancestor_path is populated even if the backfill is not completed.
+   */
+  private static final String MOVED_INHERITED_SHARES_UPSERT =
+      """
+      WITH moved AS (
+        SELECT node_id FROM node WHERE node_id IN (:nodeIds)
+      ),
+      subtree AS (
+        SELECT moved.node_id AS moved_id, moved.node_id
+        FROM moved
+        UNION ALL
+        SELECT moved.node_id, node.node_id
+        FROM moved
+        JOIN node ON node.ancestor_path @> ARRAY[CAST(moved.node_id AS TEXT)]
+      )
+      INSERT INTO share
+        (node_id, target_uuid, rights, timestamp, expire_date, direct, created_via_link)
+      SELECT subtree.node_id, destination_share.target_uuid, destination_share.rights,
+        :createdAt, destination_share.expire_date, FALSE, FALSE
+      FROM subtree
+      JOIN share destination_share ON destination_share.node_id = :destinationId
+      WHERE NOT EXISTS (
+        SELECT 1
+        FROM share
+        WHERE share.node_id = subtree.moved_id
+          AND share.target_uuid = destination_share.target_uuid
+          AND share.direct
+      )
+      ON CONFLICT (node_id, target_uuid) DO UPDATE
+      SET rights = EXCLUDED.rights,
+        expire_date = COALESCE(EXCLUDED.expire_date, share.expire_date)
+      WHERE NOT share.direct
+      """;
+
+  /**
+   * Collects the deleted nodes and all their descendants, walking down the children of every
+   * folder. The temporary table lets the following statements of the transaction use the subtrees
+   * without collecting them again, and it is dropped when the transaction ends.
+   */
+  private static final String DELETED_SUBTREES_COLLECT =
+      """
+      CREATE TEMPORARY TABLE deleted_node ON COMMIT DROP AS
+      WITH RECURSIVE subtree(node_id, owner_id) AS (
+        SELECT node.node_id, node.owner_id
+        FROM node
+        WHERE node.node_id IN (:nodeIds)
+        UNION
+        SELECT node.node_id, node.owner_id
+        FROM subtree
+        JOIN node ON node.folder_id = subtree.node_id
+      )
+      SELECT node_id, owner_id FROM subtree
+      """;
+
+  /**
+   * Creates a tombstone for every version of the deleted files, so their blobs are purged from the
+   * storage. The existing tombstones are kept.
+   */
+  private static final String DELETED_SUBTREES_TOMBSTONES_INSERT =
+      """
+      INSERT INTO tombstone (node_id, owner_id, timestamp, version)
+      SELECT revision.node_id, deleted_node.owner_id, :deletedAt, revision.version
+      FROM revision
+      JOIN deleted_node ON deleted_node.node_id = revision.node_id
+      ON CONFLICT (node_id, version) DO NOTHING
+      """;
+
+  /**
+   * Deletes the shares of the deleted nodes and of their trashed children: these children were
+   * trashed before their parent, so they are not in the subtrees and they remain in the trash.
+   */
+  private static final String DELETED_SUBTREES_SHARES_DELETE =
+      """
+      DELETE FROM share
+      WHERE share.node_id IN (SELECT node_id FROM deleted_node)
+        OR share.node_id IN (
+          SELECT trashed.node_id
+          FROM trashed
+          JOIN deleted_node ON deleted_node.node_id = trashed.parent_id
+        )
+      """;
+
+  private static final String DELETED_SUBTREES_NODES_DELETE =
+      """
+      DELETE FROM node
+      WHERE node.node_id IN (SELECT node_id FROM deleted_node)
+      """;
+
+  private static final String FOLDER_AGGREGATES_QUERY =
+      """
+      SELECT subtree_size, subtree_files, subtree_folders
+      FROM node
+      WHERE node_id = :folderId AND node_type = 'FOLDER'
+      """;
+
+  private static final String FOLDERS_AGGREGATES_QUERY =
+      """
+      SELECT node_id, subtree_size, subtree_files, subtree_folders
+      FROM node
+      WHERE node_id IN (:folderIds) AND node_type = 'FOLDER'
+        AND subtree_size IS NOT NULL AND subtree_files IS NOT NULL AND subtree_folders IS NOT NULL
+      """;
+
+  private static final String FOLDERS_WITHOUT_AGGREGATES_QUERY =
+      """
+      SELECT CAST(node_id AS TEXT)
+      FROM node
+      WHERE node_type = 'FOLDER' AND subtree_size IS NULL
+      LIMIT :limit
+      """;
+
+  /**
+   * Computes the aggregates of some folders from their descendants, with the same rules of the
+   * trigger that keeps them aligned, and updates the folders whose aggregates differ.
+   */
+  private static final String FOLDER_AGGREGATES_RECONCILE =
+      """
+      WITH computed AS (
+        SELECT folder.node_id,
+          COALESCE(SUM(descendant.size) FILTER (WHERE descendant.node_type <> 'FOLDER'), 0)
+            AS subtree_size,
+          COUNT(descendant.node_id) FILTER (WHERE descendant.node_type <> 'FOLDER')
+            AS subtree_files,
+          COUNT(descendant.node_id) FILTER (WHERE descendant.node_type = 'FOLDER')
+            AS subtree_folders
+        FROM node folder
+        LEFT JOIN node descendant
+          ON descendant.ancestor_path @> ARRAY[CAST(folder.node_id AS TEXT)]
+        WHERE folder.node_id IN (:folderIds) AND folder.node_type = 'FOLDER'
+        GROUP BY folder.node_id
+      )
+      UPDATE node
+      SET subtree_size = computed.subtree_size,
+        subtree_files = computed.subtree_files,
+        subtree_folders = computed.subtree_folders
+      FROM computed
+      WHERE node.node_id = computed.node_id
+        AND (node.subtree_size IS DISTINCT FROM computed.subtree_size
+          OR node.subtree_files IS DISTINCT FROM computed.subtree_files
+          OR node.subtree_folders IS DISTINCT FROM computed.subtree_folders)
+      """;
+
+  private static final int    RECONCILE_ATTEMPTS    = 3;
+  private static final String SERIALIZATION_FAILURE = "40001";
+
   private EbeanDatabaseManager mDB;
+  private ReadReplicaRouter    readReplicaRouter;
+  private PageTokenCodec       pageTokenCodec;
 
   @Inject
-  public NodeRepositoryEbean(EbeanDatabaseManager ebeanDatabaseManager) {
+  public NodeRepositoryEbean(
+      EbeanDatabaseManager ebeanDatabaseManager,
+      ReadReplicaRouter readReplicaRouter,
+      PageTokenCodec pageTokenCodec) {
     mDB = ebeanDatabaseManager;
+    this.readReplicaRouter = readReplicaRouter;
+    this.pageTokenCodec = pageTokenCodec;
   }
 
   /**
@@ -85,9 +369,10 @@ public class NodeRepositoryEbean implements NodeRepository {
         FindNodeKeySetBuilder.aSearchKeySetBuilder()
             .withNodeSorts(realSortsToApply)
             .fromNode(node)
-            .build());
+            .withKeywords(keywords, mDB.isTrigramAvailable())
+            .buildValues());
 
-    return nextPage.toToken();
+    return pageTokenCodec.encode(nextPage);
   }
 
   /**
@@ -103,13 +388,23 @@ public class NodeRepositoryEbean implements NodeRepository {
 
   @Override
   public List<Node> getAllTrashedNodes(Long retentionTimestamp) {
+    return findTrashedNodesOlderThan(retentionTimestamp).findList();
+  }
 
-    return mDB.getEbeanDatabase()
-        .find(Node.class)
-        .where()
-        .contains(Db.Node.ANCESTOR_IDS, Db.RootId.TRASH_ROOT)
-        .lt(Files.Db.Node.UPDATED_AT, retentionTimestamp)
-        .findList();
+  /**
+   * Builds the query of the nodes in the trash not updated since the given timestamp. It filters
+   * the descendants of the trash root using the index of the ancestor_path when it is populated.
+   */
+  private Query<Node> findTrashedNodesOlderThan(Long retentionTimestamp) {
+    Query<Node> query = mDB.getEbeanDatabase().find(Node.class);
+
+    if (mDB.isHierarchyIndexed()) {
+      query.where().raw(SearchBuilder.DESCENDANT_OF, Db.RootId.TRASH_ROOT);
+    } else {
+      query.where().contains(Db.Node.ANCESTOR_IDS, Db.RootId.TRASH_ROOT);
+    }
+
+    return query.where().lt(Files.Db.Node.UPDATED_AT, retentionTimestamp).query();
   }
 
   /**
@@ -128,31 +423,46 @@ public class NodeRepositoryEbean implements NodeRepository {
       Optional<Boolean> sharedByMe,
       Optional<Boolean> directShare,
       List<String> keywords,
-      Optional<String> keyset,
+      Optional<List<Object>> keyset,
       Optional<NodeType> optNodeType,
-      Optional<String> optOwnerId) {
-
-    SearchBuilder search = new SearchBuilder(mDB.getEbeanDatabase(), userId);
+      Optional<String> optOwnerId,
+      NodeProjection projection) {
 
     long startTime = java.lang.System.nanoTime();
 
-    if (!keywords.isEmpty()) {
-      search.setKeywords(keywords);
-    }
-    flagged.ifPresent(search::setFlagged);
-    folderId.ifPresent(fId -> search.setFolderId(fId, cascade.orElse(true)));
-    sharedWithMe.ifPresent(swm -> search.setSharedWithMe(userId, swm));
-    sharedByMe.ifPresent(search::setSharedByMe);
-    directShare.ifPresent(search::setDirectShare);
-    optNodeType.ifPresent(search::setNodeType);
-    optOwnerId.ifPresent(search::setOwner);
-
-    search.setLimit(limit);
-    keyset.ifPresent(search::setKeyset);
-
-    sorts.forEach(search::setSort);
-
-    List<Node> nodes = search.build().findList();
+    List<Node> nodes =
+        readReplicaRouter.read(
+            database -> {
+              SearchBuilder search =
+                  new SearchBuilder(
+                      database, userId, mDB.isHierarchyIndexed(), mDB.isTrigramAvailable());
+
+              if (!keywords.isEmpty()) {
+                search.setKeywords(keywords);
+              }
+              flagged.ifPresent(search::setFlagged);
+              folderId.ifPresent(fId -> search.setFolderId(fId, cascade.orElse(true)));
+              sharedWithMe.ifPresent(swm -> search.setSharedWithMe(userId, swm));
+              sharedByMe.ifPresent(search::setSharedByMe);
+              directShare.ifPresent(search::setDirectShare);
+              optNodeType.ifPresent(search::setNodeType);
+              optOwnerId.ifPresent(search::setOwner);
+
+              search.setLimit(limit);
+              keyset.ifPresent(
+                  keySetValues ->
+                      search.setKeyset(
+                          FindNodeKeySetBuilder.aSearchKeySetBuilder()
+                              .withNodeSorts(sorts)
+                              .withKeywords(keywords, mDB.isTrigramAvailable())
+                              .fromValues(keySetValues)
+                              .build()));
+
+              sorts.forEach(search::setSort);
+              search.setProjection(projection);
+
+              return search.build().findList();
+            });
 
     long endTime = java.lang.System.nanoTime();
     long totalTime = (endTime - startTime) / 1_000_000;
@@ -179,6 +489,10 @@ public class NodeRepositoryEbean implements NodeRepository {
             result.add(NodeSort.TYPE_DESC);
             result.add(s);
             result.add(NodeSort.NAME_ASC);
+          } else if (s.equals(NodeSort.RELEVANCE_DESC)) {
+            // the most relevant nodes first, whatever their type
+            result.add(s);
+            result.add(NodeSort.TYPE_ASC);
           } else {
             result.add(NodeSort.TYPE_ASC);
             result.add(s);
@@ -203,12 +517,13 @@ public class NodeRepositoryEbean implements NodeRepository {
       Optional<NodeType> optNodeType,
       Optional<String> optOwnerId,
       List<String> keywords,
-      Optional<String> pageToken) {
+      Optional<String> pageToken,
+      NodeProjection projection) {
 
     return pageToken
         .map(
             token -> {
-              PageQuery params = PageQuery.fromToken(token);
+              PageQuery params = pageTokenCodec.decode(token);
               List<NodeSort> realSortsToApply =
                   getRealSortingsToApply(params.getSort().map(NodeSort::valueOf));
               List<Node> nodes =
@@ -225,7 +540,8 @@ public class NodeRepositoryEbean implements NodeRepository {
                       params.getKeywords(),
                       params.getKeySet(),
                       params.getNodeType(),
-                      params.getOwnerId());
+                      params.getOwnerId(),
+                      projection);
 
               if (nodes.size() == params.getLimit()) {
                 return new ImmutablePair<>(
@@ -273,7 +589,8 @@ public class NodeRepositoryEbean implements NodeRepository {
                       keywords,
                       Optional.empty(),
                       optNodeType,
-                      optOwnerId);
+                      optOwnerId,
+                      projection);
 
               if (nodes.size() == realLimit) {
                 return new ImmutablePair<>(
@@ -303,7 +620,7 @@ public class NodeRepositoryEbean implements NodeRepository {
 
     PageQuery pageQuery =
         Optional.ofNullable(pageToken)
-            .map(PageQuery::fromToken)
+            .map(pageTokenCodec::decode)
             .orElseGet(
                 () -> {
                   PageQuery firstPageQuery = new PageQuery();
@@ -312,25 +629,41 @@ public class NodeRepositoryEbean implements NodeRepository {
                   return firstPageQuery;
                 });
 
-    Query<Node> findNodeQuery =
-        mDB.getEbeanDatabase()
-            .find(Node.class)
-            .where()
-            .eq(Db.Node.PARENT_ID, pageQuery.getFolderId().orElse("LOCAL_ROOT"))
-            .query();
-
-    if (pageQuery.getKeySet().isPresent()) {
-      findNodeQuery.where().and().raw(pageQuery.getKeySet().get());
-    }
-
     List<Node> nodes =
-        findNodeQuery
-            .orderBy()
-            .asc(Db.Node.CATEGORY)
-            .orderBy()
-            .asc(Db.Node.NAME)
-            .setMaxRows(pageQuery.getLimit())
-            .findList()
+        readReplicaRouter
+            .read(
+                database -> {
+                  Query<Node> findNodeQuery =
+                      database
+                          .find(Node.class)
+                          .where()
+                          .eq(Db.Node.PARENT_ID, pageQuery.getFolderId().orElse("LOCAL_ROOT"))
+                          .query();
+
+                  pageQuery
+                      .getKeySet()
+                      .map(
+                          keySetValues ->
+                              FindNodeKeySetBuilder.aSearchKeySetBuilder()
+                                  .withNodeSorts(
+                                      getRealSortingsToApply(Optional.of(NodeSort.NAME_ASC)))
+                                  .fromValues(keySetValues)
+                                  .build())
+                      .ifPresent(
+                          keySet ->
+                              findNodeQuery
+                                  .where()
+                                  .and()
+                                  .raw(keySet.toExpression(), keySet.getParameters().toArray()));
+
+                  return findNodeQuery
+                      .orderBy()
+                      .asc(Db.Node.CATEGORY)
+                      .orderBy()
+                      .asc(Db.Node.NAME)
+                      .setMaxRows(pageQuery.getLimit())
+                      .findList();
+                })
             .stream()
             // This filter is tricky because it denies the access of nodes that are not children of
             // the
@@ -371,17 +704,51 @@ public class NodeRepositoryEbean implements NodeRepository {
    * @param sort the sorting for the list of nodes
    * @return
    */
-  private List<Node> getRealNodes(List<String> nodeIds, Optional<NodeSort> sort) {
-    Query<Node> query =
-        mDB.getEbeanDatabase().createQuery(Node.class).where().idIn(nodeIds).query();
-
-    sort.map(s -> s.getOrderEbeanQuery(query));
-    return query.findList();
+  private List<Node> getRealNodes(
+      List<String> nodeIds, Optional<NodeSort> sort, NodeProjection projection) {
+    return readReplicaRouter.read(
+        database -> {
+          Query<Node> query =
+              projection.apply(database.createQuery(Node.class)).where().idIn(nodeIds).query();
+
+          sort.map(s -> s.getOrderEbeanQuery(query));
+          return query.findList();
+        });
   }
 
   @Override
   public Stream<Node> getNodes(List<String> nodeIds, Optional<NodeSort> sort) {
-    return getRealNodes(nodeIds, sort).stream();
+    return getRealNodes(nodeIds, sort, NodeProjection.full()).stream();
+  }
+
+  @Override
+  public Stream<Node> getNodes(
+      List<String> nodeIds, Optional<NodeSort> sort, NodeProjection projection) {
+    return getRealNodes(nodeIds, sort, projection).stream();
+  }
+
+  @Override
+  public List<Node> getVisiblePath(String nodeId, String userId) {
+    List<String> pathNodeIds =
+        mDB.getEbeanDatabase()
+            .sqlQuery(VISIBLE_PATH_QUERY)
+            .setParameter("nodeId", nodeId)
+            .setParameter("userId", userId)
+            .mapToScalar(String.class)
+            .findList();
+
+    if (pathNodeIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    Map<String, Integer> positions = new HashMap<>();
+    for (int position = 0; position < pathNodeIds.size(); position++) {
+      positions.put(pathNodeIds.get(position), position);
+    }
+
+    return getRealNodes(pathNodeIds, Optional.empty(), NodeProjection.full()).stream()
+        .sorted(Comparator.comparing(node -> positions.get(node.getId())))
+        .collect(Collectors.toList());
   }
 
   @Override
@@ -471,6 +838,24 @@ public class NodeRepositoryEbean implements NodeRepository {
             });
   }
 
+  @Override
+  public void flagForUser(List<String> nodeIds, String userId, boolean flag) {
+    if (nodeIds.isEmpty()) {
+      return;
+    }
+
+    mDB.getEbeanDatabase()
+        .sqlUpdate(FLAG_NODES_UPSERT)
+        .setParameter("nodeIds", nodeIds)
+        .setParameter("userId", userId)
+        .setParameter("flag", flag)
+        .execute();
+
+    // The raw statement bypasses the persistence context: notify the change to the L2 cache
+    mDB.getEbeanDatabase()
+        .externalModification(Files.Db.Tables.NODE_CUSTOM_ATTRIBUTES, true, true, false);
+  }
+
   @Override
   public boolean isFlaggedForUser(String nodeId, String userId) {
     return getCustomAttributesForUser(nodeId, userId)
@@ -504,15 +889,6 @@ public class NodeRepositoryEbean implements NodeRepository {
         .findOneOrEmpty();
   }
 
-  @Override
-  public List<String> getTrashedNodeIdsByOldParent(String oldParentId) {
-    return mDB.getEbeanDatabase()
-        .find(TrashedNode.class)
-        .where()
-        .eq(Db.Trashed.PARENT_ID, oldParentId)
-        .findIds();
-  }
-
   @Override
   public void trashNode(String nodeId, String parentId) {
     TrashedNode tNode = new TrashedNode(nodeId, parentId);
@@ -533,12 +909,7 @@ public class NodeRepositoryEbean implements NodeRepository {
 
   @Override
   public int deleteTrashedNodesOlderThan(Long retentionTimestamp) {
-    return mDB.getEbeanDatabase()
-        .find(Node.class)
-        .where()
-        .contains(Db.Node.ANCESTOR_IDS, Db.RootId.TRASH_ROOT)
-        .lt(Files.Db.Node.UPDATED_AT, retentionTimestamp)
-        .delete();
+    return findTrashedNodesOlderThan(retentionTimestamp).delete();
   }
 
   @Override
@@ -558,6 +929,216 @@ public class NodeRepositoryEbean implements NodeRepository {
         .update();
   }
 
+  @Override
+  public int moveSubtrees(List<String> nodesIds, Node destinationFolder) {
+    if (nodesIds.isEmpty()) {
+      return 0;
+    }
+
+    String destinationPath =
+        NodeType.ROOT.equals(destinationFolder.getNodeType())
+            ? destinationFolder.getId()
+            : destinationFolder.getAncestorIds() + Node.ANCESTORS_SEPARATOR
+                + destinationFolder.getId();
+    long now = System.currentTimeMillis();
+    int movedNodes = 0;
+
+    // The aggregates triggers count twice a node moved in the same statement of one of its
+    // ancestors. The nodes are moved one depth at a time, the deepest first: a statement never moves
+    // two related nodes and a nested node has already left the subtree of its ancestors when they
+    // are moved
+    Collection<List<String>> nodesIdsByDepth =
+        getNodes(nodesIds, Optional.empty())
+            .collect(
+                Collectors.groupingBy(
+                    node -> node.getAncestorsList().size(),
+                    () -> new TreeMap<Integer, List<String>>(Comparator.reverseOrder()),
+                    Collectors.mapping(Node::getId, Collectors.toList())))
+            .values();
+
+    try (Transaction transaction = mDB.getEbeanDatabase().beginTransaction()) {
+      for (List<String> sameDepthIds : nodesIdsByDepth) {
+        movedNodes += moveNodes(sameDepthIds, destinationFolder);
+        sameDepthIds.forEach(
+            nodeId ->
+                updateDescendantsAncestors(
+                    nodeId, destinationPath + Node.ANCESTORS_SEPARATOR + nodeId, now));
+      }
+
+      mDB.getEbeanDatabase()
+          .sqlUpdate(MOVED_INHERITED_SHARES_DELETE)
+          .setParameter("nodeIds", nodesIds)
+          .execute();
+
+      mDB.getEbeanDatabase()
+          .sqlUpdate(MOVED_INHERITED_SHARES_UPSERT)
+          .setParameter("nodeIds", nodesIds)
+          .setParameter("destinationId", destinationFolder.getId())
+          .setParameter("createdAt", now)
+          .execute();
+
+      transaction.commit();
+    }
+
+    // The raw statements bypass the persistence context: notify the changes to the L2 cache
+    mDB.getEbeanDatabase().externalModification(Db.Tables.NODE, false, true, false);
+    mDB.getEbeanDatabase().externalModification(Db.Tables.SHARE, true, true, true);
+    return movedNodes;
+  }
+
+  @Override
+  public SubtreesDeletion deleteSubtrees(List<String> nodesIds) {
+    if (nodesIds.isEmpty()) {
+      return new SubtreesDeletion(0, 0, 0);
+    }
+
+    SubtreesDeletion deletion;
+
+    try (Transaction transaction = mDB.getEbeanDatabase().beginTransaction()) {
+      mDB.getEbeanDatabase()
+          .sqlUpdate(DELETED_SUBTREES_COLLECT)
+          .setParameter("nodeIds", nodesIds)
+          .execute();
+
+      int createdTombstones =
+          mDB.getEbeanDatabase()
+              .sqlUpdate(DELETED_SUBTREES_TOMBSTONES_INSERT)
+              .setParameter("deletedAt", System.currentTimeMillis())
+              .execute();
+      int deletedShares =
+          mDB.getEbeanDatabase().sqlUpdate(DELETED_SUBTREES_SHARES_DELETE).execute();
+      int deletedNodes =
+          mDB.getEbeanDatabase().sqlUpdate(DELETED_SUBTREES_NODES_DELETE).execute();
+
+      transaction.commit();
+      deletion = new SubtreesDeletion(deletedNodes, deletedShares, createdTombstones);
+    }
+
+    // The raw statements bypass the persistence context: notify the changes to the L2 cache. The
+    // deletion of the nodes cascades on their versions, custom attributes, links and trash entries
+    Database database = mDB.getEbeanDatabase();
+    database.externalModification(Db.Tables.NODE, false, false, true);
+    database.externalModification(Db.Tables.SHARE, false, false, true);
+    database.externalModification(Db.Tables.FILE_VERSION, false, false, true);
+    database.externalModification(Db.Tables.NODE_CUSTOM_ATTRIBUTES, false, false, true);
+    database.externalModification(Db.Tables.LINK, false, false, true);
+    database.externalModification(Db.Tables.TRASHED_NODE, false, false, true);
+    database.externalModification(Db.Tables.TOMBSTONE, true, false, false);
+
+    logger.debug(
+        "Deleted {} nodes and {} shares, created {} tombstones",
+        deletion.getDeletedNodes(),
+        deletion.getDeletedShares(),
+        deletion.getCreatedTombstones());
+    return deletion;
+  }
+
+  @Override
+  public Optional<FolderAggregates> getFolderAggregates(String folderId) {
+    return mDB.getEbeanDatabase()
+        .sqlQuery(FOLDER_AGGREGATES_QUERY)
+        .setParameter("folderId", folderId)
+        .findOneOrEmpty()
+        .filter(row -> row.getLong(Db.Node.SUBTREE_SIZE) != null)
+        .filter(row -> row.getInteger(Db.Node.SUBTREE_FILES) != null)
+        .filter(row -> row.getInteger(Db.Node.SUBTREE_FOLDERS) != null)
+        .map(
+            row ->
+                new FolderAggregates(
+                    row.getLong(Db.Node.SUBTREE_SIZE),
+                    row.getInteger(Db.Node.SUBTREE_FILES),
+                    row.getInteger(Db.Node.SUBTREE_FOLDERS)));
+  }
+
+  @Override
+  public Map<String, FolderAggregates> getFolderAggregates(Collection<String> folderIds) {
+    return mDB.getEbeanDatabase()
+        .sqlQuery(FOLDERS_AGGREGATES_QUERY)
+        .setParameter("folderIds", folderIds)
+        .findList()
+        .stream()
+        .collect(
+            Collectors.toMap(
+                row -> row.getString(Db.Node.ID),
+                row ->
+                    new FolderAggregates(
+                        row.getLong(Db.Node.SUBTREE_SIZE),
+                        row.getInteger(Db.Node.SUBTREE_FILES),
+                        row.getInteger(Db.Node.SUBTREE_FOLDERS))));
+  }
+
+  @Override
+  public List<String> getFolderIdsWithoutAggregates(int limit) {
+    return mDB.getEbeanDatabase()
+        .sqlQuery(FOLDERS_WITHOUT_AGGREGATES_QUERY)
+        .setParameter("limit", limit)
+        .mapToScalar(String.class)
+        .findList();
+  }
+
+  @Override
+  public int reconcileFolderAggregates(List<String> folderIds) {
+    if (folderIds.isEmpty()) {
+      return 0;
+    }
+
+    // The aggregates are computed from a snapshot of the descendants: in a repeatable read
+    // transaction a folder changed by a concurrent trigger after the snapshot fails the update
+    // instead of overwriting the delta, and the batch is computed again
+    for (int attempt = 1; ; attempt++) {
+      try (Transaction transaction =
+          mDB.getEbeanDatabase().beginTransaction(TxIsolation.REPEATABLE_READ)) {
+        int reconciledFolders =
+            mDB.getEbeanDatabase()
+                .sqlUpdate(FOLDER_AGGREGATES_RECONCILE)
+                .setParameter("folderIds", folderIds)
+                .execute();
+        transaction.commit();
+        return reconciledFolders;
+      } catch (PersistenceException exception) {
+        if (attempt == RECONCILE_ATTEMPTS || !isSerializationFailure(exception)) {
+          throw exception;
+        }
+        logger.debug("Folder aggregates changed concurrently, attempt {} failed", attempt);
+      }
+    }
+  }
+
+  private static boolean isSerializationFailure(Throwable exception) {
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException
+          && SERIALIZATION_FAILURE.equals(((SQLException) cause).getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public int updateDescendantsAncestors(Node node) {
+    String nodePath =
+        NodeType.ROOT.equals(node.getNodeType())
+            ? node.getId()
+            : node.getAncestorIds() + Node.ANCESTORS_SEPARATOR + node.getId();
+
+    int updatedNodes =
+        updateDescendantsAncestors(node.getId(), nodePath, System.currentTimeMillis());
+    mDB.getEbeanDatabase().externalModification(Db.Tables.NODE, false, true, false);
+    return updatedNodes;
+  }
+
+  private int updateDescendantsAncestors(String nodeId, String nodePath, long updatedAt) {
+    String descendantOfNode =
+        mDB.isHierarchyIndexed() ? DESCENDANT_OF_NODE : DESCENDANT_OF_NODE_NOT_INDEXED;
+
+    return mDB.getEbeanDatabase()
+        .sqlUpdate(String.format(DESCENDANTS_ANCESTORS_UPDATE, descendantOfNode))
+        .setParameter("nodeId", nodeId)
+        .setParameter("nodePath", nodePath)
+        .setParameter("updatedAt", updatedAt)
+        .execute();
+  }
+
   @Override
   public List<Node> getRootsList() {
     return mDB.getEbeanDatabase().find(Node.class).where().eq(Db.Node.CATEGORY, 0).findList();
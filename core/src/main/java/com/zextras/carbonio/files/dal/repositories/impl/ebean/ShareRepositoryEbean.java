@@ -8,23 +8,85 @@ import com.google.inject.Inject;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.Db;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL;
 import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.ShareSort;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
 import io.ebean.Query;
-import io.ebean.Transaction;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class ShareRepositoryEbean implements ShareRepository {
 
+  /**
+   * Creates or updates the inherited share of a user on all the descendants of a node. The direct
+   * shares are never overwritten and the expiration is updated only when a new one is given. The
+   * %s is the filter of the descendants.
+   */
+  private static final String INHERITED_SHARES_UPSERT = """
+    INSERT INTO share
+      (node_id, target_uuid, rights, timestamp, expire_date, direct, created_via_link)
+    SELECT node.node_id, :targetUserId, CAST(:permissions AS SMALLINT), CAST(:createdAt AS BIGINT),
+      CAST(:expireDate AS BIGINT), FALSE, FALSE
+    FROM node
+    WHERE %s
+    ON CONFLICT (node_id, target_uuid) DO UPDATE
+    SET rights = EXCLUDED.rights,
+      expire_date = COALESCE(EXCLUDED.expire_date, share.expire_date)
+    WHERE NOT share.direct
+    """;
+
+  private static final String DESCENDANT_OF_NODE =
+    "node.ancestor_path @> ARRAY[CAST(:nodeId AS TEXT)]";
+
+  private static final String DESCENDANT_OF_NODE_NOT_INDEXED =
+    "strpos(node.ancestor_ids, :nodeId) > 0";
+
+  /**
+   * Deletes the inherited shares of a user from the descendants of a node, walking down both the
+   * children and the trashed children of every folder. It does not go below a descendant having a
+   * direct share for the user. The ids are cast because the union of the children would lose the
+   * length of the CHARACTER(36) type.
+   */
+  private static final String INHERITED_SHARES_DELETE = """
+    WITH RECURSIVE revoked(node_id) AS (
+      SELECT CAST(:nodeId AS CHARACTER(36))
+      UNION
+      SELECT CAST(child.node_id AS CHARACTER(36))
+      FROM revoked
+      JOIN (
+        SELECT node.node_id, node.folder_id AS parent_id FROM node
+        UNION ALL
+        SELECT trashed.node_id, trashed.parent_id FROM trashed
+      ) child ON child.parent_id = revoked.node_id
+      WHERE NOT EXISTS (
+        SELECT 1
+        FROM share
+        WHERE share.node_id = child.node_id
+          AND share.target_uuid = :targetUserId
+          AND share.direct
+      )
+    )
+    DELETE FROM share
+    USING revoked
+    WHERE share.node_id = revoked.node_id
+      AND share.node_id <> CAST(:nodeId AS CHARACTER(36))
+      AND share.target_uuid = :targetUserId
+      AND NOT share.direct
+    """;
+
   private final EbeanDatabaseManager mDB;
+  private final ReadReplicaRouter    readReplicaRouter;
 
   @Inject
-  public ShareRepositoryEbean(EbeanDatabaseManager ebeanDatabaseManager) {
+  public ShareRepositoryEbean(
+    EbeanDatabaseManager ebeanDatabaseManager,
+    ReadReplicaRouter readReplicaRouter
+  ) {
     mDB = ebeanDatabaseManager;
+    this.readReplicaRouter = readReplicaRouter;
   }
 
   /**
@@ -93,34 +155,27 @@ public class ShareRepositoryEbean implements ShareRepository {
     }
   }
 
-  public void upsertShareBulk(
-    List<String> nodeIds,
+  public void upsertInheritedShares(
+    String nodeId,
     String targetUserId,
     ACL permissions,
-    Boolean direct,
-    Boolean createdViaCollaborationLink,
     Optional<Long> expireTimestamp
   ) {
-    try (Transaction transaction = mDB.getEbeanDatabase().beginTransaction()) {
-
-      // use JDBC batch
-      transaction.setBatchMode(true);
-      transaction.setBatchSize(50);
-
-      // these go to batch buffer
-      nodeIds.forEach(nodeId ->
-        upsertShare(
-          nodeId,
-          targetUserId,
-          permissions,
-          direct,
-          createdViaCollaborationLink,
-          expireTimestamp
-        )
-      );
-      // flush batch and commit
-      transaction.commit();
-    }
+    String descendantOfNode = mDB.isHierarchyIndexed()
+      ? DESCENDANT_OF_NODE
+      : DESCENDANT_OF_NODE_NOT_INDEXED;
+
+    mDB.getEbeanDatabase()
+      .sqlUpdate(String.format(INHERITED_SHARES_UPSERT, descendantOfNode))
+      .setParameter("nodeId", nodeId)
+      .setParameter("targetUserId", targetUserId)
+      .setParameter("permissions", permissions.encode())
+      .setParameter("createdAt", System.currentTimeMillis())
+      .setParameter("expireDate", expireTimestamp.orElse(null))
+      .execute();
+
+    // The raw statement bypasses the persistence context: notify the change to the L2 cache
+    mDB.getEbeanDatabase().externalModification(Db.Tables.SHARE, true, true, false);
   }
 
   public Share updateShare(Share share) {
@@ -137,46 +192,31 @@ public class ShareRepositoryEbean implements ShareRepository {
       .orElse(false);
   }
 
-  public void deleteSharesBulk(
-    List<String> nodeIds,
+  public void deleteInheritedShares(
+    String nodeId,
     String targetUserId
-  ) {
-    try (Transaction transaction = mDB.getEbeanDatabase().beginTransaction()) {
-
-      // use JDBC batch
-      transaction.setBatchMode(true);
-      transaction.setBatchSize(50);
-
-      // these go to batch buffer
-      nodeIds.forEach(nodeId -> deleteShare(nodeId, targetUserId));
-
-      // flush batch and commit
-      transaction.commit();
-    }
-  }
-
-  public void deleteSharesBulk(
-    List<String> nodeIds
   ) {
     mDB.getEbeanDatabase()
-      .find(Share.class)
-      .where()
-      .in(Files.Db.Share.NODE_ID, nodeIds)
-      .delete();
+      .sqlUpdate(INHERITED_SHARES_DELETE)
+      .setParameter("nodeId", nodeId)
+      .setParameter("targetUserId", targetUserId)
+      .execute();
 
-    // TODO Uniform the delete behaviour with other delete method when we implement unique shareId
+    // The raw statement bypasses the persistence context: notify the change to the L2 cache
+    mDB.getEbeanDatabase().externalModification(Db.Tables.SHARE, false, false, true);
   }
 
   public List<Share> getShares(
     List<String> nodeIds,
     String targetUserId
   ) {
-    return mDB.getEbeanDatabase()
+    return readReplicaRouter.read(database -> database
       .find(Share.class)
       .where()
       .in(Files.Db.Share.NODE_ID, nodeIds)
       .eq(Files.Db.Share.SHARE_TARGET_UUID, targetUserId)
-      .findList();
+      .findList()
+    );
   }
 
   public List<Share> getShares(
@@ -197,11 +237,12 @@ public class ShareRepositoryEbean implements ShareRepository {
   }
 
   public List<Share> getShares(List<String> nodeIds) {
-    return mDB.getEbeanDatabase()
+    return readReplicaRouter.read(database -> database
       .find(Share.class)
       .where()
       .in(Db.Share.NODE_ID, nodeIds)
-      .findList();
+      .findList()
+    );
   }
 
   public List<String> getSharesUsersIds(
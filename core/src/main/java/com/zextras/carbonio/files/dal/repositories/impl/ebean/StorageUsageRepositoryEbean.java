@@ -0,0 +1,112 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean;
+
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.Files.Db;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.dao.ebean.StorageUsage;
+import com.zextras.carbonio.files.dal.repositories.interfaces.StorageUsageRepository;
+import io.ebean.Transaction;
+import io.ebean.annotation.TxIsolation;
+import java.util.List;
+import java.util.Optional;
+
+public class StorageUsageRepositoryEbean implements StorageUsageRepository {
+
+  private static final String TOTAL_USED_BYTES_QUERY =
+      "SELECT COALESCE(SUM(used_bytes), 0) FROM storage_usage";
+
+  private static final String OWNERS_QUERY =
+      """
+      SELECT owner_id
+      FROM storage_usage
+      WHERE owner_id > :afterOwnerId
+      ORDER BY owner_id
+      LIMIT :limit
+      """;
+
+  /**
+   * Computes the storage used by some owners from all the versions of their files, trashed files
+   * included, and updates the owners whose storage usage differs.
+   */
+  private static final String STORAGE_USAGES_REBUILD =
+      """
+      WITH computed AS (
+        SELECT storage_usage.owner_id,
+          COALESCE(SUM(revision.size), 0) AS used_bytes,
+          COUNT(revision.node_id) AS versions
+        FROM storage_usage
+        LEFT JOIN node ON node.owner_id = storage_usage.owner_id
+        LEFT JOIN revision ON revision.node_id = node.node_id
+        WHERE storage_usage.owner_id IN (:ownerIds)
+        GROUP BY storage_usage.owner_id
+      )
+      UPDATE storage_usage
+      SET used_bytes = computed.used_bytes,
+        versions = computed.versions
+      FROM computed
+      WHERE storage_usage.owner_id = computed.owner_id
+        AND (storage_usage.used_bytes <> computed.used_bytes
+          OR storage_usage.versions <> computed.versions)
+      """;
+
+  private final EbeanDatabaseManager mDB;
+
+  @Inject
+  public StorageUsageRepositoryEbean(EbeanDatabaseManager ebeanDatabaseManager) {
+    mDB = ebeanDatabaseManager;
+  }
+
+  @Override
+  public Optional<StorageUsage> getStorageUsage(String ownerId) {
+    return mDB.getEbeanDatabase()
+        .find(StorageUsage.class)
+        .where()
+        .idEq(ownerId)
+        .findOneOrEmpty();
+  }
+
+  @Override
+  public long getTotalUsedBytes() {
+    return mDB.getEbeanDatabase()
+        .sqlQuery(TOTAL_USED_BYTES_QUERY)
+        .mapToScalar(Long.class)
+        .findOne();
+  }
+
+  @Override
+  public List<String> getOwnerIds(Optional<String> afterOwnerId, int limit) {
+    return mDB.getEbeanDatabase()
+        .sqlQuery(OWNERS_QUERY)
+        .setParameter("afterOwnerId", afterOwnerId.orElse(""))
+        .setParameter("limit", limit)
+        .mapToScalar(String.class)
+        .findList();
+  }
+
+  @Override
+  public int rebuildStorageUsages(List<String> ownerIds) {
+    if (ownerIds.isEmpty()) {
+      return 0;
+    }
+
+    int fixedStorageUsages;
+
+    try (Transaction transaction =
+        mDB.getEbeanDatabase().beginTransaction(TxIsolation.REPEATABLE_READ)) {
+      fixedStorageUsages =
+          mDB.getEbeanDatabase()
+              .sqlUpdate(STORAGE_USAGES_REBUILD)
+              .setParameter("ownerIds", ownerIds)
+              .execute();
+      transaction.commit();
+    }
+
+    mDB.getEbeanDatabase()
+        .externalModification(Db.Tables.STORAGE_USAGE, false, true, false);
+    return fixedStorageUsages;
+  }
+}
@@ -12,6 +12,8 @@ import com.zextras.carbonio.files.config.FilesConfig;
 import com.zextras.carbonio.files.dal.dao.User;
 import com.zextras.carbonio.files.dal.dao.UserMyself;
 import com.zextras.carbonio.files.dal.repositories.interfaces.UserRepository;
+import com.zextras.carbonio.files.tracing.OperationTrace;
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
 import com.zextras.carbonio.usermanagement.UserManagementClient;
 import com.zextras.carbonio.usermanagement.entities.UserId;
 import io.vavr.control.Try;
@@ -63,8 +65,12 @@ public class UserRepositoryRest implements UserRepository {
         .get(userId)
         .or(
             () ->
-                UserManagementClient.atURL(usermanagementUrl)
-                    .getUserById(cookies, userId)
+                OperationTrace.span(
+                        SpanType.HTTP,
+                        "user-management getUserById",
+                        () ->
+                            UserManagementClient.atURL(usermanagementUrl)
+                                .getUserById(cookies, userId))
                     .onFailure(failure -> logger.error(failure.getMessage()))
                     .map(
                         userInfo -> {
@@ -91,8 +97,12 @@ public class UserRepositoryRest implements UserRepository {
         .get(userEmail)
         .or(
             () ->
-                UserManagementClient.atURL(usermanagementUrl)
-                    .getUserByEmail(cookies, userEmail)
+                OperationTrace.span(
+                        SpanType.HTTP,
+                        "user-management getUserByEmail",
+                        () ->
+                            UserManagementClient.atURL(usermanagementUrl)
+                                .getUserByEmail(cookies, userEmail))
                     .onFailure(failure -> logger.error(failure.getMessage()))
                     .map(
                         userInfo -> {
@@ -4,28 +4,37 @@
 
 package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * represents a sql compare expression, for example (A < B OR B > C)
+ * represents a sql compare expression, for example (A < ? OR B > ?), together with the values to
+ * bind to its parameters in order of appearance
  */
 public class CompareExpression {
 
   String expression;
+  List<Object> parameters;
 
-  private CompareExpression(String expression) {
+  private CompareExpression(String expression, List<Object> parameters) {
     this.expression = expression;
+    this.parameters = new ArrayList<>(parameters);
   }
 
-  public static CompareExpression aCompareExpression(String key, String operator, String value) {
-    return new CompareExpression(key + " " + operator + " " + value);
+  public static CompareExpression aCompareExpression(
+      String key, String operator, String value, List<Object> parameters) {
+    return new CompareExpression(key + " " + operator + " " + value, parameters);
   }
 
   public CompareExpression or(CompareExpression compareExpression) {
     this.expression = this.expression + " OR " + compareExpression.toExpression();
+    this.parameters.addAll(compareExpression.getParameters());
     return this;
   }
 
   public CompareExpression and(CompareExpression compareExpression) {
     this.expression = this.expression + " AND " + compareExpression.toExpression();
+    this.parameters.addAll(compareExpression.getParameters());
     return this;
   }
 
@@ -37,4 +46,8 @@ public class CompareExpression {
   public String toExpression() {
     return expression;
   }
+
+  public List<Object> getParameters() {
+    return parameters;
+  }
 }
@@ -7,12 +7,19 @@ package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class FindNodeKeySetBuilder {
 
+  private static final String NODE_ID_PARAMETER = "CAST(? AS CHARACTER(36))";
+
   List<NodeSort> sorts;
   Node node;
+  List<Object> values;
+  List<String> keywords = Collections.emptyList();
+  boolean withSimilarity;
 
   public static FindNodeKeySetBuilder aSearchKeySetBuilder() {
     return new FindNodeKeySetBuilder();
@@ -25,64 +32,194 @@ public class FindNodeKeySetBuilder {
     return this;
   }
 
+  /**
+   * Takes the sort keys of the keyset from the last node of a page (see {@link #buildValues()}).
+   */
   public FindNodeKeySetBuilder fromNode(Node node) {
     this.node = node;
     return this;
   }
 
-  private String formatObjectSql(Object obj) {
-    return obj instanceof String ? "'" + obj.toString() + "'" : String.valueOf(obj);
+  /**
+   * Takes the sort keys of the keyset from the values stored in a page token, previously built by
+   * {@link #buildValues()} with the same sorts and keywords.
+   */
+  public FindNodeKeySetBuilder fromValues(List<Object> values) {
+    this.values = values;
+    return this;
+  }
+
+  /**
+   * Sets the keywords of the search, needed to compare the relevance of the nodes when they are
+   * sorted by {@link NodeSort#RELEVANCE_DESC}. Without keywords that sort is ignored, like in the
+   * search itself.
+   *
+   * @param keywords is a {@link List} of keywords of the search
+   * @param withSimilarity is true if the relevance includes the trigram similarity of the names
+   */
+  public FindNodeKeySetBuilder withKeywords(List<String> keywords, boolean withSimilarity) {
+    this.keywords = keywords;
+    this.withSimilarity = withSimilarity;
+    return this;
+  }
+
+  // The relevance is meaningful only if there are keywords
+  private List<NodeSort> getSortsToCompare() {
+    return keywords.isEmpty()
+        ? sorts.stream().filter(sort -> !NodeSort.RELEVANCE_DESC.equals(sort)).toList()
+        : sorts;
   }
 
-  private CompareExpression buildSortingExpression(NodeSort sort, SortOrder order) {
-    String nameToCompare = sort.getName();
-    String compareSymbol = order.getSymbol();
-    Object objToCompare;
-
-    if (Files.Db.Node.NAME.equals(nameToCompare)) {
-      // Special case: if sorting by name we actually want to compare lowercase names, so
-      // get name and adapt query composition
-      nameToCompare = MessageFormat.format("LOWER({0})", Files.Db.Node.NAME);
-      objToCompare = node.getFullName().toLowerCase();
-    } else if (Files.Db.Node.ID.equals(nameToCompare)) {
-      nameToCompare = "t0.node_id"; // since findnodes makes a join node_id would be ambiguous
-      objToCompare = node.getId();
-    } else {
-      objToCompare = node.getSortingValueFromColumn(nameToCompare);
+  private Object getSortingValue(NodeSort sort) {
+    String name = sort.getName();
+
+    if (Files.Db.Node.SEARCH_VECTOR.equals(name) || Files.Db.Node.ID.equals(name)) {
+      // The relevance is not a column: the one of the last node is computed again from its id
+      return node.getId();
+    } else if (Files.Db.Node.NAME.equals(name)) {
+      // Special case: if sorting by name we actually want to compare lowercase names
+      return node.getFullName().toLowerCase();
     }
-    String valueToCompare = formatObjectSql(objToCompare);
-    return CompareExpression.aCompareExpression(nameToCompare, compareSymbol, valueToCompare);
+    return node.getSortingValueFromColumn(name);
+  }
+
+  private String getColumn(NodeSort sort) {
+    return switch (sort.getName()) {
+      case Files.Db.Node.SEARCH_VECTOR -> SearchBuilder.relevanceOf("t0", withSimilarity);
+      case Files.Db.Node.NAME -> MessageFormat.format("LOWER({0})", Files.Db.Node.NAME);
+      // since findnodes makes a join node_id would be ambiguous
+      case Files.Db.Node.ID -> "t0." + Files.Db.Node.ID;
+      default -> sort.getName();
+    };
   }
 
   /**
-   * This essentially concatenates conditions to put in the WHERE of the find nodes query. The
-   * keyset is constructed following the order of the sortings to apply while querying. For example,
-   * given the last page's node and using sort by category and then by size, the keyset returned
-   * will be CATEGORY > lastNodeCategory OR (CATEGORY = lastNodeCategory AND SIZE > lastNodeSize).
-   * This builder works with N sorts, following the pattern A>B OR (A=B AND B>C) OR (A=B AND B=C AND
-   * C>D) and so on.
+   * The parameters are cast to the type of the column: a value bound as a varchar would not use
+   * the indexes of the CHARACTER(36) ids.
+   */
+  private String getParameter(NodeSort sort) {
+    return switch (sort.getName()) {
+      case Files.Db.Node.SEARCH_VECTOR -> "(SELECT "
+          + SearchBuilder.relevanceOf("n", withSimilarity)
+          + " FROM node n WHERE n.node_id = "
+          + NODE_ID_PARAMETER
+          + ")";
+      case Files.Db.Node.ID -> NODE_ID_PARAMETER;
+      case Files.Db.Node.CATEGORY -> "CAST(? AS SMALLINT)";
+      case Files.Db.Node.CREATED_AT, Files.Db.Node.UPDATED_AT, Files.Db.Node.SIZE ->
+          "CAST(? AS BIGINT)";
+      default -> "?";
+    };
+  }
+
+  // The relevance has the keywords as parameters, both in the column and in the parameter
+  private List<Object> getKeywordsValues(NodeSort sort) {
+    return Files.Db.Node.SEARCH_VECTOR.equals(sort.getName())
+        ? SearchBuilder.relevanceParameters(keywords, withSimilarity)
+        : Collections.emptyList();
+  }
+
+  /**
+   * Compares the sorts from the index <code>from</code> (inclusive) to the index <code>to</code>
+   * (exclusive) with a single row-value comparison, for example (A, B) > (?, ?).
    */
-  public String build() {
+  private CompareExpression compareRow(
+      List<NodeSort> sortsToCompare, List<Object> keys, int from, int to, SortOrder order) {
+    List<String> columns = new ArrayList<>();
+    List<String> parameters = new ArrayList<>();
+    List<Object> columnsValues = new ArrayList<>();
+    List<Object> parametersValues = new ArrayList<>();
+    for (int index = from; index < to; index++) {
+      NodeSort sort = sortsToCompare.get(index);
+      columns.add(getColumn(sort));
+      parameters.add(getParameter(sort));
+      columnsValues.addAll(getKeywordsValues(sort));
+      parametersValues.addAll(getKeywordsValues(sort));
+      parametersValues.add(keys.get(index));
+    }
+
+    List<Object> values = new ArrayList<>(columnsValues);
+    values.addAll(parametersValues);
 
+    return to - from == 1
+        ? CompareExpression.aCompareExpression(
+            columns.get(0), order.getSymbol(), parameters.get(0), values)
+        : CompareExpression.aCompareExpression(
+            "(" + String.join(", ", columns) + ")",
+            order.getSymbol(),
+            "(" + String.join(", ", parameters) + ")",
+            values);
+  }
+
+  /**
+   * @return the typed values of the sort keys of the node, in the order of the sorts, to store in
+   *     the page token.
+   */
+  public List<Object> buildValues() {
     if (this.sorts == null || this.sorts.isEmpty())
       throw new IllegalArgumentException("Set sorting first");
     if (this.node == null) throw new IllegalArgumentException("Set node first");
 
-    NodeSort firstSort = sorts.get(0); // there always is a first sort
-    CompareExpression keysetExpression = buildSortingExpression(firstSort, firstSort.getOrder());
+    List<Object> keys = new ArrayList<>();
+    getSortsToCompare().forEach(sort -> keys.add(getSortingValue(sort)));
+    return keys;
+  }
+
+  /**
+   * This essentially concatenates conditions to put in the WHERE of the find nodes query. The
+   * keyset is constructed following the order of the sortings to apply while querying. The
+   * consecutive sorts having the same direction are compared with a single row-value comparison,
+   * that the indexes can satisfy. For example, given the last page's node and using sort by
+   * category and by size ascending and then by name descending, the keyset returned will be
+   * (CATEGORY, SIZE) > (?, ?) OR ((CATEGORY, SIZE) = (?, ?) AND NAME < ?).
+   *
+   * <p>The values of the node are never written in the expression, they are its parameters: the
+   * SQL of every page of a search is the same and the database can reuse its plan.
+   */
+  public CompareExpression build() {
+
+    if (this.sorts == null || this.sorts.isEmpty())
+      throw new IllegalArgumentException("Set sorting first");
+
+    List<NodeSort> sortsToCompare = getSortsToCompare();
+    List<Object> keys = this.values != null ? this.values : buildValues();
 
-    for (NodeSort s : sorts.subList(1, sorts.size())) {
-      NodeSort temp = sorts.get(0);
-      CompareExpression tempEx = buildSortingExpression(temp, SortOrder.EQUAL);
-      for (NodeSort t : sorts.subList(1, sorts.indexOf(s))) {
-        tempEx.and(buildSortingExpression(t, SortOrder.EQUAL));
+    if (keys.size() != sortsToCompare.size()) {
+      throw new IllegalArgumentException("The keyset does not match the sorting");
+    }
+    // A page token can be crafted: only scalar values can be bound to the parameters
+    if (!keys.stream()
+        .allMatch(key -> key == null || key instanceof String || key instanceof Number)) {
+      throw new IllegalArgumentException("The keyset contains an invalid value");
+    }
+
+    // The indexes where a sequence of sorts with the same direction starts
+    List<Integer> rowStarts = new ArrayList<>();
+    rowStarts.add(0);
+    for (int index = 1; index < sortsToCompare.size(); index++) {
+      if (!sortsToCompare.get(index).getOrder().equals(sortsToCompare.get(index - 1).getOrder())) {
+        rowStarts.add(index);
       }
+    }
+    rowStarts.add(sortsToCompare.size());
+
+    CompareExpression keysetExpression =
+        compareRow(
+            sortsToCompare, keys, 0, rowStarts.get(1), sortsToCompare.get(0).getOrder());
+
+    for (int row = 1; row < rowStarts.size() - 1; row++) {
+      int rowStart = rowStarts.get(row);
+      CompareExpression tempEx = compareRow(sortsToCompare, keys, 0, rowStart, SortOrder.EQUAL);
       tempEx.and(
-          buildSortingExpression(
-              sorts.get(sorts.indexOf(s)), sorts.get(sorts.indexOf(s)).getOrder()));
+          compareRow(
+              sortsToCompare,
+              keys,
+              rowStart,
+              rowStarts.get(row + 1),
+              sortsToCompare.get(rowStart).getOrder()));
       keysetExpression.or(tempEx.encapsulate());
     }
 
-    return keysetExpression.toExpression();
+    return keysetExpression;
   }
 }
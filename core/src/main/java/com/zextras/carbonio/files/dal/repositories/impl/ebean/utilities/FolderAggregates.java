@@ -0,0 +1,45 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+/**
+ * Represents the aggregates of the subtree of a folder, at any depth. They are kept aligned by the
+ * database in the same transaction of every change of the nodes, and the missing ones are computed
+ * by the {@link com.zextras.carbonio.files.tasks.FolderAggregatesReconciler}.
+ */
+public class FolderAggregates {
+
+  private final long size;
+  private final int  filesCount;
+  private final int  foldersCount;
+
+  public FolderAggregates(long size, int filesCount, int foldersCount) {
+    this.size = size;
+    this.filesCount = filesCount;
+    this.foldersCount = foldersCount;
+  }
+
+  /**
+   * @return the total size in bytes of the files of the subtree, considering only their current
+   *     version.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of files of the subtree.
+   */
+  public int getFilesCount() {
+    return filesCount;
+  }
+
+  /**
+   * @return the number of folders of the subtree.
+   */
+  public int getFoldersCount() {
+    return foldersCount;
+  }
+}
@@ -0,0 +1,138 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import io.ebean.Query;
+import java.util.Objects;
+
+/**
+ * Represents which parts of a {@link Node} must be loaded by a query. It allows the callers that
+ * know in advance which attributes they need (for example a GraphQL data fetcher inspecting the
+ * selected fields) to avoid loading the heavy columns and the related entities they will never
+ * read.
+ * <p>
+ * The columns needed to identify, sort and paginate the nodes (id, owner, creator, parent,
+ * ancestors, timestamps, category, type, name, current version and size) are always loaded.
+ * <p>
+ * <strong>A {@link Node} loaded with a partial projection lazily fetches the missing attributes
+ * when they are read</strong>, so the caller must read only the attributes it has requested,
+ * otherwise it executes an extra query for each node.
+ */
+public class NodeProjection {
+
+  private static final String BASE_PROPERTIES = String.join(
+    ",",
+    "mId",
+    "mOwnerId",
+    "mCreatorId",
+    "mParentId",
+    "mAncestorIds",
+    "mCreatedAt",
+    "mUpdatedAt",
+    "mNodeCategory",
+    "mNodeType",
+    "mName",
+    "mCurrentVersion",
+    "mSize"
+  );
+
+  private static final String DESCRIPTION_PROPERTY   = "mDescription";
+  private static final String CUSTOM_ATTRIBUTES_PATH = "mCustomAttributes";
+
+  private static final NodeProjection FULL = new NodeProjection(true, true, true);
+
+  private final boolean withDescription;
+  private final boolean withCustomAttributes;
+  private final boolean withFileVersion;
+
+  /**
+   * @param withDescription is a <code>boolean</code> that must be true if the description of the
+   * nodes is needed
+   * @param withCustomAttributes is a <code>boolean</code> that must be true if the custom
+   * attributes (for example the flag) of the nodes are needed
+   * @param withFileVersion is a <code>boolean</code> that must be true if the attributes of the
+   * current version of the files are needed. The repositories never fetch the versions eagerly:
+   * this only tells the caller if it has to resolve them
+   */
+  public NodeProjection(
+    boolean withDescription,
+    boolean withCustomAttributes,
+    boolean withFileVersion
+  ) {
+    this.withDescription = withDescription;
+    this.withCustomAttributes = withCustomAttributes;
+    this.withFileVersion = withFileVersion;
+  }
+
+  /**
+   * @return a {@link NodeProjection} that loads every attribute of the {@link Node}s.
+   */
+  public static NodeProjection full() {
+    return FULL;
+  }
+
+  public boolean withDescription() {
+    return withDescription;
+  }
+
+  public boolean withCustomAttributes() {
+    return withCustomAttributes;
+  }
+
+  public boolean withFileVersion() {
+    return withFileVersion;
+  }
+
+  /**
+   * Applies the projection to a {@link Query}: it selects only the needed columns of the
+   * {@link Node} table and it fetches the custom attributes with a secondary query only if they
+   * are needed. When they are not needed, the eager join on the custom attributes table is replaced
+   * by a lazy fetch that is never triggered.
+   * <p>
+   * When the projection is {@link #full()} the query is left untouched.
+   *
+   * @param query is the {@link Query} of {@link Node}s where to apply the projection
+   *
+   * @return the same {@link Query} with the projection applied.
+   */
+  public Query<Node> apply(Query<Node> query) {
+    if (this.equals(FULL)) {
+      return query;
+    }
+
+    query.select(withDescription
+      ? BASE_PROPERTIES + "," + DESCRIPTION_PROPERTY
+      : BASE_PROPERTIES
+    );
+
+    if (withCustomAttributes) {
+      query.fetchQuery(CUSTOM_ATTRIBUTES_PATH);
+    } else {
+      query.fetchLazy(CUSTOM_ATTRIBUTES_PATH);
+    }
+
+    return query;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (this == object) {
+      return true;
+    }
+    if (!(object instanceof NodeProjection)) {
+      return false;
+    }
+    NodeProjection that = (NodeProjection) object;
+    return withDescription == that.withDescription
+      && withCustomAttributes == that.withCustomAttributes
+      && withFileVersion == that.withFileVersion;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(withDescription, withCustomAttributes, withFileVersion);
+  }
+}
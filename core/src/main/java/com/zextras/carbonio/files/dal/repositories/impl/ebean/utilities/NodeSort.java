@@ -258,5 +258,25 @@ public enum NodeSort implements SortingEntityEbean<Node>, GenericSort {
     public Query<Node> getOrderEbeanQuery(Query<Node> query) {
       return query.order().desc("t0." + Files.Db.Node.SIZE);
     }
+  },
+
+  /**
+   * The relevance of the nodes for the keywords of a search. Only the {@link SearchBuilder} knows
+   * the keywords and can apply it: everywhere else it leaves the query untouched.
+   */
+  RELEVANCE_DESC {
+    @Override
+    public String getName() {
+      return Db.Node.SEARCH_VECTOR;
+    }
+
+    @Override
+    public SortOrder getOrder() {
+      return SortOrder.DESCENDING;
+    }
+
+    public Query<Node> getOrderEbeanQuery(Query<Node> query) {
+      return query;
+    }
   }
 }
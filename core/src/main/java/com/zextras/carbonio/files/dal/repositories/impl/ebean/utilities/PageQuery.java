@@ -4,26 +4,23 @@
 
 package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
-import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 /**
- * This class is used as a container for mapping to and from JSON the necessary data to create a
- * pageToken for key-set pagination on findNodes api.
+ * This class is used as a container of the necessary data to create a pageToken for key-set
+ * pagination on findNodes api. The {@link PageTokenCodec} encodes it to and decodes it from the
+ * token. The key-set is stored as the typed values of the sort keys of the last node of the page,
+ * never as SQL: the condition is built by the {@link FindNodeKeySetBuilder} with bind parameters.
  */
 public class PageQuery {
 
   private Integer limit;
   private List<String> keywords;
-  private Optional<String> keySet;
+  private Optional<List<Object>> keySet;
   private Optional<NodeSort> sort;
   private Optional<Boolean> flagged;
   private Optional<String> folderId;
@@ -50,7 +47,7 @@ public class PageQuery {
   }
 
   public PageQuery(
-      String keySet,
+      List<Object> keySet,
       Integer limit,
       String sort,
       Boolean flagged,
@@ -72,12 +69,12 @@ public class PageQuery {
     setKeywords(keywords);
   }
 
-  public Optional<String> getKeySet() {
+  public Optional<List<Object>> getKeySet() {
     return keySet;
   }
 
-  public PageQuery setKeySet(String keySet) {
-    this.keySet = Optional.of(keySet);
+  public PageQuery setKeySet(List<Object> keySet) {
+    this.keySet = Optional.ofNullable(keySet);
     return this;
   }
 
@@ -169,24 +166,4 @@ public class PageQuery {
   public void setOwnerId(String ownerId) {
     this.ownerId = Optional.ofNullable(ownerId);
   }
-
-  public static PageQuery fromToken(String token) {
-    ObjectMapper mapper = new ObjectMapper();
-    try {
-      return mapper.readValue(new String(Base64.getDecoder().decode(token)), PageQuery.class);
-    } catch (JsonProcessingException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  public String toToken() {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-    mapper.registerModule(new Jdk8Module());
-    try {
-      return Base64.getEncoder().encodeToString(mapper.writeValueAsString(this).getBytes());
-    } catch (JsonProcessingException e) {
-      throw new RuntimeException(e);
-    }
-  }
 }
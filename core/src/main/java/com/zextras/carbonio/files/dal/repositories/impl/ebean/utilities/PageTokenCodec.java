@@ -0,0 +1,369 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files.ServiceDiscover;
+import com.zextras.carbonio.files.clients.ServiceDiscoverHttpClient;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import io.ebean.Database;
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encodes a {@link PageQuery} into a compact page token and decodes it back. The token is the
+ * URL-safe Base64 of:
+ * <ul>
+ *   <li>a version byte</li>
+ *   <li>a varint of flags: which optional attributes are present and the values of the boolean
+ *   filters</li>
+ *   <li>the present attributes: varints for the numbers and the enums, 16 raw bytes for the ids
+ *   that are UUIDs, length-prefixed UTF-8 for the other strings</li>
+ *   <li>the first 16 bytes of the HMAC-SHA256 of all the previous bytes</li>
+ * </ul>
+ * A token that has been altered, or that has been signed with another key, is rejected. The key is
+ * derived from the page-token-secret of the service discover config or, when it is not set, it is
+ * the random key stored in the database by the first instance that needed it: either way every
+ * instance of the service accepts the tokens of the others.
+ */
+@Singleton
+public class PageTokenCodec {
+
+  private static final byte   VERSION          = 1;
+  private static final int    SIGNATURE_LENGTH = 16;
+  private static final String HMAC_ALGORITHM   = "HmacSHA256";
+  private static final byte[] KEY_DERIVATION   =
+    "carbonio-files-page-token".getBytes(StandardCharsets.UTF_8);
+  private static final int    KEY_LENGTH       = 32;
+
+  private static final String KEY_INSERT =
+    "INSERT INTO page_token_key (id, secret) VALUES (1, :secret) ON CONFLICT (id) DO NOTHING";
+
+  private static final String KEY_QUERY = "SELECT secret FROM page_token_key WHERE id = 1";
+
+  private static final int SORT_PRESENT       = 1;
+  private static final int FOLDER_ID_PRESENT  = 1 << 1;
+  private static final int NODE_TYPE_PRESENT  = 1 << 2;
+  private static final int OWNER_ID_PRESENT   = 1 << 3;
+  private static final int KEY_SET_PRESENT    = 1 << 4;
+  // Each boolean filter takes two bits: 0 when it is absent, 1 when it is false, 2 when it is true
+  private static final int FLAGGED_SHIFT      = 5;
+  private static final int CASCADE_SHIFT      = 7;
+  private static final int SHARED_WITH_SHIFT  = 9;
+  private static final int SHARED_BY_SHIFT    = 11;
+  private static final int DIRECT_SHARE_SHIFT = 13;
+
+  private static final byte NULL_VALUE   = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte NUMBER_VALUE = 2;
+  private static final byte UUID_VALUE   = 3;
+
+  private final    EbeanDatabaseManager ebeanDatabaseManager;
+  private final    ThreadLocal<Mac>     mac;
+  private volatile SecretKeySpec        secretKey;
+
+  /**
+   * The page-token-secret is read once, here. The key stored in the database is read when the
+   * first token is encoded or decoded, since the database is not started yet.
+   */
+  @Inject
+  public PageTokenCodec(EbeanDatabaseManager ebeanDatabaseManager) {
+    this.ebeanDatabaseManager = ebeanDatabaseManager;
+    this.secretKey = ServiceDiscoverHttpClient
+      .defaultURL(ServiceDiscover.SERVICE_NAME)
+      .getConfig(ServiceDiscover.Config.Pagination.TOKEN_SECRET)
+      .toJavaOptional()
+      .filter(secret -> !secret.isBlank())
+      .map(secret -> new SecretKeySpec(
+        createMac(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM))
+          .doFinal(KEY_DERIVATION),
+        HMAC_ALGORITHM
+      ))
+      .orElse(null);
+    this.mac = ThreadLocal.withInitial(() -> createMac(getSecretKey()));
+  }
+
+  PageTokenCodec(byte[] key) {
+    this.ebeanDatabaseManager = null;
+    this.secretKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    this.mac = ThreadLocal.withInitial(() -> createMac(getSecretKey()));
+  }
+
+  private static Mac createMac(SecretKeySpec key) {
+    try {
+      Mac keyMac = Mac.getInstance(HMAC_ALGORITHM);
+      keyMac.init(key);
+      return keyMac;
+    } catch (GeneralSecurityException exception) {
+      throw new IllegalStateException("Unable to create the page token signature", exception);
+    }
+  }
+
+  private SecretKeySpec getSecretKey() {
+    SecretKeySpec key = secretKey;
+    return key != null
+      ? key
+      : loadStoredKey();
+  }
+
+  /**
+   * Stores a new random key unless another instance has already stored one, then reads the stored
+   * key: all the instances sign with the one of the first insert.
+   */
+  private synchronized SecretKeySpec loadStoredKey() {
+    if (secretKey == null) {
+      byte[] randomKey = new byte[KEY_LENGTH];
+      new SecureRandom().nextBytes(randomKey);
+
+      Database database = ebeanDatabaseManager.getEbeanDatabase();
+      database
+        .sqlUpdate(KEY_INSERT)
+        .setParameter("secret", Base64.getEncoder().encodeToString(randomKey))
+        .execute();
+      String storedKey = database.sqlQuery(KEY_QUERY).mapToScalar(String.class).findOne();
+      secretKey = new SecretKeySpec(Base64.getDecoder().decode(storedKey), HMAC_ALGORITHM);
+    }
+    return secretKey;
+  }
+
+  /**
+   * @param pageQuery is the {@link PageQuery} to encode
+   *
+   * @return a {@link String} representing the signed page token.
+   */
+  public String encode(PageQuery pageQuery) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+    output.write(VERSION);
+
+    int flags = (pageQuery.getSort().isPresent() ? SORT_PRESENT : 0)
+      | (pageQuery.getFolderId().isPresent() ? FOLDER_ID_PRESENT : 0)
+      | (pageQuery.getNodeType().isPresent() ? NODE_TYPE_PRESENT : 0)
+      | (pageQuery.getOwnerId().isPresent() ? OWNER_ID_PRESENT : 0)
+      | (pageQuery.getKeySet().isPresent() ? KEY_SET_PRESENT : 0)
+      | encodeBoolean(pageQuery.getFlagged(), FLAGGED_SHIFT)
+      | encodeBoolean(pageQuery.getCascade(), CASCADE_SHIFT)
+      | encodeBoolean(pageQuery.getSharedWithMe(), SHARED_WITH_SHIFT)
+      | encodeBoolean(pageQuery.getSharedByMe(), SHARED_BY_SHIFT)
+      | encodeBoolean(pageQuery.getDirectShare(), DIRECT_SHARE_SHIFT);
+    writeVarint(output, flags);
+    writeVarint(output, pageQuery.getLimit());
+
+    pageQuery.getSort().ifPresent(sort -> writeVarint(output, NodeSort.valueOf(sort).ordinal()));
+    pageQuery.getFolderId().ifPresent(folderId -> writeValue(output, folderId));
+    pageQuery.getNodeType().ifPresent(nodeType -> writeVarint(output, nodeType.ordinal()));
+    pageQuery.getOwnerId().ifPresent(ownerId -> writeValue(output, ownerId));
+
+    writeVarint(output, pageQuery.getKeywords().size());
+    pageQuery.getKeywords().forEach(keyword -> writeString(output, keyword));
+
+    pageQuery.getKeySet().ifPresent(keySet -> {
+      writeVarint(output, keySet.size());
+      keySet.forEach(value -> writeValue(output, value));
+    });
+
+    byte[] payload = output.toByteArray();
+    output.writeBytes(Arrays.copyOf(sign(payload), SIGNATURE_LENGTH));
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(output.toByteArray());
+  }
+
+  /**
+   * @param token is a {@link String} representing a page token created by {@link #encode}
+   *
+   * @return the decoded {@link PageQuery}.
+   *
+   * @throws IllegalArgumentException if the token is malformed, it has been altered or it has an
+   * unknown version.
+   */
+  public PageQuery decode(String token) {
+    byte[] bytes;
+    try {
+      bytes = Base64.getUrlDecoder().decode(token);
+    } catch (IllegalArgumentException exception) {
+      throw new IllegalArgumentException("Invalid page token", exception);
+    }
+
+    if (bytes.length <= SIGNATURE_LENGTH) {
+      throw new IllegalArgumentException("Invalid page token");
+    }
+
+    int payloadLength = bytes.length - SIGNATURE_LENGTH;
+    byte[] payload = Arrays.copyOf(bytes, payloadLength);
+    byte[] expectedSignature = Arrays.copyOf(sign(payload), SIGNATURE_LENGTH);
+    byte[] signature = Arrays.copyOfRange(bytes, payloadLength, bytes.length);
+    if (!MessageDigest.isEqual(expectedSignature, signature)) {
+      throw new IllegalArgumentException("Invalid page token signature");
+    }
+    if (payload[0] != VERSION) {
+      throw new IllegalArgumentException("Unsupported page token version " + payload[0]);
+    }
+
+    try {
+      ByteBuffer input = ByteBuffer.wrap(payload, 1, payloadLength - 1);
+      int flags = (int) readVarint(input);
+
+      PageQuery pageQuery = new PageQuery();
+      pageQuery.setLimit((int) readVarint(input));
+      if ((flags & SORT_PRESENT) != 0) {
+        pageQuery.setSort(NodeSort.values()[(int) readVarint(input)].name());
+      }
+      if ((flags & FOLDER_ID_PRESENT) != 0) {
+        pageQuery.setFolderId((String) readValue(input));
+      }
+      if ((flags & NODE_TYPE_PRESENT) != 0) {
+        pageQuery.setNodeType(NodeType.values()[(int) readVarint(input)]);
+      }
+      if ((flags & OWNER_ID_PRESENT) != 0) {
+        pageQuery.setOwnerId((String) readValue(input));
+      }
+      pageQuery.setFlagged(decodeBoolean(flags, FLAGGED_SHIFT));
+      pageQuery.setCascade(decodeBoolean(flags, CASCADE_SHIFT));
+      pageQuery.setSharedWithMe(decodeBoolean(flags, SHARED_WITH_SHIFT));
+      pageQuery.setSharedByMe(decodeBoolean(flags, SHARED_BY_SHIFT));
+      pageQuery.setDirectShare(decodeBoolean(flags, DIRECT_SHARE_SHIFT));
+
+      int keywordsCount = (int) readVarint(input);
+      List<String> keywords = new ArrayList<>(keywordsCount);
+      for (int index = 0; index < keywordsCount; index++) {
+        keywords.add(readString(input));
+      }
+      pageQuery.setKeywords(keywords);
+
+      if ((flags & KEY_SET_PRESENT) != 0) {
+        int keySetSize = (int) readVarint(input);
+        List<Object> keySet = new ArrayList<>(keySetSize);
+        for (int index = 0; index < keySetSize; index++) {
+          keySet.add(readValue(input));
+        }
+        pageQuery.setKeySet(keySet);
+      }
+      return pageQuery;
+    } catch (BufferUnderflowException
+             | IndexOutOfBoundsException
+             | NegativeArraySizeException
+             | ClassCastException exception) {
+      // A correctly signed token can still be malformed only if the format has a bug
+      throw new IllegalArgumentException("Malformed page token", exception);
+    }
+  }
+
+  private byte[] sign(byte[] payload) {
+    return mac.get().doFinal(payload);
+  }
+
+  private static int encodeBoolean(Optional<Boolean> value, int shift) {
+    return value.map(booleanValue -> booleanValue ? 2 : 1).orElse(0) << shift;
+  }
+
+  private static Boolean decodeBoolean(int flags, int shift) {
+    return switch ((flags >> shift) & 3) {
+      case 1 -> false;
+      case 2 -> true;
+      default -> null;
+    };
+  }
+
+  private static void writeVarint(ByteArrayOutputStream output, long value) {
+    long remaining = value;
+    while ((remaining & ~0x7FL) != 0) {
+      output.write((int) ((remaining & 0x7F) | 0x80));
+      remaining >>>= 7;
+    }
+    output.write((int) remaining);
+  }
+
+  private static long readVarint(ByteBuffer input) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte current = input.get();
+      value |= (long) (current & 0x7F) << shift;
+      if ((current & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint in page token");
+  }
+
+  private static void writeString(ByteArrayOutputStream output, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(output, bytes.length);
+    output.writeBytes(bytes);
+  }
+
+  private static String readString(ByteBuffer input) {
+    byte[] bytes = new byte[(int) readVarint(input)];
+    input.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes a sort key or an id. The numbers are zigzag varints, so the small negative values stay
+   * short too. The strings that are lowercase UUIDs, like the node ids, take 16 bytes instead of
+   * 36.
+   */
+  private static void writeValue(ByteArrayOutputStream output, Object value) {
+    if (value == null) {
+      output.write(NULL_VALUE);
+    } else if (value instanceof Number number) {
+      output.write(NUMBER_VALUE);
+      long longValue = number.longValue();
+      writeVarint(output, (longValue << 1) ^ (longValue >> 63));
+    } else {
+      String stringValue = value.toString();
+      Optional<UUID> uuid = parseUuid(stringValue);
+      if (uuid.isPresent()) {
+        output.write(UUID_VALUE);
+        ByteBuffer uuidBytes = ByteBuffer.allocate(16);
+        uuidBytes.putLong(uuid.get().getMostSignificantBits());
+        uuidBytes.putLong(uuid.get().getLeastSignificantBits());
+        output.writeBytes(uuidBytes.array());
+      } else {
+        output.write(STRING_VALUE);
+        writeString(output, stringValue);
+      }
+    }
+  }
+
+  private static Object readValue(ByteBuffer input) {
+    byte type = input.get();
+    return switch (type) {
+      case NULL_VALUE -> null;
+      case NUMBER_VALUE -> {
+        long zigzag = readVarint(input);
+        yield (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+      case UUID_VALUE -> new UUID(input.getLong(), input.getLong()).toString();
+      case STRING_VALUE -> readString(input);
+      default -> throw new IllegalArgumentException("Unknown value type in page token " + type);
+    };
+  }
+
+  // The canonical form is checked so that the decoded id is exactly the encoded one
+  private static Optional<UUID> parseUuid(String value) {
+    if (value.length() != 36) {
+      return Optional.empty();
+    }
+    try {
+      UUID uuid = UUID.fromString(value);
+      return uuid.toString().equals(value) ? Optional.of(uuid) : Optional.empty();
+    } catch (IllegalArgumentException exception) {
+      return Optional.empty();
+    }
+  }
+}
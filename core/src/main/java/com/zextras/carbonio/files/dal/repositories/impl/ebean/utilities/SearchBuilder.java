@@ -10,6 +10,8 @@ import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import io.ebean.Database;
 import io.ebean.Query;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,13 +20,44 @@ import java.util.List;
  */
 public class SearchBuilder {
 
+  /**
+   * Matches the nodes having the given node among their ancestors. It uses the GIN index of the
+   * ancestor_path column.
+   */
+  public static final String DESCENDANT_OF = Db.Node.ANCESTOR_PATH + " @> ARRAY[?]::text[]";
+
+  /**
+   * Matches the nodes having all the words of the given keyword, after the stemming, in their name
+   * or in their description. It uses the GIN index of the search_vector column.
+   */
+  public static final String MATCHES_WORDS_OF = Db.Node.SEARCH_VECTOR + " @@ node_search_query(?)";
+
   Query<Node> query;
   Database db;
   String userId;
+  boolean hierarchyIndexed;
+  boolean trigramAvailable;
+  List<String> keywords = Collections.emptyList();
+  List<NodeSort> sorts = new ArrayList<>();
+  CompareExpression keyset;
+  Integer skip;
+  Integer limit;
+  NodeProjection projection;
 
-  public SearchBuilder(Database db, String userId) {
+  /**
+   * @param db is the {@link Database} where the search is executed
+   * @param userId is a {@link String} representing the id of the user searching
+   * @param hierarchyIndexed is true if the ancestor_path of every node is populated, false if the
+   *     subtree filters must use the ancestor_ids
+   * @param trigramAvailable is true if the pg_trgm extension is installed, so the similarity of
+   *     the names can contribute to the relevance of the nodes
+   */
+  public SearchBuilder(
+      Database db, String userId, boolean hierarchyIndexed, boolean trigramAvailable) {
     this.db = db;
     this.userId = userId;
+    this.hierarchyIndexed = hierarchyIndexed;
+    this.trigramAvailable = trigramAvailable;
     this.query =
         this.db
             .find(Node.class)
@@ -42,12 +75,54 @@ public class SearchBuilder {
             .query();
   }
 
+  /**
+   * Builds the SQL expression ranking a node by its relevance for the keywords: the full-text rank
+   * of its name and description plus, when pg_trgm is installed, the trigram similarity of its
+   * name, so that the names closer to the keywords come first. The rank of the nodes not yet
+   * backfilled is zero.
+   *
+   * <p>The keywords are never written in the expression: it has a parameter for each of their
+   * occurrences, whose values are returned by {@link #relevanceParameters(List, boolean)}.
+   *
+   * @param tableAlias is a {@link String} representing the alias of the node table in the query
+   * @param withSimilarity is true if the trigram similarity must be added to the rank
+   * @return the SQL expression of the relevance.
+   */
+  public static String relevanceOf(String tableAlias, boolean withSimilarity) {
+    String rank =
+        "COALESCE(ts_rank("
+            + tableAlias
+            + "."
+            + Db.Node.SEARCH_VECTOR
+            + ", node_search_query(?)), 0)";
+    String similarity =
+        withSimilarity
+            ? " + similarity(LOWER(" + tableAlias + "." + Db.Node.NAME + "), ?)"
+            : "";
+    return "(" + rank + similarity + ")";
+  }
+
+  /**
+   * @param keywords is a {@link List} of keywords of the search
+   * @param withSimilarity is true if the trigram similarity is added to the rank
+   * @return the values to bind to the parameters of {@link #relevanceOf(String, boolean)}, in
+   *     order of appearance.
+   */
+  public static List<Object> relevanceParameters(List<String> keywords, boolean withSimilarity) {
+    String terms = String.join(" ", keywords).toLowerCase();
+    return withSimilarity ? List.of(terms, terms) : List.of(terms);
+  }
+
   /**
    * This method is used to search for keywords, every keyword must be present in the name or
    * description of the node. Every keyword <strong>must</strong> be present in the node for it to
    * be returned, every <code>where</code> clause is added in AND to the final query generated by
    * ebean.
    *
+   * <p>A keyword matches a node if it is a substring of its name or of its description (these
+   * filters use the trigram indexes) or if the name or the description contain the same words
+   * after the stemming (for example "running" matches "run"), using the full-text index.
+   *
    * @param keywords is a {@link List} of keyword to search.
    * @return the {@link SearchBuilder} for adding other options if necessary.
    */
@@ -60,8 +135,10 @@ public class SearchBuilder {
                 .or()
                 .contains("LOWER(mName)", keyword.toLowerCase())
                 .contains("LOWER(mDescription)", keyword.toLowerCase())
+                .raw(MATCHES_WORDS_OF, keyword)
                 .endOr();
           });
+      this.keywords = keywords;
     }
     return this;
   }
@@ -106,7 +183,9 @@ public class SearchBuilder {
    * @return the {@link SearchBuilder} for adding other options if necessary.
    */
   public SearchBuilder setFolderId(String folderId, Boolean cascade) {
-    if (cascade) {
+    if (cascade && hierarchyIndexed) {
+      this.query.where().raw(DESCENDANT_OF, folderId);
+    } else if (cascade) {
       this.query.where().contains(Db.Node.ANCESTOR_IDS, folderId);
     } else {
       this.query.where().eq(Db.Node.PARENT_ID, folderId);
@@ -167,7 +246,7 @@ public class SearchBuilder {
    * @return the {@link SearchBuilder} for adding other options if necessary.
    */
   public SearchBuilder setSkip(Integer skip) {
-    this.query.setFirstRow(skip);
+    this.skip = skip;
     return this;
   }
 
@@ -178,7 +257,7 @@ public class SearchBuilder {
    * @return the {@link SearchBuilder} for adding other options if necessary.
    */
   public SearchBuilder setLimit(Integer limit) {
-    this.query.setMaxRows(limit);
+    this.limit = limit;
     return this;
   }
 
@@ -200,17 +279,18 @@ public class SearchBuilder {
    * @return the {@link SearchBuilder} for adding other options if necessary.
    */
   public SearchBuilder setSort(NodeSort order) {
-    if (order.equals(NodeSort.TYPE_ASC)) {
-      this.query.orderBy().asc("mNodeCategory");
-    } else {
-      order.getOrderEbeanQuery(this.query);
-    }
-
+    this.sorts.add(order);
     return this;
   }
 
-  public SearchBuilder setKeyset(String keyset) {
-    this.query.where().and().raw(keyset).endAnd();
+  /**
+   * This method is used to start the search after the last node of the previous page.
+   *
+   * @param keyset is the {@link CompareExpression} built by the {@link FindNodeKeySetBuilder}.
+   * @return the {@link SearchBuilder} for adding other options if necessary.
+   */
+  public SearchBuilder setKeyset(CompareExpression keyset) {
+    this.keyset = keyset;
     return this;
   }
 
@@ -226,12 +306,81 @@ public class SearchBuilder {
     return this;
   }
 
+  /**
+   * Allows to load only the parts of the found nodes that are needed (see {@link NodeProjection}).
+   *
+   * @param projection is a {@link NodeProjection} representing what must be loaded.
+   * @return the {@link SearchBuilder} for adding other options if necessary.
+   */
+  public SearchBuilder setProjection(NodeProjection projection) {
+    this.projection = projection;
+    return this;
+  }
+
   /**
    * This method is used at the end of the build to start the search and return the found nodes.
    *
+   * <p>When the nodes are sorted by {@link NodeSort#RELEVANCE_DESC}, the filters on the shares join
+   * the share table so the query selects DISTINCT rows, and PostgreSQL accepts in the ORDER BY only
+   * the selected columns. In this case the filters select only the ids of the matching nodes, and
+   * an outer query ranks and paginates them.
+   *
+   * <p>Ebean cannot bind the parameters of an ORDER BY, but it binds the ones of the WHERE in
+   * order and the ORDER BY follows the WHERE in the statement: the keywords of the relevance are
+   * bound to the last expression of the WHERE, that matches every node.
+   *
    * @return the {@link Query} on where to invoke the find functions.
    */
   public Query<Node> build() {
-    return this.query;
+    boolean sortedByRelevance = !keywords.isEmpty() && sorts.contains(NodeSort.RELEVANCE_DESC);
+    Query<Node> resultQuery =
+        sortedByRelevance
+            ? this.db
+                .find(Node.class)
+                .fetchLazy("mShares")
+                .fetchLazy("mCustomAttributes")
+                .where()
+                // The subquery is planned as a semi-join: only the filters scan the node table,
+                // the outer query reads the matching nodes through the primary key
+                .in("mId", this.query.select("mId"))
+                .query()
+            : this.query;
+
+    if (keyset != null) {
+      resultQuery
+          .where()
+          .and()
+          .raw(keyset.toExpression(), keyset.getParameters().toArray())
+          .endAnd();
+    }
+    if (sortedByRelevance) {
+      resultQuery
+          .where()
+          .raw("TRUE", relevanceParameters(keywords, trigramAvailable).toArray());
+    }
+    if (skip != null) {
+      resultQuery.setFirstRow(skip);
+    }
+    if (limit != null) {
+      resultQuery.setMaxRows(limit);
+    }
+
+    sorts.forEach(
+        sort -> {
+          if (sort.equals(NodeSort.RELEVANCE_DESC)) {
+            if (sortedByRelevance) {
+              resultQuery.orderBy().desc(relevanceOf("t0", trigramAvailable));
+            }
+          } else if (sort.equals(NodeSort.TYPE_ASC)) {
+            resultQuery.orderBy().asc("mNodeCategory");
+          } else {
+            sort.getOrderEbeanQuery(resultQuery);
+          }
+        });
+
+    if (projection != null) {
+      projection.apply(resultQuery);
+    }
+    return resultQuery;
   }
 }
@@ -0,0 +1,43 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+/**
+ * Represents the rows affected by the deletion of some subtrees of nodes (see {@link
+ * com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository#deleteSubtrees}).
+ */
+public class SubtreesDeletion {
+
+  private final int deletedNodes;
+  private final int deletedShares;
+  private final int createdTombstones;
+
+  public SubtreesDeletion(int deletedNodes, int deletedShares, int createdTombstones) {
+    this.deletedNodes = deletedNodes;
+    this.deletedShares = deletedShares;
+    this.createdTombstones = createdTombstones;
+  }
+
+  /**
+   * @return the number of deleted nodes, descendants included.
+   */
+  public int getDeletedNodes() {
+    return deletedNodes;
+  }
+
+  /**
+   * @return the number of deleted shares, the ones of the trashed children included.
+   */
+  public int getDeletedShares() {
+    return deletedShares;
+  }
+
+  /**
+   * @return the number of tombstones created for the versions of the deleted files.
+   */
+  public int getCreatedTombstones() {
+    return createdTombstones;
+  }
+}
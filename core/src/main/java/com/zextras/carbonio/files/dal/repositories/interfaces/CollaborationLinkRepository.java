@@ -31,5 +31,15 @@ public interface CollaborationLinkRepository {
 
   Stream<CollaborationLink> getLinksByNodeId(String nodeId);
 
+  /**
+   * Retrieves, with a single query, all the {@link CollaborationLink}s associated to the given
+   * nodes.
+   *
+   * @param nodeIds is a {@link Collection} of node ids whose collaboration links must be fetched.
+   * @return a {@link Stream} of all the {@link CollaborationLink}s found. The caller is responsible
+   * for grouping them by {@link CollaborationLink#getNodeId()}.
+   */
+  Stream<CollaborationLink> getLinksByNodeIds(Collection<String> nodeIds);
+
   void deleteLinks(Collection<UUID> linkIds);
 }
@@ -80,6 +80,22 @@ public interface FileVersionRepository {
     Collection<Integer> versions
   );
 
+  /**
+   * <p>Retrieves, with a single query, the {@link FileVersion}s of multiple {@link Node}s.</p>
+   * <p>The query matches every combination of the given node ids and versions, so the result can
+   * contain more elements than the ones requested: the caller is responsible for filtering the
+   * exact (node id, version) pairs it needs.</p>
+   *
+   * @param nodeIds is a {@link Collection} of node ids whose versions must be fetched.
+   * @param versions is a {@link Collection} of versions to fetch.
+   *
+   * @return the {@link List} of {@link FileVersion}s found.
+   */
+  List<FileVersion> getFileVersionsByNodeIds(
+    Collection<String> nodeIds,
+    Collection<Integer> versions
+  );
+
   /**
    * <p>Returns the most recent {@link FileVersion} associated with the specified {@link Node}.</p>
    *
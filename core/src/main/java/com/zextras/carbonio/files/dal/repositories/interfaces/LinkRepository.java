@@ -8,6 +8,7 @@ import com.zextras.carbonio.files.dal.dao.ebean.Link;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.LinkSort;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -35,6 +36,19 @@ public interface LinkRepository {
     LinkSort sort
   );
 
+  /**
+   * Retrieves, with a single query, all the {@link Link}s associated to the given nodes.
+   *
+   * @param nodeIds is a {@link Collection} of node ids whose links must be fetched.
+   * @param sort is a {@link LinkSort} to apply to the resulting links.
+   * @return a {@link Stream} of all the {@link Link}s found, sorted by the given {@link LinkSort}.
+   * The caller is responsible for grouping them by {@link Link#getNodeId()}.
+   */
+  Stream<Link> getLinksByNodeIds(
+    Collection<String> nodeIds,
+    LinkSort sort
+  );
+
   Link updateLink(Link link);
 
   void deleteLink(String linkId);
@@ -49,4 +63,14 @@ public interface LinkRepository {
    * @return true if the {@link Node} has at least one public link associated, false otherwise.
    */
   boolean hasNodeANotExpiredPublicLink(Node node);
+
+  /**
+   * Returns the unexpired public links that allow the access to a given {@link Node}: the ones
+   * associated to the node itself and the ones associated to its ancestors.
+   *
+   * @param node is a given {@link Node} to check.
+   * @return a {@link List} of the unexpired {@link Link}s granting the access to the
+   * {@link Node}. It is empty if the node is not publicly accessible.
+   */
+  List<Link> getNotExpiredPublicLinks(Node node);
 }
@@ -9,8 +9,13 @@ import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeCustomAttributes;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.dao.ebean.TrashedNode;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FolderAggregates;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeProjection;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeSort;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.SubtreesDeletion;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
@@ -55,6 +60,8 @@ public interface NodeRepository {
    * via a given pageToken
    * @param keywords is a {@link List<String>} to search for specific keywords in the name or
    * description of the node
+   * @param projection is a {@link NodeProjection} representing which parts of the found nodes must
+   * be loaded
    *
    * @return the list of found {@link Node}s.
    */
@@ -71,7 +78,8 @@ public interface NodeRepository {
     Optional<NodeType> optNodeType,
     Optional<String> optOwnerId,
     List<String> keywords,
-    Optional<String> pageToken
+    Optional<String> pageToken,
+    NodeProjection projection
   );
 
   String createPageToken(
@@ -124,6 +132,41 @@ public interface NodeRepository {
     Optional<NodeSort> sort
   );
 
+  /**
+   * <p>Retrieves the path of a {@link Node} that a user is allowed to see, ordered from the
+   * highest visible node to the requested one.</p>
+   * <p>If the user is the owner of the node, or the node is a root, the path starts from the
+   * root. Otherwise it starts from the highest ancestor shared with the user. The visibility of
+   * the path and the read permission on the node are evaluated by a single query.</p>
+   *
+   * @param nodeId is a {@link String} representing the id of the node
+   * @param userId is a {@link String} representing the id of the requester
+   *
+   * @return a {@link List} of the visible {@link Node}s of the path. It is empty if the node does
+   * not exist, if it is hidden or if the user does not have the read permission on it.
+   */
+  List<Node> getVisiblePath(
+    String nodeId,
+    String userId
+  );
+
+  /**
+   * Allows to retrieve the list of {@link Node}s loading only the parts specified by the
+   * {@link NodeProjection}.
+   *
+   * @param nodeIds is a {@link List<String>} representing the ids of the nodes to retrieve
+   * @param sort is the {@link NodeSort} to use for ordering the nodes
+   * @param projection is a {@link NodeProjection} representing which parts of the nodes must be
+   * loaded
+   *
+   * @return a {@link Stream<Node>} containing the requested nodes
+   */
+  Stream<Node> getNodes(
+    List<String> nodeIds,
+    Optional<NodeSort> sort,
+    NodeProjection projection
+  );
+
   /**
    * <p>Allows to retrieve the list of ids relative to the children of a specific {@link Node}.</p>
    * <p>The retrieved list can be sorted using one or more {@link NodeSort}.</p>
@@ -201,6 +244,23 @@ public interface NodeRepository {
     boolean flag
   );
 
+  /**
+   * <p>Flags or unflags a list of {@link Node}s for a specific user.</p>
+   * <p>It creates or updates the custom attributes of all the nodes with a single statement. The
+   * ids of nodes that do not exist are ignored. The caller must check the permissions of the user
+   * on the nodes before calling it.</p>
+   *
+   * @param nodeIds is a {@link List} of ids of the nodes to flag
+   * @param userId is a {@link String} representing the id of the user for which we have to flag the
+   * nodes
+   * @param flag is a boolean representing the flag value
+   */
+  void flagForUser(
+    List<String> nodeIds,
+    String userId,
+    boolean flag
+  );
+
   /**
    * <p>Returns the flag value for the couple {@link Node} and user.</p>
    *
@@ -222,8 +282,6 @@ public interface NodeRepository {
    */
   Optional<TrashedNode> getTrashedNode(String nodeId);
 
-  List<String> getTrashedNodeIdsByOldParent(String oldParentId);
-
   /**
    * <p>Trashes a node putting it into the TRASHED table.</p>
    *
@@ -258,6 +316,94 @@ public interface NodeRepository {
     Node destinationFolder
   );
 
+  /**
+   * <p>Moves a list of {@link Node}s, together with all their descendants, to a destination
+   * folder in a single transaction.</p>
+   * <p>The ancestors of every subtree are rewritten with one statement, whatever its depth. Then
+   * the inherited shares of the moved subtrees are revoked and the shares of the destination folder
+   * are propagated on them as inherited shares. The direct shares are never changed and the
+   * inherited shares are not propagated for a user having a direct share on the moved node.</p>
+   * <p>Every node of the list is moved to the destination folder, even when it is a descendant of
+   * another node of the list.</p>
+   *
+   * @param nodesIds a {@link List} of {@link String}s representing the ids of nodes to move.
+   * @param destinationFolder is a {@link Node} representing the node of the destination folder.
+   *
+   * @return an integer representing the number of moved nodes, without their descendants.
+   */
+  int moveSubtrees(
+    List<String> nodesIds,
+    Node destinationFolder
+  );
+
+  /**
+   * <p>Aligns the ancestors of all the descendants of a {@link Node} to its current ancestors with
+   * a single statement. It must be called after changing the ancestors of the node.</p>
+   *
+   * @param node is the {@link Node} whose descendants must be aligned.
+   *
+   * @return an integer representing the number of updated descendants.
+   */
+  int updateDescendantsAncestors(Node node);
+
+  /**
+   * <p>Deletes a list of {@link Node}s, together with all their descendants, in a single
+   * transaction.</p>
+   * <p>The subtrees are collected with one query, whatever their depth. Then a tombstone is
+   * created for every version of the deleted files, and the shares and the nodes are deleted in
+   * bulk. The shares of the trashed children of the deleted nodes are deleted too, while these
+   * children remain in the trash. This method considers the parameters in input already valid so
+   * it does not do any kind of control on them.</p>
+   *
+   * @param nodesIds a {@link List} of {@link String}s representing the ids of nodes to delete.
+   *
+   * @return a {@link SubtreesDeletion} containing the number of deleted nodes and shares and of
+   * created tombstones.
+   */
+  SubtreesDeletion deleteSubtrees(List<String> nodesIds);
+
+  /**
+   * Retrieves the aggregates of the subtree of a folder directly from the database, since they
+   * are changed by the database itself every time a descendant changes.
+   *
+   * @param folderId is a {@link String} representing the id of the folder.
+   *
+   * @return an {@link Optional} containing the {@link FolderAggregates} of the folder, or an
+   * {@link Optional#empty()} if the node is not a folder or if its aggregates are not computed yet.
+   */
+  Optional<FolderAggregates> getFolderAggregates(String folderId);
+
+  /**
+   * Retrieves the aggregates of the subtrees of a set of folders with a single query, like
+   * {@link #getFolderAggregates(String)}.
+   *
+   * @param folderIds is a {@link Collection} of ids of the folders.
+   *
+   * @return a {@link Map} of {@link FolderAggregates} keyed by folder id. It does not contain the
+   * ids of the nodes that are not folders or whose aggregates are not computed yet.
+   */
+  Map<String, FolderAggregates> getFolderAggregates(Collection<String> folderIds);
+
+  /**
+   * Returns the ids of the folders whose aggregates have never been computed.
+   *
+   * @param limit is an <code>int</code> representing the maximum number of ids to return.
+   *
+   * @return a {@link List} of folder ids.
+   */
+  List<String> getFolderIdsWithoutAggregates(int limit);
+
+  /**
+   * Computes again the aggregates of a list of folders from their descendants with a single
+   * statement, and updates only the folders whose aggregates are missing or drifted. The batch is
+   * retried when a folder is changed concurrently.
+   *
+   * @param folderIds is a {@link List} of folder ids.
+   *
+   * @return an integer representing the number of updated folders.
+   */
+  int reconcileFolderAggregates(List<String> folderIds);
+
   /**
    * <p>Updates a {@link Node} on database.</p>
    *
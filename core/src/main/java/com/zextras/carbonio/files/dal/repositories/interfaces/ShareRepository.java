@@ -56,25 +56,23 @@ public interface ShareRepository {
   );
 
   /**
-   * <p>Creates new {@link Share} for a list of nodes saving it in the database.
-   * <p>This method considers the parameters in input already valid so it does not do any kind of
-   * control on them.</p> This method is created as a utility for the propagation of the share on
-   * sub nodes.
-   *
-   * @param nodeIds is a {@link List<String>} of the nodeIds where to create the share.
-   * @param targetUserId is a {@link String} of the target user id which the node will be shared
-   * to.
-   * @param permissions is a {@link ACL} representing the permissions of this share.
-   * @param direct is a {@link Boolean} used to determine if the share is direct or inherited.
-   * @param expireTimestamp is an {@link Optional<Long>} for creating a temporary share with an
-   * expiration date.
+   * <p>Propagates a share on all the descendants of a node as an inherited {@link Share}, with a
+   * single statement whatever the depth of the subtree.</p>
+   * <p>It creates the missing shares and updates the inherited ones. The direct shares of the
+   * descendants are never changed. This method considers the parameters in input already valid so
+   * it does not do any kind of control on them.</p>
+   *
+   * @param nodeId is a {@link String} of the id of the node whose descendants inherit the share.
+   * @param targetUserId is a {@link String} of the target user id which the descendants will be
+   * shared to.
+   * @param permissions is a {@link ACL} representing the permissions of the inherited shares.
+   * @param expireTimestamp is an {@link Optional<Long>} of the expiration date of the inherited
+   * shares. If it is empty the expiration of the existing shares is not changed.
    */
-  void upsertShareBulk(
-    List<String> nodeIds,
+  void upsertInheritedShares(
+    String nodeId,
     String targetUserId,
     ACL permissions,
-    Boolean direct,
-    Boolean createdViaCollaborationLink,
     Optional<Long> expireTimestamp
   );
 
@@ -103,26 +101,20 @@ public interface ShareRepository {
   );
 
   /**
-   * Deletes the shares on a list of nodes for a user. This method considers the parameters in input
-   * already valid so it does not do any kind of control on them. This method is created as a
-   * utility for the propagation of the share deletion on sub nodes.
+   * Revokes the inherited shares of a user from all the descendants of a node, trashed ones
+   * included, with a single statement. The revocation does not go below a descendant having a
+   * direct share for the same user, since the shares of its subtree are inherited from it. This
+   * method considers the parameters in input already valid so it does not do any kind of control on
+   * them.
    *
-   * @param nodeIds is a {@link List<String>} of the nodeIds where to delete the share.
+   * @param nodeId is a {@link String} of the id of the node whose descendants lose the share.
    * @param targetUserId is a {@link String} of the target user.
    */
-  void deleteSharesBulk(
-    List<String> nodeIds,
+  void deleteInheritedShares(
+    String nodeId,
     String targetUserId
   );
 
-  /**
-   * Deletes all shares of each given node. This method considers the parameters in input already
-   * valid so it does not do any kind of control on them.
-   *
-   * @param nodeIds is a {@link List<String>} of the nodeIds where to delete all shares.
-   */
-  void deleteSharesBulk(List<String> nodeIds);
-
   /**
    * Returns the list of shares, if present, for the nodes requested for the target user.
    *
@@ -0,0 +1,59 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.interfaces;
+
+import com.zextras.carbonio.files.dal.dao.ebean.StorageUsage;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>This is the only class allowed to read a {@link StorageUsage} element.</p>
+ * <p>The storage usages are kept aligned by the database every time a version of a file is
+ * created, deleted or changed, so this repository only reads them and fixes their drifts.</p>
+ * <p>Its methods' implementation depends specifically on DB and ORM used.</p>
+ */
+public interface StorageUsageRepository {
+
+  /**
+   * Retrieves the storage used by an owner directly from the database.
+   *
+   * @param ownerId is a {@link String} representing the id of the owner.
+   *
+   * @return an {@link Optional} containing the {@link StorageUsage} of the owner, or an {@link
+   * Optional#empty()} if the owner has never had a version.
+   */
+  Optional<StorageUsage> getStorageUsage(String ownerId);
+
+  /**
+   * @return the total size in bytes of all the versions of all the owners.
+   */
+  long getTotalUsedBytes();
+
+  /**
+   * Returns the ids of all the owners having a {@link StorageUsage}, ordered by id, to walk all of
+   * them in batches.
+   *
+   * @param afterOwnerId is an {@link Optional} of the last id of the previous batch.
+   * @param limit is an <code>int</code> representing the maximum number of ids to return.
+   *
+   * @return a {@link List} of owner ids following the given one.
+   */
+  List<String> getOwnerIds(
+    Optional<String> afterOwnerId,
+    int limit
+  );
+
+  /**
+   * Computes again the storage used by a list of owners from their versions, and updates only the
+   * owners whose storage usage drifted. The computation and the update are done in a repeatable
+   * read transaction, so a version changed concurrently makes it fail instead of overwriting the
+   * change with a stale value.
+   *
+   * @param ownerIds is a {@link List} of owner ids.
+   *
+   * @return an integer representing the number of fixed storage usages.
+   */
+  int rebuildStorageUsages(List<String> ownerIds);
+}
@@ -0,0 +1,292 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.Files.ServiceDiscover;
+import com.zextras.carbonio.files.clients.ServiceDiscoverHttpClient;
+import com.zextras.carbonio.files.dal.ReadScope;
+import com.zextras.carbonio.files.tasks.PrometheusService;
+import com.zextras.carbonio.files.tracing.OperationTrace;
+import graphql.language.OperationDefinition.Operation;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.vavr.control.Try;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dataloader.BatchLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the {@link Executor}s where the asynchronous {@link DataFetcher}s and
+ * {@link BatchLoader}s run their blocking work (database queries and HTTP calls to the other
+ * services).
+ * <p>
+ * There are two distinct pools so that long mutations (for example a copy or a move of a big
+ * folder) cannot starve the queries:
+ * <ul>
+ *   <li>the query executor, used by queries and by the batch loaders</li>
+ *   <li>the mutation executor, used by everything executed in a mutation operation</li>
+ * </ul>
+ * Both are bounded thread pools sized for blocking I/O. When the queue of a pool is full the task
+ * is rejected with a {@link RejectedExecutionException}, that fails only the field being fetched
+ * with a GraphQL error: the blocking work never runs on the thread that submitted it, since it can
+ * be a Netty event loop. If enabled in the service discover configuration and supported by the
+ * running JDK, both executors use virtual threads instead.
+ * <p>
+ * Each executor is monitored through the {@link PrometheusService} registry exporting the queue
+ * length, the active threads and the task execution and waiting times.
+ * <p>
+ * The tasks run with the {@link OperationTrace} of the thread that submitted them, if any, so the
+ * SQL queries and the HTTP calls they make are recorded in the trace of the operation. They also
+ * run with its {@link ReadScope}, so their read-only queries can be routed to the read replica.
+ */
+@Singleton
+public class DataFetcherExecutors {
+
+  private static final Logger logger = LoggerFactory.getLogger(DataFetcherExecutors.class);
+
+  private final ExecutorService queryExecutor;
+  private final ExecutorService mutationExecutor;
+  private final Executor        tracedQueryExecutor;
+  private final Executor        tracedMutationExecutor;
+  private final int             queryPoolSize;
+  private final int             mutationPoolSize;
+
+  @Inject
+  public DataFetcherExecutors(PrometheusService prometheusService) {
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+    queryPoolSize = getIntConfig(
+      ServiceDiscover.Config.Executors.QUERY_POOL_SIZE,
+      availableProcessors * Files.Config.Executors.QUERY_THREADS_PER_CORE
+    );
+    mutationPoolSize = getIntConfig(
+      ServiceDiscover.Config.Executors.MUTATION_POOL_SIZE,
+      Math.max(
+        Files.Config.Executors.MIN_MUTATION_POOL_SIZE,
+        availableProcessors * Files.Config.Executors.MUTATION_THREADS_PER_CORE
+      )
+    );
+    int queueSize = getIntConfig(
+      ServiceDiscover.Config.Executors.QUEUE_SIZE,
+      Files.Config.Executors.QUEUE_SIZE
+    );
+    boolean useVirtualThreads = ServiceDiscoverHttpClient
+      .defaultURL(ServiceDiscover.SERVICE_NAME)
+      .getConfig(ServiceDiscover.Config.Executors.VIRTUAL_THREADS)
+      .map(Boolean::parseBoolean)
+      .getOrElse(false);
+
+    MeterRegistry registry = prometheusService.getRegistry();
+
+    queryExecutor = monitor(
+      registry,
+      createExecutor("files-graphql-query", queryPoolSize, queueSize, useVirtualThreads, registry),
+      "files.graphql.query"
+    );
+    mutationExecutor = monitor(
+      registry,
+      createExecutor(
+        "files-graphql-mutation",
+        mutationPoolSize,
+        queueSize,
+        useVirtualThreads,
+        registry
+      ),
+      "files.graphql.mutation"
+    );
+    tracedQueryExecutor = ReadScope.propagate(OperationTrace.propagate(queryExecutor));
+    tracedMutationExecutor = ReadScope.propagate(OperationTrace.propagate(mutationExecutor));
+
+    logger.info(
+      "GraphQL executors: query pool size: {}, mutation pool size: {}, queue size: {}",
+      queryPoolSize,
+      mutationPoolSize,
+      queueSize
+    );
+  }
+
+  private static int getIntConfig(
+    String key,
+    int defaultValue
+  ) {
+    Try<String> configValue = ServiceDiscoverHttpClient
+      .defaultURL(ServiceDiscover.SERVICE_NAME)
+      .getConfig(key);
+
+    // A missing key uses the default silently, a wrong value must not stop the service
+    if (configValue.isFailure()) {
+      return defaultValue;
+    }
+
+    Optional<Integer> optValue = parsePositiveInt(configValue.get());
+    if (optValue.isEmpty()) {
+      logger.warn(
+        "Invalid value '{}' for {}: it must be a positive integer, using {}",
+        configValue.get(),
+        key,
+        defaultValue
+      );
+    }
+    return optValue.orElse(defaultValue);
+  }
+
+  /**
+   * @param value is a {@link String} representing a configuration value.
+   *
+   * @return an {@link Optional} containing the value if it is a positive integer, or an
+   * {@link Optional#empty()} otherwise.
+   */
+  static Optional<Integer> parsePositiveInt(String value) {
+    try {
+      int parsedValue = Integer.parseInt(value.trim());
+      return parsedValue > 0 ? Optional.of(parsedValue) : Optional.empty();
+    } catch (NumberFormatException exception) {
+      return Optional.empty();
+    }
+  }
+
+  private static ExecutorService monitor(
+    MeterRegistry registry,
+    ExecutorService executor,
+    String name
+  ) {
+    return ExecutorServiceMetrics.monitor(registry, executor, name, Tags.of("service", "files"));
+  }
+
+  private static ExecutorService createExecutor(
+    String name,
+    int poolSize,
+    int queueSize,
+    boolean useVirtualThreads,
+    MeterRegistry registry
+  ) {
+    if (useVirtualThreads) {
+      Optional<ExecutorService> optVirtualThreadExecutor = createVirtualThreadExecutor();
+      if (optVirtualThreadExecutor.isPresent()) {
+        logger.info("GraphQL executor {} uses virtual threads", name);
+        return optVirtualThreadExecutor.get();
+      }
+      logger.warn("Virtual threads are not supported by the running JDK: {} uses a pool", name);
+    }
+
+    Counter rejectedCounter = registry.counter(name.replace('-', '.') + ".rejected");
+    AtomicInteger threadCounter = new AtomicInteger();
+    ThreadFactory threadFactory = runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      poolSize,
+      poolSize,
+      60L,
+      TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(queueSize),
+      threadFactory,
+      (runnable, pool) -> {
+        rejectedCounter.increment();
+        throw new RejectedExecutionException(
+          "The server is too busy to execute the " + name + " request, retry later"
+        );
+      }
+    );
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The {@link Executors#newVirtualThreadPerTaskExecutor()} is invoked reflectively because the
+   * project is compiled for a JDK that does not have it.
+   */
+  private static Optional<ExecutorService> createVirtualThreadExecutor() {
+    try {
+      return Optional.of(
+        (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)
+      );
+    } catch (ReflectiveOperationException | RuntimeException exception) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * @return the number of threads of the query executor. When it uses virtual threads this is the
+   * size it would have as a pool.
+   */
+  public int getQueryPoolSize() {
+    return queryPoolSize;
+  }
+
+  /**
+   * @return the number of threads of the mutation executor. When it uses virtual threads this is
+   * the size it would have as a pool.
+   */
+  public int getMutationPoolSize() {
+    return mutationPoolSize;
+  }
+
+  /**
+   * @return the {@link Executor} to use for the queries and the batch loaders.
+   */
+  public Executor getQueryExecutor() {
+    return tracedQueryExecutor;
+  }
+
+  /**
+   * @return the {@link Executor} to use for the mutations.
+   */
+  public Executor getMutationExecutor() {
+    return tracedMutationExecutor;
+  }
+
+  /**
+   * Chooses the {@link Executor} depending on the type of the operation the {@link DataFetcher} is
+   * resolving.
+   *
+   * @param environment is the {@link DataFetchingEnvironment} of the running {@link DataFetcher}
+   *
+   * @return the {@link #getMutationExecutor()} if the operation is a mutation, the
+   * {@link #getQueryExecutor()} otherwise.
+   */
+  public Executor getExecutor(DataFetchingEnvironment environment) {
+    return Optional
+      .ofNullable(environment.getOperationDefinition())
+      .filter(operation -> Operation.MUTATION.equals(operation.getOperation()))
+      .map(operation -> getMutationExecutor())
+      .orElseGet(this::getQueryExecutor);
+  }
+
+  /**
+   * Stops accepting new tasks and waits for a short period the completion of the running ones.
+   */
+  public void stop() {
+    queryExecutor.shutdown();
+    mutationExecutor.shutdown();
+    try {
+      queryExecutor.awaitTermination(5, TimeUnit.SECONDS);
+      mutationExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    logger.info("GraphQL executors stopped");
+  }
+}
@@ -14,11 +14,13 @@ import com.zextras.carbonio.files.graphql.datafetchers.CollaborationLinkDataFetc
 import com.zextras.carbonio.files.graphql.datafetchers.LinkDataFetcher;
 import com.zextras.carbonio.files.graphql.datafetchers.NodeDataFetcher;
 import com.zextras.carbonio.files.graphql.datafetchers.ShareDataFetcher;
+import com.zextras.carbonio.files.graphql.datafetchers.SubscriptionDataFetcher;
 import com.zextras.carbonio.files.graphql.datafetchers.UserDataFetcher;
 import com.zextras.carbonio.files.graphql.validators.InputFieldsController;
 import graphql.GraphQL;
 import graphql.execution.AsyncExecutionStrategy;
 import graphql.execution.ResultPath;
+import graphql.execution.instrumentation.ChainedInstrumentation;
 import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
 import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentationOptions;
 import graphql.execution.instrumentation.fieldvalidation.FieldValidation;
@@ -32,6 +34,7 @@ import graphql.schema.idl.SchemaParser;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.List;
 import org.dataloader.BatchLoader;
 
 /**
@@ -48,14 +51,17 @@ public class GraphQLProvider {
 
   private static final String SCHEMA_URL = "/api/schema.graphql";
 
-  private final GraphQL                      graphQL;
-  private final InputFieldsController        inputFieldsController;
-  private final NodeDataFetcher              nodeDataFetcher;
-  private final UserDataFetcher              userDataFetcher;
-  private final ShareDataFetcher             shareDataFetcher;
-  private final LinkDataFetcher              linkDataFetcher;
-  private final CollaborationLinkDataFetcher collaborationLinkDataFetcher;
-  private final ConfigDataFetcher            configDataFetcher;
+  private final GraphQL                       graphQL;
+  private final InputFieldsController         inputFieldsController;
+  private final NodeDataFetcher               nodeDataFetcher;
+  private final UserDataFetcher               userDataFetcher;
+  private final ShareDataFetcher              shareDataFetcher;
+  private final LinkDataFetcher               linkDataFetcher;
+  private final CollaborationLinkDataFetcher  collaborationLinkDataFetcher;
+  private final ConfigDataFetcher             configDataFetcher;
+  private final SubscriptionDataFetcher       subscriptionDataFetcher;
+  private final TracingInstrumentation        tracingInstrumentation;
+  private final ReadYourWritesInstrumentation readYourWritesInstrumentation;
 
   @Inject
   public GraphQLProvider(
@@ -65,7 +71,10 @@ public class GraphQLProvider {
     ShareDataFetcher shareDataFetcher,
     LinkDataFetcher linkDataFetcher,
     CollaborationLinkDataFetcher collaborationLinkDataFetcher,
-    ConfigDataFetcher configDataFetcher
+    ConfigDataFetcher configDataFetcher,
+    SubscriptionDataFetcher subscriptionDataFetcher,
+    TracingInstrumentation tracingInstrumentation,
+    ReadYourWritesInstrumentation readYourWritesInstrumentation
   ) {
     this.inputFieldsController = inputFieldsController;
     this.nodeDataFetcher = nodeDataFetcher;
@@ -74,6 +83,9 @@ public class GraphQLProvider {
     this.linkDataFetcher = linkDataFetcher;
     this.collaborationLinkDataFetcher = collaborationLinkDataFetcher;
     this.configDataFetcher = configDataFetcher;
+    this.subscriptionDataFetcher = subscriptionDataFetcher;
+    this.tracingInstrumentation = tracingInstrumentation;
+    this.readYourWritesInstrumentation = readYourWritesInstrumentation;
     graphQL = this.setup();
   }
 
@@ -83,7 +95,10 @@ public class GraphQLProvider {
    *   <li>{@link RuntimeWiring}: it links each interface, query and mutation with the related {@link DataFetcher}</li>
    *   <li>{@link GraphQLSchema}: the schema definition file is imported from the resources</li>
    *   <li>Execution strategy: how the execution of a request is performed (async or not)</li>
-   *   <li>Instrumentation: it is useful to check the input values of a request</li>
+   *   <li>Instrumentation: it is useful to check the input values of a request, to trace the
+   *   operations, to pin the reads of a mutation to the primary database and to dispatch the data
+   *   loaders. The instrumentations are chained because the builder keeps only the last one
+   *   set</li>
    * </ul>
    *
    * @return {@link GraphQL}
@@ -91,8 +106,12 @@ public class GraphQLProvider {
   private GraphQL setup() {
     return GraphQL.newGraphQL(buildSchema(buildWiring()))
       .queryExecutionStrategy(new AsyncExecutionStrategy())
-      .instrumentation(buildValidationInstrumentation())
-      .instrumentation(buildDataLoaderDispatcherInstrumentation())
+      .instrumentation(new ChainedInstrumentation(List.of(
+        buildValidationInstrumentation(),
+        tracingInstrumentation,
+        readYourWritesInstrumentation,
+        buildDataLoaderDispatcherInstrumentation()
+      )))
       .build();
   }
 
@@ -214,6 +233,7 @@ public class GraphQLProvider {
    *   <li>Relation between different types (for example: Node has a relation with the Share type)</li>
    *   <li>Query</li>
    *   <li>Mutation</li>
+   *   <li>Subscription</li>
    * </ul>
    *
    * @return a {@link RuntimeWiring} instance.
@@ -252,6 +272,10 @@ public class GraphQLProvider {
           collaborationLinkDataFetcher.getCollaborationLinksByNodeId()
         )
         .dataFetcher(Files.GraphQL.Queries.GET_CONFIGS, configDataFetcher.getConfigs())
+        .dataFetcher(
+          Files.GraphQL.Queries.GET_STORAGE_USAGE,
+          userDataFetcher.getStorageUsageFetcher()
+        )
       )
       .type(newTypeWiring("Mutation")
         .dataFetcher(Files.GraphQL.Mutations.CREATE_FOLDER, nodeDataFetcher.createFolderFetcher())
@@ -283,6 +307,16 @@ public class GraphQLProvider {
           collaborationLinkDataFetcher.deleteCollaborationLinks()
         )
       )
+      .type(newTypeWiring("Subscription")
+        .dataFetcher(
+          Files.GraphQL.Subscriptions.NODE_CHANGED,
+          subscriptionDataFetcher.nodeChanged()
+        )
+        .dataFetcher(
+          Files.GraphQL.Subscriptions.SHARES_CHANGED,
+          subscriptionDataFetcher.sharesChanged()
+        )
+      )
       .type(newTypeWiring(Files.GraphQL.Types.NODE_INTERFACE)
         .typeResolver(nodeDataFetcher.getNodeInterfaceResolver())
       )
@@ -309,6 +343,7 @@ public class GraphQLProvider {
         .dataFetcher(Files.GraphQL.Folder.PARENT, nodeDataFetcher.getNodeFetcher())
         .dataFetcher(Files.GraphQL.Folder.CHILDREN, nodeDataFetcher.getChildNodesFetcherFast())
         .dataFetcher(Files.GraphQL.Folder.PERMISSIONS, nodeDataFetcher.getPermissionsNodeFetcher())
+        .dataFetcher(Files.GraphQL.Folder.AGGREGATES, nodeDataFetcher.getFolderAggregatesFetcher())
         .dataFetcher(Files.GraphQL.Folder.SHARES, shareDataFetcher.getSharesFetcher())
         .dataFetcher(Files.GraphQL.Folder.LINKS, linkDataFetcher.getLinks())
         .dataFetcher(
@@ -6,8 +6,10 @@ package com.zextras.carbonio.files.graphql;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -116,6 +118,90 @@ public class GraphQLRequest {
       throw new InvalidPayloadRequestError("Unable to encode a Graphql payload into a Map object");
     }
 
+    return buildFromPayloadMap(payloadMap);
+  }
+
+  /**
+   * Checks if the payload contains a batch of GraphQL requests, in other words if it is a JSON
+   * array instead of a JSON object.
+   *
+   * @param payloadString string that contain the json request(s)
+   *
+   * @return true if the payload is a JSON array, false otherwise.
+   */
+  public static boolean isBatchPayload(String payloadString) {
+    return payloadString.stripLeading().startsWith("[");
+  }
+
+  /**
+   * This static method builds a {@link List} of {@link GraphQLRequest}s from a payload containing a
+   * JSON array of requests. Each element of the array must have the same format of the payload
+   * accepted by {@link GraphQLRequest#buildFromPayload(String)}:
+   * <pre>
+   *  [
+   *    { "query": "query getNode($id: ID!) { ... }", "variables": { "id": "test-id" } },
+   *    { "query": "query getPath($id: ID!) { ... }", "variables": { "id": "test-id" } }
+   *  ]
+   * </pre>
+   *
+   * @param payloadString string that contain the json array of requests
+   * @param maxRequests is an <code>int</code> representing the maximum number of requests allowed
+   * in a single payload
+   *
+   * @return a {@link List} of {@link GraphQLRequest}s in the same order of the payload.
+   * @throws {@link InvalidPayloadRequestError} This exception will be thrown if the payload is not
+   *                an array, if it is empty, if it contains more than <code>maxRequests</code>
+   *                elements or if one of its elements is not a valid request
+   */
+  public static final List<GraphQLRequest> buildBatchFromPayload(
+    String payloadString,
+    int maxRequests
+  ) throws InvalidPayloadRequestError {
+
+    payloadString = payloadString.replace("\\n", "").replace("\\r", "");
+    ObjectMapper mapper = new ObjectMapper();
+
+    List<Object> payloadMaps;
+
+    try {
+      payloadMaps = mapper.readValue(payloadString, List.class);
+    } catch (IOException exception) {
+      throw new InvalidPayloadRequestError(
+        "Unable to encode a batched Graphql payload into a List object"
+      );
+    }
+
+    if (payloadMaps.isEmpty() || payloadMaps.size() > maxRequests) {
+      throw new InvalidPayloadRequestError(
+        "A batched GraphQL request must contain between 1 and " + maxRequests + " requests"
+      );
+    }
+
+    List<GraphQLRequest> requests = new ArrayList<>(payloadMaps.size());
+    for (Object payloadMap : payloadMaps) {
+      if (!(payloadMap instanceof Map)) {
+        throw new InvalidPayloadRequestError("Each batched GraphQL request must be an object");
+      }
+      requests.add(buildFromPayloadMap((Map<String, Object>) payloadMap));
+    }
+
+    return requests;
+  }
+
+  /**
+   * This static method builds a {@link GraphQLRequest} from a payload already decoded into a
+   * {@link Map}, for example the payload of a message received via WebSocket. The map must have
+   * the same fields of the payload accepted by {@link GraphQLRequest#buildFromPayload(String)}.
+   *
+   * @param payloadMap is a {@link Map} containing the fields of the request
+   *
+   * @return {@link GraphQLRequest}
+   * @throws {@link InvalidPayloadRequestError} This exception will be thrown if the payload doesn't
+   *                contain a correct request type or has an empty body
+   */
+  public static GraphQLRequest buildFromPayloadMap(Map<String, Object> payloadMap)
+    throws InvalidPayloadRequestError {
+
     if (payloadMap.get(GRAPHQL_FIELD_REQUEST) == null) {
       throw new InvalidPayloadRequestError("The GraphQL request cannot be empty");
     }
@@ -160,6 +246,20 @@ public class GraphQLRequest {
     return variables;
   }
 
+  /**
+   * @return true if the request is a mutation, false otherwise.
+   */
+  public final boolean isMutation() {
+    return RequestTypes.MUTATION.name().toLowerCase().equals(requestType);
+  }
+
+  /**
+   * @return true if the request is a subscription, false otherwise.
+   */
+  public final boolean isSubscription() {
+    return RequestTypes.SUBSCRIPTION.name().toLowerCase().equals(requestType);
+  }
+
   /**
    * This enum contains all the types that a GraphQL request can handle.
    * <ul>
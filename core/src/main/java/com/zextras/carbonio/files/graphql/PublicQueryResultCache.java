@@ -0,0 +1,303 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
+import graphql.ExecutionResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Short-lived cache of the serialized results of the public GraphQL queries. The public link pages
+ * are often opened by many anonymous users at the same time and they always execute the same few
+ * queries: this cache avoids to execute them again for each request.
+ * <ul>
+ *   <li>The key is the hash of the query, of the operation name and of the variables, so it
+ *   contains also the public link id or the folder id requested</li>
+ *   <li>A result lives at most {@link Files.Config.PublicQueryCache#TIME_TO_LIVE_IN_MILLIS} and
+ *   never after the expiration of the public link that grants the access to it</li>
+ *   <li>A result is discarded as soon as a {@link NodeEvent} notifies a change of a node it depends
+ *   on (see {@link PublicQueryScope}) or when {@link #invalidate(String)} is called</li>
+ *   <li>The concurrent executions of the same request are coalesced: only the first one is
+ *   executed and the others wait for its result</li>
+ *   <li>Only the results without errors are cached</li>
+ * </ul>
+ * The cache is local to the instance of the service: the events of the mutations executed by the
+ * other instances are not received, so the time to live bounds the staleness of a result.
+ */
+@Singleton
+public class PublicQueryResultCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(PublicQueryResultCache.class);
+
+  private final AsyncCache<String, CachedResult> cache;
+  private final Set<PublicQueryScope>            pendingScopes;
+  private final Clock                            clock;
+  private final long                             timeToLiveInMillis;
+  private final ObjectMapper                     objectMapper;
+
+  @Inject
+  public PublicQueryResultCache(
+    EventBus eventBus,
+    Clock clock
+  ) {
+    this(
+      eventBus,
+      clock,
+      Files.Config.PublicQueryCache.TIME_TO_LIVE_IN_MILLIS,
+      Files.Config.PublicQueryCache.SIZE
+    );
+  }
+
+  PublicQueryResultCache(
+    EventBus eventBus,
+    Clock clock,
+    long timeToLiveInMillis,
+    long cacheSize
+  ) {
+    this.clock = clock;
+    this.timeToLiveInMillis = timeToLiveInMillis;
+    this.pendingScopes = ConcurrentHashMap.newKeySet();
+    this.objectMapper = new ObjectMapper()
+      .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    /*
+     * The ticker returns the current timestamp of the Clock.millis() converted in nanoseconds, like
+     * the LocalCacheAdapter does.
+     */
+    this.cache = Caffeine
+      .newBuilder()
+      .maximumSize(cacheSize)
+      .expireAfter(new ResultExpiry())
+      .ticker(() -> clock.millis() * 1000000)
+      .buildAsync();
+
+    eventBus
+      .subscribe(NodeEvent.class, event -> true, Function.identity())
+      .subscribe(new InvalidationSubscriber());
+  }
+
+  /**
+   * Returns the serialized result of a public GraphQL request, executing it only if there is no
+   * valid cached result and no other execution of the same request in progress.
+   *
+   * @param request is the {@link GraphQLRequest} to execute
+   * @param execution is a {@link Function} that executes the request. It receives the
+   * {@link PublicQueryScope} where the data fetchers must register the dependencies of the result
+   *
+   * @return a {@link CompletableFuture} containing the result serialized following the GraphQL
+   * specification.
+   */
+  public CompletableFuture<String> getOrExecute(
+    GraphQLRequest request,
+    Function<PublicQueryScope, CompletableFuture<ExecutionResult>> execution
+  ) {
+    String key = buildKey(request);
+    CompletableFuture<CachedResult> futureResult = cache.get(
+      key,
+      (cacheKey, executor) -> execute(execution)
+    );
+
+    return futureResult.thenApply(cachedResult -> {
+      if (!cachedResult.isCacheable()) {
+        cache.asMap().remove(key, futureResult);
+      }
+      return cachedResult.getBody();
+    });
+  }
+
+  /**
+   * Discards every cached result depending on the given node. It must be called when something not
+   * notified by a {@link NodeEvent}, like a public link, changes.
+   *
+   * @param nodeId is a {@link String} representing the id of the changed node
+   */
+  public void invalidate(String nodeId) {
+    invalidate(nodeId, nodeId);
+  }
+
+  long size() {
+    cache.synchronous().cleanUp();
+    return cache.synchronous().estimatedSize();
+  }
+
+  private void invalidate(
+    String folderId,
+    String nodeId
+  ) {
+    pendingScopes
+      .stream()
+      .filter(scope -> scope.isAffectedBy(folderId, nodeId))
+      .forEach(PublicQueryScope::markStale);
+
+    cache
+      .asMap()
+      .entrySet()
+      .removeIf(entry -> {
+        CompletableFuture<CachedResult> futureResult = entry.getValue();
+        return futureResult.isDone()
+          && !futureResult.isCompletedExceptionally()
+          && futureResult.join().getScope().isAffectedBy(folderId, nodeId);
+      });
+  }
+
+  private CompletableFuture<CachedResult> execute(
+    Function<PublicQueryScope, CompletableFuture<ExecutionResult>> execution
+  ) {
+    PublicQueryScope scope = new PublicQueryScope();
+    pendingScopes.add(scope);
+
+    CompletableFuture<CachedResult> futureResult = execution
+      .apply(scope)
+      .thenApply(executionResult -> {
+        try {
+          return new CachedResult(
+            objectMapper.writeValueAsString(executionResult.toSpecification()),
+            scope,
+            executionResult.getErrors().isEmpty()
+          );
+        } catch (JsonProcessingException exception) {
+          throw new CompletionException(exception);
+        }
+      });
+
+    /*
+     * The scope is removed from the pending ones only after the result is completed, so an
+     * invalidation always finds it in the pending scopes or in the cached results.
+     */
+    futureResult.whenComplete((result, exception) -> pendingScopes.remove(scope));
+    return futureResult;
+  }
+
+  private String buildKey(GraphQLRequest request) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(request.getOperationName().orElse("").getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(request.getRequest().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(objectMapper.writeValueAsBytes(request.getVariables()));
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException | JsonProcessingException exception) {
+      throw new IllegalStateException("Unable to build the key of a public query", exception);
+    }
+  }
+
+  private class ResultExpiry implements Expiry<String, CachedResult> {
+
+    @Override
+    public long expireAfterCreate(
+      String key,
+      CachedResult cachedResult,
+      long currentTime
+    ) {
+      if (!cachedResult.isCacheable()) {
+        return 0;
+      }
+
+      long now = clock.millis();
+      long expiresAt = cachedResult
+        .getScope()
+        .getExpiresAt()
+        .map(linkExpiresAt -> Math.min(linkExpiresAt, now + timeToLiveInMillis))
+        .orElse(now + timeToLiveInMillis);
+
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAt - now));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+      String key,
+      CachedResult cachedResult,
+      long currentTime,
+      long currentDuration
+    ) {
+      return expireAfterCreate(key, cachedResult, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+      String key,
+      CachedResult cachedResult,
+      long currentTime,
+      long currentDuration
+    ) {
+      return currentDuration;
+    }
+  }
+
+  private class InvalidationSubscriber implements Subscriber<NodeEvent> {
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(NodeEvent event) {
+      invalidate(event.getFolderId(), event.getNodeId());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      logger.error("The invalidation of the public query results has been interrupted", throwable);
+    }
+
+    @Override
+    public void onComplete() {}
+  }
+
+  private static class CachedResult {
+
+    private final String           body;
+    private final PublicQueryScope scope;
+    private final boolean          withoutErrors;
+
+    CachedResult(
+      String body,
+      PublicQueryScope scope,
+      boolean withoutErrors
+    ) {
+      this.body = body;
+      this.scope = scope;
+      this.withoutErrors = withoutErrors;
+    }
+
+    String getBody() {
+      return body;
+    }
+
+    PublicQueryScope getScope() {
+      return scope;
+    }
+
+    boolean isCacheable() {
+      return withoutErrors && !scope.isStale();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects, during the execution of a public GraphQL query, the nodes its result depends on and
+ * the instant when the public links that grant the access to them expire. The
+ * {@link PublicQueryResultCache} uses it to decide when a cached result must be discarded.
+ * <p>
+ * It distinguishes two kinds of dependencies:
+ * <ul>
+ *   <li>the <strong>content</strong> nodes: the nodes returned by the query and the folders whose
+ *   children are listed. Any change to them, or inside them, affects the result</li>
+ *   <li>the <strong>access</strong> nodes: the ancestors that can own the public link granting the
+ *   access. Only a change to the node itself (a move, a deletion or a change of its links) affects
+ *   the result</li>
+ * </ul>
+ * The data fetchers can register the dependencies concurrently.
+ */
+public class PublicQueryScope {
+
+  private final Set<String> contentNodeIds;
+  private final Set<String> accessNodeIds;
+  private final AtomicLong  expiresAt;
+  private volatile boolean  stale;
+
+  public PublicQueryScope() {
+    this.contentNodeIds = ConcurrentHashMap.newKeySet();
+    this.accessNodeIds = ConcurrentHashMap.newKeySet();
+    this.expiresAt = new AtomicLong(Long.MAX_VALUE);
+    this.stale = false;
+  }
+
+  /**
+   * Registers a node whose attributes or children are part of the result. It must be called before
+   * reading the node so that a change happening during the read is not missed.
+   *
+   * @param nodeId is a {@link String} representing the id of the node
+   */
+  public void addContentNode(String nodeId) {
+    contentNodeIds.add(nodeId);
+  }
+
+  /**
+   * Registers the nodes that can own the public link granting the access to the result.
+   *
+   * @param nodeIds is a {@link Collection} of node ids
+   */
+  public void addAccessNodes(Collection<String> nodeIds) {
+    accessNodeIds.addAll(nodeIds);
+  }
+
+  /**
+   * Bounds the validity of the result to the expiration of a public link. When it is called more
+   * than once the earliest expiration wins.
+   *
+   * @param timestamp is a <code>long</code> representing the expiration timestamp in milliseconds
+   */
+  public void expireAt(long timestamp) {
+    expiresAt.accumulateAndGet(timestamp, Math::min);
+  }
+
+  /**
+   * @return an {@link Optional} containing the timestamp in milliseconds after which the result is
+   * no longer valid, or an empty {@link Optional} if the result does not depend on an expiring
+   * link.
+   */
+  public Optional<Long> getExpiresAt() {
+    long timestamp = expiresAt.get();
+    return timestamp == Long.MAX_VALUE
+      ? Optional.empty()
+      : Optional.of(timestamp);
+  }
+
+  /**
+   * Checks if a change notified for a node inside a folder affects the result.
+   *
+   * @param folderId is a {@link String} representing the id of the folder containing the changed
+   * node
+   * @param nodeId is a {@link String} representing the id of the changed node
+   *
+   * @return true if the result depends on the changed node, false otherwise.
+   */
+  public boolean isAffectedBy(
+    String folderId,
+    String nodeId
+  ) {
+    return contentNodeIds.contains(folderId)
+      || contentNodeIds.contains(nodeId)
+      || accessNodeIds.contains(nodeId);
+  }
+
+  /**
+   * Marks the result as stale: it can still be returned to the requests waiting for it but it must
+   * not be cached.
+   */
+  public void markStale() {
+    stale = true;
+  }
+
+  public boolean isStale() {
+    return stale;
+  }
+}
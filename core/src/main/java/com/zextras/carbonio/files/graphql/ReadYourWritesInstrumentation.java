@@ -0,0 +1,50 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
+import com.zextras.carbonio.files.dal.ReadScope;
+import graphql.ExecutionResult;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.language.OperationDefinition.Operation;
+
+/**
+ * Guarantees that a user reads its own writes when the read-only queries are served by the read
+ * replica. When a mutation starts, the {@link ReadScope} of the operation is pinned to the primary
+ * database, and so are the reads of the requester for the next seconds (see
+ * {@link ReadReplicaRouter#recordWrite(String)}), even if they come from other operations.
+ */
+@Singleton
+public class ReadYourWritesInstrumentation extends SimplePerformantInstrumentation {
+
+  private final ReadReplicaRouter readReplicaRouter;
+
+  @Inject
+  public ReadYourWritesInstrumentation(ReadReplicaRouter readReplicaRouter) {
+    this.readReplicaRouter = readReplicaRouter;
+  }
+
+  @Override
+  public InstrumentationContext<ExecutionResult> beginExecuteOperation(
+    InstrumentationExecuteOperationParameters parameters,
+    InstrumentationState state
+  ) {
+    Operation operation = parameters.getExecutionContext().getOperationDefinition().getOperation();
+
+    if (Operation.MUTATION.equals(operation)) {
+      ReadScope.current().ifPresent(scope -> {
+        scope.pinToPrimary();
+        scope.getRequesterId().ifPresent(readReplicaRouter::recordWrite);
+      });
+    }
+    return SimpleInstrumentationContext.noOp();
+  }
+}
@@ -0,0 +1,136 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.Files.ServiceDiscover;
+import com.zextras.carbonio.files.clients.ServiceDiscoverHttpClient;
+import com.zextras.carbonio.files.tracing.OperationTrace;
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in tracing of the GraphQL operations. An operation is traced when the client sends the
+ * {@link Files.Config.Tracing#HEADER} header, or when it is sampled following the rate set in the
+ * service discover configuration (by default no operation is sampled).
+ * <p>
+ * The {@link OperationTrace} of a traced operation is put in the GraphQL context by the controller
+ * and this instrumentation records in it the duration of every non-trivial resolver. When the
+ * operation completes, the trace is returned in the <code>extensions</code> of the response if the
+ * client asked for it, otherwise it is logged.
+ */
+@Singleton
+public class TracingInstrumentation extends SimplePerformantInstrumentation {
+
+  private static final Logger logger = LoggerFactory.getLogger(TracingInstrumentation.class);
+
+  private final double samplingRate;
+
+  @Inject
+  public TracingInstrumentation() {
+    this(ServiceDiscoverHttpClient
+      .defaultURL(ServiceDiscover.SERVICE_NAME)
+      .getConfig(ServiceDiscover.Config.Tracing.SAMPLING_RATE)
+      .map(Double::parseDouble)
+      .filter(rate -> rate >= 0 && rate <= 1)
+      .getOrElse(0.0));
+  }
+
+  TracingInstrumentation(double samplingRate) {
+    this.samplingRate = samplingRate;
+    logger.info("GraphQL tracing sampling rate: {}", samplingRate);
+  }
+
+  /**
+   * Decides if an operation must be traced.
+   *
+   * @param operationName is a {@link String} representing the name of the operation
+   * @param requested is true if the client sent the {@link Files.Config.Tracing#HEADER} header
+   *
+   * @return an {@link Optional} containing the {@link OperationTrace} to put in the GraphQL context
+   * of the operation, or an empty {@link Optional} if it must not be traced.
+   */
+  public Optional<OperationTrace> startTrace(
+    String operationName,
+    boolean requested
+  ) {
+    boolean sampled = samplingRate > 0 && ThreadLocalRandom.current().nextDouble() < samplingRate;
+    if (requested || sampled) {
+      return Optional.of(
+        new OperationTrace(operationName, requested, Files.Config.Tracing.MAX_SPANS)
+      );
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public InstrumentationContext<Object> beginFieldFetch(
+    InstrumentationFieldFetchParameters parameters,
+    InstrumentationState state
+  ) {
+    OperationTrace trace = parameters
+      .getEnvironment()
+      .getGraphQlContext()
+      .get(Files.GraphQL.Context.TRACE);
+
+    if (trace == null || parameters.isTrivialDataFetcher()) {
+      return SimpleInstrumentationContext.noOp();
+    }
+
+    String path = parameters.getEnvironment().getExecutionStepInfo().getPath().toString();
+    long start = System.nanoTime();
+    return SimpleInstrumentationContext.whenCompleted((result, failure) ->
+      trace.record(SpanType.RESOLVER, path, start, System.nanoTime())
+    );
+  }
+
+  @Override
+  public CompletableFuture<ExecutionResult> instrumentExecutionResult(
+    ExecutionResult executionResult,
+    InstrumentationExecutionParameters parameters,
+    InstrumentationState state
+  ) {
+    OperationTrace trace = parameters.getGraphQLContext().get(Files.GraphQL.Context.TRACE);
+
+    if (trace == null) {
+      return CompletableFuture.completedFuture(executionResult);
+    }
+
+    if (trace.isRequested()) {
+      return CompletableFuture.completedFuture(ExecutionResultImpl
+        .newExecutionResult()
+        .from(executionResult)
+        .addExtension(Files.Config.Tracing.EXTENSION_KEY, trace.toSpecification())
+        .build()
+      );
+    }
+
+    try {
+      logger.info(
+        "GraphQL operation trace: {}",
+        new ObjectMapper().writeValueAsString(trace.toSpecification())
+      );
+    } catch (JsonProcessingException exception) {
+      logger.warn("Unable to serialize the GraphQL operation trace", exception);
+    }
+    return CompletableFuture.completedFuture(executionResult);
+  }
+}
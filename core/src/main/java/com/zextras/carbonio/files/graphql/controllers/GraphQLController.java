@@ -4,18 +4,30 @@
 
 package com.zextras.carbonio.files.graphql.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.GraphQL.DataLoaders;
+import com.zextras.carbonio.files.dal.ReadScope;
+import com.zextras.carbonio.files.dal.dao.User;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
 import com.zextras.carbonio.files.graphql.GraphQLRequest;
+import com.zextras.carbonio.files.graphql.TracingInstrumentation;
+import com.zextras.carbonio.files.graphql.dataloaders.CollaborationLinkBatchLoader;
+import com.zextras.carbonio.files.graphql.dataloaders.FileVersionBatchLoader;
+import com.zextras.carbonio.files.graphql.dataloaders.FolderAggregatesBatchLoader;
+import com.zextras.carbonio.files.graphql.dataloaders.LinkBatchLoader;
 import com.zextras.carbonio.files.graphql.dataloaders.NodeBatchLoader;
 import com.zextras.carbonio.files.graphql.dataloaders.ShareBatchLoader;
+import com.zextras.carbonio.files.graphql.dataloaders.TracingBatchLoader;
+import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
+import com.zextras.carbonio.files.tracing.OperationTrace;
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
 import graphql.GraphQL;
 import graphql.GraphQLException;
 import io.netty.buffer.ByteBuf;
@@ -25,16 +37,27 @@ import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.util.AttributeKey;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.dataloader.DataLoader;
 import org.dataloader.DataLoaderFactory;
 import org.dataloader.DataLoaderRegistry;
@@ -49,6 +72,17 @@ import org.slf4j.LoggerFactory;
  *  <li>Execute the request via {@link GraphQL}</li>
  *  <li>Return the response with the JSON data requested or an error</li>
  * </ul>
+ * The payload can also be a JSON array of requests: in this case they are executed concurrently,
+ * sharing the same {@link DataLoaderRegistry}, and the response is a JSON array containing the
+ * result of each request in the same order.
+ * <p>
+ * If the client accepts a <code>multipart/mixed</code> response, the results of a batch are
+ * streamed as soon as each operation completes instead (see
+ * {@link #streamBatch(ChannelHandlerContext, HttpVersion, List, Map, boolean)}).
+ * <p>
+ * If the client sends the {@link Files.Config.Tracing#HEADER} header with the value
+ * <code>true</code>, each operation returns its timeline in the <code>tracing</code> field of the
+ * <code>extensions</code> (see {@link TracingInstrumentation}).
  */
 
 @ChannelHandler.Sharable
@@ -68,20 +102,43 @@ public class GraphQLController extends SimpleChannelInboundHandler<FullHttpReque
     promise.channel().close();
   };
 
-  private final GraphQL         graphQL;
-  private final NodeBatchLoader  nodeBatchLoader;
-  private final ShareBatchLoader shareBatchLoader;
+  private static final String MULTIPART_MIXED              = "multipart/mixed";
+  private static final String MULTIPART_MIXED_CONTENT_TYPE = MULTIPART_MIXED + "; boundary=\"-\"";
+  private static final String MULTIPART_PART_HEADER        =
+    "\r\n---\r\nContent-Type: application/json; charset=utf-8\r\n\r\n";
+  private static final String MULTIPART_END                = "\r\n-----\r\n";
+  private static final String PART_INDEX                   = "index";
+  private static final String PART_HAS_NEXT                = "hasNext";
+
+  private final GraphQL                      graphQL;
+  private final NodeBatchLoader              nodeBatchLoader;
+  private final ShareBatchLoader             shareBatchLoader;
+  private final LinkBatchLoader              linkBatchLoader;
+  private final CollaborationLinkBatchLoader collaborationLinkBatchLoader;
+  private final FileVersionBatchLoader       fileVersionBatchLoader;
+  private final FolderAggregatesBatchLoader  folderAggregatesBatchLoader;
+  private final TracingInstrumentation       tracingInstrumentation;
 
   @Inject
   public GraphQLController(
     GraphQLProvider graphQLProvider,
     NodeBatchLoader nodeBatchLoader,
-    ShareBatchLoader shareBatchLoader
+    ShareBatchLoader shareBatchLoader,
+    LinkBatchLoader linkBatchLoader,
+    CollaborationLinkBatchLoader collaborationLinkBatchLoader,
+    FileVersionBatchLoader fileVersionBatchLoader,
+    FolderAggregatesBatchLoader folderAggregatesBatchLoader,
+    TracingInstrumentation tracingInstrumentation
   ) {
     super(true);
     this.graphQL = graphQLProvider.getGraphQL();
     this.nodeBatchLoader = nodeBatchLoader;
     this.shareBatchLoader = shareBatchLoader;
+    this.linkBatchLoader = linkBatchLoader;
+    this.collaborationLinkBatchLoader = collaborationLinkBatchLoader;
+    this.fileVersionBatchLoader = fileVersionBatchLoader;
+    this.folderAggregatesBatchLoader = folderAggregatesBatchLoader;
+    this.tracingInstrumentation = tracingInstrumentation;
   }
 
   /**
@@ -129,27 +186,32 @@ public class GraphQLController extends SimpleChannelInboundHandler<FullHttpReque
       context.channel().attr(AttributeKey.valueOf("cookies")).get()
     );
 
+    boolean traceRequested = Optional
+      .ofNullable(httpRequest.headers().get(Files.Config.Tracing.HEADER))
+      .map(Boolean::parseBoolean)
+      .orElse(false);
+
     try {
-      GraphQLRequest request = parseRequest(contentRequest);
-      /*
-       * The ExecutionInput object represents the input of the request, it has the following fields:
-       *   - Query: the actual request to execute
-       *   - Variables: the input values of the request (optional)
-       *   - OperationName: the name of the request to execute (optional)
-       *   - GraphQLContext: containing all the useful information to permit the fetching of the data
-       *   - DataLoaderRegistry: a place to register all data loaders in
-       */
-      ExecutionInput input = ExecutionInput.newExecutionInput()
-        .query(request.getRequest())
-        .variables(request.getVariables())
-        .operationName(request.getOperationName().orElse(""))
-        .graphQLContext(graphQLContext)
-        .dataLoaderRegistry(buildDataLoaderRegistry())
-        .build();
-
-      ExecutionResult executionResult = graphQL.executeAsync(input).join();
-      String bodyResponse = new ObjectMapper()
-        .writeValueAsString(executionResult.toSpecification());
+      String payload = parsePayload(contentRequest);
+      String bodyResponse;
+
+      if (GraphQLRequest.isBatchPayload(payload)) {
+        List<GraphQLRequest> requests = parseBatchRequest(payload);
+
+        if (acceptsMultipartResponse(httpRequest)) {
+          streamBatch(context, protocolVersionRequest, requests, graphQLContext, traceRequested);
+          return;
+        }
+
+        bodyResponse = new ObjectMapper().writeValueAsString(
+          executeBatch(requests, graphQLContext, traceRequested)
+        );
+      } else {
+        GraphQLRequest request = parseRequest(payload);
+        ExecutionResult executionResult =
+          execute(request, graphQLContext, buildDataLoaderRegistry(), traceRequested).join();
+        bodyResponse = new ObjectMapper().writeValueAsString(executionResult.toSpecification());
+      }
 
       FullHttpResponse response = new DefaultFullHttpResponse(
         protocolVersionRequest,
@@ -184,16 +246,20 @@ public class GraphQLController extends SimpleChannelInboundHandler<FullHttpReque
     }
   }
 
-  private GraphQLRequest parseRequest(ByteBuf contentRequest)
+  private String parsePayload(ByteBuf contentRequest)
     throws GraphQLRequest.InvalidPayloadRequestError {
     if (contentRequest == null || contentRequest.writerIndex() == 0) {
       throw new GraphQLRequest.InvalidPayloadRequestError(
         "The payload of a GraphQL request cannot be empty"
       );
     }
+    return contentRequest.toString(StandardCharsets.UTF_8);
+  }
+
+  private GraphQLRequest parseRequest(String payload)
+    throws GraphQLRequest.InvalidPayloadRequestError {
     try {
-      String payloadString = contentRequest.toString(StandardCharsets.UTF_8);
-      return GraphQLRequest.buildFromPayload(payloadString);
+      return GraphQLRequest.buildFromPayload(payload);
     } catch (Exception exception) {
       throw new GraphQLRequest.InvalidPayloadRequestError(
         "The payload of a GraphQL request cannot be parsed"
@@ -201,6 +267,299 @@ public class GraphQLController extends SimpleChannelInboundHandler<FullHttpReque
     }
   }
 
+  private List<GraphQLRequest> parseBatchRequest(String payload)
+    throws GraphQLRequest.InvalidPayloadRequestError {
+    try {
+      return GraphQLRequest.buildBatchFromPayload(payload, Files.GraphQL.MAX_BATCH_OPERATIONS);
+    } catch (Exception exception) {
+      throw new GraphQLRequest.InvalidPayloadRequestError(
+        "The payload of a batched GraphQL request cannot be parsed"
+      );
+    }
+  }
+
+  /**
+   * Creates the {@link ExecutionInput} of a {@link GraphQLRequest}. It has the following fields:
+   * <ul>
+   *   <li>Query: the actual request to execute</li>
+   *   <li>Variables: the input values of the request (optional)</li>
+   *   <li>OperationName: the name of the request to execute (optional)</li>
+   *   <li>
+   *     GraphQLContext: containing all the useful information to permit the fetching of the data
+   *   </li>
+   *   <li>DataLoaderRegistry: a place to register all data loaders in</li>
+   * </ul>
+   */
+  private ExecutionInput buildExecutionInput(
+    GraphQLRequest request,
+    Map<String, Object> graphQLContext,
+    DataLoaderRegistry dataLoaderRegistry
+  ) {
+    return ExecutionInput.newExecutionInput()
+      .query(request.getRequest())
+      .variables(request.getVariables())
+      .operationName(request.getOperationName().orElse(""))
+      .graphQLContext(graphQLContext)
+      .dataLoaderRegistry(dataLoaderRegistry)
+      .build();
+  }
+
+  /**
+   * Executes a {@link GraphQLRequest} in the {@link ReadScope} of the requester, so its read-only
+   * queries can be served by the read replica. If the operation must be traced, it creates its
+   * {@link OperationTrace}, puts it in a copy of the GraphQL context and binds it to the current
+   * thread while the execution starts.
+   * <p>
+   * A subscription is not executed, since it would return a publisher of events that cannot be
+   * sent in an HTTP response: its result contains only an error (the subscriptions are served by
+   * the {@link GraphQLWebSocketController}).
+   *
+   * @param request is the {@link GraphQLRequest} to execute
+   * @param graphQLContext is a {@link Map} containing the context of the execution
+   * @param dataLoaderRegistry is the {@link DataLoaderRegistry} of the execution
+   * @param traceRequested is true if the client asked for the trace of the operation
+   *
+   * @return a {@link CompletableFuture} containing the {@link ExecutionResult}.
+   */
+  private CompletableFuture<ExecutionResult> execute(
+    GraphQLRequest request,
+    Map<String, Object> graphQLContext,
+    DataLoaderRegistry dataLoaderRegistry,
+    boolean traceRequested
+  ) {
+    if (request.isSubscription()) {
+      return CompletableFuture.completedFuture(ExecutionResultImpl
+        .newExecutionResult()
+        .addError(GraphQLResultErrors.subscriptionNotSupported())
+        .build()
+      );
+    }
+
+    Optional<OperationTrace> optTrace = tracingInstrumentation.startTrace(
+      request.getOperationName().orElse(""),
+      traceRequested
+    );
+
+    ReadScope readScope = Optional
+      .ofNullable((User) graphQLContext.get(Files.GraphQL.Context.REQUESTER))
+      .map(requester -> ReadScope.of(requester.getId()))
+      .orElseGet(ReadScope::anonymous);
+
+    if (optTrace.isEmpty()) {
+      return readScope.call(() -> graphQL.executeAsync(
+        buildExecutionInput(request, graphQLContext, dataLoaderRegistry)
+      ));
+    }
+
+    OperationTrace trace = optTrace.get();
+    Map<String, Object> tracedGraphQLContext = new HashMap<>(graphQLContext);
+    tracedGraphQLContext.put(Files.GraphQL.Context.TRACE, trace);
+
+    return readScope.call(() -> trace.call(() -> graphQL.executeAsync(
+      buildExecutionInput(request, tracedGraphQLContext, dataLoaderRegistry)
+    )));
+  }
+
+  /**
+   * Executes a batch of {@link GraphQLRequest}s sent in a single HTTP request (see
+   * {@link #startBatch(List, Map, DataLoaderRegistry, boolean)} for the order of execution) and
+   * waits for all of them.
+   *
+   * @param requests is a {@link List} of {@link GraphQLRequest}s to execute
+   * @param graphQLContext is a {@link Map} containing the context shared by every execution
+   * @param traceRequested is true if the client asked for the trace of the operations
+   *
+   * @return a {@link List} containing the specification of each {@link ExecutionResult} in the
+   * same order of the requests.
+   */
+  private List<Map<String, Object>> executeBatch(
+    List<GraphQLRequest> requests,
+    Map<String, Object> graphQLContext,
+    boolean traceRequested
+  ) {
+    List<CompletableFuture<ExecutionResult>> executions = startBatch(
+      requests,
+      graphQLContext,
+      buildDataLoaderRegistry(),
+      traceRequested
+    );
+
+    CompletableFuture.allOf(executions.toArray(new CompletableFuture[0])).join();
+
+    return executions
+      .stream()
+      .map(execution -> execution.join().toSpecification())
+      .collect(Collectors.toList());
+  }
+
+  /**
+   * Starts the executions of a batch of {@link GraphQLRequest}s. All the executions share the same
+   * {@link DataLoaderRegistry} so the same node, share or link requested by more than one operation
+   * is loaded only once and the keys queued by different operations can be fetched in the same
+   * batch.
+   * <p>
+   * The queries run concurrently, but the mutations run sequentially in the order of the payload,
+   * like the root fields of a single mutation operation:
+   * <ul>
+   *   <li>a mutation starts only when all the previous operations are completed</li>
+   *   <li>an operation following a mutation starts only when the mutation is completed</li>
+   * </ul>
+   * The cache of the data loaders is cleared before each mutation, so neither the mutation nor the
+   * following operations can see the elements loaded before it.
+   *
+   * @param requests is a {@link List} of {@link GraphQLRequest}s to execute
+   * @param graphQLContext is a {@link Map} containing the context shared by every execution
+   * @param dataLoaderRegistry is the {@link DataLoaderRegistry} shared by every execution
+   * @param traceRequested is true if the client asked for the trace of the operations
+   *
+   * @return a {@link List} containing the {@link CompletableFuture} of each {@link ExecutionResult}
+   * in the same order of the requests.
+   */
+  private List<CompletableFuture<ExecutionResult>> startBatch(
+    List<GraphQLRequest> requests,
+    Map<String, Object> graphQLContext,
+    DataLoaderRegistry dataLoaderRegistry,
+    boolean traceRequested
+  ) {
+    List<CompletableFuture<ExecutionResult>> executions = new ArrayList<>(requests.size());
+    // Completes when the last started mutation completes, even if it fails
+    CompletableFuture<Void> lastMutation = CompletableFuture.completedFuture(null);
+
+    for (GraphQLRequest request : requests) {
+      if (request.isMutation()) {
+        CompletableFuture<ExecutionResult> execution = CompletableFuture
+          .allOf(executions.toArray(new CompletableFuture[0]))
+          .handle((ignored, failure) -> null)
+          .thenCompose(ignored -> {
+            dataLoaderRegistry.getDataLoaders().forEach(DataLoader::clearAll);
+            return execute(request, graphQLContext, dataLoaderRegistry, traceRequested);
+          });
+
+        executions.add(execution);
+        lastMutation = execution.handle((ignored, failure) -> null);
+      } else {
+        executions.add(lastMutation.thenCompose(
+          ignored -> execute(request, graphQLContext, dataLoaderRegistry, traceRequested)
+        ));
+      }
+    }
+
+    return executions;
+  }
+
+  private boolean acceptsMultipartResponse(FullHttpRequest httpRequest) {
+    return Optional
+      .ofNullable(httpRequest.headers().get(HttpHeaderNames.ACCEPT))
+      .map(accept -> accept.toLowerCase().contains(MULTIPART_MIXED))
+      .orElse(false);
+  }
+
+  /**
+   * Executes a batch of {@link GraphQLRequest}s, like {@link #executeBatch(List, Map, boolean)},
+   * but it streams the result of each operation in a
+   * chunked <code>multipart/mixed</code> response as soon as the operation completes. This allows a
+   * client to split a heavy page in a fast operation (for example the ids and names of the nodes)
+   * and in a slow one (for example their shares and owners) and to render the first one without
+   * waiting for the other.
+   * <p>
+   * The parts follow the format of the GraphQL incremental delivery over HTTP:
+   * <pre>
+   *  ---
+   *  Content-Type: application/json; charset=utf-8
+   *
+   *  {"index": 1, "data": {...}, "hasNext": true}
+   *  ---
+   *  Content-Type: application/json; charset=utf-8
+   *
+   *  {"index": 0, "data": {...}, "hasNext": false}
+   *  -----
+   * </pre>
+   * where the <code>index</code> is the position of the operation in the batch, since the parts
+   * are sent in order of completion.
+   *
+   * @param context is the {@link ChannelHandlerContext} where to write the response
+   * @param protocolVersion is the {@link HttpVersion} of the request
+   * @param requests is a {@link List} of {@link GraphQLRequest}s to execute
+   * @param graphQLContext is a {@link Map} containing the context shared by every execution
+   * @param traceRequested is true if the client asked for the trace of the operations
+   */
+  private void streamBatch(
+    ChannelHandlerContext context,
+    HttpVersion protocolVersion,
+    List<GraphQLRequest> requests,
+    Map<String, Object> graphQLContext,
+    boolean traceRequested
+  ) {
+    HttpResponse response = new DefaultHttpResponse(protocolVersion, HttpResponseStatus.OK);
+    response.headers().add(HttpHeaderNames.CONTENT_TYPE, MULTIPART_MIXED_CONTENT_TYPE);
+    response.headers().add(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+    context.writeAndFlush(response);
+
+    List<CompletableFuture<ExecutionResult>> executions = startBatch(
+      requests,
+      graphQLContext,
+      buildDataLoaderRegistry(),
+      traceRequested
+    );
+    AtomicInteger pendingParts = new AtomicInteger(requests.size());
+    Object partsLock = new Object();
+
+    for (int index = 0; index < executions.size(); index++) {
+      int partIndex = index;
+      executions
+        .get(index)
+        .whenComplete((executionResult, failure) -> {
+          // The parts are written one at a time so the last written is the one without a next
+          synchronized (partsLock) {
+            boolean hasNext = pendingParts.decrementAndGet() > 0;
+            String part = MULTIPART_PART_HEADER
+              + buildPart(partIndex, executionResult, failure, hasNext);
+
+            context.write(new DefaultHttpContent(
+              Unpooled.wrappedBuffer(part.getBytes(StandardCharsets.UTF_8))
+            ));
+
+            if (hasNext) {
+              context.flush();
+            } else {
+              context
+                .writeAndFlush(new DefaultLastHttpContent(
+                  Unpooled.wrappedBuffer(MULTIPART_END.getBytes(StandardCharsets.UTF_8))
+                ))
+                .addListener(sNettyChannelFutureClose);
+            }
+          }
+        });
+    }
+  }
+
+  private String buildPart(
+    int index,
+    ExecutionResult executionResult,
+    Throwable failure,
+    boolean hasNext
+  ) {
+    Map<String, Object> part = new LinkedHashMap<>();
+    part.put(PART_INDEX, index);
+
+    if (failure == null) {
+      part.putAll(executionResult.toSpecification());
+    } else {
+      logger.error("GraphQLController failed to execute a batched operation", failure);
+      part.put("errors", List.of(Map.of("message", "Something went wrong")));
+    }
+    part.put(PART_HAS_NEXT, hasNext);
+
+    try {
+      return new ObjectMapper().writeValueAsString(part);
+    } catch (JsonProcessingException exception) {
+      logger.error("GraphQLController failed to serialize a batched operation", exception);
+      return "{\"" + PART_INDEX + "\":" + index
+        + ",\"errors\":[{\"message\":\"Something went wrong\"}],\""
+        + PART_HAS_NEXT + "\":" + hasNext + "}";
+    }
+  }
+
   /**
    * Creates a {@link DataLoaderRegistry} and registers every {@link DataLoader} used to load
    * multiple elements in batch.
@@ -215,11 +574,45 @@ public class GraphQLController extends SimpleChannelInboundHandler<FullHttpReque
     DataLoaderRegistry registry = new DataLoaderRegistry();
     registry.register(
         DataLoaders.NODE_BATCH_LOADER,
-        DataLoaderFactory.newDataLoaderWithTry(nodeBatchLoader)
+        DataLoaderFactory.newMappedDataLoaderWithTry(
+          TracingBatchLoader.of(DataLoaders.NODE_BATCH_LOADER, nodeBatchLoader)
+        )
       );
     registry.register(
       DataLoaders.SHARE_BATCH_LOADER,
-      DataLoaderFactory.newDataLoader(shareBatchLoader)
+      DataLoaderFactory.newMappedDataLoader(
+        TracingBatchLoader.of(DataLoaders.SHARE_BATCH_LOADER, shareBatchLoader)
+      )
+    );
+    registry.register(
+      DataLoaders.LINK_BATCH_LOADER,
+      DataLoaderFactory.newMappedDataLoader(
+        TracingBatchLoader.of(DataLoaders.LINK_BATCH_LOADER, linkBatchLoader)
+      )
+    );
+    registry.register(
+      DataLoaders.COLLABORATION_LINK_BATCH_LOADER,
+      DataLoaderFactory.newMappedDataLoader(
+        TracingBatchLoader.of(
+          DataLoaders.COLLABORATION_LINK_BATCH_LOADER,
+          collaborationLinkBatchLoader
+        )
+      )
+    );
+    registry.register(
+      DataLoaders.FILE_VERSION_BATCH_LOADER,
+      DataLoaderFactory.newMappedDataLoader(
+        TracingBatchLoader.of(DataLoaders.FILE_VERSION_BATCH_LOADER, fileVersionBatchLoader)
+      )
+    );
+    registry.register(
+      DataLoaders.FOLDER_AGGREGATES_BATCH_LOADER,
+      DataLoaderFactory.newMappedDataLoader(
+        TracingBatchLoader.of(
+          DataLoaders.FOLDER_AGGREGATES_BATCH_LOADER,
+          folderAggregatesBatchLoader
+        )
+      )
     );
 
     return registry;
@@ -0,0 +1,408 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.graphql.GraphQLProvider;
+import com.zextras.carbonio.files.graphql.GraphQLRequest;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is the entry-point of the GraphQL subscriptions. It upgrades an authenticated HTTP
+ * request to a WebSocket connection and then it speaks the <code>graphql-transport-ws</code>
+ * protocol:
+ * <ul>
+ *   <li><code>connection_init</code> is acknowledged with a <code>connection_ack</code></li>
+ *   <li><code>ping</code> is answered with a <code>pong</code></li>
+ *   <li>
+ *     <code>subscribe</code> executes the operation and sends a <code>next</code> message for each
+ *     result followed by a <code>complete</code> (or an <code>error</code>) message
+ *   </li>
+ *   <li><code>complete</code> stops the subscription with the given id</li>
+ * </ul>
+ * Only the subscription operations are allowed: queries and mutations must be sent via the HTTP
+ * endpoint.
+ * <p>
+ * A new result is requested to the {@link Publisher} of a subscription only after the previous one
+ * has been written in the channel, so a slow client cannot accumulate messages in memory: the
+ * events exceeding the buffer of the subscription are dropped by the
+ * {@link com.zextras.carbonio.files.graphql.subscriptions.EventBus}.
+ * <p>
+ * <strong>This handler is stateful: a new instance must be used for each connection.</strong>
+ */
+public class GraphQLWebSocketController extends SimpleChannelInboundHandler<Object> {
+
+  private static final Logger logger = LoggerFactory.getLogger(GraphQLWebSocketController.class);
+
+  private static final String SUB_PROTOCOL = "graphql-transport-ws";
+
+  private static final String MESSAGE_TYPE          = "type";
+  private static final String MESSAGE_ID            = "id";
+  private static final String MESSAGE_PAYLOAD       = "payload";
+  private static final String TYPE_CONNECTION_INIT  = "connection_init";
+  private static final String TYPE_CONNECTION_ACK   = "connection_ack";
+  private static final String TYPE_PING             = "ping";
+  private static final String TYPE_PONG             = "pong";
+  private static final String TYPE_SUBSCRIBE        = "subscribe";
+  private static final String TYPE_NEXT             = "next";
+  private static final String TYPE_ERROR            = "error";
+  private static final String TYPE_COMPLETE         = "complete";
+  private static final int    CLOSE_INVALID_MESSAGE = 4400;
+  private static final int    CLOSE_UNAUTHORIZED    = 4401;
+  private static final int    CLOSE_DUPLICATED_ID   = 4409;
+  private static final int    CLOSE_TOO_MANY_INITS  = 4429;
+
+  private final GraphQL                          graphQL;
+  private final ObjectMapper                     objectMapper;
+  private final Map<String, OperationSubscriber> operations;
+  private final Map<String, Object>              graphQLContext;
+  private       WebSocketServerHandshaker        handshaker;
+  private       boolean                          connectionAcknowledged;
+
+  @Inject
+  public GraphQLWebSocketController(GraphQLProvider graphQLProvider) {
+    super(false);
+    this.graphQL = graphQLProvider.getGraphQL();
+    this.objectMapper = new ObjectMapper();
+    this.operations = new ConcurrentHashMap<>();
+    this.graphQLContext = new HashMap<>();
+  }
+
+  @Override
+  protected void channelRead0(
+    ChannelHandlerContext context,
+    Object message
+  ) {
+    if (message instanceof FullHttpRequest) {
+      // The request is released by the authentication handler
+      handshake(context, (FullHttpRequest) message);
+      return;
+    }
+
+    if (message instanceof WebSocketFrame) {
+      try {
+        handleFrame(context, (WebSocketFrame) message);
+      } finally {
+        ReferenceCountUtil.release(message);
+      }
+      return;
+    }
+
+    context.fireChannelRead(message);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext context) throws Exception {
+    operations.values().forEach(OperationSubscriber::cancel);
+    operations.clear();
+    super.channelInactive(context);
+  }
+
+  private void handshake(
+    ChannelHandlerContext context,
+    FullHttpRequest httpRequest
+  ) {
+    graphQLContext.put(
+      Files.GraphQL.Context.REQUESTER,
+      context.channel().attr(AttributeKey.valueOf(Files.API.ContextAttribute.REQUESTER)).get()
+    );
+    graphQLContext.put(
+      Files.GraphQL.Context.COOKIES,
+      context.channel().attr(AttributeKey.valueOf(Files.API.ContextAttribute.COOKIES)).get()
+    );
+
+    String location = "ws://"
+      + httpRequest.headers().get(HttpHeaderNames.HOST)
+      + httpRequest.uri();
+
+    handshaker = new WebSocketServerHandshakerFactory(
+      location,
+      SUB_PROTOCOL,
+      false,
+      Files.Config.Subscriptions.MAX_FRAME_SIZE
+    ).newHandshaker(httpRequest);
+
+    if (handshaker == null) {
+      WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(context.channel());
+      return;
+    }
+
+    handshaker.handshake(context.channel(), httpRequest);
+  }
+
+  private void handleFrame(
+    ChannelHandlerContext context,
+    WebSocketFrame frame
+  ) {
+    if (frame instanceof CloseWebSocketFrame) {
+      handshaker.close(context.channel(), (CloseWebSocketFrame) frame.retain());
+      return;
+    }
+
+    if (frame instanceof PingWebSocketFrame) {
+      context.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+      return;
+    }
+
+    if (!(frame instanceof TextWebSocketFrame)) {
+      close(context, CLOSE_INVALID_MESSAGE, "Only text frames are supported");
+      return;
+    }
+
+    Map<String, Object> message;
+    try {
+      message = objectMapper.readValue(((TextWebSocketFrame) frame).text(), Map.class);
+    } catch (JsonProcessingException exception) {
+      close(context, CLOSE_INVALID_MESSAGE, "Invalid message");
+      return;
+    }
+
+    String type = String.valueOf(message.get(MESSAGE_TYPE));
+    switch (type) {
+      case TYPE_CONNECTION_INIT:
+        if (connectionAcknowledged) {
+          close(context, CLOSE_TOO_MANY_INITS, "Too many initialisation requests");
+          return;
+        }
+        connectionAcknowledged = true;
+        send(context, Map.of(MESSAGE_TYPE, TYPE_CONNECTION_ACK));
+        break;
+      case TYPE_PING:
+        send(context, Map.of(MESSAGE_TYPE, TYPE_PONG));
+        break;
+      case TYPE_PONG:
+        break;
+      case TYPE_SUBSCRIBE:
+        subscribe(context, message);
+        break;
+      case TYPE_COMPLETE:
+        Optional
+          .ofNullable(message.get(MESSAGE_ID))
+          .map(String::valueOf)
+          .map(operations::remove)
+          .ifPresent(OperationSubscriber::cancel);
+        break;
+      default:
+        close(context, CLOSE_INVALID_MESSAGE, "Unknown message type " + type);
+    }
+  }
+
+  private void subscribe(
+    ChannelHandlerContext context,
+    Map<String, Object> message
+  ) {
+    if (!connectionAcknowledged) {
+      close(context, CLOSE_UNAUTHORIZED, "Unauthorized");
+      return;
+    }
+
+    Object id = message.get(MESSAGE_ID);
+    Object payload = message.get(MESSAGE_PAYLOAD);
+    if (id == null || !(payload instanceof Map)) {
+      close(context, CLOSE_INVALID_MESSAGE, "Invalid subscribe message");
+      return;
+    }
+
+    String operationId = String.valueOf(id);
+    if (operations.containsKey(operationId)) {
+      close(context, CLOSE_DUPLICATED_ID, "Subscriber for " + operationId + " already exists");
+      return;
+    }
+
+    if (operations.size() >= Files.Config.Subscriptions.MAX_SUBSCRIPTIONS_PER_CONNECTION) {
+      sendError(context, operationId, "Too many subscriptions on the same connection");
+      return;
+    }
+
+    GraphQLRequest request;
+    try {
+      request = GraphQLRequest.buildFromPayloadMap((Map<String, Object>) payload);
+    } catch (RuntimeException exception) {
+      sendError(context, operationId, "The payload of the subscription cannot be parsed");
+      return;
+    }
+
+    if (!"subscription".equals(request.getRequestType())) {
+      sendError(context, operationId, "Only subscriptions are allowed via WebSocket");
+      return;
+    }
+
+    OperationSubscriber subscriber = new OperationSubscriber(context, operationId);
+    operations.put(operationId, subscriber);
+
+    ExecutionInput executionInput = ExecutionInput.newExecutionInput()
+      .query(request.getRequest())
+      .variables(request.getVariables())
+      .operationName(request.getOperationName().orElse(""))
+      .graphQLContext(graphQLContext)
+      .build();
+
+    graphQL
+      .executeAsync(executionInput)
+      .whenComplete((executionResult, failure) -> {
+        if (failure != null) {
+          logger.error(MessageFormat.format(
+            "Unable to execute the subscription {0}",
+            operationId
+          ), failure);
+          operations.remove(operationId);
+          sendError(context, operationId, "Unable to execute the subscription");
+          return;
+        }
+
+        if (!executionResult.getErrors().isEmpty() || executionResult.getData() == null) {
+          operations.remove(operationId);
+          send(context, Map.of(
+            MESSAGE_TYPE, TYPE_ERROR,
+            MESSAGE_ID, operationId,
+            MESSAGE_PAYLOAD, executionResult
+              .getErrors()
+              .stream()
+              .map(GraphQLError::toSpecification)
+              .collect(Collectors.toList())
+          ));
+          return;
+        }
+
+        Publisher<ExecutionResult> publisher = executionResult.getData();
+        publisher.subscribe(subscriber);
+      });
+  }
+
+  private void sendError(
+    ChannelHandlerContext context,
+    String operationId,
+    String errorMessage
+  ) {
+    send(context, Map.of(
+      MESSAGE_TYPE, TYPE_ERROR,
+      MESSAGE_ID, operationId,
+      MESSAGE_PAYLOAD, List.of(Map.of("message", errorMessage))
+    ));
+  }
+
+  private ChannelFuture send(
+    ChannelHandlerContext context,
+    Map<String, Object> message
+  ) {
+    try {
+      return context.writeAndFlush(new TextWebSocketFrame(objectMapper.writeValueAsString(message)));
+    } catch (JsonProcessingException exception) {
+      logger.error("Unable to serialize the WebSocket message", exception);
+      return context.newFailedFuture(exception);
+    }
+  }
+
+  private void close(
+    ChannelHandlerContext context,
+    int statusCode,
+    String reason
+  ) {
+    logger.debug(MessageFormat.format(
+      "Closing the GraphQL WebSocket connection: {0} {1}",
+      statusCode,
+      reason
+    ));
+    handshaker.close(context.channel(), new CloseWebSocketFrame(statusCode, reason));
+  }
+
+  /**
+   * Forwards the results of a single subscription to the WebSocket channel requesting the next
+   * result only when the previous one has been written.
+   */
+  private class OperationSubscriber implements Subscriber<ExecutionResult> {
+
+    private final    ChannelHandlerContext context;
+    private final    String                operationId;
+    private volatile Subscription          subscription;
+    private volatile boolean               cancelled;
+
+    OperationSubscriber(
+      ChannelHandlerContext context,
+      String operationId
+    ) {
+      this.context = context;
+      this.operationId = operationId;
+    }
+
+    void cancel() {
+      cancelled = true;
+      Optional.ofNullable(subscription).ifPresent(Subscription::cancel);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+      if (cancelled || !context.channel().isActive()) {
+        subscription.cancel();
+        return;
+      }
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ExecutionResult executionResult) {
+      if (cancelled) {
+        return;
+      }
+      send(context, Map.of(
+        MESSAGE_TYPE, TYPE_NEXT,
+        MESSAGE_ID, operationId,
+        MESSAGE_PAYLOAD, executionResult.toSpecification()
+      )).addListener(future -> {
+        if (future.isSuccess() && !cancelled) {
+          subscription.request(1);
+        }
+      });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      logger.error(MessageFormat.format("The subscription {0} failed", operationId), throwable);
+      if (operations.remove(operationId) != null) {
+        sendError(context, operationId, "The subscription failed");
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      if (operations.remove(operationId) != null) {
+        send(context, Map.of(MESSAGE_TYPE, TYPE_COMPLETE, MESSAGE_ID, operationId));
+      }
+    }
+  }
+}
@@ -4,14 +4,16 @@
 
 package com.zextras.carbonio.files.graphql.controllers;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.dal.ReadScope;
 import com.zextras.carbonio.files.exceptions.BadRequestException;
 import com.zextras.carbonio.files.graphql.GraphQLRequest;
 import com.zextras.carbonio.files.graphql.PublicGraphQLProvider;
+import com.zextras.carbonio.files.graphql.PublicQueryResultCache;
+import com.zextras.carbonio.files.graphql.PublicQueryScope;
 import graphql.ExecutionInput;
-import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.GraphQLException;
 import io.netty.buffer.ByteBuf;
@@ -27,6 +29,7 @@ import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +40,8 @@ import org.slf4j.LoggerFactory;
  * <ul>
  *   <li>Receive a json request
  *   <li>Parse the request creating a {@link GraphQLRequest}
- *   <li>Execute the request via {@link GraphQL}
+ *   <li>Execute the request via {@link GraphQL}, or reuse a recent result of the same request
+ *       kept by the {@link PublicQueryResultCache}
  *   <li>Return the response with the JSON data requested or an error
  * </ul>
  */
@@ -47,34 +51,29 @@ public class PublicGraphQLController extends SimpleChannelInboundHandler<FullHtt
 
   private static final Logger logger = LoggerFactory.getLogger(PublicGraphQLController.class);
 
-  private final GraphQL publicGraphQL;
+  private final GraphQL                publicGraphQL;
+  private final PublicQueryResultCache publicQueryResultCache;
 
   @Inject
-  public PublicGraphQLController(PublicGraphQLProvider publicGraphQLProvider) {
+  public PublicGraphQLController(
+      PublicGraphQLProvider publicGraphQLProvider, PublicQueryResultCache publicQueryResultCache) {
     super(true);
     this.publicGraphQL = publicGraphQLProvider.getGraphQL();
+    this.publicQueryResultCache = publicQueryResultCache;
   }
 
   @Override
   protected void channelRead0(ChannelHandlerContext context, FullHttpRequest httpRequest) {
     try {
       GraphQLRequest request = parseRequest(httpRequest.content());
-      /*
-       * The ExecutionInput object represents the input of the request, it has the following fields:
-       *   - Query: the actual request to execute
-       *   - Variables: the input values of the request (optional)
-       *   - OperationName: the name of the request to execute (optional)
-       */
-      ExecutionInput input =
-          ExecutionInput.newExecutionInput()
-              .query(request.getRequest())
-              .variables(request.getVariables())
-              .operationName(request.getOperationName().orElse(""))
-              .build();
-
-      ExecutionResult executionResult = publicGraphQL.executeAsync(input).join();
       String bodyResponse =
-          new ObjectMapper().writeValueAsString(executionResult.toSpecification());
+          publicQueryResultCache
+              .getOrExecute(
+                  request,
+                  scope ->
+                      ReadScope.anonymous()
+                          .call(() -> publicGraphQL.executeAsync(buildInput(request, scope))))
+              .join();
 
       FullHttpResponse response =
           new DefaultFullHttpResponse(
@@ -98,6 +97,26 @@ public class PublicGraphQLController extends SimpleChannelInboundHandler<FullHtt
     }
   }
 
+  /**
+   * The ExecutionInput object represents the input of the request, it has the following fields:
+   *
+   * <ul>
+   *   <li>Query: the actual request to execute
+   *   <li>Variables: the input values of the request (optional)
+   *   <li>OperationName: the name of the request to execute (optional)
+   *   <li>GraphQLContext: it contains the {@link PublicQueryScope} where the data fetchers register
+   *       the dependencies of the result
+   * </ul>
+   */
+  private ExecutionInput buildInput(GraphQLRequest request, PublicQueryScope scope) {
+    return ExecutionInput.newExecutionInput()
+        .query(request.getRequest())
+        .variables(request.getVariables())
+        .operationName(request.getOperationName().orElse(""))
+        .graphQLContext(Map.of(Files.GraphQL.Context.PUBLIC_QUERY_SCOPE, scope))
+        .build();
+  }
+
   private GraphQLRequest parseRequest(ByteBuf contentRequest)
       throws GraphQLRequest.InvalidPayloadRequestError {
     if (contentRequest == null || contentRequest.writerIndex() == 0) {
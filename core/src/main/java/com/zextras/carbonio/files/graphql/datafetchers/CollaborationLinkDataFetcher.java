@@ -9,6 +9,7 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.API.Endpoints;
 import com.zextras.carbonio.files.Files.GraphQL;
 import com.zextras.carbonio.files.Files.GraphQL.Context;
+import com.zextras.carbonio.files.Files.GraphQL.DataLoaders;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.CreateCollaborationLink;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.DeleteCollaborationLinks;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.GetCollaborationLink;
@@ -18,6 +19,7 @@ import com.zextras.carbonio.files.dal.dao.ebean.ACL;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
 import com.zextras.carbonio.files.dal.dao.ebean.CollaborationLink;
 import com.zextras.carbonio.files.dal.repositories.interfaces.CollaborationLinkRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
 import com.zextras.carbonio.files.utilities.PermissionsChecker;
 import graphql.execution.DataFetcherResult;
@@ -34,19 +36,23 @@ import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.dataloader.DataLoader;
 
 public class CollaborationLinkDataFetcher {
 
   private final CollaborationLinkRepository collaborationLinkRepository;
   private final PermissionsChecker          permissionsChecker;
+  private final DataFetcherExecutors        dataFetcherExecutors;
 
   @Inject
   public CollaborationLinkDataFetcher(
     CollaborationLinkRepository collaborationLinkRepository,
-    PermissionsChecker permissionsChecker
+    PermissionsChecker permissionsChecker,
+    DataFetcherExecutors dataFetcherExecutors
   ) {
     this.collaborationLinkRepository = collaborationLinkRepository;
     this.permissionsChecker = permissionsChecker;
+    this.dataFetcherExecutors = dataFetcherExecutors;
   }
 
   private DataFetcherResult<Map<String, Object>> convertCollaborationLinkToDataFetcherResult(
@@ -111,11 +117,22 @@ public class CollaborationLinkDataFetcher {
         .<Map<String, Object>>newResult()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
+  /**
+   * <p>This {@link DataFetcher} must be used for the
+   * {@link Files.GraphQL.Queries#GET_COLLABORATION_LINKS} query and to resolve the
+   * <code>collaboration_links</code> attribute of a node.</p>
+   * <p>The collaboration links are fetched through the
+   * {@link DataLoaders#COLLABORATION_LINK_BATCH_LOADER} so that, when the collaboration links of a
+   * list of nodes are requested, they are all fetched with a single query.</p>
+   *
+   * @return an asynchronous {@link DataFetcher} containing a {@link List} of the collaboration
+   * links of the node that the requester has the permission to see.
+   */
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>> getCollaborationLinksByNodeId() {
-    return environment -> CompletableFuture.supplyAsync(() -> {
+    return environment -> {
       ResultPath path = environment.getExecutionStepInfo().getPath();
       User requester = environment.getGraphQlContext().get(Context.REQUESTER);
       Optional<Map<String, String>> optLocalContext =
@@ -125,29 +142,36 @@ public class CollaborationLinkDataFetcher {
         ? optLocalContext.get().get(Node.ID)
         : environment.getArgument(GetCollaborationLink.NODE_ID);
 
-      ACL permissions = permissionsChecker.getPermissions(nodeId, requester.getId());
-
-      if (permissions.has(SharePermission.READ_AND_SHARE)
-        || permissions.has(SharePermission.READ_WRITE_AND_SHARE)
-      ) {
-        // Before returning the list, the system filters the collaborationLinks the user has no
-        // permission to see
-        return collaborationLinkRepository
-          .getLinksByNodeId(nodeId)
-          .filter(collaborationLink -> permissions.has(collaborationLink.getPermissions()))
-          .map(collaborationLink ->
-            convertCollaborationLinkToDataFetcherResult(collaborationLink, requester.getDomain())
-          )
-          .collect(Collectors.toList());
-      }
-
-      return Collections.singletonList(
-        DataFetcherResult
-          .<Map<String, Object>>newResult()
-          .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
-          .build()
-      );
-    });
+      DataLoader<String, List<CollaborationLink>> collaborationLinkLoader =
+        environment.getDataLoader(DataLoaders.COLLABORATION_LINK_BATCH_LOADER);
+
+      return collaborationLinkLoader
+        .load(nodeId)
+        .thenApply(collaborationLinks -> {
+          ACL permissions = permissionsChecker.getPermissions(nodeId, requester.getId());
+
+          if (permissions.has(SharePermission.READ_AND_SHARE)
+            || permissions.has(SharePermission.READ_WRITE_AND_SHARE)
+          ) {
+            // Before returning the list, the system filters the collaborationLinks the user has no
+            // permission to see
+            return collaborationLinks
+              .stream()
+              .filter(collaborationLink -> permissions.has(collaborationLink.getPermissions()))
+              .map(collaborationLink ->
+                convertCollaborationLinkToDataFetcherResult(collaborationLink, requester.getDomain())
+              )
+              .collect(Collectors.toList());
+          }
+
+          return Collections.singletonList(
+            DataFetcherResult
+              .<Map<String, Object>>newResult()
+              .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
+              .build()
+          );
+        });
+    };
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<List<String>>>> deleteCollaborationLinks() {
@@ -193,6 +217,6 @@ public class CollaborationLinkDataFetcher {
             .collect(Collectors.toList())
         )
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 }
@@ -10,6 +10,7 @@ import com.zextras.carbonio.files.Files.ServiceDiscover;
 import com.zextras.carbonio.files.Files.ServiceDiscover.Config;
 import com.zextras.carbonio.files.Files.GraphQL;
 import com.zextras.carbonio.files.clients.ServiceDiscoverHttpClient;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
 import graphql.execution.DataFetcherResult;
 import graphql.schema.DataFetcher;
@@ -29,16 +30,21 @@ import java.util.concurrent.CompletableFuture;
  */
 public class ConfigDataFetcher {
 
-  private final Map<String, String> configMap;
-  private       String              maxKeepVersionsValue;
+  private final Map<String, String>  configMap;
+  private final DataFetcherExecutors dataFetcherExecutors;
+  private       String               maxKeepVersionsValue;
 
   /**
    * <p> This constructor initializes the map of config keys which values will be
    * requested at service discover. The value is initialized at the default value of every specific
    * configuration</p>
+   *
+   * @param dataFetcherExecutors provides the {@link java.util.concurrent.Executor} where the
+   * configurations are fetched.
    */
   @Inject
-  public ConfigDataFetcher() {
+  public ConfigDataFetcher(DataFetcherExecutors dataFetcherExecutors) {
+    this.dataFetcherExecutors = dataFetcherExecutors;
     configMap = new HashMap<>();
     configMap.put(Config.MAX_VERSIONS, String.valueOf(Config.DEFAULT_MAX_VERSIONS));
     maxKeepVersionsValue = String.valueOf(Config.DEFAULT_MAX_KEEP_VERSIONS);
@@ -67,7 +73,7 @@ public class ConfigDataFetcher {
       });
       result.add(convertConfigToGraphQLMap(Config.MAX_KEEP_VERSIONS, maxKeepVersionsValue));
       return result;
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   private DataFetcherResult<Map<String, String>> convertConfigToGraphQLMap(
@@ -8,16 +8,19 @@ import com.google.inject.Inject;
 import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.API.Endpoints;
 import com.zextras.carbonio.files.Files.GraphQL;
+import com.zextras.carbonio.files.Files.GraphQL.DataLoaders;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters;
 import com.zextras.carbonio.files.dal.dao.User;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
 import com.zextras.carbonio.files.dal.dao.ebean.Link;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
-import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.LinkSort;
 import com.zextras.carbonio.files.dal.repositories.interfaces.LinkRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.exceptions.NodeNotFoundException;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
+import com.zextras.carbonio.files.graphql.PublicQueryResultCache;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
 import com.zextras.carbonio.files.utilities.PermissionsChecker;
 import graphql.execution.DataFetcherResult;
@@ -30,8 +33,10 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.dataloader.DataLoader;
 
 /**
  * <p>Contains all the implementations of {@link DataFetcher}s for all the queries and mutations
@@ -55,19 +60,25 @@ import org.apache.commons.lang3.RandomStringUtils;
  */
 public class LinkDataFetcher {
 
-  private final LinkRepository     linkRepository;
-  private final NodeRepository     nodeRepository;
-  private final PermissionsChecker permissionsChecker;
+  private final LinkRepository         linkRepository;
+  private final NodeRepository         nodeRepository;
+  private final PermissionsChecker     permissionsChecker;
+  private final DataFetcherExecutors   dataFetcherExecutors;
+  private final PublicQueryResultCache publicQueryResultCache;
 
   @Inject
   public LinkDataFetcher(
     LinkRepository linkRepository,
     NodeRepository nodeRepository,
-    PermissionsChecker permissionsChecker
+    PermissionsChecker permissionsChecker,
+    DataFetcherExecutors dataFetcherExecutors,
+    PublicQueryResultCache publicQueryResultCache
   ) {
     this.linkRepository = linkRepository;
     this.nodeRepository = nodeRepository;
     this.permissionsChecker = permissionsChecker;
+    this.dataFetcherExecutors = dataFetcherExecutors;
+    this.publicQueryResultCache = publicQueryResultCache;
   }
 
   private DataFetcherResult<Map<String, Object>> convertLinkToGraphQLMap(
@@ -154,11 +165,22 @@ public class LinkDataFetcher {
       return DataFetcherResult.<Map<String, Object>>newResult()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
+  /**
+   * <p>This {@link DataFetcher} must be used for the {@link Files.GraphQL.Queries#GET_LINKS} query
+   * and to resolve the <code>links</code> attribute of a node.</p>
+   * <p>The node and its links are fetched through the {@link DataLoaders#NODE_BATCH_LOADER} and
+   * the {@link DataLoaders#LINK_BATCH_LOADER} so that, when the links of a list of nodes are
+   * requested, they are all fetched with a single query.</p>
+   *
+   * @return an asynchronous {@link DataFetcher} containing a {@link List} of the links of the node
+   * sorted by creation date descending.
+   */
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>> getLinks() {
-    return environment -> CompletableFuture.supplyAsync(() -> {
+    return environment -> {
+      ResultPath path = environment.getExecutionStepInfo().getPath();
       User requester = environment.getGraphQlContext().get(Files.GraphQL.Context.REQUESTER);
       Optional<Map<String, String>> optLocalContext = Optional
         .ofNullable(environment.getLocalContext());
@@ -167,25 +189,46 @@ public class LinkDataFetcher {
         ? optLocalContext.get().get(GraphQL.Node.ID)
         : environment.getArgument(InputParameters.Link.NODE_ID);
 
-      Optional<Node> optNode = nodeRepository.getNode(nodeId);
-
-      return permissionsChecker
-        .getPermissions(nodeId, requester.getId())
-        .has(SharePermission.READ_AND_SHARE) && optNode.isPresent()
-        ? linkRepository
-        .getLinksByNodeId(nodeId, LinkSort.CREATED_AT_DESC)
-        .map(link ->
-          convertLinkToGraphQLMap(
-            link,
-            requester.getDomain(),
-            optNode.get().getNodeType().equals(NodeType.FOLDER)))
-        .collect(Collectors.toList())
-        : Collections.singletonList(DataFetcherResult
-          .<Map<String, Object>>newResult()
-          //.error(GraphQLResultErrors.nodeWriteError(nodeId, path))
-          .build()
-        );
-    });
+      DataLoader<String, Node> nodeLoader =
+        environment.getDataLoader(DataLoaders.NODE_BATCH_LOADER);
+      DataLoader<String, List<Link>> linkLoader =
+        environment.getDataLoader(DataLoaders.LINK_BATCH_LOADER);
+
+      return nodeLoader
+        .load(nodeId)
+        .thenCombine(linkLoader.load(nodeId), (node, links) ->
+          permissionsChecker
+            .getPermissions(nodeId, requester.getId())
+            .has(SharePermission.READ_AND_SHARE)
+            ? links
+            .stream()
+            .map(link ->
+              convertLinkToGraphQLMap(
+                link,
+                requester.getDomain(),
+                node.getNodeType().equals(NodeType.FOLDER)))
+            .collect(Collectors.toList())
+            : Collections.singletonList(DataFetcherResult
+              .<Map<String, Object>>newResult()
+              .build()
+            )
+        )
+        .exceptionally(exception -> {
+          // The node loader fails the key of a node that does not exist, any other failure means
+          // that the links could not be retrieved
+          Throwable cause = exception instanceof CompletionException
+            ? exception.getCause()
+            : exception;
+
+          return Collections.singletonList(DataFetcherResult
+            .<Map<String, Object>>newResult()
+            .error(cause instanceof NodeNotFoundException
+              ? GraphQLResultErrors.nodeNotFound(nodeId, path)
+              : GraphQLResultErrors.linkFetchError(nodeId, path))
+            .build()
+          );
+        });
+    };
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<Map<String, Object>>>> updateLink() {
@@ -220,6 +263,7 @@ public class LinkDataFetcher {
             optNewDescription.ifPresent(link::setDescription);
 
             Link updatedLink = linkRepository.updateLink(link);
+            publicQueryResultCache.invalidate(updatedLink.getNodeId());
             return convertLinkToGraphQLMap(
               updatedLink,
               requester.getDomain(),
@@ -230,7 +274,7 @@ public class LinkDataFetcher {
           .<Map<String, Object>>newResult()
           .error(GraphQLResultErrors.linkNotFound(linkId, path))
           .build());
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<List<String>>>> deleteLinks() {
@@ -242,7 +286,7 @@ public class LinkDataFetcher {
         .get(Files.GraphQL.Context.REQUESTER)).getId();
       List<String> linkIds = environment.getArgument(InputParameters.Link.LINK_IDS);
 
-      List<String> linkIdsToDelete = linkIds
+      List<Link> linksToDelete = linkIds
         .stream()
         .map(linkRepository::getLinkById)
         .filter(Optional::isPresent)
@@ -250,10 +294,19 @@ public class LinkDataFetcher {
         .filter(link -> permissionsChecker
           .getPermissions(link.getNodeId(), requesterId)
           .has(SharePermission.READ_AND_SHARE))
+        .collect(Collectors.toList());
+
+      List<String> linkIdsToDelete = linksToDelete
+        .stream()
         .map(Link::getLinkId)
         .collect(Collectors.toList());
 
       linkRepository.deleteLinksBulk(linkIdsToDelete);
+      linksToDelete
+        .stream()
+        .map(Link::getNodeId)
+        .distinct()
+        .forEach(publicQueryResultCache::invalidate);
 
       return DataFetcherResult
         .<List<String>>newResult()
@@ -263,6 +316,6 @@ public class LinkDataFetcher {
           .map(linkIdError -> GraphQLResultErrors.linkNotFound(linkIdError, path))
           .collect(Collectors.toList()))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 }
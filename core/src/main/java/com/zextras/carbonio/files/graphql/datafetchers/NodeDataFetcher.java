@@ -9,6 +9,7 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.Db.RootId;
 import com.zextras.carbonio.files.Files.GraphQL;
 import com.zextras.carbonio.files.Files.GraphQL.Context;
+import com.zextras.carbonio.files.Files.GraphQL.DataLoaders;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.FlagNodes;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.GetVersions;
@@ -26,17 +27,25 @@ import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeCustomAttributes;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
-import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.dao.ebean.TrashedNode;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FileVersionSort;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FolderAggregates;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeProjection;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeSort;
 import com.zextras.carbonio.files.dal.repositories.interfaces.FileVersionRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.TombstoneRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
+import com.zextras.carbonio.files.graphql.dataloaders.FileVersionBatchLoader;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
+import com.zextras.carbonio.files.graphql.types.NodeView;
 import com.zextras.carbonio.files.graphql.types.Permissions;
+import com.zextras.carbonio.files.tracing.OperationTrace;
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
 import com.zextras.carbonio.files.utilities.PermissionsChecker;
 import com.zextras.filestore.model.FilesIdentifier;
 import graphql.GraphQLError;
@@ -45,6 +54,7 @@ import graphql.execution.DataFetcherResult;
 import graphql.execution.DataFetcherResult.Builder;
 import graphql.execution.ResultPath;
 import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingFieldSelectionSet;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.TypeResolver;
 import graphql.schema.idl.EnumValuesProvider;
@@ -53,7 +63,6 @@ import io.vavr.control.Try;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +75,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.dataloader.DataLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -105,8 +115,9 @@ public class NodeDataFetcher {
   private final PermissionsChecker    permissionsChecker;
   private final ShareRepository       shareRepository;
   private final TombstoneRepository   tombstoneRepository;
-  private final ShareDataFetcher      shareDataFetcher;
   private final FilesConfig           filesConfig;
+  private final DataFetcherExecutors  dataFetcherExecutors;
+  private final EventBus              eventBus;
   private final int                   maxNumberOfVersions;
   private final int                   maxNumberOfKeepVersions;
 
@@ -117,16 +128,18 @@ public class NodeDataFetcher {
     PermissionsChecker permissionsChecker,
     ShareRepository shareRepository,
     TombstoneRepository tombstoneRepository,
-    ShareDataFetcher shareDataFetcher,
-    FilesConfig filesConfig
+    FilesConfig filesConfig,
+    DataFetcherExecutors dataFetcherExecutors,
+    EventBus eventBus
   ) {
     this.nodeRepository = nodeRepository;
     this.fileVersionRepository = fileVersionRepository;
     this.shareRepository = shareRepository;
     this.permissionsChecker = permissionsChecker;
     this.tombstoneRepository = tombstoneRepository;
-    this.shareDataFetcher = shareDataFetcher;
     this.filesConfig = filesConfig;
+    this.dataFetcherExecutors = dataFetcherExecutors;
+    this.eventBus = eventBus;
 
     this.maxNumberOfVersions = Integer.parseInt(ServiceDiscoverHttpClient
       .defaultURL(ServiceDiscover.SERVICE_NAME)
@@ -153,99 +166,148 @@ public class NodeDataFetcher {
     String requesterId,
     ResultPath path
   ) {
-    Map<String, Object> result = new HashMap<>();
-    Map<String, String> nodeContext = new HashMap<>();
-    Optional<GraphQLError> versionError = Optional.empty();
-
-    result.put(Files.GraphQL.Node.ID, node.getId());
-    result.put(Files.GraphQL.Node.CREATED_AT, node.getCreatedAt());
-    result.put(Files.GraphQL.Node.UPDATED_AT, node.getUpdatedAt());
-    result.put(Files.GraphQL.Node.NAME, node.getName());
-    result.put(Files.GraphQL.Node.TYPE, node.getNodeType().name());
-
-    result.put(
-      Files.GraphQL.Node.ROOT_ID,
-      node.getNodeType().equals(NodeType.ROOT)
-        ? node.getId()
-        : node.getAncestorsList().get(0)
+    return convertNodeToDataFetcherResult(
+      node,
+      version,
+      requesterId,
+      path,
+      NodeProjection.full()
     );
+  }
 
-    result.put(
-      GraphQL.Node.FLAGGED,
-      node
-        .getCustomAttributes()
-        .stream()
-        .filter(attributes -> requesterId.equals(attributes.getUserId()))
-        .findFirst()
-        .map(NodeCustomAttributes::getFlag)
-        .orElse(false)
+  private DataFetcherResult<Map<String, Object>> convertNodeToDataFetcherResult(
+    Node node,
+    Integer version,
+    String requesterId,
+    ResultPath path,
+    NodeProjection projection
+  ) {
+    // A single (cached) version is fetched instead of lazily loading all the versions of the node
+    Optional<FileVersion> optFileVersion = isFile(node) && projection.withFileVersion()
+      ? fileVersionRepository.getFileVersion(node.getId(), version)
+      : Optional.empty();
+
+    return convertNodeToDataFetcherResult(
+      node,
+      version,
+      optFileVersion,
+      requesterId,
+      path,
+      projection
     );
+  }
 
-    node
-      .getDescription()
-      .ifPresent(description -> result.put(Files.GraphQL.Node.DESCRIPTION, description));
-
-    node
-      .getParentId()
-      .ifPresent(parentId -> nodeContext.put(Files.GraphQL.Node.PARENT, parentId));
-
-    if (!node.getNodeType().equals(NodeType.FOLDER) && !node.getNodeType().equals(NodeType.ROOT)) {
-      node
-        .getExtension()
-        .ifPresent(extension -> result.put(Files.GraphQL.Node.EXTENSION, extension));
-
-      Optional<FileVersion> optFileVersion = node
-        .getFileVersions()
-        .stream()
-        .filter(fileVersion -> version.equals(fileVersion.getVersion()))
-        .findFirst();
-
-      if (optFileVersion.isPresent()) {
-        result.putAll(convertFileVersionToGraphQLMap(optFileVersion.get()));
-      } else {
-        versionError = Optional.of(
-          GraphQLResultErrors.fileVersionNotFound(node.getId(), version, path));
-      }
-    }
-
-    nodeContext.put(Files.GraphQL.Node.OWNER, node.getOwnerId());
-    nodeContext.put(Files.GraphQL.Node.CREATOR, node.getCreatorId());
-    nodeContext.put(Files.GraphQL.Node.ID, node.getId());
+  private DataFetcherResult<Map<String, Object>> convertNodeToDataFetcherResult(
+    Node node,
+    Integer version,
+    Optional<FileVersion> optFileVersion,
+    String requesterId,
+    ResultPath path
+  ) {
+    return convertNodeToDataFetcherResult(
+      node,
+      version,
+      optFileVersion,
+      requesterId,
+      path,
+      NodeProjection.full()
+    );
+  }
 
-    // TODO Move up when the last_editor coherent between node and file version will be coherent
-    Optional
-      .ofNullable((String) result.get(GraphQL.Node.LAST_EDITOR))
-      .ifPresent(lastEditorId -> nodeContext.put(Files.GraphQL.Node.LAST_EDITOR, lastEditorId));
+  /**
+   * Converts a {@link Node} using the {@link FileVersion} already resolved by the caller (for
+   * example via the {@link DataLoaders#FILE_VERSION_BATCH_LOADER}) instead of lazily loading all
+   * the versions of the node.
+   * </p>
+   * Only the attributes included in the {@link NodeProjection} are read from the node: reading the
+   * others would lazily load them with an additional query.
+   * </p>
+   * The same immutable {@link NodeView} is used both as data and as local context of the result.
+   */
+  private DataFetcherResult<Map<String, Object>> convertNodeToDataFetcherResult(
+    Node node,
+    Integer version,
+    Optional<FileVersion> optFileVersion,
+    String requesterId,
+    ResultPath path,
+    NodeProjection projection
+  ) {
+    boolean isFile = isFile(node);
+    Optional<GraphQLError> versionError = isFile
+      && projection.withFileVersion()
+      && optFileVersion.isEmpty()
+      ? Optional.of(GraphQLResultErrors.fileVersionNotFound(node.getId(), version, path))
+      : Optional.empty();
+
+    NodeView nodeView = NodeView.createFromNode(
+      node,
+      isFile ? optFileVersion : Optional.empty(),
+      projection.withCustomAttributes()
+        ? Optional.of(isFlagged(node, requesterId))
+        : Optional.empty(),
+      projection.withDescription()
+    );
 
+    // The view contains also the ids needed by the child fields, so it is used as local context
     DataFetcherResult.Builder<Map<String, Object>> resultBuilder = new DataFetcherResult
       .Builder<Map<String, Object>>()
-      .data(result)
-      .localContext(nodeContext);
+      .data(nodeView)
+      .localContext(nodeView);
 
     return versionError
       .map(error -> resultBuilder.error(error).build())
       .orElse(resultBuilder.build());
   }
 
-  private Map<String, Object> convertFileVersionToGraphQLMap(FileVersion fileVersion) {
-
-    Map<String, Object> fileVersionMap = new HashMap<>();
-    fileVersionMap.put(Files.GraphQL.FileVersion.UPDATED_AT, fileVersion.getUpdatedAt());
-    fileVersionMap.put(GraphQL.FileVersion.LAST_EDITOR, fileVersion.getLastEditorId());
-    fileVersionMap.put(Files.GraphQL.FileVersion.VERSION, fileVersion.getVersion());
-    fileVersionMap.put(Files.GraphQL.FileVersion.MIME_TYPE, fileVersion.getMimeType());
-    fileVersionMap.put(Files.GraphQL.FileVersion.SIZE, fileVersion.getSize());
-    fileVersionMap.put(Files.GraphQL.FileVersion.KEEP_FOREVER, fileVersion.isKeptForever());
-    fileVersionMap.put(Files.GraphQL.FileVersion.DIGEST, fileVersion.getDigest());
-    fileVersion
-      .getClonedFromVersion()
-      .ifPresent(clonedFromVersion -> fileVersionMap.put(
-        GraphQL.FileVersion.CLONED_FROM_VERSION,
-        clonedFromVersion)
-      );
-    return fileVersionMap;
+  private boolean isFile(Node node) {
+    return !node.getNodeType().equals(NodeType.FOLDER) && !node.getNodeType().equals(NodeType.ROOT);
   }
 
+  private boolean isFlagged(
+    Node node,
+    String requesterId
+  ) {
+    for (NodeCustomAttributes customAttributes : node.getCustomAttributes()) {
+      if (requesterId.equals(customAttributes.getUserId())) {
+        return customAttributes.getFlag();
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Builds the {@link NodeProjection} of the nodes returned by a {@link DataFetcher} inspecting the
+   * fields selected in the GraphQL request.
+   *
+   * @param selectionSet is the {@link DataFetchingFieldSelectionSet} of the field resolved by the
+   * {@link DataFetcher}
+   * @param nodesField is a {@link String} representing the path of the nodes in the selection set
+   * (for example <code>nodes/</code> for a NodePage) or an empty string if the field itself returns
+   * the nodes
+   *
+   * @return the {@link NodeProjection} containing only what is needed to build the response.
+   */
+  private NodeProjection buildNodeProjection(
+    DataFetchingFieldSelectionSet selectionSet,
+    String nodesField
+  ) {
+    return new NodeProjection(
+      selectionSet.contains(nodesField + Files.GraphQL.Node.DESCRIPTION),
+      selectionSet.contains(nodesField + Files.GraphQL.Node.FLAGGED),
+      selectionSet.containsAnyOf(
+        nodesField + Files.GraphQL.FileVersion.VERSION,
+        nodesField + Files.GraphQL.FileVersion.UPDATED_AT,
+        nodesField + Files.GraphQL.FileVersion.LAST_EDITOR,
+        nodesField + Files.GraphQL.FileVersion.MIME_TYPE,
+        nodesField + Files.GraphQL.FileVersion.SIZE,
+        nodesField + Files.GraphQL.FileVersion.KEEP_FOREVER,
+        nodesField + Files.GraphQL.FileVersion.CLONED_FROM_VERSION,
+        nodesField + Files.GraphQL.FileVersion.DIGEST
+      )
+    );
+  }
+
+
 
   /**
    * This {@link DataFetcher} must be used for the <code>getNode</code> query. In particular:
@@ -284,7 +346,7 @@ public class NodeDataFetcher {
         .ofNullable(nodeId)
         .map(nId ->
           environment
-            .getDataLoader("NodeBatchLoader")
+            .getDataLoader(DataLoaders.NODE_BATCH_LOADER)
             .load(nId)
             .thenApply(node -> {
               String requesterId =
@@ -312,7 +374,7 @@ public class NodeDataFetcher {
                   .error(GraphQLResultErrors.nodeNotFound(nId, path))
                   .build()
             ))
-        .orElse(CompletableFuture.supplyAsync(() ->
+        .orElse(CompletableFuture.completedFuture(
           new DataFetcherResult.Builder<Map<String, Object>>().build()
         ));
     };
@@ -424,21 +486,26 @@ public class NodeDataFetcher {
             int numberNodesToSkip = optCursor.map(cursor -> childrenIds.indexOf(cursor) + 1)
               .orElse(0);
 
+            NodeProjection projection = buildNodeProjection(environment.getSelectionSet(), "");
+
             return Optional.of(nodeRepository.getNodes(childrenIds.stream()
                 .skip(numberNodesToSkip)
                 .limit(limit)
-                .collect(Collectors.toList()), optSort)
+                .collect(Collectors.toList()), optSort, projection)
               .map(childNode -> this.convertNodeToDataFetcherResult(
                 childNode,
+                childNode.getCurrentVersion(),
                 requesterId,
-                environment.getExecutionStepInfo().getPath())
+                environment.getExecutionStepInfo().getPath(),
+                projection)
               )
               .collect(Collectors.toList()));
 
           })
           .orElse(Optional.of(new ArrayList<>()))
           .get();
-      }
+      },
+      dataFetcherExecutors.getExecutor(environment)
     );
   }
 
@@ -488,10 +555,11 @@ public class NodeDataFetcher {
           Optional.empty(),
           Optional.empty(),
           Optional.of(limit),
-         Optional.empty(),
+          Optional.empty(),
           Optional.empty(),
           Collections.emptyList(),
-          optPageToken
+          optPageToken,
+          buildNodeProjection(environment.getSelectionSet(), NodePage.NODES + "/")
         );
 
         Map<String, List<Node>> localContext = new HashMap<>();
@@ -505,7 +573,8 @@ public class NodeDataFetcher {
           .data(results)
           .localContext(localContext)
           .build();
-      }
+      },
+      dataFetcherExecutors.getExecutor(environment)
     );
   }
 
@@ -588,6 +657,9 @@ public class NodeDataFetcher {
               // Add new inherited shares for the new folder.
               // Create share also for the requester if it is not the owner of the parent folder
               createIndirectShare(parentId, createdFolder);
+              eventBus.publish(
+                new NodeEvent(parent.getId(), createdFolder.getId(), NodeEvent.Action.CREATED)
+              );
 
               return convertNodeToDataFetcherResult(
                 createdFolder,
@@ -605,7 +677,8 @@ public class NodeDataFetcher {
           .Builder<Map<String, Object>>()
           .error(GraphQLResultErrors.nodeWriteError(parentId.trim(), resultPath))
           .build();
-      }
+      },
+      dataFetcherExecutors.getExecutor(environment)
     );
   }
 
@@ -644,7 +717,53 @@ public class NodeDataFetcher {
       return new DataFetcherResult.Builder<Permissions>()
         .data(Permissions.build(permissionsChecker.getPermissions(nodeId, requesterId)))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
+  }
+
+  /**
+   * <p>This {@link DataFetcher} returns the aggregates of the descendants of a folder. They are
+   * fetched through the {@link DataLoaders#FOLDER_AGGREGATES_BATCH_LOADER} so that, when the
+   * aggregates of a list of folders are requested, they are all fetched with a single query.</p>
+   * <p>It returns null if the aggregates of the folder are not computed yet.</p>
+   *
+   * @return an asynchronous {@link DataFetcher} containing a {@link Map} of the aggregates.
+   */
+  public DataFetcher<CompletableFuture<DataFetcherResult<Map<String, Object>>>> getFolderAggregatesFetcher() {
+    return environment -> {
+      Map<String, Object> partialResult = environment.getSource();
+      String folderId = (String) partialResult.get(Files.GraphQL.Node.ID);
+
+      Optional.ofNullable(folderId)
+        .orElseThrow(AbortExecutionException::new);
+
+      DataLoader<String, FolderAggregates> folderAggregatesLoader =
+        environment.getDataLoader(DataLoaders.FOLDER_AGGREGATES_BATCH_LOADER);
+
+      return folderAggregatesLoader
+        .load(folderId)
+        .thenApply(folderAggregates -> {
+          Map<String, Object> aggregates = Optional
+            .ofNullable(folderAggregates)
+            .map(presentAggregates -> {
+              Map<String, Object> result = new HashMap<>();
+              result.put(Files.GraphQL.FolderAggregates.SIZE, presentAggregates.getSize());
+              result.put(
+                Files.GraphQL.FolderAggregates.FILES_COUNT,
+                presentAggregates.getFilesCount()
+              );
+              result.put(
+                Files.GraphQL.FolderAggregates.FOLDERS_COUNT,
+                presentAggregates.getFoldersCount()
+              );
+              return result;
+            })
+            .orElse(null);
+
+          return new DataFetcherResult.Builder<Map<String, Object>>()
+            .data(aggregates)
+            .build();
+        });
+    };
   }
 
   /**
@@ -726,8 +845,10 @@ public class NodeDataFetcher {
         optDescription.ifPresent(nodeToUpdate::setDescription);
         optFlagged.ifPresent(flag -> nodeRepository.flagForUser(nodeId, requesterId, flag));
         nodeToUpdate.setLastEditorId(requesterId);
+        Node updatedNode = nodeRepository.updateNode(nodeToUpdate);
+        eventBus.publish(new NodeEvent(parentFolderId, nodeId, NodeEvent.Action.UPDATED));
         return convertNodeToDataFetcherResult(
-          nodeRepository.updateNode(nodeToUpdate),
+          updatedNode,
           requesterId,
           environment.getExecutionStepInfo().getPath()
         );
@@ -736,9 +857,16 @@ public class NodeDataFetcher {
       return new DataFetcherResult.Builder<Map<String, Object>>()
         .error(GraphQLResultErrors.nodeNotFound(nodeId, path))
         .build();
-    }));
+    }, dataFetcherExecutors.getExecutor(environment)));
   }
 
+  /**
+   * This service flags or unflags a batch of {@link Node}s for the requester. The permissions of
+   * all the nodes are checked together and the flags are written with a single statement.
+   *
+   * @return a {@link List<String>} containing the ids of the nodes the requester can read and that
+   * have been flagged or unflagged
+   */
   public DataFetcher<CompletableFuture<List<String>>> flagNodes() {
     return environment -> CompletableFuture.supplyAsync(() -> {
       String requesterId = ((User) environment.getGraphQlContext()
@@ -746,14 +874,16 @@ public class NodeDataFetcher {
       List<String> nodesIds = environment.getArgument(FlagNodes.NODE_IDS);
       boolean starNodes = environment.getArgument(FlagNodes.FLAG);
 
-      return nodesIds
+      Map<String, ACL> permissions = permissionsChecker.getPermissions(nodesIds, requesterId);
+      List<String> flaggableNodeIds = nodesIds
         .stream()
-        .map(nodeId -> {
-          nodeRepository.flagForUser(nodeId, requesterId, starNodes);
-          return nodeId;
-        })
+        .distinct()
+        .filter(nodeId -> permissions.get(nodeId).has(SharePermission.READ_ONLY))
         .collect(Collectors.toList());
-    });
+
+      nodeRepository.flagForUser(flaggableNodeIds, requesterId, starNodes);
+      return flaggableNodeIds;
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -796,7 +926,10 @@ public class NodeDataFetcher {
             trashedNode.setParentId(RootId.TRASH_ROOT);
             nodeRepository.trashNode(trashedNode.getId(), nodeParentId);
             nodeRepository.updateNode(trashedNode);
-            cascadeUpdateAncestors(trashedNode);
+            nodeRepository.updateDescendantsAncestors(trashedNode);
+            eventBus.publish(
+              new NodeEvent(nodeParentId, trashedNode.getId(), NodeEvent.Action.TRASHED)
+            );
           });
       }
 
@@ -808,7 +941,7 @@ public class NodeDataFetcher {
               .getPath()))
           .collect(Collectors.toList()))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -885,7 +1018,7 @@ public class NodeDataFetcher {
                   );
 
                   if (node.getNodeType() == NodeType.FOLDER) {
-                    shareDataFetcher.cascadeUpsertShare(
+                    shareRepository.upsertInheritedShares(
                       node.getId(),
                       share.getTargetUserId(),
                       share.getPermissions(),
@@ -900,7 +1033,10 @@ public class NodeDataFetcher {
             node.setFullName(newName);
             nodeRepository.restoreNode(node.getId());
             nodeRepository.updateNode(node);
-            cascadeUpdateAncestors(node);
+            nodeRepository.updateDescendantsAncestors(node);
+            eventBus.publish(
+              new NodeEvent(node.getParentId().get(), node.getId(), NodeEvent.Action.RESTORED)
+            );
             return node;
           }
         )
@@ -922,7 +1058,7 @@ public class NodeDataFetcher {
         )
         .collect(Collectors.toList()));
       return results;
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -946,7 +1082,7 @@ public class NodeDataFetcher {
         .ofNullable(((Map<String, String>) environment.getLocalContext()).get(nodeIdField))
         .map(nodeId ->
           environment
-            .getDataLoader("NodeBatchLoader")
+            .getDataLoader(DataLoaders.NODE_BATCH_LOADER)
             .load(nodeId)
             .thenApply(node -> convertNodeToDataFetcherResult(
               (Node) node,
@@ -955,7 +1091,7 @@ public class NodeDataFetcher {
             )
             .exceptionally((e) -> new DataFetcherResult.Builder<Map<String, Object>>().build())
         )
-        .orElse(CompletableFuture.supplyAsync(() ->
+        .orElse(CompletableFuture.completedFuture(
           new DataFetcherResult.Builder<Map<String, Object>>().build())
         );
 
@@ -980,56 +1116,22 @@ public class NodeDataFetcher {
         .getId();
       String nodeId = environment.getArgument(InputParameters.NODE_ID);
 
-      if (permissionsChecker.getPermissions(nodeId, requesterId).has(SharePermission.READ_ONLY)) {
-        return nodeRepository
-          .getNode(nodeId)
-          .map(node -> {
-            List<String> pathNodeIds = new ArrayList<>(node.getAncestorsList());
-            pathNodeIds.add(nodeId);
-            List<Node> treeNodes = nodeRepository
-              .getNodes(pathNodeIds, Optional.empty())
-              // The sort is necessary to reflect the order of the nodes in the path
-              .sorted(Comparator.comparing(nodeToSort -> pathNodeIds.indexOf(nodeToSort.getId())))
-              .collect(Collectors.toList());
+      List<Node> pathNodes = nodeRepository.getVisiblePath(nodeId, requesterId);
 
-            if (node.getNodeType().equals(NodeType.ROOT) || node.getOwnerId().equals(requesterId)) {
-              return treeNodes
-                .stream()
-                .map(currentNode -> convertNodeToDataFetcherResult(currentNode, requesterId, path))
-                .collect(Collectors.toList());
-            } else {
-              List<Share> shares = shareRepository.getShares(
-                treeNodes.stream().map(Node::getId).collect(Collectors.toList()),
-                requesterId
-              );
-              List<Node> sharedNodes = treeNodes
-                .stream()
-                .filter(treeNode ->
-                  shares.stream().anyMatch(share -> share.getNodeId().equals(treeNode.getId()))
-                )
-                .collect(Collectors.toList());
-
-              return treeNodes
-                .subList(treeNodes.indexOf(sharedNodes.get(0)), treeNodes.size())
-                .stream()
-                .map(treeNode -> convertNodeToDataFetcherResult(treeNode, requesterId, path))
-                .collect(Collectors.toList());
-            }
-          })
-          .orElse(Collections.singletonList(
-            DataFetcherResult
-              .<Map<String, Object>>newResult()
-              .error(GraphQLResultErrors.nodeNotFound(nodeId, path))
-              .build()
-          ));
+      if (pathNodes.isEmpty()) {
+        return Collections.singletonList(
+          DataFetcherResult
+            .<Map<String, Object>>newResult()
+            .error(GraphQLResultErrors.nodeNotFound(nodeId, path))
+            .build()
+        );
       }
-      return Collections.singletonList(
-        DataFetcherResult
-          .<Map<String, Object>>newResult()
-          .error(GraphQLResultErrors.nodeNotFound(nodeId, path))
-          .build()
-      );
-    });
+
+      return pathNodes
+        .stream()
+        .map(pathNode -> convertNodeToDataFetcherResult(pathNode, requesterId, path))
+        .collect(Collectors.toList());
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -1060,7 +1162,7 @@ public class NodeDataFetcher {
       return new DataFetcherResult.Builder<List<Map<String, Object>>>()
         .data(result)
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -1160,7 +1262,8 @@ public class NodeDataFetcher {
         optNodeType,
         optOwnerId,
         optKeywords.orElse(Collections.emptyList()),
-        optPageToken);
+        optPageToken,
+        buildNodeProjection(environment.getSelectionSet(), Files.GraphQL.NodePage.NODES + "/"));
       result.put(Files.GraphQL.NodePage.PAGE_TOKEN, findResult.getRight());
 
       nodeContext.put(Files.GraphQL.NodePage.NODES, findResult.getLeft());
@@ -1169,7 +1272,7 @@ public class NodeDataFetcher {
         .localContext(nodeContext)
         .build();
 
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -1185,22 +1288,51 @@ public class NodeDataFetcher {
    * local context.
    */
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>> nodePageFetcher() {
-    return environment -> CompletableFuture.supplyAsync(() -> {
-      return Optional.ofNullable(environment.getLocalContext())
-        .map(context -> {
-          return ((Map<String, List<Node>>) context).get(Files.GraphQL.NodePage.NODES)
-            .stream()
-            .map(node ->
-              convertNodeToDataFetcherResult(
-                node,
-                ((User) environment.getGraphQlContext().get(Context.REQUESTER)).getId(),
-                environment.getExecutionStepInfo().getPath()
-              )
-            )
-            .collect(Collectors.toList());
-        })
-        .orElse(Collections.emptyList());
-    });
+    return environment -> {
+      String requesterId = ((User) environment.getGraphQlContext().get(Context.REQUESTER)).getId();
+      ResultPath path = environment.getExecutionStepInfo().getPath();
+      DataLoader<String, Optional<FileVersion>> fileVersionLoader =
+        environment.getDataLoader(DataLoaders.FILE_VERSION_BATCH_LOADER);
+      // The nodes in the local context were loaded with the same projection
+      NodeProjection projection = buildNodeProjection(environment.getSelectionSet(), "");
+
+      // The current version of every file is loaded in batch, and only if one of its attributes is
+      // requested: this avoids to lazily fetch all the versions of each node during the conversion
+      List<CompletableFuture<DataFetcherResult<Map<String, Object>>>> results = Optional
+        .ofNullable(environment.getLocalContext())
+        .map(context -> ((Map<String, List<Node>>) context).get(Files.GraphQL.NodePage.NODES))
+        .orElse(Collections.emptyList())
+        .stream()
+        .map(node -> isFile(node) && projection.withFileVersion()
+          ? fileVersionLoader
+          .load(FileVersionBatchLoader.buildKey(node.getId(), node.getCurrentVersion()))
+          .thenApply(optFileVersion -> convertNodeToDataFetcherResult(
+            node,
+            node.getCurrentVersion(),
+            optFileVersion,
+            requesterId,
+            path,
+            projection
+          ))
+          : CompletableFuture.completedFuture(convertNodeToDataFetcherResult(
+            node,
+            node.getCurrentVersion(),
+            Optional.empty(),
+            requesterId,
+            path,
+            projection
+          ))
+        )
+        .collect(Collectors.toList());
+
+      return CompletableFuture
+        .allOf(results.toArray(new CompletableFuture[0]))
+        .thenApply(ignored -> results
+          .stream()
+          .map(CompletableFuture::join)
+          .collect(Collectors.toList())
+        );
+    };
   }
 
   /**
@@ -1258,9 +1390,11 @@ public class NodeDataFetcher {
 
           List<DataFetcherResult<Map<String, Object>>> movedNodesResult = new ArrayList<>();
           if (!nodeIdsToMove.isEmpty()) {
+            Map<String, String> sourceFolderIds = new HashMap<>();
             nodeIdsToMove
                 .forEach(nodeId -> {
                     Node node = nodeRepository.getNode(nodeId).get();
+                    node.getParentId().ifPresent(parentId -> sourceFolderIds.put(nodeId, parentId));
 
                     // Search for a new name only if not moving to same parent directory because obviously if so
                     // there will always be a node with that name already present causing node to be wrongly renamed
@@ -1273,57 +1407,20 @@ public class NodeDataFetcher {
 
                     nodeRepository.updateNode(node);
                 });
-            nodeRepository.moveNodes(nodeIdsToMove, optDestinationFolder.get());
-
-            /*
-              We must align ancestors of moved nodes
-              We must align shares of moved nodes and it can be done in two steps:
-              1. Remove every share of the node to move (and its child up to the leaves, if it is a folder)
-              2. Create all the shares of the destination folder (if it has at least one) for the node to move
-                 (and for its child up to the leaves, if it is a folder)
-             */
-
-            nodeIdsToMove
-              .forEach(nodeId -> {
-                Node node = nodeRepository.getNode(nodeId).get();
-
-                cascadeUpdateAncestors(node);
-                // Remove inherited shares on source node
-                shareRepository
-                  .getShares(nodeId, Collections.emptyList())
-                  .stream()
-                  .filter(share -> !share.isDirect())
-                  .forEach(share -> {
-                    shareRepository.deleteShare(nodeId, share.getTargetUserId());
-                    shareDataFetcher.cascadeDeleteShare(nodeId, share.getTargetUserId());
-                  });
-                // Add new inherited shares from destination node
-                shareRepository
-                  .getShares(destinationFolderId, Collections.emptyList())
-                  .forEach(share -> {
-                    Optional<Share> sourceShare = shareRepository.getShare(nodeId,
-                      share.getTargetUserId());
-                    // If there's a share on source node is one of the direct shares i did not delete on previous step
-                    // I still added the second condition because of safety reasons and to be sure i only operate on
-                    // inherited share if other operations in future make it so shares are still present
-                    if (!sourceShare.isPresent() || !sourceShare.get()
-                      .isDirect()) {
-                      shareRepository.upsertShare(
-                        nodeId,
-                        share.getTargetUserId(),
-                        share.getPermissions(),
-                        false,
-                        false,
-                        share.getExpiredAt()
-                      );
-                      shareDataFetcher.cascadeUpsertShare(
-                        nodeId,
-                        share.getTargetUserId(),
-                        share.getPermissions(),
-                        share.getExpiredAt());
-                    }
-                  });
-              });
+            // Moves the subtrees of the nodes, aligning their ancestors and their inherited shares
+            // to the destination folder, in a single transaction
+            nodeRepository.moveSubtrees(nodeIdsToMove, optDestinationFolder.get());
+
+            // Notify both the source and the destination folders of the moved nodes
+            nodeIdsToMove.forEach(nodeId -> {
+              Optional
+                .ofNullable(sourceFolderIds.get(nodeId))
+                .filter(sourceFolderId -> !sourceFolderId.equals(destinationFolderId))
+                .ifPresent(sourceFolderId ->
+                  eventBus.publish(new NodeEvent(sourceFolderId, nodeId, NodeEvent.Action.MOVED))
+                );
+              eventBus.publish(new NodeEvent(destinationFolderId, nodeId, NodeEvent.Action.MOVED));
+            });
 
             movedNodesResult.addAll(nodeRepository
               .getNodes(nodeIdsToMove, Optional.empty())
@@ -1351,30 +1448,7 @@ public class NodeDataFetcher {
       return Collections.singletonList(new Builder<Map<String, Object>>()
         .error(GraphQLResultErrors.nodeWriteError(destinationFolderId, resultPath))
         .build());
-    });
-  }
-
-
-  /**
-   * This method updates the ancestors of all the subnodes of a moved node and recursively navigates
-   * the tree for propagating the change
-   *
-   * @param parentNode
-   */
-  void cascadeUpdateAncestors(Node parentNode) {
-    List<String> childrenIds = nodeRepository.getChildrenIds(parentNode.getId(), Optional.empty(),
-      Optional.empty(), true);
-    if (!childrenIds.isEmpty()) {
-      nodeRepository.moveNodes(childrenIds, parentNode);
-      List<Node> childrenNodes = nodeRepository
-        .getNodes(childrenIds, Optional.empty())
-        .collect(Collectors.toList());
-      childrenNodes
-        .stream()
-        .filter(n -> n.getNodeType()
-          .equals(NodeType.FOLDER))
-        .forEach(this::cascadeUpdateAncestors);
-    }
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
 
@@ -1398,14 +1472,17 @@ public class NodeDataFetcher {
         )
         .collect(Collectors.toList());
 
-      deleteNodes(nodesToDelete);
-
       List<String> nodeIdsToDelete = nodesToDelete
         .stream()
         .map(Node::getId)
         .collect(Collectors.toList());
 
-      nodeIdsToDelete.forEach(this::cascadeDeleteNode);
+      nodeRepository.deleteSubtrees(nodeIdsToDelete);
+      nodesToDelete.forEach(node -> eventBus.publish(new NodeEvent(
+        node.getParentId().orElse(RootId.TRASH_ROOT),
+        node.getId(),
+        NodeEvent.Action.DELETED
+      )));
 
       return new Builder<List<String>>()
         .data(nodeIdsToDelete)
@@ -1415,49 +1492,7 @@ public class NodeDataFetcher {
           .collect(Collectors.toList())
         )
         .build();
-    });
-  }
-
-  private void cascadeDeleteNode(String nodeId) {
-    List<String> childrenIds = nodeRepository.getChildrenIds(nodeId, Optional.empty(),
-      Optional.empty(), true);
-
-    if (!childrenIds.isEmpty()) {
-      List<Node> children = nodeRepository.getNodes(childrenIds, Optional.empty())
-        .collect(Collectors.toList());
-      deleteNodes(children);
-      children
-        .stream()
-        .filter(node -> node.getNodeType()
-          .equals(NodeType.FOLDER))
-        .forEach(node -> cascadeDeleteNode(node.getId()));
-    }
-
-    // Delete all shares of nodes that are in trash, but not in the hierarchy of the nodeId.
-    // This means that these nodes were children of nodeId, but they were trashed before it was trashed.
-    shareRepository.deleteSharesBulk(nodeRepository.getTrashedNodeIdsByOldParent(nodeId));
-  }
-
-  private void deleteNodes(List<Node> nodes) {
-    List<String> nodeIds = nodes.stream()
-      .map(Node::getId)
-      .collect(Collectors.toList());
-
-    if (!nodeIds.isEmpty()) {
-      shareRepository.deleteSharesBulk(nodeIds);
-
-      nodes.stream()
-        .filter(node -> !node.getNodeType()
-          .equals(NodeType.FOLDER))
-        .forEach(node ->
-          tombstoneRepository.createTombstonesBulk(
-            fileVersionRepository.getFileVersions(node.getId(), List.of(FileVersionSort.VERSION_DESC)),
-            node.getOwnerId()
-          )
-        );
-
-      nodeRepository.deleteNodes(nodeIds);
-    }
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -1505,6 +1540,7 @@ public class NodeDataFetcher {
       .get();
 
     // TODO: make the copy async
+    long copyStart = System.nanoTime();
     Try
       .of(() -> filesConfig
         .getStoragesClient()
@@ -1515,6 +1551,7 @@ public class NodeDataFetcher {
           false
         )
       )
+      .andFinally(() -> OperationTrace.recordSince(SpanType.HTTP, "storages copy", copyStart))
       .onSuccess(copiedBlobResponse -> {
         fileVersionRepository.createNewFileVersion(
           createdNode.getId(),
@@ -1641,7 +1678,7 @@ public class NodeDataFetcher {
 
         if (nodeToShare.getNodeType()
           .equals(NodeType.FOLDER)) {
-          shareDataFetcher.cascadeUpsertShare(
+          shareRepository.upsertInheritedShares(
             nodeToShare.getId(),
             share.getTargetUserId(),
             share.getPermissions(),
@@ -1753,6 +1790,11 @@ public class NodeDataFetcher {
                   copyFolderCascade(nodeDup.getId(), copiedFolder, requesterId,
                     Optional.of(newName));
                   createIndirectShare(destinationFolderId, copiedFolder);
+                  eventBus.publish(new NodeEvent(
+                    destinationFolderId,
+                    copiedFolder.getId(),
+                    NodeEvent.Action.CREATED
+                  ));
                 } else {
                   Optional<Node> optCopiedFile = copyFile(
                     nodeDup,
@@ -1766,6 +1808,11 @@ public class NodeDataFetcher {
                       convertNodeToDataFetcherResult(optCopiedFile.get(), requesterId, resultPath)
                     );
                     createIndirectShare(destinationFolderId, optCopiedFile.get());
+                    eventBus.publish(new NodeEvent(
+                      destinationFolderId,
+                      optCopiedFile.get().getId(),
+                      NodeEvent.Action.CREATED
+                    ));
                   } else {
                     List<DataFetcherResult<Map<String, Object>>> errors =
                       errorsOfNodesWithoutPermission.get();
@@ -1796,6 +1843,11 @@ public class NodeDataFetcher {
                     convertNodeToDataFetcherResult(copiedFolder, requesterId, resultPath));
                   copyFolderCascade(node.getId(), copiedFolder, requesterId, Optional.empty());
                   createIndirectShare(destinationFolderId, copiedFolder);
+                  eventBus.publish(new NodeEvent(
+                    destinationFolderId,
+                    copiedFolder.getId(),
+                    NodeEvent.Action.CREATED
+                  ));
                 } else {
                   Optional<Node> optCopiedFile = copyFile(
                     node,
@@ -1809,6 +1861,11 @@ public class NodeDataFetcher {
                       convertNodeToDataFetcherResult(optCopiedFile.get(), requesterId, resultPath)
                     );
                     createIndirectShare(destinationFolderId, optCopiedFile.get());
+                    eventBus.publish(new NodeEvent(
+                      destinationFolderId,
+                      optCopiedFile.get().getId(),
+                      NodeEvent.Action.CREATED
+                    ));
                   } else {
                     List<DataFetcherResult<Map<String, Object>>> errors =
                       errorsOfNodesWithoutPermission.get();
@@ -1836,7 +1893,7 @@ public class NodeDataFetcher {
       return Collections.singletonList(new Builder<Map<String, Object>>()
         .error(GraphQLResultErrors.nodeWriteError(destinationFolderId, resultPath))
         .build());
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>> getVersionsFetcher() {
@@ -1875,7 +1932,7 @@ public class NodeDataFetcher {
       return Collections.singletonList(new Builder<Map<String, Object>>()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build());
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<List<Integer>>>> deleteVersionsFetcher() {
@@ -1928,7 +1985,7 @@ public class NodeDataFetcher {
       return new Builder<List<Integer>>()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<List<Integer>>>> keepVersionsFetcher() {
@@ -2004,7 +2061,7 @@ public class NodeDataFetcher {
       return new Builder<List<Integer>>()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<Map<String, Object>>>> cloneVersionFetcher() {
@@ -2046,6 +2103,7 @@ public class NodeDataFetcher {
           .map(fileVersion -> {
             Integer newVersion = node.getCurrentVersion() + 1;
 
+            long copyStart = System.nanoTime();
             return Try
               .of(() -> filesConfig
                 .getStoragesClient()
@@ -2055,6 +2113,9 @@ public class NodeDataFetcher {
                   false
                 )
               )
+              .andFinally(() ->
+                OperationTrace.recordSince(SpanType.HTTP, "storages copy", copyStart)
+              )
               .onSuccess(copiedBlobResponse -> {
                 Optional<FileVersion> newFileVersion = fileVersionRepository.createNewFileVersion(
                   node.getId(),
@@ -2068,6 +2129,11 @@ public class NodeDataFetcher {
 
                 node.setCurrentVersion(newVersion);
                 nodeRepository.updateNode(node);
+                eventBus.publish(new NodeEvent(
+                  node.getParentId().orElse(RootId.LOCAL_ROOT),
+                  node.getId(),
+                  NodeEvent.Action.UPDATED
+                ));
 
                 newFileVersion.get().setClonedFromVersion(versionToClone);
                 fileVersionRepository.updateFileVersion(newFileVersion.get());
@@ -2106,6 +2172,6 @@ public class NodeDataFetcher {
       return new Builder<Map<String, Object>>()
         .error(GraphQLResultErrors.nodeWriteError(nodeId, path))
         .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 }
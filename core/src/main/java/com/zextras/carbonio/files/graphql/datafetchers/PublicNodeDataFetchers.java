@@ -9,15 +9,19 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.FindNodes;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.GetPublicNode;
 import com.zextras.carbonio.files.Files.GraphQL.NodePage;
+import com.zextras.carbonio.files.dal.dao.ebean.Link;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.repositories.interfaces.LinkRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import com.zextras.carbonio.files.graphql.PublicQueryScope;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
 import com.zextras.carbonio.files.graphql.types.PublicNode;
 import graphql.execution.DataFetcherResult;
 import graphql.execution.ResultPath;
 import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.TypeResolver;
 import graphql.schema.idl.EnumValuesProvider;
@@ -32,13 +36,18 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 
 public class PublicNodeDataFetchers {
 
-  private final NodeRepository nodeRepository;
-  private final LinkRepository linkRepository;
+  private final NodeRepository       nodeRepository;
+  private final LinkRepository       linkRepository;
+  private final DataFetcherExecutors dataFetcherExecutors;
 
   @Inject
-  public PublicNodeDataFetchers(NodeRepository nodeRepository, LinkRepository linkRepository) {
+  public PublicNodeDataFetchers(
+      NodeRepository nodeRepository,
+      LinkRepository linkRepository,
+      DataFetcherExecutors dataFetcherExecutors) {
     this.nodeRepository = nodeRepository;
     this.linkRepository = linkRepository;
+    this.dataFetcherExecutors = dataFetcherExecutors;
   }
 
   /**
@@ -71,25 +80,32 @@ public class PublicNodeDataFetchers {
               return linkRepository
                   .getLinkByNotExpiredPublicId(publicLinkId)
                   .map(
-                      publicLink ->
-                          nodeRepository
-                              .getNode(publicLink.getNodeId())
-                              .map(
-                                  node ->
-                                      DataFetcherResult.<Map<String, Object>>newResult()
-                                          .data(PublicNode.createFromNode(node).convertToMap())
-                                          .build())
-                              .orElse(
-                                  DataFetcherResult.<Map<String, Object>>newResult()
-                                      .error(
-                                          GraphQLResultErrors.nodeNotFound(
-                                              publicLink.getNodeId(), path))
-                                      .build()))
+                      publicLink -> {
+                        getScope(environment)
+                            .ifPresent(
+                                scope -> {
+                                  scope.addContentNode(publicLink.getNodeId());
+                                  publicLink.getExpiresAt().ifPresent(scope::expireAt);
+                                });
+                        return nodeRepository
+                            .getNode(publicLink.getNodeId())
+                            .map(
+                                node ->
+                                    DataFetcherResult.<Map<String, Object>>newResult()
+                                        .data(PublicNode.createFromNode(node).convertToMap())
+                                        .build())
+                            .orElse(
+                                DataFetcherResult.<Map<String, Object>>newResult()
+                                    .error(
+                                        GraphQLResultErrors.nodeNotFound(
+                                            publicLink.getNodeId(), path))
+                                    .build());
+                      })
                   .orElse(
                       DataFetcherResult.<Map<String, Object>>newResult()
                           .error(GraphQLResultErrors.linkNotFound(publicLinkId, path))
                           .build());
-            });
+            }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<DataFetcherResult<Map<String, String>>>> findNodes() {
@@ -101,10 +117,29 @@ public class PublicNodeDataFetchers {
               Integer limit = environment.getArgument(FindNodes.LIMIT);
               String pageToken = environment.getArgument(FindNodes.PAGE_TOKEN);
 
+              Optional<PublicQueryScope> optScope = getScope(environment);
+              optScope.ifPresent(scope -> scope.addContentNode(folderId));
+
               Optional<Node> optFolder = nodeRepository.getNode(folderId);
+              List<Link> publicLinks =
+                  optFolder.map(linkRepository::getNotExpiredPublicLinks).orElse(List.of());
+
+              if (!publicLinks.isEmpty()) {
+                optScope.ifPresent(
+                    scope -> {
+                      scope.addAccessNodes(optFolder.get().getAncestorsList());
+                      /*
+                       * The folder is accessible until its last public link expires: if one of
+                       * them never expires the result is not bound to any expiration.
+                       */
+                      if (publicLinks.stream().allMatch(link -> link.getExpiresAt().isPresent())) {
+                        publicLinks.stream()
+                            .map(link -> link.getExpiresAt().get())
+                            .max(Long::compare)
+                            .ifPresent(scope::expireAt);
+                      }
+                    });
 
-              if (optFolder.isPresent()
-                  && linkRepository.hasNodeANotExpiredPublicLink(optFolder.get())) {
                 ImmutablePair<List<Node>, String> findResult =
                     nodeRepository.publicFindNodes(folderId, limit, pageToken);
 
@@ -120,7 +155,7 @@ public class PublicNodeDataFetchers {
               return new DataFetcherResult.Builder<Map<String, String>>()
                   .error(GraphQLResultErrors.nodeNotFound(folderId, path))
                   .build();
-            });
+            }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>>
@@ -143,6 +178,16 @@ public class PublicNodeDataFetchers {
               }
 
               return Collections.emptyList();
-            });
+            }, dataFetcherExecutors.getExecutor(environment));
+  }
+
+  /**
+   * @param environment is the {@link DataFetchingEnvironment} of the running data fetcher
+   * @return an {@link Optional} containing the {@link PublicQueryScope} where the dependencies of
+   *     the result must be registered, or an empty {@link Optional} if the result is not cached.
+   */
+  private Optional<PublicQueryScope> getScope(DataFetchingEnvironment environment) {
+    return Optional.ofNullable(
+        environment.getGraphQlContext().get(Files.GraphQL.Context.PUBLIC_QUERY_SCOPE));
   }
 }
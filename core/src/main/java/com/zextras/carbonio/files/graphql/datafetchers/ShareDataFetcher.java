@@ -9,13 +9,15 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.GraphQL.DataLoaders;
 import com.zextras.carbonio.files.dal.dao.User;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL;
-import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.ShareEvent;
 import com.zextras.carbonio.files.utilities.PermissionsChecker;
 import graphql.execution.AbortExecutionException;
 import graphql.execution.DataFetcherResult;
@@ -54,17 +56,23 @@ public class ShareDataFetcher {
 
   private final ShareRepository    shareRepository;
   private final NodeRepository     nodeRepository;
-  private final PermissionsChecker permissionsChecker;
+  private final PermissionsChecker   permissionsChecker;
+  private final DataFetcherExecutors dataFetcherExecutors;
+  private final EventBus             eventBus;
 
   @Inject
   public ShareDataFetcher(
     NodeRepository nodeRepository,
     ShareRepository shareRepository,
-    PermissionsChecker permissionsChecker
+    PermissionsChecker permissionsChecker,
+    DataFetcherExecutors dataFetcherExecutors,
+    EventBus eventBus
   ) {
     this.shareRepository = shareRepository;
     this.nodeRepository = nodeRepository;
     this.permissionsChecker = permissionsChecker;
+    this.dataFetcherExecutors = dataFetcherExecutors;
+    this.eventBus = eventBus;
   }
 
   private DataFetcherResult<Map<String, Object>> convertShareToDataFetcherResult(Share share) {
@@ -150,7 +158,15 @@ public class ShareDataFetcher {
             optExpiresAt
           )
           .map(share -> {
-            cascadeUpsertShare(sharedNodeId, targetUserId, ACL.decode(permissions), optExpiresAt);
+            shareRepository.upsertInheritedShares(
+              sharedNodeId,
+              targetUserId,
+              ACL.decode(permissions),
+              optExpiresAt
+            );
+            eventBus.publish(
+              new ShareEvent(sharedNodeId, targetUserId, ShareEvent.Action.CREATED)
+            );
             return convertShareToDataFetcherResult(share);
           })
           .orElse(new DataFetcherResult.Builder<Map<String, Object>>()
@@ -168,30 +184,7 @@ public class ShareDataFetcher {
             environment.getExecutionStepInfo().getPath()))
           .build();
       }
-    });
-  }
-
-  public void cascadeUpsertShare(
-    String nodeId,
-    String userId,
-    ACL permission,
-    Optional<Long> expiredAt
-  ) {
-    List<String> childrenIds = nodeRepository
-      .getChildrenIds(nodeId, Optional.empty(), Optional.empty(), false);
-    if (!childrenIds.isEmpty()) {
-      List<Node> childrenNodes = nodeRepository.getNodes(childrenIds, Optional.empty())
-        .collect(Collectors.toList());
-      List<Node> folderNodes = childrenNodes.stream()
-        .filter(n -> n.getNodeType() == NodeType.FOLDER)
-        .collect(Collectors.toList());
-
-      shareRepository.upsertShareBulk(childrenIds, userId, permission, false, false, expiredAt);
-
-      folderNodes.forEach(folderNode ->
-        cascadeUpsertShare(folderNode.getId(), userId, permission, expiredAt)
-      );
-    }
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -240,7 +233,7 @@ public class ShareDataFetcher {
             environment.getExecutionStepInfo()
               .getPath()))
           .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   public DataFetcher<CompletableFuture<List<DataFetcherResult<Map<String, Object>>>>> getSharesFetcher() {
@@ -328,12 +321,17 @@ public class ShareDataFetcher {
 
           optNewPermissions.ifPresent(permissions -> {
               share.setPermissions(ACL.decode(permissions));
-              cascadeUpsertShare(sharedNodeId, targetUserId, ACL.decode(optNewPermissions.get()),
-                optNewExpiresAt);
+              shareRepository.upsertInheritedShares(
+                sharedNodeId,
+                targetUserId,
+                ACL.decode(optNewPermissions.get()),
+                optNewExpiresAt
+              );
             }
           );
           optNewExpiresAt.ifPresent(share::setExpiredAt);
           Share updatedShare = shareRepository.updateShare(share);
+          eventBus.publish(new ShareEvent(sharedNodeId, targetUserId, ShareEvent.Action.UPDATED));
 
           return convertShareToDataFetcherResult(updatedShare);
         })
@@ -351,7 +349,7 @@ public class ShareDataFetcher {
             environment.getExecutionStepInfo()
               .getPath()))
           .build();
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -393,7 +391,13 @@ public class ShareDataFetcher {
           if (nodeRepository.getNode(sharedNodeId)
             .get()
             .getNodeType() == NodeType.FOLDER) {
-            cascadeDeleteShare(sharedNodeId, targetUserId);
+            shareRepository.deleteInheritedShares(sharedNodeId, targetUserId);
+          }
+
+          if (shareDeleted) {
+            eventBus.publish(
+              new ShareEvent(sharedNodeId, targetUserId, ShareEvent.Action.DELETED)
+            );
           }
 
           return new DataFetcherResult.Builder<Boolean>()
@@ -414,46 +418,6 @@ public class ShareDataFetcher {
             environment.getExecutionStepInfo()
               .getPath()))
           .build();
-    });
-  }
-
-  void cascadeDeleteShare(
-    String nodeId,
-    String userId
-  ) {
-    List<String> childrenIds = nodeRepository.getChildrenIds(nodeId, Optional.empty(),
-      Optional.empty(), true);
-    List<String> trashedChildrenIds = nodeRepository.getTrashedNodeIdsByOldParent(nodeId);
-    childrenIds.addAll(trashedChildrenIds);
-    if (!childrenIds.isEmpty()) {
-      List<Node> childrenNodes = nodeRepository.getNodes(childrenIds, Optional.empty())
-        .collect(Collectors.toList());
-      // Retrieve all the direct shares of the children nodes of the folder
-      List<Share> shares = shareRepository
-        .getShares(childrenNodes.stream()
-          .map(Node::getId)
-          .collect(Collectors.toList()), userId)
-        .stream()
-        .filter(Share::isDirect)
-        .collect(Collectors.toList());
-      // I delete the shares only for nodes that don't have a direct share for the user i'm propagating
-      List<Node> deletableNodes = childrenNodes.stream()
-        .filter(node -> shares.stream()
-          .noneMatch(share -> share.getNodeId()
-            .equals(node.getId())))
-        .collect(Collectors.toList());
-      List<Node> folderNodes = deletableNodes
-        .stream()
-        .filter(n -> n.getNodeType() == NodeType.FOLDER)
-        .collect(Collectors.toList());
-
-      shareRepository.deleteSharesBulk(deletableNodes.stream()
-        .map(Node::getId)
-        .collect(Collectors.toList()), userId);
-
-      folderNodes.forEach(folderNode ->
-        cascadeDeleteShare(folderNode.getId(), userId)
-      );
-    }
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 }
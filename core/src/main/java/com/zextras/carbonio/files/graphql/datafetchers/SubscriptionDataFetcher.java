@@ -0,0 +1,112 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.datafetchers;
+
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.Files.GraphQL.InputParameters.NodeChanged;
+import com.zextras.carbonio.files.dal.dao.User;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
+import com.zextras.carbonio.files.graphql.types.ShareEvent;
+import com.zextras.carbonio.files.utilities.PermissionsChecker;
+import graphql.execution.DataFetcherResult;
+import graphql.schema.DataFetcher;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.reactivestreams.Publisher;
+
+/**
+ * <p>Contains all the {@link DataFetcher}s of the GraphQL subscriptions. Each one of them returns
+ * a {@link Publisher} of the events, published on the {@link EventBus} by the mutations, that the
+ * requester is allowed to receive.</p>
+ */
+public class SubscriptionDataFetcher {
+
+  private final EventBus             eventBus;
+  private final PermissionsChecker   permissionsChecker;
+  private final DataFetcherExecutors dataFetcherExecutors;
+
+  @Inject
+  public SubscriptionDataFetcher(
+    EventBus eventBus,
+    PermissionsChecker permissionsChecker,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
+    this.eventBus = eventBus;
+    this.permissionsChecker = permissionsChecker;
+    this.dataFetcherExecutors = dataFetcherExecutors;
+  }
+
+  /**
+   * <p>This {@link DataFetcher} must be used for the
+   * {@link Files.GraphQL.Subscriptions#NODE_CHANGED} subscription.</p>
+   * <p>It emits a {@link NodeEvent} every time a child of the requested folder changes. The
+   * requester must have at least the read permission on the folder when it subscribes, otherwise
+   * the subscription fails with a node not found error. The permission is checked again for every
+   * event of the folder, so the events are no longer delivered once the share is revoked.</p>
+   *
+   * @return an asynchronous {@link DataFetcher} containing a {@link Publisher} of the node events
+   * of the requested folder.
+   */
+  public DataFetcher<CompletableFuture<DataFetcherResult<Publisher<Map<String, Object>>>>> nodeChanged() {
+    return environment -> CompletableFuture.supplyAsync(() -> {
+      String requesterId = ((User) environment
+        .getGraphQlContext()
+        .get(Files.GraphQL.Context.REQUESTER)
+      ).getId();
+      String folderId = environment.getArgument(NodeChanged.FOLDER_ID);
+
+      if (permissionsChecker.getPermissions(folderId, requesterId).has(SharePermission.READ_ONLY)) {
+        Publisher<Map<String, Object>> publisher = eventBus.subscribe(
+          NodeEvent.class,
+          event -> folderId.equals(event.getFolderId())
+            && permissionsChecker
+            .getPermissions(folderId, requesterId)
+            .has(SharePermission.READ_ONLY),
+          NodeEvent::convertToMap
+        );
+
+        return new DataFetcherResult.Builder<Publisher<Map<String, Object>>>()
+          .data(publisher)
+          .build();
+      }
+
+      return new DataFetcherResult.Builder<Publisher<Map<String, Object>>>()
+        .error(GraphQLResultErrors.nodeNotFound(
+          folderId,
+          environment.getExecutionStepInfo().getPath()
+        ))
+        .build();
+    }, dataFetcherExecutors.getQueryExecutor());
+  }
+
+  /**
+   * <p>This {@link DataFetcher} must be used for the
+   * {@link Files.GraphQL.Subscriptions#SHARES_CHANGED} subscription.</p>
+   * <p>It emits a {@link ShareEvent} every time a node is shared with the requester, or when one of
+   * its shares is updated or removed.</p>
+   *
+   * @return a {@link DataFetcher} containing a {@link Publisher} of the share events targeting the
+   * requester.
+   */
+  public DataFetcher<Publisher<Map<String, Object>>> sharesChanged() {
+    return environment -> {
+      String requesterId = ((User) environment
+        .getGraphQlContext()
+        .get(Files.GraphQL.Context.REQUESTER)
+      ).getId();
+
+      return eventBus.subscribe(
+        ShareEvent.class,
+        event -> requesterId.equals(event.getTargetUserId()),
+        ShareEvent::convertToMap
+      );
+    };
+  }
+}
@@ -9,7 +9,9 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.GetAccountsByEmail;
 import com.zextras.carbonio.files.Files.GraphQL.InputParameters.GetUser;
 import com.zextras.carbonio.files.dal.dao.User;
+import com.zextras.carbonio.files.dal.repositories.interfaces.StorageUsageRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.UserRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import com.zextras.carbonio.files.graphql.GraphQLProvider;
 import com.zextras.carbonio.files.graphql.errors.GraphQLResultErrors;
 import graphql.execution.AbortExecutionException;
@@ -52,12 +54,20 @@ import java.util.stream.Collectors;
  */
 public class UserDataFetcher {
 
-  private UserRepository userRepository;
+  private UserRepository         userRepository;
+  private StorageUsageRepository storageUsageRepository;
+  private DataFetcherExecutors   dataFetcherExecutors;
 
 
   @Inject
-  public UserDataFetcher(UserRepository userRepository) {
+  public UserDataFetcher(
+    UserRepository userRepository,
+    StorageUsageRepository storageUsageRepository,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
     this.userRepository = userRepository;
+    this.storageUsageRepository = storageUsageRepository;
+    this.dataFetcherExecutors = dataFetcherExecutors;
   }
 
   private DataFetcherResult<Map<String, Object>> fetchUserByIdAndConvertToDataFetcherResult(
@@ -138,7 +148,7 @@ public class UserDataFetcher {
             environment.getGraphQlContext().get(Files.GraphQL.Context.COOKIES), userId,
             environment.getExecutionStepInfo().getPath()))
           .orElseGet(() -> new DataFetcherResult.Builder<Map<String, Object>>().build());
-      });
+      }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -198,7 +208,8 @@ public class UserDataFetcher {
           .Builder<List<Map<String, Object>>>()
           .data(new ArrayList<>())
           .build();
-      }
+      },
+      dataFetcherExecutors.getExecutor(environment)
     );
   }
 
@@ -243,7 +254,7 @@ public class UserDataFetcher {
         userId,
         environment.getExecutionStepInfo().getPath()
       );
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -273,7 +284,7 @@ public class UserDataFetcher {
         email,
         environment.getExecutionStepInfo().getPath()
       );
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 
   /**
@@ -295,6 +306,39 @@ public class UserDataFetcher {
         .stream()
         .map(email -> fetchUserByEmailAndConvertToDataFetcherResult(requesterCookie, email, path))
         .collect(Collectors.toList());
-    });
+    }, dataFetcherExecutors.getExecutor(environment));
+  }
+
+  /**
+   * <p>This {@link DataFetcher} must be used for the
+   * {@link Files.GraphQL.Queries#GET_STORAGE_USAGE} query.</p>
+   * <p>The request does not need any parameters in input.</p>
+   * <h2>Behaviour:</h2>
+   * <p>It returns the storage used by the requester. A requester who has never uploaded a file
+   * uses no storage.</p>
+   *
+   * @return an asynchronous {@link DataFetcher} containing a {@link Map} of the storage usage.
+   */
+  public DataFetcher<CompletableFuture<DataFetcherResult<Map<String, Object>>>> getStorageUsageFetcher() {
+    return environment -> CompletableFuture.supplyAsync(() -> {
+      String requesterId = ((User) environment
+        .getGraphQlContext()
+        .get(Files.GraphQL.Context.REQUESTER)).getId();
+
+      Map<String, Object> result = new HashMap<>();
+      result.put(Files.GraphQL.StorageUsage.USED_BYTES, 0L);
+      result.put(Files.GraphQL.StorageUsage.VERSIONS_COUNT, 0);
+
+      storageUsageRepository
+        .getStorageUsage(requesterId)
+        .ifPresent(storageUsage -> {
+          result.put(Files.GraphQL.StorageUsage.USED_BYTES, storageUsage.getUsedBytes());
+          result.put(Files.GraphQL.StorageUsage.VERSIONS_COUNT, storageUsage.getVersions());
+        });
+
+      return new DataFetcherResult.Builder<Map<String, Object>>()
+        .data(result)
+        .build();
+    }, dataFetcherExecutors.getExecutor(environment));
   }
 }
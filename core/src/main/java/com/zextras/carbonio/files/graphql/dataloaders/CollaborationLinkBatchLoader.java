@@ -0,0 +1,88 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.dal.dao.ebean.CollaborationLink;
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.repositories.interfaces.CollaborationLinkRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import graphql.schema.DataFetcher;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import org.dataloader.MappedBatchLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This custom {@link MappedBatchLoader} allows to queue a set of node ids that will be used to make
+ * a single sql query to fetch in batch all the {@link CollaborationLink}s of those nodes. This is
+ * useful when a GraphQL request asks for the <code>collaboration_links</code> attribute of a list
+ * of nodes, which would otherwise require a query for each {@link Node}.
+ */
+public class CollaborationLinkBatchLoader
+  implements MappedBatchLoader<String, List<CollaborationLink>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(CollaborationLinkBatchLoader.class);
+
+  private final CollaborationLinkRepository collaborationLinkRepository;
+  private final Executor                    executor;
+
+  @Inject
+  public CollaborationLinkBatchLoader(
+    CollaborationLinkRepository collaborationLinkRepository,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
+    this.collaborationLinkRepository = collaborationLinkRepository;
+    this.executor = dataFetcherExecutors.getQueryExecutor();
+  }
+
+  /**
+   * This method will be invoked by the GraphQL dataloader scheduler when all the
+   * {@link DataFetcher}s, necessary to create a GraphQL response, are called.
+   * </p>
+   * It is only responsible to fetch the {@link CollaborationLink}s and it does <strong>not</strong>
+   * check if the requester has the permission to see them.
+   *
+   * @param nodeIds the {@link Set} of node ids. For each one of them it retrieves all the related
+   * collaboration links.
+   *
+   * @return a {@link CompletionStage} containing a {@link Map} of {@link List<CollaborationLink>}
+   * keyed by node id. The map has an entry for each node id in input. If a node does not have a
+   * collaboration link, then it will be associated to an empty list.
+   */
+  @Override
+  public CompletionStage<Map<String, List<CollaborationLink>>> load(Set<String> nodeIds) {
+    return CompletableFuture.supplyAsync(() -> {
+
+      logger.debug(MessageFormat.format(
+        "Start fetching collaboration links in batch for the following nodes: {0}",
+        nodeIds
+      ));
+
+      Map<String, List<CollaborationLink>> linksByNodeId = collaborationLinkRepository
+        .getLinksByNodeIds(nodeIds)
+        .collect(Collectors.groupingBy(CollaborationLink::getNodeId, HashMap::new, Collectors.toList()));
+
+      logger.debug(MessageFormat.format(
+        "End fetching collaboration links in batch. Links found for {0} of {1} nodes",
+        linksByNodeId.size(),
+        nodeIds.size()
+      ));
+
+      nodeIds.forEach(nodeId -> linksByNodeId.putIfAbsent(nodeId, Collections.emptyList()));
+
+      return linksByNodeId;
+    }, executor);
+  }
+}
@@ -0,0 +1,144 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.cache.Cache;
+import com.zextras.carbonio.files.cache.CacheHandler;
+import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.repositories.interfaces.FileVersionRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import graphql.schema.DataFetcher;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import org.dataloader.MappedBatchLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This custom {@link MappedBatchLoader} allows to queue a set of file version keys, built with
+ * {@link #buildKey(String, int)}, that will be used to make a single sql query to fetch in batch
+ * the {@link FileVersion}s of multiple {@link Node}s. This is useful when a GraphQL request
+ * returns a list of files and, for each one of them, the attributes of a specific version must be
+ * resolved.
+ * </p>
+ * The {@link FileVersion}s already in the {@link CacheHandler#getFileVersionCache()} are not
+ * fetched again, and the ones fetched from the database are added to it.
+ */
+public class FileVersionBatchLoader implements MappedBatchLoader<String, Optional<FileVersion>> {
+
+  private static final Logger logger = LoggerFactory.getLogger(FileVersionBatchLoader.class);
+
+  private static final String KEY_SEPARATOR = "/";
+
+  private final FileVersionRepository fileVersionRepository;
+  private final Cache<FileVersion>    fileVersionCache;
+  private final Executor              executor;
+
+  @Inject
+  public FileVersionBatchLoader(
+    FileVersionRepository fileVersionRepository,
+    CacheHandler cacheHandler,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
+    this.fileVersionRepository = fileVersionRepository;
+    this.fileVersionCache = cacheHandler.getFileVersionCache();
+    this.executor = dataFetcherExecutors.getQueryExecutor();
+  }
+
+  /**
+   * Builds the key identifying a specific version of a node. It has the same format of the keys of
+   * the {@link CacheHandler#getFileVersionCache()}.
+   *
+   * @param nodeId is a {@link String} representing the id of the node
+   * @param version is an <code>int</code> representing the version of the node
+   *
+   * @return a {@link String} representing the key to use to load the requested {@link FileVersion}.
+   */
+  public static String buildKey(
+    String nodeId,
+    int version
+  ) {
+    return nodeId + KEY_SEPARATOR + version;
+  }
+
+  /**
+   * This method will be invoked by the GraphQL dataloader scheduler when all the
+   * {@link DataFetcher}s, necessary to create a GraphQL response, are called.
+   * </p>
+   * It is only responsible to fetch the {@link FileVersion}s and it does <strong>not</strong> check
+   * if the requester has the read permission on the related {@link Node}s.
+   *
+   * @param fileVersionKeys the {@link Set} of keys, built with {@link #buildKey(String, int)}, of
+   * the file versions to fetch.
+   *
+   * @return a {@link CompletionStage} containing a {@link Map} of {@link Optional<FileVersion>}
+   * keyed by file version key. The map has an entry for each key in input. If a key does not
+   * correspond to a {@link FileVersion} then it will be associated to an {@link Optional#empty()}.
+   */
+  @Override
+  public CompletionStage<Map<String, Optional<FileVersion>>> load(Set<String> fileVersionKeys) {
+    return CompletableFuture.supplyAsync(() -> {
+
+      logger.debug(MessageFormat.format(
+        "Start fetching file versions in batch: {0}",
+        fileVersionKeys
+      ));
+
+      Map<String, FileVersion> fileVersions = new HashMap<>(
+        fileVersionCache.getAll(fileVersionKeys)
+      );
+
+      Set<String> nodeIdsToFetch = new HashSet<>();
+      Set<Integer> versionsToFetch = new HashSet<>();
+      fileVersionKeys
+        .stream()
+        .filter(key -> !fileVersions.containsKey(key))
+        .forEach(key -> {
+          int separatorIndex = key.lastIndexOf(KEY_SEPARATOR);
+          nodeIdsToFetch.add(key.substring(0, separatorIndex));
+          versionsToFetch.add(Integer.parseInt(key.substring(separatorIndex + 1)));
+        });
+
+      if (!nodeIdsToFetch.isEmpty()) {
+        // The query can return versions not requested because it matches every combination of
+        // node ids and versions: only the requested ones are kept and cached.
+        Map<String, FileVersion> fetchedFileVersions = fileVersionRepository
+          .getFileVersionsByNodeIds(nodeIdsToFetch, versionsToFetch)
+          .stream()
+          .collect(Collectors.toMap(
+            fileVersion -> buildKey(fileVersion.getNodeId(), fileVersion.getVersion()),
+            fileVersion -> fileVersion
+          ));
+
+        fetchedFileVersions.keySet().retainAll(fileVersionKeys);
+        fileVersionCache.addAll(fetchedFileVersions);
+        fileVersions.putAll(fetchedFileVersions);
+      }
+
+      logger.debug(MessageFormat.format(
+        "End fetching file versions in batch. {0} of {1} file versions found",
+        fileVersions.size(),
+        fileVersionKeys.size()
+      ));
+
+      Map<String, Optional<FileVersion>> results = new HashMap<>(
+        (int) (fileVersionKeys.size() / 0.75f) + 1
+      );
+      fileVersionKeys.forEach(key -> results.put(key, Optional.ofNullable(fileVersions.get(key))));
+
+      return results;
+    }, executor);
+  }
+}
@@ -0,0 +1,78 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.google.inject.Inject;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FolderAggregates;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import graphql.schema.DataFetcher;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import org.dataloader.MappedBatchLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This custom {@link MappedBatchLoader} allows to queue a set of folder ids that will be used to
+ * make a single sql query to fetch in batch the {@link FolderAggregates} of those folders. This is
+ * useful when a GraphQL request asks for the <code>aggregates</code> attribute of a list of
+ * folders, which would otherwise require a query for each folder.
+ */
+public class FolderAggregatesBatchLoader implements MappedBatchLoader<String, FolderAggregates> {
+
+  private static final Logger logger = LoggerFactory.getLogger(FolderAggregatesBatchLoader.class);
+
+  private final NodeRepository nodeRepository;
+  private final Executor       executor;
+
+  @Inject
+  public FolderAggregatesBatchLoader(
+    NodeRepository nodeRepository,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
+    this.nodeRepository = nodeRepository;
+    this.executor = dataFetcherExecutors.getQueryExecutor();
+  }
+
+  /**
+   * This method will be invoked by the GraphQL dataloader scheduler when all the
+   * {@link DataFetcher}s, necessary to create a GraphQL response, are called.
+   * </p>
+   * The aggregates are read directly from the database, bypassing the cache of the nodes, because
+   * the database changes them every time a descendant changes.
+   *
+   * @param folderIds the {@link Set} of folder ids.
+   *
+   * @return a {@link CompletionStage} containing a {@link Map} of {@link FolderAggregates} keyed by
+   * folder id. The folders whose aggregates are not computed yet are not in the map, so they are
+   * loaded as null.
+   */
+  @Override
+  public CompletionStage<Map<String, FolderAggregates>> load(Set<String> folderIds) {
+    return CompletableFuture.supplyAsync(() -> {
+
+      logger.debug(MessageFormat.format(
+        "Start fetching aggregates in batch for the following folders: {0}",
+        folderIds
+      ));
+
+      Map<String, FolderAggregates> aggregatesByFolderId =
+        nodeRepository.getFolderAggregates(folderIds);
+
+      logger.debug(MessageFormat.format(
+        "End fetching aggregates in batch. Aggregates found for {0} of {1} folders",
+        aggregatesByFolderId.size(),
+        folderIds.size()
+      ));
+
+      return aggregatesByFolderId;
+    }, executor);
+  }
+}
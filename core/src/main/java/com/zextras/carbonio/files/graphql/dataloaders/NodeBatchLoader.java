@@ -8,33 +8,47 @@ import com.google.inject.Inject;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
 import com.zextras.carbonio.files.exceptions.NodeNotFoundException;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import graphql.schema.DataFetcher;
 import java.text.MessageFormat;
-import java.util.List;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.stream.Collectors;
-import org.dataloader.BatchLoader;
+import java.util.concurrent.Executor;
+import org.dataloader.DataLoader;
+import org.dataloader.MappedBatchLoader;
 import org.dataloader.Try;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This custom {@link BatchLoader} allows to queue a list of node ids that will be used to make a
- * single sql query to fetch in batch the necessary {@link Node}s to populate a GraphQL response.
+ * This custom {@link MappedBatchLoader} allows to queue a set of node ids that will be used to make
+ * a single sql query to fetch in batch the necessary {@link Node}s to populate a GraphQL response.
  * This is useful when a GraphQL request requires to fetch single nodes on different level of the
  * query or when nodes cannot be fetched in batch directly on a single {@link DataFetcher}.
+ * </p>
+ * The results are returned as a {@link Map} keyed by node id: the {@link DataLoader} is then
+ * responsible to associate each result to the related key, regardless of the order in which the
+ * database returns the nodes.
  */
-public class NodeBatchLoader implements BatchLoader<String, Try<Node>> {
+public class NodeBatchLoader implements MappedBatchLoader<String, Try<Node>> {
 
   private static final Logger logger = LoggerFactory.getLogger(NodeBatchLoader.class);
 
   private final NodeRepository nodeRepository;
+  private final Executor       executor;
 
   @Inject
-  public NodeBatchLoader(NodeRepository nodeRepository) {
+  public NodeBatchLoader(
+    NodeRepository nodeRepository,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
     this.nodeRepository = nodeRepository;
+    this.executor = dataFetcherExecutors.getQueryExecutor();
   }
 
   /**
@@ -44,49 +58,38 @@ public class NodeBatchLoader implements BatchLoader<String, Try<Node>> {
    * It is only responsible to fetch the {@link Node}s and it does <strong>not</strong>  check if
    * the requester has the read permission on them.
    *
-   * @param nodeIds the {@link List} of node ids to fetch
+   * @param nodeIds the {@link Set} of node ids to fetch
    *
-   * @return a {@link CompletionStage} containing a {@link List} of {@link Try<Node>}. The list has
-   * as many elements as there are node ids in input. If a node ids does not correspond to a
-   * {@link Node} then the method return a {@link Try#failed} containing a
+   * @return a {@link CompletionStage} containing a {@link Map} of {@link Try<Node>} keyed by node
+   * id. The map has an entry for each node id in input. If a node id does not correspond to a
+   * {@link Node} then it is associated to a {@link Try#failed} containing a
    * {@link NodeNotFoundException}.
    */
   @Override
-  public CompletionStage<List<Try<Node>>> load(List<String> nodeIds) {
+  public CompletionStage<Map<String, Try<Node>>> load(Set<String> nodeIds) {
     return CompletableFuture.supplyAsync(() -> {
 
       logger.debug(MessageFormat.format("Start fetching nodes in batch: {0}", nodeIds));
 
-      List<Node> nodes = nodeRepository
-        .getNodes(nodeIds, Optional.empty())
-        .collect(Collectors.toList());
+      Map<String, Try<Node>> results = new HashMap<>((int) (nodeIds.size() / 0.75f) + 1);
 
-      List<String> nodeIdsFound = nodes
-        .stream()
-        .map(Node::getId)
-        .collect(Collectors.toList());
+      nodeRepository
+        .getNodes(new ArrayList<>(nodeIds), Optional.empty())
+        .forEach(node -> results.put(node.getId(), Try.succeeded(node)));
 
-      List<String> nodeIdsNotFound = nodeIds
-        .stream()
-        .filter(nodeId -> !nodeIdsFound.contains(nodeId))
-        .collect(Collectors.toList());
+      int nodesFound = results.size();
 
-      List<Try<Node>> results = nodes
-        .stream()
-        .map(Try::succeeded)
-        .collect(Collectors.toList());
-
-      nodeIdsNotFound.forEach(nodeIdNotFound ->
-        results.add(Try.failed(new NodeNotFoundException()))
+      nodeIds.forEach(nodeId ->
+        results.computeIfAbsent(nodeId, nodeIdNotFound -> Try.failed(new NodeNotFoundException()))
       );
 
       logger.debug(MessageFormat.format(
-        "End fetching nodes in batch.\n - Nodes found: {0}\n - Nodes not found: {1}",
-        nodeIdsFound,
-        nodeIdsNotFound
+        "End fetching nodes in batch. {0} of {1} nodes found",
+        nodesFound,
+        nodeIds.size()
       ));
 
       return results;
-    });
+    }, executor);
   }
 }
@@ -8,32 +8,42 @@ import com.google.inject.Inject;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
 import graphql.schema.DataFetcher;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.stream.Collectors;
-import org.dataloader.BatchLoader;
+import java.util.concurrent.Executor;
+import org.dataloader.MappedBatchLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This custom {@link BatchLoader} allows to queue a list of node ids that will be used to make a
- * single sql query to fetch in batch all the {@link Share}s to populate a GraphQL response. This is
- * useful when a GraphQL request requires to fetch single shares on different level of the query or
- * when shares cannot be fetched in batch directly on a single {@link DataFetcher}.
+ * This custom {@link MappedBatchLoader} allows to queue a set of node ids that will be used to make
+ * a single sql query to fetch in batch all the {@link Share}s to populate a GraphQL response. This
+ * is useful when a GraphQL request requires to fetch single shares on different level of the query
+ * or when shares cannot be fetched in batch directly on a single {@link DataFetcher}.
  */
-public class ShareBatchLoader implements BatchLoader<String, List<Share>> {
+public class ShareBatchLoader implements MappedBatchLoader<String, List<Share>> {
 
   private static final Logger logger = LoggerFactory.getLogger(ShareBatchLoader.class);
 
   private final ShareRepository shareRepository;
+  private final Executor        executor;
 
   @Inject
-  public ShareBatchLoader(ShareRepository shareRepository) {
+  public ShareBatchLoader(
+    ShareRepository shareRepository,
+    DataFetcherExecutors dataFetcherExecutors
+  ) {
     this.shareRepository = shareRepository;
+    this.executor = dataFetcherExecutors.getQueryExecutor();
   }
 
   /**
@@ -43,15 +53,15 @@ public class ShareBatchLoader implements BatchLoader<String, List<Share>> {
    * It is only responsible to fetch the {@link Share}s and it does <strong>not</strong> check if
    * the requester has the read permission on the {@link Node}s.
    *
-   * @param nodeIds the {@link List} of node ids. For each one of them it retrieves all the related
+   * @param nodeIds the {@link Set} of node ids. For each one of them it retrieves all the related
    * shares.
    *
-   * @return a {@link CompletionStage} containing a {@link List} of {@link List<Share>}. The list
-   * has as many elements as there are node ids in input. If a node does not have a share, then it
+   * @return a {@link CompletionStage} containing a {@link Map} of {@link List<Share>} keyed by node
+   * id. The map has an entry for each node id in input. If a node does not have a share, then it
    * will be associated to an empty list.
    */
   @Override
-  public CompletionStage<List<List<Share>>> load(List<String> nodeIds) {
+  public CompletionStage<Map<String, List<Share>>> load(Set<String> nodeIds) {
     return CompletableFuture.supplyAsync(() -> {
 
       logger.debug(MessageFormat.format(
@@ -59,21 +69,15 @@ public class ShareBatchLoader implements BatchLoader<String, List<Share>> {
         nodeIds
       ));
 
-      List<Share> shares = shareRepository.getShares(nodeIds);
+      List<Share> shares = shareRepository.getShares(new ArrayList<>(nodeIds));
 
-      List<List<Share>> results = new ArrayList<>();
-
-      // It populates the results: for each node ids it associates all the related shares.
-      // If a node does not have a share then the .collect(Collectors.toList()) generates
-      // an empty List: this is why is not necessary using a Try.
-      nodeIds.forEach(nodeId ->
-        results.add(
-          shares
-            .stream()
-            .filter(share -> nodeId.equals(share.getNodeId()))
-            .collect(Collectors.toList())
-        )
+      // It groups the shares in a single pass. The lists are created only for the nodes having at
+      // least a share, all the others share the same immutable empty list.
+      Map<String, List<Share>> results = new HashMap<>((int) (nodeIds.size() / 0.75f) + 1);
+      shares.forEach(share ->
+        results.computeIfAbsent(share.getNodeId(), nodeId -> new ArrayList<>()).add(share)
       );
+      nodeIds.forEach(nodeId -> results.putIfAbsent(nodeId, Collections.emptyList()));
 
       logger.debug(MessageFormat.format(
         "End fetching shares in batch. {0} shares found for {1} nodes",
@@ -82,6 +86,6 @@ public class ShareBatchLoader implements BatchLoader<String, List<Share>> {
       ));
 
       return results;
-    });
+    }, executor);
   }
 }
@@ -0,0 +1,67 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.zextras.carbonio.files.tracing.OperationTrace;
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import org.dataloader.MappedBatchLoader;
+
+/**
+ * Decorates a {@link MappedBatchLoader} recording each dispatch, with the number of keys loaded and
+ * the time needed to load them, in the {@link OperationTrace} bound to the dispatching thread. When
+ * the operation is not traced it simply delegates the load.
+ *
+ * @param <K> is the type of the keys
+ * @param <V> is the type of the loaded values
+ */
+public class TracingBatchLoader<K, V> implements MappedBatchLoader<K, V> {
+
+  private final String                  name;
+  private final MappedBatchLoader<K, V> batchLoader;
+
+  private TracingBatchLoader(
+    String name,
+    MappedBatchLoader<K, V> batchLoader
+  ) {
+    this.name = name;
+    this.batchLoader = batchLoader;
+  }
+
+  /**
+   * @param name is a {@link String} identifying the batch loader in the trace
+   * @param batchLoader is the {@link MappedBatchLoader} to decorate
+   *
+   * @return the decorated {@link MappedBatchLoader}.
+   */
+  public static <K, V> MappedBatchLoader<K, V> of(
+    String name,
+    MappedBatchLoader<K, V> batchLoader
+  ) {
+    return new TracingBatchLoader<>(name, batchLoader);
+  }
+
+  @Override
+  public CompletionStage<Map<K, V>> load(Set<K> keys) {
+    Optional<OperationTrace> optTrace = OperationTrace.current();
+    if (optTrace.isEmpty()) {
+      return batchLoader.load(keys);
+    }
+
+    OperationTrace trace = optTrace.get();
+    long start = System.nanoTime();
+    return batchLoader
+      .load(keys)
+      .whenComplete((values, failure) -> trace.record(
+        SpanType.DATALOADER,
+        name + " (" + keys.size() + " keys)",
+        start,
+        System.nanoTime()
+      ));
+  }
+}
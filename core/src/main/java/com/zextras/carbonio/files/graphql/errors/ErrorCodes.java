@@ -15,5 +15,7 @@ public enum ErrorCodes {
   NODE_COPY_ERROR,
   NODE_DUPLICATED,
   LINK_NOT_FOUND,
+  LINK_FETCH_ERROR,
   VERSIONS_LIMIT_REACHED,
+  SUBSCRIPTION_NOT_SUPPORTED,
 }
@@ -260,6 +260,32 @@ public class GraphQLResultErrors {
       .build();
   }
 
+  /**
+   * This method generates an error when the links of a node cannot be retrieved, for example when
+   * the database is not reachable, so that the client can tell it apart from a node without links.
+   * In addition to the usual data, it adds custom fields on extensions, mainly
+   * <code>errorCode</code>, for easily discriminating the error type by who called the API.
+   *
+   * @param nodeId is a {@link String} representing the id of the node of the requested links.
+   * @param path is a {@link ResultPath } extrapolated from the environment to insert into the error
+   * to know in which part of the tree the error happened.
+   *
+   * @return a {@link GraphQLError} containing info about the error.
+   */
+  public static GraphQLError linkFetchError(
+    String nodeId,
+    ResultPath path
+  ) {
+    Map<String, Object> errorData = new HashMap<>();
+    errorData.put("errorCode", ErrorCodes.LINK_FETCH_ERROR);
+    errorData.put("nodeId", nodeId);
+    return GraphqlErrorException.newErrorException()
+      .message("There was a problem while retrieving the links of node " + nodeId)
+      .extensions(errorData)
+      .path(path.toList())
+      .build();
+  }
+
   /**
    * This method generates an error when a requested node has reached the maximum number of
    * versions. Besides from standard data, it adds the following custom fields in the extensions
@@ -324,4 +350,21 @@ public class GraphQLResultErrors {
       .build();
   }
 
+  /**
+   * This method generates an error when a subscription is sent as a single HTTP request, since the
+   * subscriptions are supported only over WebSocket. It is an error of the whole operation, so it
+   * has no path.
+   *
+   * @return a {@link GraphQLError} containing info about the error.
+   */
+  public static GraphQLError subscriptionNotSupported() {
+    Map<String, Object> errorData = new HashMap<>();
+    errorData.put("errorCode", ErrorCodes.SUBSCRIPTION_NOT_SUPPORTED);
+
+    return GraphqlErrorException
+      .newErrorException()
+      .message("The subscriptions are supported only over WebSocket")
+      .extensions(errorData)
+      .build();
+  }
 }
@@ -0,0 +1,144 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.subscriptions;
+
+import io.micrometer.core.instrument.Counter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * A {@link Subscription} of the {@link EventBus} that keeps the events not yet requested by its
+ * {@link Subscriber} in a bounded buffer, dropping the oldest one when it is full.
+ * <p>
+ * The events are emitted respecting the demand of the {@link Subscriber} and the calls to its
+ * {@link Subscriber#onNext(Object)} are never concurrent, even if the events are published by
+ * different threads.
+ *
+ * @param <T> is the type of the events accepted by this subscription
+ * @param <R> is the type of the elements emitted to the {@link Subscriber}
+ */
+class BufferedEventSubscription<T, R> implements Subscription {
+
+  private final Subscriber<? super R>                     subscriber;
+  private final Class<T>                                  eventType;
+  private final Predicate<? super T>                      filter;
+  private final Function<? super T, ? extends R>          mapper;
+  private final int                                       bufferSize;
+  private final Counter                                   droppedEventsCounter;
+  private final Consumer<BufferedEventSubscription<T, R>> onCancel;
+  private final Deque<R>                                  buffer;
+  private final AtomicLong                                requested;
+  private final AtomicInteger                             pendingDrains;
+  private volatile boolean                                cancelled;
+
+  BufferedEventSubscription(
+    Subscriber<? super R> subscriber,
+    Class<T> eventType,
+    Predicate<? super T> filter,
+    Function<? super T, ? extends R> mapper,
+    int bufferSize,
+    Counter droppedEventsCounter,
+    Consumer<BufferedEventSubscription<T, R>> onCancel
+  ) {
+    this.subscriber = subscriber;
+    this.eventType = eventType;
+    this.filter = filter;
+    this.mapper = mapper;
+    this.bufferSize = bufferSize;
+    this.droppedEventsCounter = droppedEventsCounter;
+    this.onCancel = onCancel;
+    this.buffer = new ArrayDeque<>(bufferSize);
+    this.requested = new AtomicLong();
+    this.pendingDrains = new AtomicInteger();
+  }
+
+  /**
+   * Buffers the event if it is of the expected type and it satisfies the filter, then it emits the
+   * buffered events as long as there is demand.
+   *
+   * @param event is an {@link Object} representing the published event
+   */
+  void offer(Object event) {
+    if (cancelled || !eventType.isInstance(event)) {
+      return;
+    }
+
+    T typedEvent = eventType.cast(event);
+    if (!filter.test(typedEvent)) {
+      return;
+    }
+
+    R element = mapper.apply(typedEvent);
+    synchronized (buffer) {
+      if (buffer.size() == bufferSize) {
+        buffer.pollFirst();
+        droppedEventsCounter.increment();
+      }
+      buffer.addLast(element);
+    }
+    drain();
+  }
+
+  @Override
+  public void request(long elements) {
+    if (elements <= 0) {
+      cancel();
+      subscriber.onError(new IllegalArgumentException(
+        "The number of requested elements must be positive"
+      ));
+      return;
+    }
+    requested.getAndUpdate(current -> current + elements < 0
+      ? Long.MAX_VALUE
+      : current + elements
+    );
+    drain();
+  }
+
+  @Override
+  public void cancel() {
+    if (!cancelled) {
+      cancelled = true;
+      onCancel.accept(this);
+      synchronized (buffer) {
+        buffer.clear();
+      }
+    }
+  }
+
+  /**
+   * Emits the buffered events while the {@link Subscriber} has demand. Only one thread at a time
+   * drains the buffer: a thread that finds a drain in progress leaves to it the emission of its
+   * event.
+   */
+  private void drain() {
+    if (pendingDrains.getAndIncrement() != 0) {
+      return;
+    }
+
+    int missedDrains = 1;
+    do {
+      while (!cancelled && requested.get() > 0) {
+        R element;
+        synchronized (buffer) {
+          element = buffer.pollFirst();
+        }
+        if (element == null) {
+          break;
+        }
+        requested.decrementAndGet();
+        subscriber.onNext(element);
+      }
+      missedDrains = pendingDrains.addAndGet(-missedDrains);
+    } while (missedDrains != 0);
+  }
+}
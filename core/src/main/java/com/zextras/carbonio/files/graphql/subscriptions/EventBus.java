@@ -0,0 +1,112 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.subscriptions;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.tasks.PrometheusService;
+import io.micrometer.core.instrument.Counter;
+import java.text.MessageFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process event bus used to fan out the events produced by the mutations to the GraphQL
+ * subscriptions.
+ * <p>
+ * Each subscriber has its own bounded buffer of {@link Files.Config.Subscriptions#BUFFER_SIZE}
+ * events: a slow subscriber never blocks the publishers (the mutations) nor the other subscribers.
+ * When the buffer of a subscriber is full the oldest event is dropped and the
+ * <code>files.subscriptions.events.dropped</code> counter is incremented.
+ * <p>
+ * The events are delivered only to the subscriptions of the same instance of the service.
+ */
+@Singleton
+public class EventBus {
+
+  private static final Logger logger = LoggerFactory.getLogger(EventBus.class);
+
+  private final Set<BufferedEventSubscription<?, ?>> subscriptions;
+  private final Counter                              droppedEventsCounter;
+  private final int                                  bufferSize;
+
+  @Inject
+  public EventBus(PrometheusService prometheusService) {
+    this(prometheusService, Files.Config.Subscriptions.BUFFER_SIZE);
+  }
+
+  EventBus(
+    PrometheusService prometheusService,
+    int bufferSize
+  ) {
+    this.subscriptions = ConcurrentHashMap.newKeySet();
+    this.bufferSize = bufferSize;
+    this.droppedEventsCounter = prometheusService
+      .getRegistry()
+      .counter("files.subscriptions.events.dropped");
+    prometheusService
+      .getRegistry()
+      .gauge("files.subscriptions.active", subscriptions, Set::size);
+  }
+
+  /**
+   * Publishes an event to every subscriber interested in it. It never throws: a failure of a
+   * subscriber is logged and does not affect the publisher nor the other subscribers.
+   *
+   * @param event is an {@link Object} representing the event to publish
+   */
+  public void publish(Object event) {
+    subscriptions.forEach(subscription -> {
+      try {
+        subscription.offer(event);
+      } catch (RuntimeException exception) {
+        logger.warn(MessageFormat.format(
+          "Unable to deliver the event {0} to a subscriber",
+          event.getClass().getSimpleName()
+        ), exception);
+      }
+    });
+  }
+
+  /**
+   * Creates a {@link Publisher} of the events of a specific type that satisfy a filter. The
+   * {@link Publisher} supports a single {@link Subscriber} and it starts receiving the events only
+   * when it is subscribed.
+   *
+   * @param eventType is the {@link Class} of the events to receive
+   * @param filter is a {@link Predicate} that must be satisfied by an event to be delivered
+   * @param mapper is a {@link Function} that converts each event before the delivery
+   * @param <T> is the type of the events to receive
+   * @param <R> is the type of the delivered elements
+   *
+   * @return a {@link Publisher} of the converted events.
+   */
+  public <T, R> Publisher<R> subscribe(
+    Class<T> eventType,
+    Predicate<? super T> filter,
+    Function<? super T, ? extends R> mapper
+  ) {
+    return subscriber -> {
+      BufferedEventSubscription<T, R> subscription = new BufferedEventSubscription<>(
+        subscriber,
+        eventType,
+        filter,
+        mapper,
+        bufferSize,
+        droppedEventsCounter,
+        subscriptions::remove
+      );
+      subscriptions.add(subscription);
+      subscriber.onSubscribe(subscription);
+    };
+  }
+}
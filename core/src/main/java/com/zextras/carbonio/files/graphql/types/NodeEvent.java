@@ -0,0 +1,57 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.types;
+
+import com.zextras.carbonio.files.Files.GraphQL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents a change of a node inside a folder. It is published on the
+ * {@link com.zextras.carbonio.files.graphql.subscriptions.EventBus} every time a node is created,
+ * updated, moved, trashed, restored or deleted, and it is delivered to the clients subscribed to
+ * the {@link GraphQL.Subscriptions#NODE_CHANGED} subscription of its folder.
+ */
+public class NodeEvent {
+
+  public enum Action {
+    CREATED,
+    UPDATED,
+    MOVED,
+    TRASHED,
+    RESTORED,
+    DELETED
+  }
+
+  private final String folderId;
+  private final String nodeId;
+  private final Action action;
+
+  public NodeEvent(String folderId, String nodeId, Action action) {
+    this.folderId = folderId;
+    this.nodeId = nodeId;
+    this.action = action;
+  }
+
+  public String getFolderId() {
+    return folderId;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public Action getAction() {
+    return action;
+  }
+
+  public Map<String, Object> convertToMap() {
+    Map<String, Object> mapBuilder = new HashMap<>();
+    mapBuilder.put(GraphQL.NodeEvent.FOLDER_ID, folderId);
+    mapBuilder.put(GraphQL.NodeEvent.NODE_ID, nodeId);
+    mapBuilder.put(GraphQL.NodeEvent.ACTION, action.name());
+    return mapBuilder;
+  }
+}
@@ -0,0 +1,280 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.types;
+
+import com.zextras.carbonio.files.Files.GraphQL;
+import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable representation of a GraphQL Node (File or Folder) returned by the data fetchers. It
+ * replaces the two {@link java.util.HashMap}s (the data and the local context) that were built for
+ * each node of a response.
+ * <p>
+ * The flag and the {@link FileVersion} are resolved by the caller, usually in batch, before
+ * creating the view: it never reads the custom attributes nor the versions of the {@link Node}.
+ * <p>
+ * It is also a read-only {@link Map} so that the default property data fetcher, the type resolvers
+ * and the data fetchers of the child fields can read its attributes (and the ids of the owner, the
+ * creator, the last editor and the parent when it is used as local context) by their GraphQL
+ * names. Each lookup is resolved by a <code>switch</code> on the typed fields: keeping the
+ * {@link Map} contract avoids a dedicated data fetcher for each field of the schema and leaves the
+ * data fetchers that read the local context unchanged.
+ * <p>
+ * See <code>NodeViewBenchmark</code> in the test sources to compare it with the maps.
+ */
+public final class NodeView extends AbstractMap<String, Object> {
+
+  private static final List<String> KEYS = List.of(
+    GraphQL.Node.ID,
+    GraphQL.Node.CREATED_AT,
+    GraphQL.Node.UPDATED_AT,
+    GraphQL.Node.NAME,
+    GraphQL.Node.TYPE,
+    GraphQL.Node.ROOT_ID,
+    GraphQL.Node.FLAGGED,
+    GraphQL.Node.DESCRIPTION,
+    GraphQL.Node.EXTENSION,
+    GraphQL.Node.PARENT,
+    GraphQL.Node.OWNER,
+    GraphQL.Node.CREATOR,
+    GraphQL.Node.LAST_EDITOR,
+    GraphQL.FileVersion.VERSION,
+    GraphQL.FileVersion.MIME_TYPE,
+    GraphQL.FileVersion.SIZE,
+    GraphQL.FileVersion.KEEP_FOREVER,
+    GraphQL.FileVersion.DIGEST,
+    GraphQL.FileVersion.CLONED_FROM_VERSION
+  );
+
+  private final String      id;
+  private final long        createdAt;
+  private final long        updatedAt;
+  private final String      name;
+  private final NodeType    type;
+  private final String      rootId;
+  private final Boolean     flagged;
+  private final String      description;
+  private final String      extension;
+  private final String      parentId;
+  private final String      ownerId;
+  private final String      creatorId;
+  private final FileVersion fileVersion;
+
+  private NodeView(
+    String id,
+    long createdAt,
+    long updatedAt,
+    String name,
+    NodeType type,
+    String rootId,
+    Boolean flagged,
+    String description,
+    String extension,
+    String parentId,
+    String ownerId,
+    String creatorId,
+    FileVersion fileVersion
+  ) {
+    this.id = id;
+    this.createdAt = createdAt;
+    this.updatedAt = updatedAt;
+    this.name = name;
+    this.type = type;
+    this.rootId = rootId;
+    this.flagged = flagged;
+    this.description = description;
+    this.extension = extension;
+    this.parentId = parentId;
+    this.ownerId = ownerId;
+    this.creatorId = creatorId;
+    this.fileVersion = fileVersion;
+  }
+
+  /**
+   * Creates the view of a {@link Node}.
+   *
+   * @param node is the {@link Node} to represent
+   * @param optFileVersion is an {@link Optional} containing the {@link FileVersion} to expose, if
+   * the node is a file and its version attributes are requested
+   * @param optFlagged is an {@link Optional} containing the flag of the requester, if it is
+   * requested
+   * @param withDescription is a <code>boolean</code> that must be true only if the description was
+   * loaded and it is requested
+   *
+   * @return the {@link NodeView} of the node.
+   */
+  public static NodeView createFromNode(
+    Node node,
+    Optional<FileVersion> optFileVersion,
+    Optional<Boolean> optFlagged,
+    boolean withDescription
+  ) {
+    boolean isFile = !NodeType.FOLDER.equals(node.getNodeType())
+      && !NodeType.ROOT.equals(node.getNodeType());
+
+    return new NodeView(
+      node.getId(),
+      node.getCreatedAt(),
+      optFileVersion.map(FileVersion::getUpdatedAt).orElse(node.getUpdatedAt()),
+      node.getName(),
+      node.getNodeType(),
+      NodeType.ROOT.equals(node.getNodeType())
+        ? node.getId()
+        : getRootId(node.getAncestorIds()),
+      optFlagged.orElse(null),
+      withDescription
+        ? node.getDescription().orElse(null)
+        : null,
+      isFile
+        ? node.getExtension().orElse(null)
+        : null,
+      node.getParentId().orElse(null),
+      node.getOwnerId(),
+      node.getCreatorId(),
+      optFileVersion.orElse(null)
+    );
+  }
+
+  /**
+   * The root is the first of the ancestors: it is extracted without splitting all of them, since it
+   * is done for each node of a response.
+   */
+  private static String getRootId(String ancestorIds) {
+    int separatorIndex = ancestorIds.indexOf(Node.ANCESTORS_SEPARATOR);
+    return separatorIndex == -1
+      ? ancestorIds
+      : ancestorIds.substring(0, separatorIndex);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * @return the update timestamp of the exposed {@link FileVersion}, if present, otherwise the one
+   * of the node.
+   */
+  public long getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public NodeType getType() {
+    return type;
+  }
+
+  public String getRootId() {
+    return rootId;
+  }
+
+  public Optional<Boolean> isFlagged() {
+    return Optional.ofNullable(flagged);
+  }
+
+  public Optional<String> getDescription() {
+    return Optional.ofNullable(description);
+  }
+
+  public Optional<String> getExtension() {
+    return Optional.ofNullable(extension);
+  }
+
+  public Optional<String> getParentId() {
+    return Optional.ofNullable(parentId);
+  }
+
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  public String getCreatorId() {
+    return creatorId;
+  }
+
+  public Optional<FileVersion> getFileVersion() {
+    return Optional.ofNullable(fileVersion);
+  }
+
+  /**
+   * @param key is the GraphQL name of the attribute
+   *
+   * @return the value of the attribute or <code>null</code> if the node does not have it.
+   */
+  @Override
+  public Object get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+
+    return switch ((String) key) {
+      case GraphQL.Node.ID -> id;
+      case GraphQL.Node.CREATED_AT -> createdAt;
+      case GraphQL.Node.UPDATED_AT -> updatedAt;
+      case GraphQL.Node.NAME -> name;
+      case GraphQL.Node.TYPE -> type.name();
+      case GraphQL.Node.ROOT_ID -> rootId;
+      case GraphQL.Node.FLAGGED -> flagged;
+      case GraphQL.Node.DESCRIPTION -> description;
+      case GraphQL.Node.EXTENSION -> extension;
+      case GraphQL.Node.PARENT -> parentId;
+      case GraphQL.Node.OWNER -> ownerId;
+      case GraphQL.Node.CREATOR -> creatorId;
+      default -> getFileVersionAttribute((String) key);
+    };
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  /**
+   * It is not used while resolving a GraphQL response: it builds a new {@link Map} at each call.
+   */
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    Map<String, Object> entries = new LinkedHashMap<>();
+    KEYS.forEach(key -> {
+      Object value = get(key);
+      if (value != null) {
+        entries.put(key, value);
+      }
+    });
+    return entries.entrySet();
+  }
+
+  private Object getFileVersionAttribute(String key) {
+    if (fileVersion == null) {
+      return null;
+    }
+
+    return switch (key) {
+      case GraphQL.FileVersion.LAST_EDITOR -> fileVersion.getLastEditorId();
+      case GraphQL.FileVersion.VERSION -> fileVersion.getVersion();
+      case GraphQL.FileVersion.MIME_TYPE -> fileVersion.getMimeType();
+      case GraphQL.FileVersion.SIZE -> fileVersion.getSize();
+      case GraphQL.FileVersion.KEEP_FOREVER -> fileVersion.isKeptForever();
+      case GraphQL.FileVersion.DIGEST -> fileVersion.getDigest();
+      case GraphQL.FileVersion.CLONED_FROM_VERSION ->
+        fileVersion.getClonedFromVersion().orElse(null);
+      default -> null;
+    };
+  }
+}
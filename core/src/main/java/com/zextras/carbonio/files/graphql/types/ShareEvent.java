@@ -0,0 +1,53 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.types;
+
+import com.zextras.carbonio.files.Files.GraphQL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents a change of the share of a node with a specific user. It is published on the
+ * {@link com.zextras.carbonio.files.graphql.subscriptions.EventBus} every time a direct share is
+ * created, updated or deleted, and it is delivered to the target user when subscribed to the
+ * {@link GraphQL.Subscriptions#SHARES_CHANGED} subscription.
+ */
+public class ShareEvent {
+
+  public enum Action {
+    CREATED,
+    UPDATED,
+    DELETED
+  }
+
+  private final String nodeId;
+  private final String targetUserId;
+  private final Action action;
+
+  public ShareEvent(String nodeId, String targetUserId, Action action) {
+    this.nodeId = nodeId;
+    this.targetUserId = targetUserId;
+    this.action = action;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public String getTargetUserId() {
+    return targetUserId;
+  }
+
+  public Action getAction() {
+    return action;
+  }
+
+  public Map<String, Object> convertToMap() {
+    Map<String, Object> mapBuilder = new HashMap<>();
+    mapBuilder.put(GraphQL.ShareEvent.NODE_ID, nodeId);
+    mapBuilder.put(GraphQL.ShareEvent.ACTION, action.name());
+    return mapBuilder;
+  }
+}
@@ -5,8 +5,11 @@
 package com.zextras.carbonio.files.netty;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.Files.API.Endpoints;
 import com.zextras.carbonio.files.graphql.controllers.GraphQLController;
+import com.zextras.carbonio.files.graphql.controllers.GraphQLWebSocketController;
 import com.zextras.carbonio.files.graphql.controllers.PublicGraphQLController;
 import com.zextras.carbonio.files.rest.controllers.BlobController;
 import com.zextras.carbonio.files.rest.controllers.CollaborationLinkController;
@@ -32,22 +35,24 @@ public class HttpRoutingHandler extends SimpleChannelInboundHandler<HttpRequest>
 
   private static final Logger logger = LoggerFactory.getLogger(HttpRoutingHandler.class);
 
-  private final HealthController            healthController;
-  private final GraphQLController           graphQLController;
-  private final BlobController              blobController;
-  private final PublicBlobController        publicBlobController;
-  private final AuthenticationHandler       authenticationHandler;
-  private final ExceptionsHandler           exceptionsHandler;
-  private final PreviewController           previewController;
-  private final ProcedureController         procedureController;
-  private final PublicGraphQLController     publicGraphQLController;
-  private final CollaborationLinkController collaborationLinkController;
-  private final MetricsController           metricsController;
+  private final HealthController                     healthController;
+  private final GraphQLController                    graphQLController;
+  private final Provider<GraphQLWebSocketController> graphQLWebSocketControllerProvider;
+  private final BlobController                       blobController;
+  private final PublicBlobController                 publicBlobController;
+  private final AuthenticationHandler                authenticationHandler;
+  private final ExceptionsHandler                    exceptionsHandler;
+  private final PreviewController                    previewController;
+  private final ProcedureController                  procedureController;
+  private final PublicGraphQLController              publicGraphQLController;
+  private final CollaborationLinkController          collaborationLinkController;
+  private final MetricsController                    metricsController;
 
   @Inject
   public HttpRoutingHandler(
     HealthController healthController,
     GraphQLController graphQLController,
+    Provider<GraphQLWebSocketController> graphQLWebSocketControllerProvider,
     BlobController blobController,
     PublicBlobController publicBlobController,
     AuthenticationHandler authenticationHandler,
@@ -63,6 +68,7 @@ public class HttpRoutingHandler extends SimpleChannelInboundHandler<HttpRequest>
     this.authenticationHandler = authenticationHandler;
     this.exceptionsHandler = exceptionsHandler;
     this.graphQLController = graphQLController;
+    this.graphQLWebSocketControllerProvider = graphQLWebSocketControllerProvider;
     this.blobController = blobController;
     this.publicBlobController = publicBlobController;
     this.previewController = previewController;
@@ -107,6 +113,17 @@ public class HttpRoutingHandler extends SimpleChannelInboundHandler<HttpRequest>
       return;
     }
 
+    if (Endpoints.GRAPHQL_WS.matcher(request.uri()).matches()) {
+      // The WebSocket handler keeps the state of the connection so it cannot be shared
+      context.pipeline()
+        .addLast(new HttpObjectAggregator(Files.Config.Subscriptions.MAX_FRAME_SIZE))
+        .addLast("auth-handler", authenticationHandler)
+        .addLast("graphql-ws-handler", graphQLWebSocketControllerProvider.get())
+        .addLast("exceptions-handler", exceptionsHandler);
+      context.fireChannelRead(request);
+      return;
+    }
+
     if (Endpoints.DOWNLOAD_FILE.matcher(request.uri()).matches()
       || Endpoints.UPLOAD_FILE.matcher(request.uri()).matches()
       || Endpoints.UPLOAD_FILE_VERSION.matcher(request.uri()).matches()) {
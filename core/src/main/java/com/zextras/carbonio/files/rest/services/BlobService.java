@@ -9,6 +9,7 @@ import com.google.inject.Inject;
 import com.zextras.carbonio.files.Files.Db.RootId;
 import com.zextras.carbonio.files.config.FilesConfig;
 import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.ReadReplicaRouter;
 import com.zextras.carbonio.files.dal.dao.User;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
 import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
@@ -24,6 +25,8 @@ import com.zextras.carbonio.files.dal.repositories.interfaces.TombstoneRepositor
 import com.zextras.carbonio.files.exceptions.DependencyException;
 import com.zextras.carbonio.files.exceptions.FileTypeMismatchException;
 import com.zextras.carbonio.files.exceptions.MaxNumberOfFileVersionsException;
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
 import com.zextras.carbonio.files.netty.utilities.BufferInputStream;
 import com.zextras.carbonio.files.rest.types.BlobResponse;
 import com.zextras.carbonio.files.utilities.MimeTypeUtils;
@@ -62,6 +65,8 @@ public class BlobService {
   private final Filestore fileStore;
   private final FilesConfig filesConfig;
   private final EbeanDatabaseManager ebeanDatabaseManager;
+  private final EventBus eventBus;
+  private final ReadReplicaRouter readReplicaRouter;
 
   @Inject
   public BlobService(
@@ -74,7 +79,9 @@ public class BlobService {
     MimeTypeUtils mimeTypeUtils,
     Filestore fileStore,
     FilesConfig filesConfig,
-    EbeanDatabaseManager ebeanDatabaseManager
+    EbeanDatabaseManager ebeanDatabaseManager,
+    EventBus eventBus,
+    ReadReplicaRouter readReplicaRouter
   ) {
     this.nodeRepository = nodeRepository;
     this.fileVersionRepository = fileVersionRepository;
@@ -86,6 +93,8 @@ public class BlobService {
     this.fileStore = fileStore;
     this.filesConfig = filesConfig;
     this.ebeanDatabaseManager = ebeanDatabaseManager;
+    this.eventBus = eventBus;
+    this.readReplicaRouter = readReplicaRouter;
   }
 
   /**
@@ -267,6 +276,8 @@ public class BlobService {
         t.commit();
       }
 
+      readReplicaRouter.recordWrite(requester.getId());
+      eventBus.publish(new NodeEvent(folderId, nodeId, NodeEvent.Action.CREATED));
       return Optional.of(nodeId);
     }
 
@@ -512,6 +523,13 @@ public class BlobService {
 
       t.commit();
 
+      readReplicaRouter.recordWrite(requester.getId());
+      eventBus.publish(new NodeEvent(
+        node.getParentId().orElse(RootId.LOCAL_ROOT),
+        nodeId,
+        NodeEvent.Action.UPDATED
+      ));
+
       logger.info(
         "Uploaded file to storages successfully: nodeId {}, version {}, size: {}, digest: {}",
         nodeId,
@@ -11,31 +11,26 @@ import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.interfaces.CollaborationLinkRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
-import com.zextras.carbonio.files.graphql.datafetchers.ShareDataFetcher;
 import io.vavr.control.Try;
 import java.text.MessageFormat;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 
 public class CollaborationLinkService {
 
   private final CollaborationLinkRepository collaborationLinkRepository;
   private final NodeRepository              nodeRepository;
   private final ShareRepository             shareRepository;
-  private final ShareDataFetcher            shareDataFetcher;
 
   @Inject
   public CollaborationLinkService(
     CollaborationLinkRepository collaborationLinkRepository,
     NodeRepository nodeRepository,
-    ShareRepository shareRepository,
-    ShareDataFetcher shareDataFetcher
+    ShareRepository shareRepository
   ) {
     this.collaborationLinkRepository = collaborationLinkRepository;
     this.nodeRepository = nodeRepository;
     this.shareRepository = shareRepository;
-    this.shareDataFetcher = shareDataFetcher;
   }
 
   public Try<Node> createShareByInvitationId(
@@ -72,15 +67,11 @@ public class CollaborationLinkService {
                 );
               }
 
-              // TODO: This is temporary, we need to change the cascadeUpsertShare method as an
-              //  utility method
-              CompletableFuture.runAsync(() ->
-                shareDataFetcher.cascadeUpsertShare(
-                  collaborationLink.getNodeId(),
-                  requesterId,
-                  ACL.decode(collaborationLink.getPermissions()),
-                  Optional.empty()
-                )
+              shareRepository.upsertInheritedShares(
+                collaborationLink.getNodeId(),
+                requesterId,
+                ACL.decode(collaborationLink.getPermissions()),
+                Optional.empty()
               );
             }
             return Try.success(node);
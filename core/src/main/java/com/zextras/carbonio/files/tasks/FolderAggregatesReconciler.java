@@ -0,0 +1,89 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.tasks;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the aggregates of the folders (size and number of descendants) that are missing: the
+ * ones of the folders created before they existed, and the ones set to NULL by the database when a
+ * change could not be applied to them. The database changes them in the same transaction of every
+ * change of a node, so the other folders are never visited. The folders are processed in small
+ * batches so that each statement locks only a few rows, and only after the ancestor_path index is
+ * built, since the descendants of a folder are found through it.
+ */
+@Singleton
+public class FolderAggregatesReconciler implements Runnable {
+
+  private static final Logger logger = LoggerFactory.getLogger(FolderAggregatesReconciler.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  private final NodeRepository           nodeRepository;
+  private final EbeanDatabaseManager     ebeanDatabaseManager;
+  private       ScheduledExecutorService scheduledExecutor;
+
+  @Inject
+  public FolderAggregatesReconciler(
+    NodeRepository nodeRepository,
+    EbeanDatabaseManager ebeanDatabaseManager
+  ) {
+    this.nodeRepository = nodeRepository;
+    this.ebeanDatabaseManager = ebeanDatabaseManager;
+  }
+
+  private int computeMissingAggregates() {
+    int computedFolders = 0;
+    List<String> folderIds = nodeRepository.getFolderIdsWithoutAggregates(BATCH_SIZE);
+
+    while (!folderIds.isEmpty()) {
+      int updatedFolders = nodeRepository.reconcileFolderAggregates(folderIds);
+      computedFolders += updatedFolders;
+
+      // The folders of the batch have been deleted or changed concurrently: the ones still
+      // without aggregates will be computed in the next run
+      if (updatedFolders == 0) {
+        break;
+      }
+      folderIds = nodeRepository.getFolderIdsWithoutAggregates(BATCH_SIZE);
+    }
+
+    return computedFolders;
+  }
+
+  @Override
+  public void run() {
+    try {
+      if (!ebeanDatabaseManager.isHierarchyIndexed()) {
+        logger.info("Folder aggregates reconciliation skipped: the hierarchy is not indexed yet");
+        return;
+      }
+      logger.info("Folder aggregates reconciled: {} computed", computeMissingAggregates());
+    } catch (Exception exception) {
+      // An exception would cancel all the next executions
+      logger.error("Folder aggregates reconciliation failed: ", exception);
+    }
+  }
+
+  public void start() {
+    scheduledExecutor = Executors.newScheduledThreadPool(1);
+    scheduledExecutor.scheduleAtFixedRate(this, 1, 10, TimeUnit.MINUTES);
+    logger.info("Folder Aggregates Reconciler started");
+  }
+
+  public void stop() {
+    scheduledExecutor.shutdown();
+    logger.info("Folder Aggregates Reconciler stopped");
+  }
+}
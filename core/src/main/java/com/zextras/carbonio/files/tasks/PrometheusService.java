@@ -15,6 +15,7 @@ public class PrometheusService {
   private final PrometheusMeterRegistry prometheusRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
   private final Counter uploadCounter = prometheusRegistry.counter("files.upload","service","files","uri","/upload");
   private final Counter uploadVersionCounter = prometheusRegistry.counter("files.upload","service","files","uri","/upload/version");
+  private final Counter storageUsageFixedCounter = prometheusRegistry.counter("files.storage.usage.fixed","service","files");
 
 
   public PrometheusMeterRegistry getRegistry(){
@@ -27,4 +28,8 @@ public class PrometheusService {
   public Counter getUploadVersionCounter(){
     return uploadVersionCounter;
   }
+
+  public Counter getStorageUsageFixedCounter(){
+    return storageUsageFixedCounter;
+  }
 }
@@ -0,0 +1,102 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.tasks;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.zextras.carbonio.files.dal.repositories.interfaces.StorageUsageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies the storage used by every owner against the versions of their files and rebuilds the
+ * drifted ones. The database changes the storage usages in the same transaction of every change of
+ * a version, so a drift is expected only after a manual change of the database.
+ * <p>
+ * The owners are processed in small batches: a batch failing because one of its owners is
+ * uploading a version is verified again in the next run.
+ * <p>
+ * It also exposes the total storage used by all the owners as a metric.
+ */
+@Singleton
+public class StorageUsageReconciler implements Runnable {
+
+  private static final Logger logger = LoggerFactory.getLogger(StorageUsageReconciler.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  private final StorageUsageRepository   storageUsageRepository;
+  private final Counter                  fixedCounter;
+  private       ScheduledExecutorService scheduledExecutor;
+
+  @Inject
+  public StorageUsageReconciler(
+    StorageUsageRepository storageUsageRepository,
+    PrometheusService prometheusService
+  ) {
+    this.storageUsageRepository = storageUsageRepository;
+    this.fixedCounter = prometheusService.getStorageUsageFixedCounter();
+
+    Gauge
+      .builder("files.storage.used.bytes", storageUsageRepository::getTotalUsedBytes)
+      .tag("service", "files")
+      .register(prometheusService.getRegistry());
+  }
+
+  private void verifyStorageUsages() {
+    int fixedStorageUsages = 0;
+    int failedBatches = 0;
+    List<String> ownerIds = storageUsageRepository.getOwnerIds(Optional.empty(), BATCH_SIZE);
+
+    while (!ownerIds.isEmpty()) {
+      try {
+        fixedStorageUsages += storageUsageRepository.rebuildStorageUsages(ownerIds);
+      } catch (Exception exception) {
+        failedBatches++;
+        logger.warn("Storage usages rebuild of {} owners failed", ownerIds.size(), exception);
+      }
+
+      ownerIds = storageUsageRepository.getOwnerIds(
+        Optional.of(ownerIds.get(ownerIds.size() - 1)),
+        BATCH_SIZE
+      );
+    }
+
+    fixedCounter.increment(fixedStorageUsages);
+    logger.info(
+      "Storage usages verified: {} fixed, {} batches to verify again",
+      fixedStorageUsages,
+      failedBatches
+    );
+  }
+
+  @Override
+  public void run() {
+    try {
+      verifyStorageUsages();
+    } catch (Exception exception) {
+      // An exception would cancel all the next executions
+      logger.error("Storage usages verification failed: ", exception);
+    }
+  }
+
+  public void start() {
+    scheduledExecutor = Executors.newScheduledThreadPool(1);
+    scheduledExecutor.scheduleAtFixedRate(this, 5, 360, TimeUnit.MINUTES);
+    logger.info("Storage Usage Reconciler started");
+  }
+
+  public void stop() {
+    scheduledExecutor.shutdown();
+    logger.info("Storage Usage Reconciler stopped");
+  }
+}
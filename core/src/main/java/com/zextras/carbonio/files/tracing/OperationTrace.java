@@ -0,0 +1,250 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.tracing;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Records the timeline of a single GraphQL operation: the resolvers, the dispatches of the batch
+ * loaders, the SQL statements and the HTTP calls to the other services, each one with its start
+ * offset and its duration in nanoseconds.
+ * <p>
+ * The trace of the running operation is bound to the current thread (see {@link #current()}) so
+ * the components that do not know anything about GraphQL, like the repositories, can record their
+ * spans. The executors used by the data fetchers propagate it to their tasks through
+ * {@link #propagate(Executor)}. When no trace is bound every method is a no-op.
+ * <p>
+ * The spans can be recorded concurrently. To bound the memory used by a trace only the first
+ * {@link com.zextras.carbonio.files.Files.Config.Tracing#MAX_SPANS} spans are kept, the others are
+ * only counted.
+ */
+public class OperationTrace {
+
+  public enum SpanType {
+    RESOLVER,
+    DATALOADER,
+    SQL,
+    HTTP
+  }
+
+  private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+
+  private final String        operationName;
+  private final boolean       requested;
+  private final long          startTimestamp;
+  private final long          startNanos;
+  private final int           maxSpans;
+  private final Queue<Span>   spans;
+  private final AtomicInteger recordedSpans;
+
+  /**
+   * @param operationName is a {@link String} representing the name of the traced operation
+   * @param requested is true if the client asked for the trace, false if the operation was sampled
+   * @param maxSpans is the maximum number of spans to keep
+   */
+  public OperationTrace(
+    String operationName,
+    boolean requested,
+    int maxSpans
+  ) {
+    this.operationName = operationName;
+    this.requested = requested;
+    this.startTimestamp = System.currentTimeMillis();
+    this.startNanos = System.nanoTime();
+    this.maxSpans = maxSpans;
+    this.spans = new ConcurrentLinkedQueue<>();
+    this.recordedSpans = new AtomicInteger();
+  }
+
+  /**
+   * @return an {@link Optional} containing the {@link OperationTrace} bound to the current thread,
+   * or an empty {@link Optional} if the running operation is not traced.
+   */
+  public static Optional<OperationTrace> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /**
+   * Executes the supplier measuring its duration in the trace bound to the current thread, if
+   * there is one.
+   *
+   * @param type is the {@link SpanType} of the span
+   * @param name is a {@link String} describing the span
+   * @param supplier is the {@link Supplier} to execute
+   *
+   * @return the value returned by the supplier.
+   */
+  public static <T> T span(
+    SpanType type,
+    String name,
+    Supplier<T> supplier
+  ) {
+    OperationTrace trace = CURRENT.get();
+    if (trace == null) {
+      return supplier.get();
+    }
+
+    long start = System.nanoTime();
+    try {
+      return supplier.get();
+    } finally {
+      trace.record(type, name, start, System.nanoTime());
+    }
+  }
+
+  /**
+   * Records a span that started at the given instant and ends now in the trace bound to the
+   * current thread, if there is one.
+   *
+   * @param type is the {@link SpanType} of the span
+   * @param name is a {@link String} describing the span
+   * @param startNanos is the value of {@link System#nanoTime()} when the span started
+   */
+  public static void recordSince(
+    SpanType type,
+    String name,
+    long startNanos
+  ) {
+    current().ifPresent(trace -> trace.record(type, name, startNanos, System.nanoTime()));
+  }
+
+  /**
+   * Wraps an {@link Executor} so that each task runs with the trace bound to the thread that
+   * submitted it.
+   *
+   * @param executor is the {@link Executor} to wrap
+   *
+   * @return an {@link Executor} propagating the current trace.
+   */
+  public static Executor propagate(Executor executor) {
+    return runnable -> {
+      OperationTrace trace = CURRENT.get();
+      executor.execute(trace == null
+        ? runnable
+        : () -> trace.run(runnable)
+      );
+    };
+  }
+
+  /**
+   * Executes the supplier in the current thread with this trace bound to it.
+   *
+   * @param supplier is the {@link Supplier} to execute
+   *
+   * @return the value returned by the supplier.
+   */
+  public <T> T call(Supplier<T> supplier) {
+    OperationTrace previousTrace = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return supplier.get();
+    } finally {
+      if (previousTrace == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previousTrace);
+      }
+    }
+  }
+
+  /**
+   * Executes the runnable in the current thread with this trace bound to it.
+   *
+   * @param runnable is the {@link Runnable} to execute
+   */
+  public void run(Runnable runnable) {
+    call(() -> {
+      runnable.run();
+      return null;
+    });
+  }
+
+  /**
+   * @param type is the {@link SpanType} of the span
+   * @param name is a {@link String} describing the span
+   * @param spanStartNanos is the value of {@link System#nanoTime()} when the span started
+   * @param spanEndNanos is the value of {@link System#nanoTime()} when the span ended
+   */
+  public void record(
+    SpanType type,
+    String name,
+    long spanStartNanos,
+    long spanEndNanos
+  ) {
+    if (recordedSpans.incrementAndGet() <= maxSpans) {
+      spans.add(new Span(type, name, spanStartNanos - startNanos, spanEndNanos - spanStartNanos));
+    }
+  }
+
+  /**
+   * @return true if the client asked for the trace, false if the operation was sampled.
+   */
+  public boolean isRequested() {
+    return requested;
+  }
+
+  /**
+   * Creates the representation of the trace returned in the <code>extensions</code> of the
+   * response. It must be called when the operation is completed.
+   *
+   * @return a {@link Map} containing the operation name, its start timestamp in milliseconds, its
+   * duration in nanoseconds, the spans ordered by their start offset and the number of spans
+   * dropped because exceeding the maximum.
+   */
+  public Map<String, Object> toSpecification() {
+    List<Map<String, Object>> sortedSpans = spans
+      .stream()
+      .sorted(Comparator.comparingLong(span -> span.startOffset))
+      .map(Span::toSpecification)
+      .collect(Collectors.toList());
+
+    Map<String, Object> specification = new LinkedHashMap<>();
+    specification.put("operation", operationName);
+    specification.put("startTime", startTimestamp);
+    specification.put("duration", System.nanoTime() - startNanos);
+    specification.put("spans", sortedSpans);
+    specification.put("droppedSpans", Math.max(0, recordedSpans.get() - maxSpans));
+    return specification;
+  }
+
+  private static final class Span {
+
+    private final SpanType type;
+    private final String   name;
+    private final long     startOffset;
+    private final long     duration;
+
+    private Span(
+      SpanType type,
+      String name,
+      long startOffset,
+      long duration
+    ) {
+      this.type = type;
+      this.name = name;
+      this.startOffset = startOffset;
+      this.duration = duration;
+    }
+
+    private Map<String, Object> toSpecification() {
+      Map<String, Object> specification = new LinkedHashMap<>();
+      specification.put("type", type.name());
+      specification.put("name", name);
+      specification.put("startOffset", startOffset);
+      specification.put("duration", duration);
+      return specification;
+    }
+  }
+}
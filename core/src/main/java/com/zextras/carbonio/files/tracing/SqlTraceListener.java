@@ -0,0 +1,33 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.tracing;
+
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
+import io.ebean.config.SlowQueryEvent;
+import io.ebean.config.SlowQueryListener;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the SQL queries executed by Ebean in the {@link OperationTrace} bound to the thread
+ * running them. Ebean notifies only the queries slower than its slow query threshold, so the
+ * threshold must be set to the lowest value: the queries faster than it are not traced.
+ * <p>
+ * The listener is invoked for every notified query, so when no trace is bound it does nothing.
+ */
+public class SqlTraceListener implements SlowQueryListener {
+
+  @Override
+  public void process(SlowQueryEvent event) {
+    OperationTrace.current().ifPresent(trace -> {
+      long endNanos = System.nanoTime();
+      trace.record(
+        SpanType.SQL,
+        event.getSql(),
+        endNanos - TimeUnit.MILLISECONDS.toNanos(event.getTimeMillis()),
+        endNanos
+      );
+    });
+  }
+}
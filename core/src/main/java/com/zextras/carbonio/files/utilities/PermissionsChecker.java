@@ -13,6 +13,13 @@ import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Manages the relationship of permissions between a {@link Node} and a {@link User}. Thanks to the
@@ -79,4 +86,54 @@ public class PermissionsChecker {
         }
       }).orElse(ACL.decode(ACL.NONE));
   }
+
+  /**
+   * <p>Calculates the {@link ACL} of a list of {@link Node}s for a specific {@link User}.</p>
+   * <p>It applies the same algorithm of {@link #getPermissions(String, String)} but it loads all
+   * the nodes with one query and all the shares of the nodes not owned by the user with another
+   * one, instead of running two queries for each node.</p>
+   *
+   * @param nodeIds is a {@link List} of node ids
+   * @param userId is a {@link String} representing a user id. This is the user we want to check its
+   * node permissions
+   *
+   * @return a {@link Map} containing, for each requested node id, the {@link ACL} of the user. The
+   * nodes that do not exist have the {@link ACL#NONE} permissions.
+   */
+  public Map<String, ACL> getPermissions(
+    List<String> nodeIds,
+    String userId
+  ) {
+    Map<String, ACL> permissions = new HashMap<>();
+    nodeIds.forEach(nodeId -> permissions.put(nodeId, ACL.decode(ACL.NONE)));
+
+    if (nodeIds.isEmpty()) {
+      return permissions;
+    }
+
+    List<Node> visibleNodes = nodeRepository
+      .getNodes(nodeIds, Optional.empty())
+      .filter(node -> !node.isHidden())
+      .collect(Collectors.toList());
+
+    Set<String> sharedNodeIds = new HashSet<>();
+    visibleNodes.forEach(node -> {
+      if (node.getNodeType().equals(NodeType.ROOT) || node.getOwnerId().equals(userId)) {
+        permissions.put(node.getId(), getMaxPermissionsAvailable());
+      } else {
+        sharedNodeIds.add(node.getId());
+      }
+    });
+
+    if (!sharedNodeIds.isEmpty()) {
+      shareRepository
+        .getShares(List.copyOf(sharedNodeIds), userId)
+        .forEach(share -> permissions.put(
+          share.getNodeId(),
+          getMaxPermissionsAvailable().lesserACL(share.getPermissions())
+        ));
+    }
+
+    return permissions;
+  }
 }
@@ -0,0 +1,31 @@
+-- SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+--
+-- SPDX-License-Identifier: AGPL-3.0-only
+
+BEGIN;
+
+-- The ancestors of a node as an array, so the subtree filters can use a GIN index instead of
+-- scanning the comma-separated ancestor_ids. Adding a nullable column without a default does not
+-- rewrite the table: the existing rows are backfilled in small batches by the service after the
+-- migration (see EbeanDatabaseManager).
+ALTER TABLE node ADD COLUMN ancestor_path TEXT[];
+
+CREATE OR REPLACE FUNCTION node_sync_ancestor_path() RETURNS TRIGGER AS $$
+BEGIN
+  NEW.ancestor_path := COALESCE(string_to_array(NEW.ancestor_ids, ','), '{}');
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+-- The application keeps writing only the ancestor_ids: the trigger keeps the array aligned
+CREATE TRIGGER node_sync_ancestor_path_trigger
+  BEFORE INSERT OR UPDATE OF ancestor_ids ON node
+  FOR EACH ROW EXECUTE PROCEDURE node_sync_ancestor_path();
+
+-- The indexes on the ancestor_path are not created here: building them in this transaction would
+-- block the writes on the node table for the whole build. The service builds them concurrently,
+-- the GIN one after the backfill (see EbeanDatabaseManager).
+
+UPDATE db_info SET version = 5;
+
+COMMIT;
@@ -0,0 +1,56 @@
+-- SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+--
+-- SPDX-License-Identifier: AGPL-3.0-only
+
+BEGIN;
+
+-- pg_trgm is one of the PostgreSQL contrib modules. If it cannot be installed the keyword search
+-- keeps working, only without the trigram indexes and without the fuzzy ranking of the names.
+DO $$
+BEGIN
+  CREATE EXTENSION IF NOT EXISTS pg_trgm;
+EXCEPTION
+  WHEN insufficient_privilege OR undefined_file THEN
+    RAISE NOTICE 'pg_trgm not installed: %', SQLERRM;
+END;
+$$;
+
+-- The words of a name are often separated by dots, dashes and underscores (report_2024-v2.pdf):
+-- they are replaced by spaces so that the parser splits them instead of reading a single token.
+-- The names weigh more than the descriptions in the ranking.
+CREATE OR REPLACE FUNCTION node_search_vector(node_name TEXT, node_description TEXT)
+  RETURNS TSVECTOR AS $$
+  SELECT
+    setweight(
+      to_tsvector('english', regexp_replace(COALESCE(node_name, ''), '[._-]+', ' ', 'g')),
+      'A'
+    ) ||
+    setweight(to_tsvector('english', COALESCE(node_description, '')), 'B');
+$$ LANGUAGE SQL IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION node_search_query(keywords TEXT) RETURNS TSQUERY AS $$
+  SELECT plainto_tsquery('english', regexp_replace(keywords, '[._-]+', ' ', 'g'));
+$$ LANGUAGE SQL IMMUTABLE;
+
+-- Like the ancestor_path, the existing rows are backfilled in small batches by the service after
+-- the migration (see EbeanDatabaseManager).
+ALTER TABLE node ADD COLUMN search_vector TSVECTOR;
+
+CREATE OR REPLACE FUNCTION node_sync_search_vector() RETURNS TRIGGER AS $$
+BEGIN
+  NEW.search_vector := node_search_vector(NEW.name, NEW.description);
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER node_sync_search_vector_trigger
+  BEFORE INSERT OR UPDATE OF name, description ON node
+  FOR EACH ROW EXECUTE PROCEDURE node_sync_search_vector();
+
+-- Like the ones on the ancestor_path, the indexes on the search_vector and the trigram indexes on
+-- the names and on the descriptions are built concurrently by the service, so the writes on the
+-- node table are never blocked by their build (see EbeanDatabaseManager).
+
+UPDATE db_info SET version = 6;
+
+COMMIT;
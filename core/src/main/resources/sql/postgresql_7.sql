@@ -0,0 +1,169 @@
+-- SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+--
+-- SPDX-License-Identifier: AGPL-3.0-only
+
+BEGIN;
+
+-- The aggregates of the subtree of a folder: the total size of its files (current versions only),
+-- the number of its files and the number of its folders, at any depth. They are NULL until the
+-- service computes them (see FolderAggregatesReconciler): the existing folders are computed in
+-- batches after the migration, while the nodes created from now on start from zero.
+ALTER TABLE node ADD COLUMN subtree_size BIGINT;
+ALTER TABLE node ADD COLUMN subtree_files INTEGER;
+ALTER TABLE node ADD COLUMN subtree_folders INTEGER;
+
+ALTER TABLE node ALTER COLUMN subtree_size SET DEFAULT 0;
+ALTER TABLE node ALTER COLUMN subtree_files SET DEFAULT 0;
+ALTER TABLE node ALTER COLUMN subtree_folders SET DEFAULT 0;
+
+-- Adds the deltas of a set of changed nodes to the aggregates of their ancestors, with a single
+-- update: each change brings a path of ancestor ids and its deltas, and the deltas of all the
+-- changes are summed for each ancestor. The roots are shared by all the users and have no
+-- aggregates. A NULL delta makes the aggregates of the ancestors NULL so they are computed again
+-- instead of becoming wrong.
+CREATE OR REPLACE FUNCTION node_add_to_ancestors(
+  paths VARCHAR[],
+  sizes BIGINT[],
+  files_counts INTEGER[],
+  folders_counts INTEGER[]
+) RETURNS VOID AS $$
+  WITH change AS (
+    SELECT *
+    FROM unnest(paths, sizes, files_counts, folders_counts) AS change(path, bytes, files, folders)
+  ),
+  delta AS (
+    SELECT CAST(ancestor.node_id AS CHARACTER(36)) AS node_id,
+      CASE WHEN bool_or(change.bytes IS NULL) THEN NULL ELSE SUM(change.bytes) END AS bytes,
+      CASE WHEN bool_or(change.files IS NULL) THEN NULL ELSE SUM(change.files) END AS files,
+      CASE WHEN bool_or(change.folders IS NULL) THEN NULL ELSE SUM(change.folders) END AS folders
+    FROM change
+    CROSS JOIN LATERAL unnest(string_to_array(change.path, ',')) AS ancestor(node_id)
+    GROUP BY ancestor.node_id
+  )
+  UPDATE node
+  SET subtree_size = node.subtree_size + CAST(delta.bytes AS BIGINT),
+    subtree_files = node.subtree_files + CAST(delta.files AS INTEGER),
+    subtree_folders = node.subtree_folders + CAST(delta.folders AS INTEGER)
+  FROM delta
+  WHERE node.node_id = delta.node_id
+    AND node.node_type = 'FOLDER'
+    AND (delta.bytes IS DISTINCT FROM 0
+      OR delta.files IS DISTINCT FROM 0
+      OR delta.folders IS DISTINCT FROM 0)
+$$ LANGUAGE SQL;
+
+-- Keeps the aggregates of the ancestors aligned in the same transaction of every statement changing
+-- the nodes, with one update of the ancestors for the whole statement:
+--  * a created or deleted node adds or removes only itself, because a subtree is always created
+--    with its folders before their children and deleted together with all its descendants;
+--  * a node moved to another folder (trash and restore included) moves itself and its subtree
+--    from the old ancestors to the new ones. Its descendants change only their ancestor_ids. A
+--    statement must not move a node together with one of its descendants, otherwise the
+--    descendant would be counted twice;
+--  * a file changing its size adds the difference.
+CREATE OR REPLACE FUNCTION node_sync_ancestors_aggregates() RETURNS TRIGGER AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    PERFORM node_add_to_ancestors(
+      array_agg(ancestor_ids),
+      array_agg(CASE WHEN node_type IN ('FOLDER', 'ROOT') THEN 0 ELSE COALESCE(size, 0) END),
+      array_agg(CASE WHEN node_type IN ('FOLDER', 'ROOT') THEN 0 ELSE 1 END),
+      array_agg(CASE WHEN node_type = 'FOLDER' THEN 1 ELSE 0 END)
+    )
+    FROM new_nodes
+    HAVING COUNT(*) > 0;
+  ELSIF TG_OP = 'DELETE' THEN
+    PERFORM node_add_to_ancestors(
+      array_agg(ancestor_ids),
+      array_agg(CASE WHEN node_type IN ('FOLDER', 'ROOT') THEN 0 ELSE -COALESCE(size, 0) END),
+      array_agg(CASE WHEN node_type IN ('FOLDER', 'ROOT') THEN 0 ELSE -1 END),
+      array_agg(CASE WHEN node_type = 'FOLDER' THEN -1 ELSE 0 END)
+    )
+    FROM old_nodes
+    HAVING COUNT(*) > 0;
+  ELSE
+    -- Most of the updates, the one of the aggregates made by this function included, neither move
+    -- a node nor change the size of a file
+    PERFORM node_add_to_ancestors(
+      array_agg(change.path),
+      array_agg(change.bytes),
+      array_agg(change.files),
+      array_agg(change.folders)
+    )
+    FROM (
+      SELECT old_node.ancestor_ids AS path,
+        CASE
+          WHEN old_node.node_type = 'FOLDER' THEN -old_node.subtree_size
+          WHEN old_node.node_type = 'ROOT' THEN 0
+          ELSE -COALESCE(old_node.size, 0)
+        END AS bytes,
+        CASE
+          WHEN old_node.node_type = 'FOLDER' THEN -old_node.subtree_files
+          WHEN old_node.node_type = 'ROOT' THEN 0
+          ELSE -1
+        END AS files,
+        CASE
+          WHEN old_node.node_type = 'FOLDER' THEN -1 - old_node.subtree_folders
+          ELSE 0
+        END AS folders
+      FROM old_nodes old_node
+      JOIN new_nodes new_node ON new_node.node_id = old_node.node_id
+      WHERE new_node.folder_id IS DISTINCT FROM old_node.folder_id
+      UNION ALL
+      SELECT new_node.ancestor_ids,
+        CASE
+          WHEN new_node.node_type = 'FOLDER' THEN new_node.subtree_size
+          WHEN new_node.node_type = 'ROOT' THEN 0
+          ELSE COALESCE(new_node.size, 0)
+        END,
+        CASE
+          WHEN new_node.node_type = 'FOLDER' THEN new_node.subtree_files
+          WHEN new_node.node_type = 'ROOT' THEN 0
+          ELSE 1
+        END,
+        CASE WHEN new_node.node_type = 'FOLDER' THEN 1 + new_node.subtree_folders ELSE 0 END
+      FROM old_nodes old_node
+      JOIN new_nodes new_node ON new_node.node_id = old_node.node_id
+      WHERE new_node.folder_id IS DISTINCT FROM old_node.folder_id
+      UNION ALL
+      SELECT new_node.ancestor_ids,
+        COALESCE(new_node.size, 0) - COALESCE(old_node.size, 0),
+        0,
+        0
+      FROM old_nodes old_node
+      JOIN new_nodes new_node ON new_node.node_id = old_node.node_id
+      WHERE new_node.folder_id IS NOT DISTINCT FROM old_node.folder_id
+        AND new_node.node_type NOT IN ('FOLDER', 'ROOT')
+        AND new_node.size IS DISTINCT FROM old_node.size
+    ) AS change
+    -- Without changes nothing is updated, so the update of the aggregates does not trigger again
+    -- this function
+    HAVING COUNT(*) > 0;
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- The transition tables are not allowed in a trigger for more than one event, nor with a list of
+-- columns: each event has its own trigger and the function filters the updated columns itself
+CREATE TRIGGER node_insert_ancestors_aggregates_trigger
+  AFTER INSERT ON node
+  REFERENCING NEW TABLE AS new_nodes
+  FOR EACH STATEMENT EXECUTE PROCEDURE node_sync_ancestors_aggregates();
+
+CREATE TRIGGER node_update_ancestors_aggregates_trigger
+  AFTER UPDATE ON node
+  REFERENCING OLD TABLE AS old_nodes NEW TABLE AS new_nodes
+  FOR EACH STATEMENT EXECUTE PROCEDURE node_sync_ancestors_aggregates();
+
+CREATE TRIGGER node_delete_ancestors_aggregates_trigger
+  AFTER DELETE ON node
+  REFERENCING OLD TABLE AS old_nodes
+  FOR EACH STATEMENT EXECUTE PROCEDURE node_sync_ancestors_aggregates();
+
+-- The partial index on the folders still to compute is built concurrently by the service (see
+-- EbeanDatabaseManager)
+
+UPDATE db_info SET version = 7;
+
+COMMIT;
@@ -0,0 +1,120 @@
+-- SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+--
+-- SPDX-License-Identifier: AGPL-3.0-only
+
+BEGIN;
+
+-- The storage used by every owner: the total size and the number of all the versions of their
+-- files, trashed files included. A row is never deleted, so every owner having at least one
+-- version has a row.
+CREATE TABLE IF NOT EXISTS storage_usage (
+    owner_id VARCHAR(256) NOT NULL,
+    used_bytes BIGINT DEFAULT 0 NOT NULL,
+    versions INTEGER DEFAULT 0 NOT NULL,
+
+    PRIMARY KEY(owner_id)
+);
+
+-- Adds the deltas to the storage used by an owner. A NULL owner means that the node of the
+-- version has already been deleted and released all its versions (see node_release_storage_usage)
+CREATE OR REPLACE FUNCTION storage_usage_add(
+  owner VARCHAR,
+  bytes BIGINT,
+  added_versions INTEGER
+) RETURNS VOID AS $$
+  INSERT INTO storage_usage (owner_id, used_bytes, versions)
+  SELECT owner, bytes, added_versions
+  WHERE owner IS NOT NULL
+  ON CONFLICT (owner_id) DO UPDATE
+  SET used_bytes = storage_usage.used_bytes + EXCLUDED.used_bytes,
+    versions = storage_usage.versions + EXCLUDED.versions
+$$ LANGUAGE SQL;
+
+-- Keeps the storage usage aligned in the same transaction of every created, deleted or resized
+-- version, whichever statement changes it.
+CREATE OR REPLACE FUNCTION revision_sync_storage_usage() RETURNS TRIGGER AS $$
+BEGIN
+  IF TG_OP = 'INSERT' THEN
+    PERFORM storage_usage_add(
+      (SELECT owner_id FROM node WHERE node_id = NEW.node_id),
+      NEW.size,
+      1
+    );
+  ELSIF TG_OP = 'DELETE' THEN
+    PERFORM storage_usage_add(
+      (SELECT owner_id FROM node WHERE node_id = OLD.node_id),
+      -OLD.size,
+      -1
+    );
+  ELSIF NEW.size IS DISTINCT FROM OLD.size THEN
+    PERFORM storage_usage_add(
+      (SELECT owner_id FROM node WHERE node_id = NEW.node_id),
+      NEW.size - OLD.size,
+      0
+    );
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER revision_sync_storage_usage_trigger
+  AFTER INSERT OR DELETE OR UPDATE OF size ON revision
+  FOR EACH ROW EXECUTE PROCEDURE revision_sync_storage_usage();
+
+-- The versions of a deleted node are deleted by the cascade when the node is no longer visible,
+-- so the node releases all of them before being deleted. A node changing owner moves them.
+CREATE OR REPLACE FUNCTION node_release_storage_usage() RETURNS TRIGGER AS $$
+BEGIN
+  PERFORM storage_usage_add(
+    OLD.owner_id,
+    -CAST(SUM(revision.size) AS BIGINT),
+    -CAST(COUNT(*) AS INTEGER)
+  )
+  FROM revision
+  WHERE revision.node_id = OLD.node_id
+  HAVING COUNT(*) > 0;
+
+  IF TG_OP = 'DELETE' THEN
+    RETURN OLD;
+  END IF;
+
+  PERFORM storage_usage_add(
+    NEW.owner_id,
+    CAST(SUM(revision.size) AS BIGINT),
+    CAST(COUNT(*) AS INTEGER)
+  )
+  FROM revision
+  WHERE revision.node_id = NEW.node_id
+  HAVING COUNT(*) > 0;
+  RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER node_release_storage_usage_trigger
+  BEFORE DELETE ON node
+  FOR EACH ROW EXECUTE PROCEDURE node_release_storage_usage();
+
+CREATE TRIGGER node_move_storage_usage_trigger
+  BEFORE UPDATE OF owner_id ON node
+  FOR EACH ROW
+  WHEN (OLD.owner_id IS DISTINCT FROM NEW.owner_id)
+  EXECUTE PROCEDURE node_release_storage_usage();
+
+-- The storage used by the owners of the versions created before the triggers existed is computed
+-- after the migration by a background thread, a batch of owners at a time, so the migration does
+-- not block the writes on the versions and on the nodes. The single row of this table keeps the
+-- last owner computed, so a restart resumes from it, and it is deleted when all the owners are
+-- done.
+CREATE TABLE IF NOT EXISTS storage_usage_backfill (
+    id SMALLINT DEFAULT 1 NOT NULL CHECK (id = 1),
+    last_owner_id VARCHAR(256) NOT NULL,
+
+    PRIMARY KEY(id)
+);
+
+INSERT INTO storage_usage_backfill (id, last_owner_id) VALUES (1, '')
+ON CONFLICT (id) DO NOTHING;
+
+UPDATE db_info SET version = 8;
+
+COMMIT;
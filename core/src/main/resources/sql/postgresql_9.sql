@@ -0,0 +1,19 @@
+-- SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+--
+-- SPDX-License-Identifier: AGPL-3.0-only
+
+BEGIN;
+
+-- The key signing the page tokens when the page-token-secret is not configured. It is generated by
+-- the first instance of the service that needs it (see PageTokenCodec) and then shared by all of
+-- them, so a token is accepted by every instance and it does not depend on any credential.
+CREATE TABLE IF NOT EXISTS page_token_key (
+    id SMALLINT DEFAULT 1 NOT NULL CHECK (id = 1),
+    secret TEXT NOT NULL,
+
+    PRIMARY KEY(id)
+);
+
+UPDATE db_info SET version = 9;
+
+COMMIT;
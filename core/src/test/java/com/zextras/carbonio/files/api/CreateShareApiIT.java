@@ -0,0 +1,148 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.google.inject.Injector;
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.dao.ebean.Share;
+import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CreateShareApiIT {
+
+  static Simulator simulator;
+  static ShareRepository shareRepository;
+
+  @BeforeEach
+  void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("fake-token", "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa"))
+            .build()
+            .start();
+
+    final Injector injector = simulator.getInjector();
+    shareRepository = injector.getInstance(ShareRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+    simulator.stopAll();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  @Test
+  void givenAFolderWithASubtreeCreatingAShareShouldPropagateItOnTheSubtreeWithoutChangingTheDirectShares() {
+    // Given
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new SimplePopulatorFolder(
+                "00000000-0000-0000-0000-000000000001", "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000002",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000001",
+                "subfolder",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001",
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000003",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000002",
+                "nested.txt",
+                "",
+                NodeType.TEXT,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001,00000000-0000-0000-0000-000000000002",
+                1L,
+                "text/plain"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000004",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000002",
+                "direct.txt",
+                "",
+                NodeType.TEXT,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001,00000000-0000-0000-0000-000000000002",
+                1L,
+                "text/plain"))
+        .addShare(
+            "00000000-0000-0000-0000-000000000004",
+            "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+            SharePermission.READ_AND_WRITE);
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("createShare")
+            .withString("node_id", "00000000-0000-0000-0000-000000000001")
+            .withString("share_target_id", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb")
+            .withEnum("permission", SharePermission.READ_ONLY)
+            .withWantedResultFormat("{ permission }")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    final List<Share> inheritedShares =
+        shareRepository.getShares(
+            List.of("00000000-0000-0000-0000-000000000002", "00000000-0000-0000-0000-000000000003"),
+            "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb");
+    Assertions.assertThat(inheritedShares)
+        .hasSize(2)
+        .allSatisfy(
+            share -> {
+              Assertions.assertThat(share.isDirect()).isFalse();
+              Assertions.assertThat(share.getPermissions())
+                  .isEqualTo(ACL.decode(SharePermission.READ_ONLY));
+            });
+
+    final Share directShare =
+        shareRepository
+            .getShare("00000000-0000-0000-0000-000000000004", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb")
+            .get();
+    Assertions.assertThat(directShare.isDirect()).isTrue();
+    Assertions.assertThat(directShare.getPermissions())
+        .isEqualTo(ACL.decode(SharePermission.READ_AND_WRITE));
+  }
+}
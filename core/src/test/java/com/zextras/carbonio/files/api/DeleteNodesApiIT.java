@@ -0,0 +1,157 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.dao.ebean.Tombstone;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.dal.repositories.interfaces.TombstoneRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class DeleteNodesApiIT {
+
+  static final String OWNER_ID     = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  static final String SHAREE_ID    = "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb";
+  static final String FOLDER_ID    = "00000000-0000-0000-0000-000000000001";
+  static final String SUBFOLDER_ID = "00000000-0000-0000-0000-000000000002";
+  static final String FILE_ID      = "00000000-0000-0000-0000-000000000003";
+  static final String NESTED_ID    = "00000000-0000-0000-0000-000000000004";
+  static final String TRASHED_ID   = "00000000-0000-0000-0000-000000000005";
+
+  static Simulator           simulator;
+  static NodeRepository      nodeRepository;
+  static ShareRepository     shareRepository;
+  static TombstoneRepository tombstoneRepository;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("owner-token", OWNER_ID))
+            .build()
+            .start();
+
+    nodeRepository = simulator.getInjector().getInstance(NodeRepository.class);
+    shareRepository = simulator.getInjector().getInstance(ShareRepository.class);
+    tombstoneRepository = simulator.getInjector().getInstance(TombstoneRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  PopulatorNode aNode(String nodeId, String parentId, NodeType type, String ancestorIds) {
+    return new PopulatorNode(
+        nodeId,
+        OWNER_ID,
+        OWNER_ID,
+        parentId,
+        nodeId,
+        "",
+        type,
+        ancestorIds,
+        NodeType.FOLDER.equals(type) ? 0L : 1L,
+        NodeType.FOLDER.equals(type) ? null : "text/plain");
+  }
+
+  HttpResponse deleteNodes(List<String> nodeIds) {
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("deleteNodes")
+            .withListOfStrings("node_ids", nodeIds.toArray(String[]::new))
+            .withWantedResultFormat("")
+            .build();
+
+    return TestUtils.sendRequest(
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+        simulator.getNettyChannel());
+  }
+
+  @Test
+  void givenAFolderWithASubtreeTheDeleteNodesShouldDeleteTheWholeSubtreeAndCreateTheTombstones() {
+    // Given
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(new SimplePopulatorFolder(FOLDER_ID, OWNER_ID, "folder"))
+        .addNode(aNode(SUBFOLDER_ID, FOLDER_ID, NodeType.FOLDER, "LOCAL_ROOT," + FOLDER_ID))
+        .addNode(aNode(FILE_ID, FOLDER_ID, NodeType.TEXT, "LOCAL_ROOT," + FOLDER_ID))
+        .addVersion(FILE_ID)
+        .addNode(
+            aNode(
+                NESTED_ID,
+                SUBFOLDER_ID,
+                NodeType.TEXT,
+                "LOCAL_ROOT," + FOLDER_ID + "," + SUBFOLDER_ID))
+        .addShare(FOLDER_ID, SHAREE_ID, SharePermission.READ_ONLY)
+        .addShare(NESTED_ID, SHAREE_ID, SharePermission.READ_AND_WRITE);
+
+    // When
+    HttpResponse httpResponse = deleteNodes(List.of(FOLDER_ID));
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    List<Object> deletedIds =
+        (List) TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "deleteNodes");
+
+    Assertions.assertThat(deletedIds).containsExactly(FOLDER_ID);
+    Assertions.assertThat(
+            nodeRepository.getNodes(
+                List.of(FOLDER_ID, SUBFOLDER_ID, FILE_ID, NESTED_ID), Optional.empty()))
+        .isEmpty();
+    Assertions.assertThat(shareRepository.getShares(List.of(FOLDER_ID, NESTED_ID))).isEmpty();
+    Assertions.assertThat(tombstoneRepository.getTombstones())
+        .extracting(Tombstone::getNodeId, Tombstone::getVersion)
+        .containsExactlyInAnyOrder(
+            Assertions.tuple(FILE_ID, 1),
+            Assertions.tuple(FILE_ID, 2),
+            Assertions.tuple(NESTED_ID, 1));
+  }
+
+  @Test
+  void givenAFolderWithATrashedChildTheDeleteNodesShouldKeepTheChildInTrashWithoutShares() {
+    // Given
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(new SimplePopulatorFolder(FOLDER_ID, OWNER_ID, "folder"))
+        .addNode(aNode(TRASHED_ID, FOLDER_ID, NodeType.TEXT, "LOCAL_ROOT," + FOLDER_ID))
+        .addShare(TRASHED_ID, SHAREE_ID, SharePermission.READ_ONLY)
+        .addNodeToTrash(TRASHED_ID, FOLDER_ID);
+
+    // When
+    HttpResponse httpResponse = deleteNodes(List.of(FOLDER_ID));
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nodeRepository.getNode(FOLDER_ID)).isEmpty();
+    Assertions.assertThat(nodeRepository.getNode(TRASHED_ID)).isPresent();
+    Assertions.assertThat(nodeRepository.getTrashedNode(TRASHED_ID)).isPresent();
+    Assertions.assertThat(shareRepository.getShare(TRASHED_ID, SHAREE_ID)).isEmpty();
+  }
+}
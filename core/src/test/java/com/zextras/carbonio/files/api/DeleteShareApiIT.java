@@ -0,0 +1,157 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.google.inject.Injector;
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.Map;
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DeleteShareApiIT {
+
+  static Simulator simulator;
+  static ShareRepository shareRepository;
+
+  @BeforeEach
+  void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("fake-token", "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa"))
+            .build()
+            .start();
+
+    final Injector injector = simulator.getInjector();
+    shareRepository = injector.getInstance(ShareRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+    simulator.stopAll();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  @Test
+  void givenASharedFolderDeletingTheShareShouldRevokeTheInheritedSharesUntilADirectShare() {
+    // Given
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new SimplePopulatorFolder(
+                "00000000-0000-0000-0000-000000000001", "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000002",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000001",
+                "inherited",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001",
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000003",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000001",
+                "direct",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001",
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000004",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000003",
+                "nested.txt",
+                "",
+                NodeType.TEXT,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001,00000000-0000-0000-0000-000000000003",
+                1L,
+                "text/plain"))
+        .addShare(
+            "00000000-0000-0000-0000-000000000001",
+            "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+            SharePermission.READ_ONLY)
+        .addShare(
+            "00000000-0000-0000-0000-000000000003",
+            "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+            SharePermission.READ_AND_WRITE);
+
+    shareRepository.upsertShare(
+        "00000000-0000-0000-0000-000000000002",
+        "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+        ACL.decode(SharePermission.READ_ONLY),
+        false,
+        false,
+        Optional.empty());
+    shareRepository.upsertShare(
+        "00000000-0000-0000-0000-000000000004",
+        "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+        ACL.decode(SharePermission.READ_AND_WRITE),
+        false,
+        false,
+        Optional.empty());
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("deleteShare")
+            .withString("node_id", "00000000-0000-0000-0000-000000000001")
+            .withString("share_target_id", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb")
+            .withWantedResultFormat("")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(
+            shareRepository.getShare(
+                "00000000-0000-0000-0000-000000000002", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb"))
+        .isEmpty();
+    // The direct share and the shares inherited from it are kept
+    Assertions.assertThat(
+            shareRepository.getShare(
+                "00000000-0000-0000-0000-000000000003", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb"))
+        .isPresent();
+    Assertions.assertThat(
+            shareRepository.getShare(
+                "00000000-0000-0000-0000-000000000004", "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb"))
+        .isPresent();
+  }
+}
@@ -0,0 +1,132 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorTextFile;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class FlagNodesApiIT {
+
+  static final String OWNER_ID  = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  static final String SHAREE_ID = "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb";
+  static final String FIRST_ID  = "00000000-0000-0000-0000-000000000000";
+  static final String SECOND_ID = "11111111-1111-1111-1111-111111111111";
+
+  static Simulator      simulator;
+  static NodeRepository nodeRepository;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("owner-token", OWNER_ID, "sharee-token", SHAREE_ID))
+            .build()
+            .start();
+
+    nodeRepository = simulator.getInjector().getInstance(NodeRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  void createFiles() {
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(new SimplePopulatorTextFile(FIRST_ID, OWNER_ID, "first.txt"))
+        .addNode(new SimplePopulatorTextFile(SECOND_ID, OWNER_ID, "second.txt"));
+  }
+
+  HttpResponse flagNodes(List<String> nodeIds, boolean flag, String cookie) {
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("flagNodes")
+            .withListOfStrings("node_ids", nodeIds.toArray(String[]::new))
+            .withBoolean("flag", flag)
+            .withWantedResultFormat("")
+            .build();
+
+    return TestUtils.sendRequest(
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=" + cookie, bodyPayload),
+        simulator.getNettyChannel());
+  }
+
+  @Test
+  void givenTwoFilesOfTheRequesterTheFlagNodesShouldFlagBothOfThem() {
+    // Given
+    createFiles();
+
+    // When
+    HttpResponse httpResponse = flagNodes(List.of(FIRST_ID, SECOND_ID), true, "owner-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    List<Object> flaggedIds =
+        (List) TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "flagNodes");
+
+    Assertions.assertThat(flaggedIds).containsExactlyInAnyOrder(FIRST_ID, SECOND_ID);
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(FIRST_ID, OWNER_ID)).isTrue();
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(SECOND_ID, OWNER_ID)).isTrue();
+  }
+
+  @Test
+  void givenTwoFlaggedFilesTheFlagNodesWithFalseShouldUnflagBothOfThem() {
+    // Given
+    createFiles();
+    flagNodes(List.of(FIRST_ID, SECOND_ID), true, "owner-token");
+
+    // When
+    HttpResponse httpResponse = flagNodes(List.of(FIRST_ID, SECOND_ID), false, "owner-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(FIRST_ID, OWNER_ID)).isFalse();
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(SECOND_ID, OWNER_ID)).isFalse();
+  }
+
+  @Test
+  void givenAFileNotSharedWithTheRequesterTheFlagNodesShouldFlagOnlyTheSharedOne() {
+    // Given
+    createFiles();
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addShare(FIRST_ID, SHAREE_ID, SharePermission.READ_ONLY);
+
+    // When
+    HttpResponse httpResponse = flagNodes(List.of(FIRST_ID, SECOND_ID), true, "sharee-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    List<Object> flaggedIds =
+        (List) TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "flagNodes");
+
+    Assertions.assertThat(flaggedIds).containsExactly(FIRST_ID);
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(FIRST_ID, SHAREE_ID)).isTrue();
+    Assertions.assertThat(nodeRepository.isFlaggedForUser(SECOND_ID, SHAREE_ID)).isFalse();
+  }
+}
@@ -0,0 +1,331 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.FolderAggregates;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class FolderAggregatesApiIT {
+
+  static final String OWNER_ID       = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  static final String FOLDER_ID      = "00000000-0000-0000-0000-000000000001";
+  static final String SUBFOLDER_ID   = "00000000-0000-0000-0000-000000000002";
+  static final String FILE_ID        = "00000000-0000-0000-0000-000000000003";
+  static final String NESTED_ID      = "00000000-0000-0000-0000-000000000004";
+  static final String DESTINATION_ID = "00000000-0000-0000-0000-000000000005";
+
+  static Simulator      simulator;
+  static NodeRepository nodeRepository;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("owner-token", OWNER_ID))
+            .build()
+            .start();
+
+    nodeRepository = simulator.getInjector().getInstance(NodeRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  PopulatorNode aNode(
+      String nodeId, String parentId, NodeType type, String ancestorIds, long size) {
+    return new PopulatorNode(
+        nodeId,
+        OWNER_ID,
+        OWNER_ID,
+        parentId,
+        nodeId,
+        "",
+        type,
+        ancestorIds,
+        size,
+        NodeType.FOLDER.equals(type) ? null : "text/plain");
+  }
+
+  void populateSubtree() {
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(new SimplePopulatorFolder(FOLDER_ID, OWNER_ID, "folder"))
+        .addNode(new SimplePopulatorFolder(DESTINATION_ID, OWNER_ID, "destination"))
+        .addNode(aNode(SUBFOLDER_ID, FOLDER_ID, NodeType.FOLDER, "LOCAL_ROOT," + FOLDER_ID, 0L))
+        .addNode(aNode(FILE_ID, FOLDER_ID, NodeType.TEXT, "LOCAL_ROOT," + FOLDER_ID, 3L))
+        .addNode(
+            aNode(
+                NESTED_ID,
+                SUBFOLDER_ID,
+                NodeType.TEXT,
+                "LOCAL_ROOT," + FOLDER_ID + "," + SUBFOLDER_ID,
+                4L));
+  }
+
+  @Test
+  void givenAFolderWithASubtreeTheGetNodeShouldReturnTheAggregatesOfAllTheDescendants() {
+    // Given
+    populateSubtree();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("getNode")
+            .withString("node_id", FOLDER_ID)
+            .withWantedResultFormat(
+                "{ id ... on Folder { aggregates { size files_count folders_count } } }")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    Map<String, Object> folder =
+        TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "getNode");
+
+    Assertions.assertThat((Map<String, Object>) folder.get("aggregates"))
+        .containsEntry("size", 7.0)
+        .containsEntry("files_count", 2)
+        .containsEntry("folders_count", 1);
+  }
+
+  @Test
+  void givenTheChildrenOfAFolderTheGetNodeShouldReturnTheAggregatesOfEachChildFolder() {
+    // Given
+    populateSubtree();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("getNode")
+            .withString("node_id", FOLDER_ID)
+            .withWantedResultFormat(
+                "{ id ... on Folder { children(limit: 10, sort: NAME_ASC) { nodes { id"
+                    + " ... on Folder { aggregates { size files_count folders_count } } } } } }")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    Map<String, Object> folder =
+        TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "getNode");
+    List<Map<String, Object>> children =
+        (List<Map<String, Object>>) ((Map<String, Object>) folder.get("children")).get("nodes");
+
+    Assertions.assertThat(children)
+        .filteredOn(child -> SUBFOLDER_ID.equals(child.get("id")))
+        .singleElement()
+        .extracting(child -> (Map<String, Object>) child.get("aggregates"))
+        .isEqualTo(Map.of("size", 4.0, "files_count", 1, "folders_count", 0));
+  }
+
+  @Test
+  void givenASetOfNodesTheGetFolderAggregatesShouldReturnTheAggregatesOfTheFoldersOnly() {
+    // Given
+    populateSubtree();
+
+    // When
+    Map<String, FolderAggregates> aggregates =
+        nodeRepository.getFolderAggregates(List.of(FOLDER_ID, SUBFOLDER_ID, FILE_ID));
+
+    // Then
+    Assertions.assertThat(aggregates).containsOnlyKeys(FOLDER_ID, SUBFOLDER_ID);
+    Assertions.assertThat(aggregates.get(SUBFOLDER_ID))
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(4L, 1, 0);
+  }
+
+  @Test
+  void givenASubfolderMovedToAnotherFolderTheAggregatesOfBothFoldersShouldBeUpdated() {
+    // Given
+    populateSubtree();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("moveNodes")
+            .withListOfStrings("node_ids", new String[] {SUBFOLDER_ID})
+            .withString("destination_id", DESTINATION_ID)
+            .withWantedResultFormat("{ id }")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(FOLDER_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(3L, 1, 0);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(DESTINATION_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(4L, 1, 1);
+  }
+
+  @Test
+  void givenAFolderMovedTogetherWithItsSubfolderBothShouldBeMovedToTheDestination() {
+    // Given
+    populateSubtree();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("moveNodes")
+            .withListOfStrings("node_ids", new String[] {FOLDER_ID, SUBFOLDER_ID})
+            .withString("destination_id", DESTINATION_ID)
+            .withWantedResultFormat("{ id }")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nodeRepository.getNode(SUBFOLDER_ID).get().getParentId())
+        .contains(DESTINATION_ID);
+    Assertions.assertThat(nodeRepository.getNode(NESTED_ID).get().getAncestorsList())
+        .contains(DESTINATION_ID, SUBFOLDER_ID)
+        .doesNotContain(FOLDER_ID);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(FOLDER_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(3L, 1, 0);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(DESTINATION_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(7L, 2, 2);
+  }
+
+  @Test
+  void givenAFolderMovedTogetherWithANestedFileBothShouldBeMovedToTheDestination() {
+    // Given
+    populateSubtree();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("moveNodes")
+            .withListOfStrings("node_ids", new String[] {FOLDER_ID, NESTED_ID})
+            .withString("destination_id", DESTINATION_ID)
+            .withWantedResultFormat("{ id }")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nodeRepository.getNode(NESTED_ID).get().getParentId())
+        .contains(DESTINATION_ID);
+    Assertions.assertThat(nodeRepository.getNode(SUBFOLDER_ID).get().getParentId())
+        .contains(FOLDER_ID);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(FOLDER_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(3L, 1, 1);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(SUBFOLDER_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(0L, 0, 0);
+    Assertions.assertThat(nodeRepository.getFolderAggregates(DESTINATION_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(7L, 2, 2);
+  }
+
+  @Test
+  void givenFoldersWithoutAggregatesTheReconcileShouldComputeThemFromTheDescendants() {
+    // Given
+    populateSubtree();
+    simulator
+        .getInjector()
+        .getInstance(EbeanDatabaseManager.class)
+        .getEbeanDatabase()
+        .sqlUpdate(
+            "UPDATE node SET subtree_size = NULL, subtree_files = NULL, subtree_folders = NULL")
+        .execute();
+
+    List<String> folderIds = nodeRepository.getFolderIdsWithoutAggregates(100);
+
+    // When
+    int reconciledFolders = nodeRepository.reconcileFolderAggregates(folderIds);
+
+    // Then
+    Assertions.assertThat(folderIds)
+        .containsExactlyInAnyOrder(FOLDER_ID, SUBFOLDER_ID, DESTINATION_ID);
+    Assertions.assertThat(reconciledFolders).isEqualTo(3);
+    Assertions.assertThat(nodeRepository.getFolderIdsWithoutAggregates(100)).isEmpty();
+    Assertions.assertThat(nodeRepository.getFolderAggregates(FOLDER_ID))
+        .get()
+        .extracting(
+            FolderAggregates::getSize,
+            FolderAggregates::getFilesCount,
+            FolderAggregates::getFoldersCount)
+        .containsExactly(7L, 2, 1);
+  }
+}
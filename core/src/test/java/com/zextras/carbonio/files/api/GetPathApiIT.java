@@ -0,0 +1,165 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class GetPathApiIT {
+
+  static final String OWNER_ID     = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  static final String SHAREE_ID    = "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb";
+  static final String FOLDER_ID    = "00000000-0000-0000-0000-000000000000";
+  static final String SUBFOLDER_ID = "11111111-1111-1111-1111-111111111111";
+  static final String FILE_ID      = "22222222-2222-2222-2222-222222222222";
+
+  static Simulator simulator;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("owner-token", OWNER_ID, "sharee-token", SHAREE_ID))
+            .build()
+            .start();
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  void createFolderTree() {
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new PopulatorNode(
+                FOLDER_ID,
+                OWNER_ID,
+                OWNER_ID,
+                "LOCAL_ROOT",
+                "folder",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT",
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                SUBFOLDER_ID,
+                OWNER_ID,
+                OWNER_ID,
+                FOLDER_ID,
+                "subfolder",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT," + FOLDER_ID,
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                FILE_ID,
+                OWNER_ID,
+                OWNER_ID,
+                SUBFOLDER_ID,
+                "file.txt",
+                "",
+                NodeType.TEXT,
+                "LOCAL_ROOT," + FOLDER_ID + "," + SUBFOLDER_ID,
+                5L,
+                "text/plain"));
+  }
+
+  HttpResponse getPath(String nodeId, String cookie) {
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("getPath")
+            .withString("node_id", nodeId)
+            .withWantedResultFormat("{ id name }")
+            .build();
+
+    return TestUtils.sendRequest(
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=" + cookie, bodyPayload),
+        simulator.getNettyChannel());
+  }
+
+  @Test
+  void givenAFileOfTheRequesterTheGetPathShouldReturnTheWholePathStartingFromTheRoot() {
+    // Given
+    createFolderTree();
+
+    // When
+    HttpResponse httpResponse = getPath(FILE_ID, "owner-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    List<Map<String, Object>> path =
+        TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "getPath");
+
+    Assertions.assertThat(path)
+        .extracting(node -> node.get("id"))
+        .containsExactly("LOCAL_ROOT", FOLDER_ID, SUBFOLDER_ID, FILE_ID);
+  }
+
+  @Test
+  void givenAFileSharedThroughItsFolderTheGetPathShouldStartFromTheHighestSharedNode() {
+    // Given
+    createFolderTree();
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addShare(SUBFOLDER_ID, SHAREE_ID, SharePermission.READ_ONLY)
+        .addShare(FILE_ID, SHAREE_ID, SharePermission.READ_ONLY);
+
+    // When
+    HttpResponse httpResponse = getPath(FILE_ID, "sharee-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    List<Map<String, Object>> path =
+        TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "getPath");
+
+    Assertions.assertThat(path)
+        .extracting(node -> node.get("id"))
+        .containsExactly(SUBFOLDER_ID, FILE_ID);
+  }
+
+  @Test
+  void givenAFileNotSharedWithTheRequesterTheGetPathShouldReturnANodeNotFoundError() {
+    // Given
+    createFolderTree();
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addShare(SUBFOLDER_ID, SHAREE_ID, SharePermission.READ_ONLY);
+
+    // When
+    HttpResponse httpResponse = getPath(FILE_ID, "sharee-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(TestUtils.jsonResponseToErrors(httpResponse.getBodyPayload()))
+        .hasSize(1);
+  }
+}
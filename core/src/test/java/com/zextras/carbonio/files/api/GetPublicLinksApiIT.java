@@ -218,9 +218,8 @@ class GetPublicLinksApiIT {
         .isEmpty();
   }
 
-  // TODO it should return an error message
   @Test
-  void givenANotExistingNodeTheGetLinksShouldReturn200StatusCodeAndNull() {
+  void givenANotExistingNodeTheGetLinksShouldReturn200StatusCodeNullAndANodeNotFoundError() {
     // Given
     String bodyPayload =
         GraphqlCommandBuilder.aQueryBuilder("getLinks")
@@ -240,6 +239,8 @@ class GetPublicLinksApiIT {
     Assertions.assertThat(TestUtils.jsonResponseToList(httpResponse.getBodyPayload(), "getLinks"))
         .first()
         .isNull();
+    Assertions.assertThat(TestUtils.jsonResponseToErrors(httpResponse.getBodyPayload()))
+        .containsExactly("Could not find node with id 00000000-0000-0000-0000-000000000000");
   }
 
   // TODO it should return an error message
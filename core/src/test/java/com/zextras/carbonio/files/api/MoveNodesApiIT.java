@@ -14,11 +14,15 @@ import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
 import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
 import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
 import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorTextFile;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.dao.ebean.Share;
 import com.zextras.carbonio.files.dal.repositories.interfaces.FileVersionRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.LinkRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
 import com.zextras.carbonio.files.utilities.http.HttpRequest;
 import com.zextras.carbonio.files.utilities.http.HttpResponse;
 import org.assertj.core.api.Assertions;
@@ -34,6 +38,7 @@ class MoveNodesApiIT {
   static NodeRepository nodeRepository;
   static FileVersionRepository fileVersionRepository;
   static LinkRepository linkRepository;
+  static ShareRepository shareRepository;
 
   @BeforeEach
   void init() {
@@ -53,6 +58,7 @@ class MoveNodesApiIT {
     nodeRepository = injector.getInstance(NodeRepository.class);
     fileVersionRepository = injector.getInstance(FileVersionRepository.class);
     linkRepository = injector.getInstance(LinkRepository.class);
+    shareRepository = injector.getInstance(ShareRepository.class);
   }
 
   @AfterEach
@@ -156,4 +162,103 @@ class MoveNodesApiIT {
         .containsEntry("id", "00000000-0000-0000-0000-000000000003")
         .containsEntry("name", "second");
   }
+
+  @Test
+  void givenAFolderWithASubtreeMovingItInASharedFolderShouldAlignTheAncestorsAndTheSharesOfTheSubtree() {
+    // Given
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new SimplePopulatorFolder(
+                "00000000-0000-0000-0000-000000000001", "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa", "source"))
+        .addNode(
+            new SimplePopulatorFolder(
+                "00000000-0000-0000-0000-000000000002",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "destination"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000003",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000001",
+                "moved",
+                "",
+                NodeType.FOLDER,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001",
+                0L,
+                null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000004",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa",
+                "00000000-0000-0000-0000-000000000003",
+                "nested.txt",
+                "",
+                NodeType.TEXT,
+                "LOCAL_ROOT,00000000-0000-0000-0000-000000000001,00000000-0000-0000-0000-000000000003",
+                1L,
+                "text/plain"))
+        .addShare(
+            "00000000-0000-0000-0000-000000000001",
+            "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+            SharePermission.READ_AND_WRITE)
+        .addShare(
+            "00000000-0000-0000-0000-000000000002",
+            "cccccccc-cccc-cccc-cccc-cccccccccccc",
+            SharePermission.READ_ONLY);
+
+    List.of("00000000-0000-0000-0000-000000000003", "00000000-0000-0000-0000-000000000004")
+        .forEach(
+            nodeId ->
+                shareRepository.upsertShare(
+                    nodeId,
+                    "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb",
+                    ACL.decode(SharePermission.READ_AND_WRITE),
+                    false,
+                    false,
+                    Optional.empty()));
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("moveNodes")
+            .withListOfStrings("node_ids", new String[]{"00000000-0000-0000-0000-000000000003"})
+            .withString("destination_id", "00000000-0000-0000-0000-000000000002")
+            .withWantedResultFormat("{ id }")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    final Node movedFolder = nodeRepository.getNode("00000000-0000-0000-0000-000000000003").get();
+    Assertions.assertThat(movedFolder.getParentId())
+        .contains("00000000-0000-0000-0000-000000000002");
+    Assertions.assertThat(movedFolder.getAncestorIds())
+        .isEqualTo("LOCAL_ROOT,00000000-0000-0000-0000-000000000002");
+
+    final Node nestedFile = nodeRepository.getNode("00000000-0000-0000-0000-000000000004").get();
+    Assertions.assertThat(nestedFile.getAncestorIds())
+        .isEqualTo(
+            "LOCAL_ROOT,00000000-0000-0000-0000-000000000002,00000000-0000-0000-0000-000000000003");
+
+    final List<Share> shares =
+        shareRepository.getShares(
+            List.of("00000000-0000-0000-0000-000000000003", "00000000-0000-0000-0000-000000000004"));
+    Assertions.assertThat(shares)
+        .hasSize(2)
+        .allSatisfy(
+            share -> {
+              Assertions.assertThat(share.getTargetUserId())
+                  .isEqualTo("cccccccc-cccc-cccc-cccc-cccccccccccc");
+              Assertions.assertThat(share.isDirect()).isFalse();
+              Assertions.assertThat(share.getPermissions())
+                  .isEqualTo(ACL.decode(SharePermission.READ_ONLY));
+            });
+  }
 }
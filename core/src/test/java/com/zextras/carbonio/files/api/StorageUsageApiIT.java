@@ -0,0 +1,177 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.api;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.TestUtils;
+import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
+import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
+import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.dao.ebean.StorageUsage;
+import com.zextras.carbonio.files.dal.repositories.interfaces.StorageUsageRepository;
+import com.zextras.carbonio.files.utilities.http.HttpRequest;
+import com.zextras.carbonio.files.utilities.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class StorageUsageApiIT {
+
+  static final String OWNER_ID  = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  static final String OTHER_ID  = "bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb";
+  static final String FOLDER_ID = "00000000-0000-0000-0000-000000000001";
+  static final String FILE_ID   = "00000000-0000-0000-0000-000000000002";
+  static final String NESTED_ID = "00000000-0000-0000-0000-000000000003";
+
+  static Simulator              simulator;
+  static StorageUsageRepository storageUsageRepository;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator()
+            .init()
+            .withDatabase()
+            .withServiceDiscover()
+            .withUserManagement(Map.of("owner-token", OWNER_ID, "other-token", OTHER_ID))
+            .build()
+            .start();
+
+    storageUsageRepository = simulator.getInjector().getInstance(StorageUsageRepository.class);
+  }
+
+  @AfterEach
+  void cleanUp() {
+    simulator.resetDatabase();
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  PopulatorNode aFile(String nodeId, String parentId, String ancestorIds, long size) {
+    return new PopulatorNode(
+        nodeId,
+        OWNER_ID,
+        OWNER_ID,
+        parentId,
+        nodeId,
+        "",
+        NodeType.TEXT,
+        ancestorIds,
+        size,
+        "text/plain");
+  }
+
+  void populateFiles() {
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(new SimplePopulatorFolder(FOLDER_ID, OWNER_ID, "folder"))
+        .addNode(aFile(FILE_ID, "LOCAL_ROOT", "LOCAL_ROOT", 3L))
+        .addVersion(FILE_ID)
+        .addNode(aFile(NESTED_ID, FOLDER_ID, "LOCAL_ROOT," + FOLDER_ID, 4L));
+  }
+
+  HttpResponse getStorageUsage(String cookie) {
+    return TestUtils.sendRequest(
+        HttpRequest.of(
+            "POST",
+            "/graphql/",
+            "ZM_AUTH_TOKEN=" + cookie,
+            "query { getStorageUsage { used_bytes versions_count } }"),
+        simulator.getNettyChannel());
+  }
+
+  @Test
+  void givenFilesWithMultipleVersionsTheGetStorageUsageShouldReturnTheSizeOfAllTheVersions() {
+    // Given
+    populateFiles();
+
+    // When
+    HttpResponse httpResponse = getStorageUsage("owner-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(
+            TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "getStorageUsage"))
+        .containsEntry("used_bytes", 10.0)
+        .containsEntry("versions_count", 3);
+  }
+
+  @Test
+  void givenAUserWithoutFilesTheGetStorageUsageShouldReturnNoUsedStorage() {
+    // Given
+    populateFiles();
+
+    // When
+    HttpResponse httpResponse = getStorageUsage("other-token");
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(
+            TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "getStorageUsage"))
+        .containsEntry("used_bytes", 0.0)
+        .containsEntry("versions_count", 0);
+  }
+
+  @Test
+  void givenADeletedFolderTheStorageUsageShouldReleaseTheVersionsOfItsDescendants() {
+    // Given
+    populateFiles();
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aMutationBuilder("deleteNodes")
+            .withListOfStrings("node_ids", new String[] {FOLDER_ID})
+            .withWantedResultFormat("")
+            .build();
+
+    // When
+    HttpResponse httpResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=owner-token", bodyPayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(storageUsageRepository.getStorageUsage(OWNER_ID))
+        .get()
+        .extracting(StorageUsage::getUsedBytes, StorageUsage::getVersions)
+        .containsExactly(6L, 2);
+  }
+
+  @Test
+  void givenADriftedStorageUsageTheRebuildShouldComputeItAgainFromTheVersions() {
+    // Given
+    populateFiles();
+    simulator
+        .getInjector()
+        .getInstance(EbeanDatabaseManager.class)
+        .getEbeanDatabase()
+        .sqlUpdate("UPDATE storage_usage SET used_bytes = 42, versions = 1")
+        .execute();
+
+    List<String> ownerIds = storageUsageRepository.getOwnerIds(Optional.empty(), 100);
+
+    // When
+    int fixedStorageUsages = storageUsageRepository.rebuildStorageUsages(ownerIds);
+
+    // Then
+    Assertions.assertThat(ownerIds).containsExactly(OWNER_ID);
+    Assertions.assertThat(fixedStorageUsages).isEqualTo(1);
+    Assertions.assertThat(storageUsageRepository.getStorageUsage(OWNER_ID))
+        .get()
+        .extracting(StorageUsage::getUsedBytes, StorageUsage::getVersions)
+        .containsExactly(10L, 3);
+  }
+}
@@ -10,9 +10,11 @@ import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
 import com.zextras.carbonio.files.TestUtils;
 import com.zextras.carbonio.files.api.utilities.DatabasePopulator;
 import com.zextras.carbonio.files.api.utilities.GraphqlCommandBuilder;
+import com.zextras.carbonio.files.api.utilities.entities.PopulatorNode;
 import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorFolder;
 import com.zextras.carbonio.files.api.utilities.entities.SimplePopulatorTextFile;
 import com.zextras.carbonio.files.dal.dao.ebean.ACL;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
 import com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.NodeSort;
 import com.zextras.carbonio.files.dal.repositories.interfaces.FileVersionRepository;
 import com.zextras.carbonio.files.dal.repositories.interfaces.LinkRepository;
@@ -678,4 +680,166 @@ class FindNodesApiIT {
         .containsEntry("id", "00000000-0000-0000-0000-000000000001")
         .containsEntry("name", "aaa");
   }
+
+  @Test
+  void givenANestedTreeSearchInCascadeOnAFolderShouldReturnOnlyItsDescendants() {
+    // Given
+    String ownerId = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+    String folderId = "10000000-0000-0000-0000-000000000001";
+    String subFolderId = "10000000-0000-0000-0000-000000000002";
+    String siblingFolderId = "10000000-0000-0000-0000-000000000003";
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new PopulatorNode(
+                folderId, ownerId, ownerId, "LOCAL_ROOT", "folder", "", NodeType.FOLDER,
+                "LOCAL_ROOT", 0L, null))
+        .addNode(
+            new PopulatorNode(
+                subFolderId, ownerId, ownerId, folderId, "subfolder", "", NodeType.FOLDER,
+                "LOCAL_ROOT," + folderId, 0L, null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000001", ownerId, ownerId, subFolderId, "nested",
+                "", NodeType.TEXT, "LOCAL_ROOT," + folderId + "," + subFolderId, 1L,
+                "text/plain"))
+        .addNode(
+            new PopulatorNode(
+                siblingFolderId, ownerId, ownerId, "LOCAL_ROOT", "sibling", "", NodeType.FOLDER,
+                "LOCAL_ROOT", 0L, null))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000002", ownerId, ownerId, siblingFolderId,
+                "outside", "", NodeType.TEXT, "LOCAL_ROOT," + siblingFolderId, 1L,
+                "text/plain"));
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("findNodes")
+            .withString("folder_id", folderId)
+            .withBoolean("cascade", true)
+            .withEnum("sort", NodeSort.NAME_ASC)
+            .withWantedResultFormat("{ nodes { id name }, page_token }")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    final Map<String, Object> page =
+        TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "findNodes");
+
+    final List<Map<String, Object>> nodes = (List<Map<String, Object>>) page.get("nodes");
+    Assertions.assertThat(nodes)
+        .extracting(node -> node.get("id"))
+        .containsExactly(subFolderId, "00000000-0000-0000-0000-000000000001");
+  }
+
+  @Test
+  void givenFilesOnRootSearchByKeywordsShouldReturnAlsoTheNodesMatchingTheStemmedWords() {
+    // Given
+    String ownerId = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new SimplePopulatorTextFile(
+                "00000000-0000-0000-0000-000000000001", ownerId, "running-notes.txt"))
+        .addNode(
+            new SimplePopulatorTextFile("00000000-0000-0000-0000-000000000002", ownerId, "run.txt"))
+        .addNode(
+            new SimplePopulatorTextFile(
+                "00000000-0000-0000-0000-000000000003", ownerId, "ruins.txt"));
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("findNodes")
+            .withEnum("sort", NodeSort.NAME_ASC)
+            .withListOfStrings("keywords", new String[] {"running"})
+            .withWantedResultFormat("{ nodes { id name }, page_token }")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+
+    final Map<String, Object> page =
+        TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "findNodes");
+
+    final List<Map<String, Object>> nodes = (List<Map<String, Object>>) page.get("nodes");
+    Assertions.assertThat(nodes)
+        .extracting(node -> node.get("id"))
+        .containsExactly(
+            "00000000-0000-0000-0000-000000000002", "00000000-0000-0000-0000-000000000001");
+  }
+
+  @Test
+  void givenFilesOnRootSearchByKeywordsWithSortRelevanceShouldReturnTheBestMatchesFirst() {
+    // Given
+    String ownerId = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+    DatabasePopulator.aNodePopulator(simulator.getInjector())
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000001", ownerId, ownerId, "LOCAL_ROOT",
+                "notes.txt", "draft of the budget", NodeType.TEXT, "LOCAL_ROOT", 1L,
+                "text/plain"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000002", ownerId, ownerId, "LOCAL_ROOT",
+                "holidays.txt", "", NodeType.TEXT, "LOCAL_ROOT", 1L, "text/plain"))
+        .addNode(
+            new PopulatorNode(
+                "00000000-0000-0000-0000-000000000003", ownerId, ownerId, "LOCAL_ROOT",
+                "budget.txt", "", NodeType.TEXT, "LOCAL_ROOT", 1L, "text/plain"));
+
+    String bodyPayload =
+        GraphqlCommandBuilder.aQueryBuilder("findNodes")
+            .withEnum("sort", NodeSort.RELEVANCE_DESC)
+            .withInteger("limit", 1)
+            .withListOfStrings("keywords", new String[] {"budget"})
+            .withWantedResultFormat("{ nodes { id name }, page_token }")
+            .build();
+
+    final HttpRequest httpRequest =
+        HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", bodyPayload);
+
+    // When
+    final HttpResponse httpResponse =
+        TestUtils.sendRequest(httpRequest, simulator.getNettyChannel());
+
+    final Map<String, Object> firstPage =
+        TestUtils.jsonResponseToMap(httpResponse.getBodyPayload(), "findNodes");
+
+    String nextPagePayload =
+        GraphqlCommandBuilder.aQueryBuilder("findNodes")
+            .withString("page_token", (String) firstPage.get("page_token"))
+            .withWantedResultFormat("{ nodes { id name }, page_token }")
+            .build();
+
+    final HttpResponse nextPageResponse =
+        TestUtils.sendRequest(
+            HttpRequest.of("POST", "/graphql/", "ZM_AUTH_TOKEN=fake-token", nextPagePayload),
+            simulator.getNettyChannel());
+
+    // Then
+    Assertions.assertThat(httpResponse.getStatus()).isEqualTo(200);
+    Assertions.assertThat(nextPageResponse.getStatus()).isEqualTo(200);
+
+    final Map<String, Object> secondPage =
+        TestUtils.jsonResponseToMap(nextPageResponse.getBodyPayload(), "findNodes");
+
+    Assertions.assertThat((List<Map<String, Object>>) firstPage.get("nodes"))
+        .extracting(node -> node.get("id"))
+        .containsExactly("00000000-0000-0000-0000-000000000003");
+    Assertions.assertThat((List<Map<String, Object>>) secondPage.get("nodes"))
+        .extracting(node -> node.get("id"))
+        .containsExactly("00000000-0000-0000-0000-000000000001");
+  }
 }
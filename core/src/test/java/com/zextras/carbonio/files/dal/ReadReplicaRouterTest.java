@@ -0,0 +1,93 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal;
+
+import io.ebean.Database;
+import java.util.Optional;
+import javax.persistence.PersistenceException;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class ReadReplicaRouterTest {
+
+  private EbeanDatabaseManager ebeanDatabaseManagerMock;
+  private Database             primaryMock;
+  private Database             replicaMock;
+  private ReadReplicaRouter    readReplicaRouter;
+
+  @BeforeEach
+  void setUp() {
+    ebeanDatabaseManagerMock = Mockito.mock(EbeanDatabaseManager.class);
+    primaryMock = Mockito.mock(Database.class);
+    replicaMock = Mockito.mock(Database.class);
+    Mockito.when(ebeanDatabaseManagerMock.getEbeanDatabase()).thenReturn(primaryMock);
+    Mockito
+      .when(ebeanDatabaseManagerMock.getReplicaDatabase())
+      .thenReturn(Optional.of(replicaMock));
+    readReplicaRouter = new ReadReplicaRouter(ebeanDatabaseManagerMock, 60);
+  }
+
+  @Test
+  void givenAReadOutsideAReadScopeTheReadShouldGoToThePrimary() {
+    // Given & When
+    Database database = readReplicaRouter.read(db -> db);
+
+    // Then
+    Assertions.assertThat(database).isSameAs(primaryMock);
+  }
+
+  @Test
+  void givenAReadInAReadScopeTheReadShouldGoToTheReplica() {
+    // Given & When
+    Database database = ReadScope.of("user-id").call(() -> readReplicaRouter.read(db -> db));
+
+    // Then
+    Assertions.assertThat(database).isSameAs(replicaMock);
+  }
+
+  @Test
+  void givenAUserThatHasJustWrittenItsReadsShouldGoToThePrimary() {
+    // Given
+    readReplicaRouter.recordWrite("user-id");
+
+    // When
+    Database ownDatabase = ReadScope.of("user-id").call(() -> readReplicaRouter.read(db -> db));
+    Database otherDatabase = ReadScope.of("other-id").call(() -> readReplicaRouter.read(db -> db));
+
+    // Then
+    Assertions.assertThat(ownDatabase).isSameAs(primaryMock);
+    Assertions.assertThat(otherDatabase).isSameAs(replicaMock);
+  }
+
+  @Test
+  void givenAReadScopePinnedToThePrimaryTheReadShouldGoToThePrimary() {
+    // Given
+    ReadScope readScope = ReadScope.of("user-id");
+    readScope.pinToPrimary();
+
+    // When
+    Database database = readScope.call(() -> readReplicaRouter.read(db -> db));
+
+    // Then
+    Assertions.assertThat(database).isSameAs(primaryMock);
+  }
+
+  @Test
+  void givenAFailingReplicaTheReadShouldFallBackToThePrimary() {
+    // Given & When
+    Database database = ReadScope.anonymous().call(() -> readReplicaRouter.read(db -> {
+      if (db == replicaMock) {
+        throw new PersistenceException("replica down");
+      }
+      return db;
+    }));
+
+    // Then
+    Assertions.assertThat(database).isSameAs(primaryMock);
+    Mockito.verify(ebeanDatabaseManagerMock, Mockito.times(1)).markReplicaUnavailable();
+  }
+}
@@ -10,6 +10,7 @@ import com.zextras.carbonio.files.Files;
 import com.zextras.carbonio.files.dal.dao.ebean.Node;
 import com.zextras.carbonio.files.dal.dao.ebean.NodeCategory;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -27,17 +28,18 @@ class FindNodesKeySetBuilderTest {
     List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.NAME_ASC));
 
     // Then
-    String keyset =
+    CompareExpression keyset =
         FindNodeKeySetBuilder.aSearchKeySetBuilder()
             .withNodeSorts(realSortsToApply)
             .fromNode(mockNode)
             .build();
 
-    Assertions.assertThat(keyset)
+    Assertions.assertThat(keyset.toExpression())
         .isEqualTo(
-            "node_category > 2 OR (node_category = 2 AND LOWER(name) > 'namefile.txt') OR"
-                + " (node_category = 2 AND LOWER(name) = 'namefile.txt' AND t0.node_id >"
-                + " 'nodeId')");
+            "(node_category, LOWER(name), t0.node_id) >"
+                + " (CAST(? AS SMALLINT), ?, CAST(? AS CHARACTER(36)))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(NodeCategory.FILE.getValue(), "namefile.txt", "nodeId");
   }
 
   @Test
@@ -52,17 +54,51 @@ class FindNodesKeySetBuilderTest {
     List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.SIZE_ASC));
 
     // Then
-    String keyset =
+    CompareExpression keyset =
         FindNodeKeySetBuilder.aSearchKeySetBuilder()
             .withNodeSorts(realSortsToApply)
             .fromNode(mockNode)
             .build();
 
-    Assertions.assertThat(keyset)
+    Assertions.assertThat(keyset.toExpression())
         .isEqualTo(
-            "node_category > 2 OR (node_category = 2 AND size > 1) OR (node_category = 2 AND size ="
-                + " 1 AND LOWER(name) > 'file.txt') OR (node_category = 2 AND size = 1 AND"
-                + " LOWER(name) = 'file.txt' AND t0.node_id > 'nodeId')");
+            "(node_category, size, LOWER(name), t0.node_id) >"
+                + " (CAST(? AS SMALLINT), CAST(? AS BIGINT), ?, CAST(? AS CHARACTER(36)))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(NodeCategory.FILE.getValue(), 1L, "file.txt", "nodeId");
+  }
+
+  @Test
+  void givenNodeAndOrderBySizeDescGetKeysetWithARowForEachDirection() {
+    // Given & When
+    Node mockNode = Mockito.mock(Node.class);
+    Mockito.when(mockNode.getSortingValueFromColumn(Files.Db.Node.CATEGORY))
+        .thenReturn(NodeCategory.FILE.getValue());
+    Mockito.when(mockNode.getId()).thenReturn("nodeId");
+    Mockito.when(mockNode.getSortingValueFromColumn(Files.Db.Node.SIZE)).thenReturn(1L);
+    Mockito.when(mockNode.getFullName()).thenReturn("file.txt");
+    List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.SIZE_DESC));
+
+    // Then
+    CompareExpression keyset =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromNode(mockNode)
+            .build();
+
+    Assertions.assertThat(keyset.toExpression())
+        .isEqualTo(
+            "(node_category, size) < (CAST(? AS SMALLINT), CAST(? AS BIGINT)) OR"
+                + " ((node_category, size) = (CAST(? AS SMALLINT), CAST(? AS BIGINT)) AND"
+                + " (LOWER(name), t0.node_id) > (?, CAST(? AS CHARACTER(36))))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(
+            NodeCategory.FILE.getValue(),
+            1L,
+            NodeCategory.FILE.getValue(),
+            1L,
+            "file.txt",
+            "nodeId");
   }
 
   @Test
@@ -77,16 +113,18 @@ class FindNodesKeySetBuilderTest {
     List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.CREATED_AT_ASC));
 
     // Then
-    String keyset =
+    CompareExpression keyset =
         FindNodeKeySetBuilder.aSearchKeySetBuilder()
             .withNodeSorts(realSortsToApply)
             .fromNode(mockNode)
             .build();
 
-    Assertions.assertThat(keyset)
+    Assertions.assertThat(keyset.toExpression())
         .isEqualTo(
-            "node_category > 2 OR (node_category = 2 AND creation_timestamp > 100) OR"
-                + " (node_category = 2 AND creation_timestamp = 100 AND t0.node_id > 'nodeId')");
+            "(node_category, creation_timestamp, t0.node_id) >"
+                + " (CAST(? AS SMALLINT), CAST(? AS BIGINT), CAST(? AS CHARACTER(36)))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(NodeCategory.FILE.getValue(), 100L, "nodeId");
   }
 
   @Test
@@ -99,13 +137,128 @@ class FindNodesKeySetBuilderTest {
     List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.empty());
 
     // Then
-    String keyset =
+    CompareExpression keyset =
         FindNodeKeySetBuilder.aSearchKeySetBuilder()
             .withNodeSorts(realSortsToApply)
             .fromNode(mockNode)
             .build();
 
-    Assertions.assertThat(keyset)
-        .isEqualTo("node_category > 2 OR (node_category = 2 AND t0.node_id > 'nodeId')");
+    Assertions.assertThat(keyset.toExpression())
+        .isEqualTo("(node_category, t0.node_id) > (CAST(? AS SMALLINT), CAST(? AS CHARACTER(36)))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(NodeCategory.FILE.getValue(), "nodeId");
+  }
+
+  @Test
+  void givenNodeAndOrderByRelevanceWithKeywordsGetKeysetComparingTheRelevance() {
+    // Given & When
+    Node mockNode = Mockito.mock(Node.class);
+    Mockito.when(mockNode.getSortingValueFromColumn(Files.Db.Node.CATEGORY))
+        .thenReturn(NodeCategory.FILE.getValue());
+    Mockito.when(mockNode.getId()).thenReturn("nodeId");
+    List<NodeSort> realSortsToApply =
+        getRealSortingsToApply(Optional.of(NodeSort.RELEVANCE_DESC));
+
+    // Then
+    CompareExpression keyset =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromNode(mockNode)
+            .withKeywords(List.of("Annual", "Report's"), true)
+            .build();
+
+    String relevance =
+        "(COALESCE(ts_rank(t0.search_vector, node_search_query(?)), 0)"
+            + " + similarity(LOWER(t0.name), ?))";
+    String lastNodeRelevance =
+        "(SELECT (COALESCE(ts_rank(n.search_vector, node_search_query(?)), 0)"
+            + " + similarity(LOWER(n.name), ?))"
+            + " FROM node n WHERE n.node_id = CAST(? AS CHARACTER(36)))";
+
+    Assertions.assertThat(keyset.toExpression())
+        .isEqualTo(
+            relevance
+                + " < "
+                + lastNodeRelevance
+                + " OR ("
+                + relevance
+                + " = "
+                + lastNodeRelevance
+                + " AND (node_category, t0.node_id) >"
+                + " (CAST(? AS SMALLINT), CAST(? AS CHARACTER(36))))");
+    Assertions.assertThat(keyset.getParameters())
+        .containsExactly(
+            "annual report's",
+            "annual report's",
+            "annual report's",
+            "annual report's",
+            "nodeId",
+            "annual report's",
+            "annual report's",
+            "annual report's",
+            "annual report's",
+            "nodeId",
+            NodeCategory.FILE.getValue(),
+            "nodeId");
+  }
+
+  @Test
+  void givenNodeAndOrderByRelevanceWithoutKeywordsGetKeysetIgnoringTheRelevance() {
+    // Given & When
+    Node mockNode = Mockito.mock(Node.class);
+    Mockito.when(mockNode.getSortingValueFromColumn(Files.Db.Node.CATEGORY))
+        .thenReturn(NodeCategory.FILE.getValue());
+    Mockito.when(mockNode.getId()).thenReturn("nodeId");
+    List<NodeSort> realSortsToApply =
+        getRealSortingsToApply(Optional.of(NodeSort.RELEVANCE_DESC));
+
+    // Then
+    List<Object> values =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromNode(mockNode)
+            .buildValues();
+
+    Assertions.assertThat(values).containsExactly(NodeCategory.FILE.getValue(), "nodeId");
+  }
+
+  @Test
+  void givenTheValuesOfAPageTokenGetTheSameKeysetOfTheNode() {
+    // Given
+    List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.NAME_ASC));
+
+    // When
+    CompareExpression keyset =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromValues(List.of(2, "namefile.txt", "nodeId"))
+            .build();
+
+    // Then
+    Assertions.assertThat(keyset.toExpression())
+        .isEqualTo(
+            "(node_category, LOWER(name), t0.node_id) >"
+                + " (CAST(? AS SMALLINT), ?, CAST(? AS CHARACTER(36)))");
+    Assertions.assertThat(keyset.getParameters()).containsExactly(2, "namefile.txt", "nodeId");
+  }
+
+  @Test
+  void givenCraftedValuesOfAPageTokenTheBuildShouldBeRejected() {
+    // Given
+    List<NodeSort> realSortsToApply = getRealSortingsToApply(Optional.of(NodeSort.NAME_ASC));
+    FindNodeKeySetBuilder missingValues =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromValues(List.of(2, "nodeId"));
+    FindNodeKeySetBuilder notScalarValues =
+        FindNodeKeySetBuilder.aSearchKeySetBuilder()
+            .withNodeSorts(realSortsToApply)
+            .fromValues(List.of(2, Map.of("name", "1 = 1"), "nodeId"));
+
+    // When & Then
+    Assertions.assertThatThrownBy(missingValues::build)
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(notScalarValues::build)
+        .isInstanceOf(IllegalArgumentException.class);
   }
 }
@@ -0,0 +1,64 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import io.ebean.Query;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class NodeProjectionTest {
+
+  @Test
+  void givenAFullProjectionTheApplyShouldLeaveTheQueryUntouched() {
+    // Given
+    Query<Node> queryMock = Mockito.mock(Query.class);
+
+    // When
+    NodeProjection.full().apply(queryMock);
+
+    // Then
+    Mockito.verifyNoInteractions(queryMock);
+  }
+
+  @Test
+  void givenAProjectionWithoutDescriptionAndFlagTheApplyShouldSkipThemAndTheCustomAttributesJoin() {
+    // Given
+    Query<Node> queryMock = Mockito.mock(Query.class);
+    ArgumentCaptor<String> selectCaptor = ArgumentCaptor.forClass(String.class);
+
+    // When
+    new NodeProjection(false, false, false).apply(queryMock);
+
+    // Then
+    Mockito.verify(queryMock, Mockito.times(1)).select(selectCaptor.capture());
+    Mockito.verify(queryMock, Mockito.times(1)).fetchLazy("mCustomAttributes");
+    Mockito.verify(queryMock, Mockito.never()).fetchQuery(Mockito.anyString());
+
+    Assertions
+      .assertThat(selectCaptor.getValue())
+      .contains("mId", "mName", "mNodeType", "mAncestorIds", "mCurrentVersion")
+      .doesNotContain("mDescription");
+  }
+
+  @Test
+  void givenAProjectionWithDescriptionAndFlagTheApplyShouldSelectTheDescriptionAndFetchTheFlags() {
+    // Given
+    Query<Node> queryMock = Mockito.mock(Query.class);
+    ArgumentCaptor<String> selectCaptor = ArgumentCaptor.forClass(String.class);
+
+    // When
+    new NodeProjection(true, true, false).apply(queryMock);
+
+    // Then
+    Mockito.verify(queryMock, Mockito.times(1)).select(selectCaptor.capture());
+    Mockito.verify(queryMock, Mockito.times(1)).fetchQuery("mCustomAttributes");
+    Mockito.verify(queryMock, Mockito.never()).fetchLazy(Mockito.anyString());
+
+    Assertions.assertThat(selectCaptor.getValue()).contains("mDescription");
+  }
+}
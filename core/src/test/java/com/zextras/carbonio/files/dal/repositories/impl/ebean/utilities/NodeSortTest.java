@@ -206,5 +206,14 @@ class NodeSortTest {
     Mockito.verifyNoMoreInteractions(queryNodeMock);
     Mockito.verifyNoMoreInteractions(orderByNodeMock);
   }
-}
 
+  @Test
+  void givenARelevanceDescNodeSortTheGetOrderEbeanQueryShouldLeaveTheQueryUntouched() {
+    // Given & When
+    NodeSort.RELEVANCE_DESC.getOrderEbeanQuery(queryNodeMock);
+
+    // Then
+    Mockito.verifyNoInteractions(queryNodeMock);
+    Mockito.verifyNoInteractions(orderByNodeMock);
+  }
+}
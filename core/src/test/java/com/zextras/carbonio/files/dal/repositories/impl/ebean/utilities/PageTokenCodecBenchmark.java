@@ -0,0 +1,129 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the encoding and the decoding of the page tokens of the findNodes sorted by name, by
+ * size and by relevance: the {@link PageTokenCodec} against the Base64 of the JSON of the
+ * {@link PageQuery}, that was built with a new {@link ObjectMapper} for each token before it.
+ * <p>
+ * It is not run by the unit or the integration tests. Its main method prints the length of the
+ * tokens in both formats and then runs the benchmarks:
+ * <pre>
+ * mvn -pl core test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp core/target/test-classes:core/target/classes:$(cat core/target/test.classpath) \
+ *   com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities.PageTokenCodecBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PageTokenCodecBenchmark {
+
+  @Param({"NAME_ASC", "SIZE_DESC", "RELEVANCE_DESC"})
+  private String sort;
+
+  private PageTokenCodec pageTokenCodec;
+  private PageQuery      pageQuery;
+  private String         token;
+  private String         jsonToken;
+
+  public static void main(String[] args) throws RunnerException, JsonProcessingException {
+    PageTokenCodecBenchmark benchmark = new PageTokenCodecBenchmark();
+    for (String sort : List.of("NAME_ASC", "SIZE_DESC", "RELEVANCE_DESC")) {
+      benchmark.sort = sort;
+      benchmark.setUp();
+      System.out.printf(
+        "%s: %d characters, %d characters as JSON%n",
+        sort,
+        benchmark.token.length(),
+        benchmark.jsonToken.length()
+      );
+    }
+
+    new Runner(new OptionsBuilder()
+      .include(PageTokenCodecBenchmark.class.getSimpleName())
+      .build()
+    ).run();
+  }
+
+  @Setup
+  public void setUp() throws JsonProcessingException {
+    pageTokenCodec = new PageTokenCodec("secret".getBytes(StandardCharsets.UTF_8));
+
+    pageQuery = new PageQuery();
+    pageQuery.setLimit(50);
+    pageQuery.setSort(sort);
+    pageQuery.setFolderId("LOCAL_ROOT");
+    pageQuery.setCascade(true);
+    pageQuery.setSharedWithMe(false);
+    pageQuery.setKeywords(List.of("annual", "report"));
+    String lastNodeId = "4f8c1b2e-5a7d-4e39-9c61-2b3f0d8e7a15";
+    pageQuery.setKeySet(switch (NodeSort.valueOf(sort)) {
+      case NAME_ASC -> List.of(2, "annual report 2023.pdf", lastNodeId);
+      case SIZE_DESC -> List.of(2, 1_048_576L, lastNodeId);
+      default -> List.of(lastNodeId, 2, lastNodeId);
+    });
+
+    token = pageTokenCodec.encode(pageQuery);
+    jsonToken = toJsonToken(pageQuery);
+  }
+
+  @Benchmark
+  public String encode() {
+    return pageTokenCodec.encode(pageQuery);
+  }
+
+  @Benchmark
+  public PageQuery decode() {
+    return pageTokenCodec.decode(token);
+  }
+
+  @Benchmark
+  public String encodeJson() throws JsonProcessingException {
+    return toJsonToken(pageQuery);
+  }
+
+  @Benchmark
+  public PageQuery decodeJson() throws JsonProcessingException {
+    return new ObjectMapper().readValue(
+      new String(Base64.getDecoder().decode(jsonToken)),
+      PageQuery.class
+    );
+  }
+
+  private static String toJsonToken(PageQuery pageQuery) throws JsonProcessingException {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    mapper.registerModule(new Jdk8Module());
+    return Base64.getEncoder().encodeToString(mapper.writeValueAsString(pageQuery).getBytes());
+  }
+}
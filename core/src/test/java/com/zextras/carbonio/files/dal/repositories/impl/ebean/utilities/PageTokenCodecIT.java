@@ -0,0 +1,54 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.zextras.carbonio.files.Simulator;
+import com.zextras.carbonio.files.Simulator.SimulatorBuilder;
+import com.zextras.carbonio.files.dal.EbeanDatabaseManager;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PageTokenCodecIT {
+
+  static Simulator            simulator;
+  static EbeanDatabaseManager ebeanDatabaseManager;
+
+  @BeforeAll
+  static void init() {
+    simulator =
+        SimulatorBuilder.aSimulator().init().withDatabase().withServiceDiscover().build().start();
+    ebeanDatabaseManager = simulator.getInjector().getInstance(EbeanDatabaseManager.class);
+  }
+
+  @AfterAll
+  static void cleanUpAll() {
+    simulator.stopAll();
+  }
+
+  @Test
+  void givenTwoInstancesWithoutThePageTokenSecretTheyShouldShareTheKeyStoredInTheDatabase() {
+    // Given
+    PageTokenCodec firstInstance = new PageTokenCodec(ebeanDatabaseManager);
+    PageTokenCodec secondInstance = new PageTokenCodec(ebeanDatabaseManager);
+    PageQuery pageQuery = new PageQuery();
+    pageQuery.setKeywords(List.of("annual", "report"));
+
+    // When
+    PageQuery decodedPageQuery = secondInstance.decode(firstInstance.encode(pageQuery));
+
+    // Then
+    Assertions.assertThat(decodedPageQuery.getKeywords()).containsExactly("annual", "report");
+    Assertions.assertThat(
+            ebeanDatabaseManager
+                .getEbeanDatabase()
+                .sqlQuery("SELECT COUNT(*) FROM page_token_key")
+                .mapToScalar(Long.class)
+                .findOne())
+        .isEqualTo(1L);
+  }
+}
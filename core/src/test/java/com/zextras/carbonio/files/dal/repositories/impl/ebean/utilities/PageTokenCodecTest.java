@@ -0,0 +1,109 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.dal.repositories.impl.ebean.utilities;
+
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PageTokenCodecTest {
+
+  private final PageTokenCodec pageTokenCodec =
+      new PageTokenCodec("secret".getBytes(StandardCharsets.UTF_8));
+
+  private PageQuery aPageQuery() {
+    PageQuery pageQuery = new PageQuery();
+    pageQuery.setLimit(50);
+    pageQuery.setSort(NodeSort.SIZE_DESC.name());
+    pageQuery.setFlagged(true);
+    pageQuery.setFolderId("LOCAL_ROOT");
+    pageQuery.setCascade(false);
+    pageQuery.setSharedWithMe(false);
+    pageQuery.setNodeType(NodeType.TEXT);
+    pageQuery.setOwnerId("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+    pageQuery.setKeywords(List.of("annual", "report"));
+    pageQuery.setKeySet(
+        Arrays.asList(2, -1L, null, "report.pdf", "00000000-0000-0000-0000-0000000000ab"));
+    return pageQuery;
+  }
+
+  @Test
+  void givenAPageQueryTheDecodedTokenShouldContainTheSameAttributes() {
+    // Given
+    PageQuery pageQuery = aPageQuery();
+
+    // When
+    String token = pageTokenCodec.encode(pageQuery);
+    PageQuery decodedPageQuery = pageTokenCodec.decode(token);
+
+    // Then
+    Assertions.assertThat(decodedPageQuery.getLimit()).isEqualTo(50);
+    Assertions.assertThat(decodedPageQuery.getSort()).contains(NodeSort.SIZE_DESC.name());
+    Assertions.assertThat(decodedPageQuery.getFlagged()).contains(true);
+    Assertions.assertThat(decodedPageQuery.getFolderId()).contains("LOCAL_ROOT");
+    Assertions.assertThat(decodedPageQuery.getCascade()).contains(false);
+    Assertions.assertThat(decodedPageQuery.getSharedWithMe()).contains(false);
+    Assertions.assertThat(decodedPageQuery.getSharedByMe()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getDirectShare()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getNodeType()).contains(NodeType.TEXT);
+    Assertions.assertThat(decodedPageQuery.getOwnerId())
+        .contains("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+    Assertions.assertThat(decodedPageQuery.getKeywords()).containsExactly("annual", "report");
+    Assertions.assertThat(decodedPageQuery.getKeySet().orElseThrow())
+        .containsExactly(2L, -1L, null, "report.pdf", "00000000-0000-0000-0000-0000000000ab");
+  }
+
+  @Test
+  void givenAPageQueryWithoutOptionalAttributesTheDecodedTokenShouldNotContainThem() {
+    // Given
+    PageQuery pageQuery = new PageQuery();
+
+    // When
+    PageQuery decodedPageQuery = pageTokenCodec.decode(pageTokenCodec.encode(pageQuery));
+
+    // Then
+    Assertions.assertThat(decodedPageQuery.getSort()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getFolderId()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getFlagged()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getKeySet()).isEmpty();
+    Assertions.assertThat(decodedPageQuery.getKeywords()).isEmpty();
+  }
+
+  @Test
+  void givenAnAlteredTokenTheDecodeShouldThrowAnIllegalArgumentException() {
+    // Given
+    byte[] tokenBytes = Base64.getUrlDecoder().decode(pageTokenCodec.encode(aPageQuery()));
+    tokenBytes[2] ^= 1;
+    String alteredToken = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+
+    // When & Then
+    Assertions.assertThatThrownBy(() -> pageTokenCodec.decode(alteredToken))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void givenATokenSignedWithAnotherKeyTheDecodeShouldThrowAnIllegalArgumentException() {
+    // Given
+    String token =
+        new PageTokenCodec("other-secret".getBytes(StandardCharsets.UTF_8)).encode(aPageQuery());
+
+    // When & Then
+    Assertions.assertThatThrownBy(() -> pageTokenCodec.decode(token))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void givenAMalformedTokenTheDecodeShouldThrowAnIllegalArgumentException() {
+    // Given & When & Then
+    Assertions.assertThatThrownBy(() -> pageTokenCodec.decode("not a token!"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> pageTokenCodec.decode("AAAA"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,33 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DataFetcherExecutorsTest {
+
+  @Test
+  void givenAPositiveIntegerTheParsePositiveIntShouldReturnIt() {
+    // When
+    Optional<Integer> optValue = DataFetcherExecutors.parsePositiveInt(" 16 ");
+
+    // Then
+    Assertions.assertThat(optValue).contains(16);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "sixteen", "0", "-4"})
+  void givenAnInvalidValueTheParsePositiveIntShouldReturnAnEmptyOptional(String value) {
+    // When
+    Optional<Integer> optValue = DataFetcherExecutors.parsePositiveInt(value);
+
+    // Then
+    Assertions.assertThat(optValue).isEmpty();
+  }
+}
@@ -0,0 +1,100 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.zextras.carbonio.files.graphql.GraphQLRequest.InvalidPayloadRequestError;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GraphQLRequestTest {
+
+  @Test
+  void givenAJsonObjectPayloadTheIsBatchPayloadShouldReturnFalse() {
+    // Given
+    String payload = "{\"query\":\"query { getNode(node_id: \\\"LOCAL_ROOT\\\") { id } }\"}";
+
+    // When
+    boolean isBatch = GraphQLRequest.isBatchPayload(payload);
+
+    // Then
+    Assertions.assertThat(isBatch).isFalse();
+  }
+
+  @Test
+  void givenAJsonArrayPayloadTheBuildBatchFromPayloadShouldReturnTheRequestsInTheSameOrder() {
+    // Given
+    String payload = "  [\n"
+      + "{\"query\":\"query getNode($id: ID!) { getNode(node_id: $id) { id } }\","
+      + "\"operationName\":\"getNode\",\"variables\":{\"id\":\"node-id\"}},"
+      + "{\"query\":\"mutation { flagNodes(node_ids: [], flag: true) }\"}"
+      + "]";
+
+    // When
+    List<GraphQLRequest> requests = GraphQLRequest.buildBatchFromPayload(payload, 20);
+
+    // Then
+    Assertions.assertThat(GraphQLRequest.isBatchPayload(payload)).isTrue();
+    Assertions.assertThat(requests).hasSize(2);
+
+    Assertions.assertThat(requests.get(0).getRequestType()).isEqualTo("query");
+    Assertions.assertThat(requests.get(0).isMutation()).isFalse();
+    Assertions.assertThat(requests.get(0).getOperationName()).isEqualTo(Optional.of("getNode"));
+    Assertions.assertThat(requests.get(0).getVariables()).isEqualTo(Map.of("id", "node-id"));
+
+    Assertions.assertThat(requests.get(1).getRequestType()).isEqualTo("mutation");
+    Assertions.assertThat(requests.get(1).isMutation()).isTrue();
+    Assertions.assertThat(requests.get(1).getOperationName()).isEmpty();
+    Assertions.assertThat(requests.get(1).getVariables()).isEmpty();
+  }
+
+  @Test
+  void givenASubscriptionPayloadTheBuildFromPayloadShouldReturnASubscriptionRequest() {
+    // Given
+    String payload = "{\"query\":\"subscription { nodeChanged(folder_id: \\\"LOCAL_ROOT\\\") {"
+      + " node_id } }\"}";
+
+    // When
+    GraphQLRequest request = GraphQLRequest.buildFromPayload(payload);
+
+    // Then
+    Assertions.assertThat(request.getRequestType()).isEqualTo("subscription");
+    Assertions.assertThat(request.isSubscription()).isTrue();
+    Assertions.assertThat(request.isMutation()).isFalse();
+  }
+
+  @Test
+  void givenAnEmptyJsonArrayPayloadTheBuildBatchFromPayloadShouldThrowAnInvalidPayloadError() {
+    // Given & When & Then
+    Assertions
+      .assertThatThrownBy(() -> GraphQLRequest.buildBatchFromPayload("[]", 20))
+      .isInstanceOf(InvalidPayloadRequestError.class);
+  }
+
+  @Test
+  void givenABatchWithTooManyRequestsTheBuildBatchFromPayloadShouldThrowAnInvalidPayloadError() {
+    // Given
+    String request = "{\"query\":\"query { getNode(node_id: \\\"LOCAL_ROOT\\\") { id } }\"}";
+    String payload = "[" + String.join(",", request, request, request) + "]";
+
+    // When & Then
+    Assertions
+      .assertThatThrownBy(() -> GraphQLRequest.buildBatchFromPayload(payload, 2))
+      .isInstanceOf(InvalidPayloadRequestError.class);
+  }
+
+  @Test
+  void givenABatchWithAnElementThatIsNotAnObjectTheBuildBatchFromPayloadShouldThrowAnError() {
+    // Given
+    String payload = "[{\"query\":\"query { getNode(node_id: \\\"LOCAL_ROOT\\\") { id } }\"}, 5]";
+
+    // When & Then
+    Assertions
+      .assertThatThrownBy(() -> GraphQLRequest.buildBatchFromPayload(payload, 20))
+      .isInstanceOf(InvalidPayloadRequestError.class);
+  }
+}
@@ -0,0 +1,185 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql;
+
+import com.zextras.carbonio.files.graphql.subscriptions.EventBus;
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
+import com.zextras.carbonio.files.graphql.types.NodeEvent.Action;
+import com.zextras.carbonio.files.tasks.PrometheusService;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphqlErrorBuilder;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class PublicQueryResultCacheTest {
+
+  private EventBus               eventBus;
+  private Clock                  fakeClock;
+  private PublicQueryResultCache publicQueryResultCache;
+  private GraphQLRequest         request;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    eventBus = new EventBus(new PrometheusService());
+    fakeClock = Mockito.mock(Clock.class);
+    Mockito.when(fakeClock.millis()).thenReturn(1000L);
+    publicQueryResultCache = new PublicQueryResultCache(eventBus, fakeClock, 5000, 100);
+    request = GraphQLRequest.buildFromPayload(
+      "{\"query\":\"query { findNodes(folder_id: \\\"folder-id\\\") { page_token } }\"}"
+    );
+  }
+
+  @Test
+  void givenConcurrentIdenticalRequestsTheGetOrExecuteShouldExecuteTheQueryOnlyOnce() {
+    // Given
+    AtomicInteger executions = new AtomicInteger();
+    CompletableFuture<ExecutionResult> pendingResult = new CompletableFuture<>();
+    Function<PublicQueryScope, CompletableFuture<ExecutionResult>> execution = scope -> {
+      executions.incrementAndGet();
+      return pendingResult;
+    };
+
+    // When
+    CompletableFuture<String> firstResponse =
+      publicQueryResultCache.getOrExecute(request, execution);
+    CompletableFuture<String> secondResponse =
+      publicQueryResultCache.getOrExecute(request, execution);
+    pendingResult.complete(buildResult("first"));
+
+    // Then
+    Assertions.assertThat(executions.get()).isEqualTo(1);
+    Assertions.assertThat(firstResponse.join()).contains("first");
+    Assertions.assertThat(secondResponse.join()).isEqualTo(firstResponse.join());
+  }
+
+  @Test
+  void givenACachedResultANodeEventOnItsFolderShouldInvalidateIt() {
+    // Given
+    publicQueryResultCache
+      .getOrExecute(request, scope -> {
+        scope.addContentNode("folder-id");
+        return CompletableFuture.completedFuture(buildResult("stale"));
+      })
+      .join();
+
+    // When
+    eventBus.publish(new NodeEvent("folder-id", "node-id", Action.CREATED));
+    String response = publicQueryResultCache
+      .getOrExecute(request, scope -> CompletableFuture.completedFuture(buildResult("fresh")))
+      .join();
+
+    // Then
+    Assertions.assertThat(response).contains("fresh");
+  }
+
+  @Test
+  void givenACachedResultANodeEventOnAnotherFolderShouldNotInvalidateIt() {
+    // Given
+    publicQueryResultCache
+      .getOrExecute(request, scope -> {
+        scope.addContentNode("folder-id");
+        return CompletableFuture.completedFuture(buildResult("cached"));
+      })
+      .join();
+
+    // When
+    eventBus.publish(new NodeEvent("another-folder-id", "node-id", Action.CREATED));
+    String response = publicQueryResultCache
+      .getOrExecute(request, scope -> CompletableFuture.completedFuture(buildResult("fresh")))
+      .join();
+
+    // Then
+    Assertions.assertThat(response).contains("cached");
+  }
+
+  @Test
+  void givenAResultComputedDuringAnInvalidationTheGetOrExecuteShouldNotCacheIt() {
+    // Given
+    CompletableFuture<ExecutionResult> pendingResult = new CompletableFuture<>();
+    CompletableFuture<String> pendingResponse = publicQueryResultCache
+      .getOrExecute(request, scope -> {
+        scope.addContentNode("folder-id");
+        return pendingResult;
+      });
+
+    // When
+    eventBus.publish(new NodeEvent("folder-id", "node-id", Action.UPDATED));
+    pendingResult.complete(buildResult("stale"));
+
+    // Then
+    Assertions.assertThat(pendingResponse.join()).contains("stale");
+    Assertions.assertThat(publicQueryResultCache.size()).isZero();
+  }
+
+  @Test
+  void givenAResultWithErrorsTheGetOrExecuteShouldNotCacheIt() {
+    // Given
+    ExecutionResult resultWithErrors = ExecutionResultImpl
+      .newExecutionResult()
+      .addError(GraphqlErrorBuilder.newError().message("Node not found").build())
+      .build();
+
+    // When
+    publicQueryResultCache
+      .getOrExecute(request, scope -> CompletableFuture.completedFuture(resultWithErrors))
+      .join();
+
+    // Then
+    Assertions.assertThat(publicQueryResultCache.size()).isZero();
+  }
+
+  @Test
+  void givenACachedResultOfAnExpiringLinkTheGetOrExecuteShouldExecuteTheQueryAfterTheExpiration() {
+    // Given
+    publicQueryResultCache
+      .getOrExecute(request, scope -> {
+        scope.expireAt(2000L);
+        return CompletableFuture.completedFuture(buildResult("expired"));
+      })
+      .join();
+
+    // When
+    Mockito.when(fakeClock.millis()).thenReturn(2001L);
+    String response = publicQueryResultCache
+      .getOrExecute(request, scope -> CompletableFuture.completedFuture(buildResult("fresh")))
+      .join();
+
+    // Then
+    Assertions.assertThat(response).contains("fresh");
+  }
+
+  @Test
+  void givenACachedResultTheInvalidateOfItsNodeShouldDiscardIt() {
+    // Given
+    publicQueryResultCache
+      .getOrExecute(request, scope -> {
+        scope.addAccessNodes(List.of("ancestor-id"));
+        return CompletableFuture.completedFuture(buildResult("cached"));
+      })
+      .join();
+
+    // When
+    publicQueryResultCache.invalidate("ancestor-id");
+
+    // Then
+    Assertions.assertThat(publicQueryResultCache.size()).isZero();
+  }
+
+  private ExecutionResult buildResult(String value) {
+    return ExecutionResultImpl
+      .newExecutionResult()
+      .data(Map.of("value", value))
+      .build();
+  }
+}
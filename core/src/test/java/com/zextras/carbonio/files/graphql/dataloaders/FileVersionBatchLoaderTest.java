@@ -0,0 +1,147 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.zextras.carbonio.files.cache.Cache;
+import com.zextras.carbonio.files.cache.CacheHandler;
+import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
+import com.zextras.carbonio.files.dal.repositories.interfaces.FileVersionRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class FileVersionBatchLoaderTest {
+
+  private static final String NODE_ID_1 = "868b43cc-3a8f-4c14-a66d-f520d8e7e8bd";
+  private static final String NODE_ID_2 = "c6bf990d-86b9-49ad-a6c0-12260308b7c5";
+
+  private FileVersionRepository  fileVersionRepositoryMock;
+  private Cache<FileVersion>     fileVersionCacheMock;
+  private FileVersionBatchLoader fileVersionBatchLoader;
+
+  private FileVersion createFileVersion(
+    String nodeId,
+    int version
+  ) {
+    return new FileVersion(nodeId, "editor", 5L, version, "text/plain", 10L, "digest", false);
+  }
+
+  @BeforeEach
+  void setUp() {
+    fileVersionRepositoryMock = Mockito.mock(FileVersionRepository.class);
+    fileVersionCacheMock = Mockito.mock(Cache.class);
+    CacheHandler cacheHandlerMock = Mockito.mock(CacheHandler.class);
+    Mockito.when(cacheHandlerMock.getFileVersionCache()).thenReturn(fileVersionCacheMock);
+    DataFetcherExecutors dataFetcherExecutorsMock = Mockito.mock(DataFetcherExecutors.class);
+    Mockito.when(dataFetcherExecutorsMock.getQueryExecutor()).thenReturn(Runnable::run);
+
+    fileVersionBatchLoader = new FileVersionBatchLoader(
+      fileVersionRepositoryMock,
+      cacheHandlerMock,
+      dataFetcherExecutorsMock
+    );
+  }
+
+  @Test
+  void givenFileVersionsNotCachedTheLoadShouldFetchThemInASingleQueryAndCacheThem() {
+    // Given
+    String key1 = FileVersionBatchLoader.buildKey(NODE_ID_1, 2);
+    String key2 = FileVersionBatchLoader.buildKey(NODE_ID_2, 1);
+    FileVersion fileVersion1 = createFileVersion(NODE_ID_1, 2);
+    FileVersion fileVersion2 = createFileVersion(NODE_ID_2, 1);
+    // The cross product of node ids and versions returns also a version not requested
+    FileVersion notRequestedFileVersion = createFileVersion(NODE_ID_1, 1);
+
+    Mockito
+      .when(fileVersionCacheMock.getAll(ArgumentMatchers.anyCollection()))
+      .thenReturn(Map.of());
+    Mockito
+      .when(fileVersionRepositoryMock.getFileVersionsByNodeIds(
+        ArgumentMatchers.anyCollection(),
+        ArgumentMatchers.anyCollection()
+      ))
+      .thenReturn(List.of(fileVersion2, notRequestedFileVersion, fileVersion1));
+
+    // When
+    Map<String, Optional<FileVersion>> result = fileVersionBatchLoader
+      .load(Set.of(key1, key2))
+      .toCompletableFuture()
+      .join();
+
+    // Then
+    Assertions.assertThat(result).containsOnly(
+      Map.entry(key1, Optional.of(fileVersion1)),
+      Map.entry(key2, Optional.of(fileVersion2))
+    );
+
+    Mockito
+      .verify(fileVersionRepositoryMock, Mockito.times(1))
+      .getFileVersionsByNodeIds(ArgumentMatchers.anyCollection(), ArgumentMatchers.anyCollection());
+
+    ArgumentCaptor<Map<String, FileVersion>> cachedCaptor = ArgumentCaptor.forClass(Map.class);
+    Mockito.verify(fileVersionCacheMock).addAll(cachedCaptor.capture());
+    Assertions.assertThat(cachedCaptor.getValue()).containsOnlyKeys(key1, key2);
+  }
+
+  @Test
+  void givenAllFileVersionsCachedTheLoadShouldNotQueryTheDatabase() {
+    // Given
+    String key = FileVersionBatchLoader.buildKey(NODE_ID_1, 3);
+    FileVersion fileVersion = createFileVersion(NODE_ID_1, 3);
+
+    Mockito
+      .when(fileVersionCacheMock.getAll(ArgumentMatchers.anyCollection()))
+      .thenReturn(Map.of(key, fileVersion));
+
+    // When
+    Map<String, Optional<FileVersion>> result = fileVersionBatchLoader
+      .load(Set.of(key))
+      .toCompletableFuture()
+      .join();
+
+    // Then
+    Assertions.assertThat(result).containsOnly(Map.entry(key, Optional.of(fileVersion)));
+    Mockito.verifyNoInteractions(fileVersionRepositoryMock);
+  }
+
+  @Test
+  void givenAFileVersionThatDoesNotExistTheLoadShouldAssociateAnEmptyOptionalToItsKey() {
+    // Given
+    String missingKey = FileVersionBatchLoader.buildKey(NODE_ID_2, 7);
+    String existingKey = FileVersionBatchLoader.buildKey(NODE_ID_1, 1);
+    FileVersion fileVersion = createFileVersion(NODE_ID_1, 1);
+
+    Mockito
+      .when(fileVersionCacheMock.getAll(ArgumentMatchers.anyCollection()))
+      .thenReturn(Map.of());
+    Mockito
+      .when(fileVersionRepositoryMock.getFileVersionsByNodeIds(
+        ArgumentMatchers.<Collection<String>>any(),
+        ArgumentMatchers.<Collection<Integer>>any()
+      ))
+      .thenReturn(List.of(fileVersion));
+
+    // When
+    Map<String, Optional<FileVersion>> result = fileVersionBatchLoader
+      .load(Set.of(missingKey, existingKey))
+      .toCompletableFuture()
+      .join();
+
+    // Then
+    Assertions.assertThat(result).containsOnly(
+      Map.entry(missingKey, Optional.empty()),
+      Map.entry(existingKey, Optional.of(fileVersion))
+    );
+  }
+}
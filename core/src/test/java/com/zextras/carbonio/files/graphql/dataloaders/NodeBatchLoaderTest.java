@@ -0,0 +1,133 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import com.zextras.carbonio.files.dal.repositories.interfaces.NodeRepository;
+import com.zextras.carbonio.files.exceptions.NodeNotFoundException;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.Try;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class NodeBatchLoaderTest {
+
+  private NodeRepository  nodeRepositoryMock;
+  private NodeBatchLoader nodeBatchLoader;
+
+  private Node createNode(String nodeId) {
+    return new Node(
+      nodeId,
+      "creator",
+      "owner",
+      "LOCAL_ROOT",
+      1L,
+      1L,
+      "name-" + nodeId,
+      null,
+      NodeType.TEXT,
+      "LOCAL_ROOT",
+      0L
+    );
+  }
+
+  @BeforeEach
+  void setUp() {
+    nodeRepositoryMock = Mockito.mock(NodeRepository.class);
+    DataFetcherExecutors dataFetcherExecutorsMock = Mockito.mock(DataFetcherExecutors.class);
+    Mockito.when(dataFetcherExecutorsMock.getQueryExecutor()).thenReturn(Runnable::run);
+
+    nodeBatchLoader = new NodeBatchLoader(nodeRepositoryMock, dataFetcherExecutorsMock);
+  }
+
+  @Test
+  void givenNodesReturnedInADifferentOrderTheLoadShouldAssociateEachNodeToItsId() {
+    // Given
+    String nodeId1 = UUID.randomUUID().toString();
+    String nodeId2 = UUID.randomUUID().toString();
+    String notExistingNodeId = UUID.randomUUID().toString();
+    Node node1 = createNode(nodeId1);
+    Node node2 = createNode(nodeId2);
+
+    Mockito
+      .when(nodeRepositoryMock.getNodes(ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+      .thenAnswer(invocation -> List.of(node2, node1).stream());
+
+    // When
+    Map<String, Try<Node>> result = nodeBatchLoader
+      .load(Set.of(nodeId1, notExistingNodeId, nodeId2))
+      .toCompletableFuture()
+      .join();
+
+    // Then
+    Assertions.assertThat(result).hasSize(3);
+    Assertions.assertThat(result.get(nodeId1).get()).isEqualTo(node1);
+    Assertions.assertThat(result.get(nodeId2).get()).isEqualTo(node2);
+    Assertions.assertThat(result.get(notExistingNodeId).isFailure()).isTrue();
+    Assertions
+      .assertThat(result.get(notExistingNodeId).getThrowable())
+      .isInstanceOf(NodeNotFoundException.class);
+  }
+
+  @Test
+  void givenALargeBatchWithMissingNodesTheDataLoaderShouldCompleteEachKeyWithTheRelatedNode() {
+    // Given
+    List<String> nodeIds = IntStream
+      .range(0, 10_000)
+      .mapToObj(i -> UUID.randomUUID().toString())
+      .collect(Collectors.toList());
+
+    // Every third node does not exist and the others are returned in a random order
+    List<Node> existingNodes = IntStream
+      .range(0, nodeIds.size())
+      .filter(i -> i % 3 != 0)
+      .mapToObj(i -> createNode(nodeIds.get(i)))
+      .collect(Collectors.toList());
+    Collections.shuffle(existingNodes, new Random(42));
+
+    Mockito
+      .when(nodeRepositoryMock.getNodes(ArgumentMatchers.anyList(), ArgumentMatchers.any()))
+      .thenAnswer(invocation -> existingNodes.stream());
+
+    DataLoader<String, Node> dataLoader =
+      DataLoaderFactory.newMappedDataLoaderWithTry(nodeBatchLoader);
+
+    // When
+    List<CompletableFuture<Node>> futures = new ArrayList<>();
+    nodeIds.forEach(nodeId -> futures.add(dataLoader.load(nodeId)));
+    dataLoader.dispatchAndJoin();
+
+    // Then
+    for (int i = 0; i < nodeIds.size(); i++) {
+      CompletableFuture<Node> future = futures.get(i);
+      if (i % 3 == 0) {
+        Assertions.assertThat(future).isCompletedExceptionally();
+      } else {
+        Assertions.assertThat(future.join().getId()).isEqualTo(nodeIds.get(i));
+      }
+    }
+
+    Mockito
+      .verify(nodeRepositoryMock, Mockito.times(1))
+      .getNodes(ArgumentMatchers.anyList(), ArgumentMatchers.eq(Optional.empty()));
+  }
+}
@@ -0,0 +1,124 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.dataloaders;
+
+import com.zextras.carbonio.files.dal.dao.ebean.ACL;
+import com.zextras.carbonio.files.dal.dao.ebean.ACL.SharePermission;
+import com.zextras.carbonio.files.dal.dao.ebean.Share;
+import com.zextras.carbonio.files.dal.repositories.interfaces.ShareRepository;
+import com.zextras.carbonio.files.graphql.DataFetcherExecutors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+class ShareBatchLoaderTest {
+
+  private ShareRepository  shareRepositoryMock;
+  private ShareBatchLoader shareBatchLoader;
+
+  private Share createShare(
+    String nodeId,
+    String targetUserId
+  ) {
+    return new Share(
+      nodeId,
+      targetUserId,
+      ACL.decode(SharePermission.READ_ONLY),
+      1L,
+      true,
+      false
+    );
+  }
+
+  @BeforeEach
+  void setUp() {
+    shareRepositoryMock = Mockito.mock(ShareRepository.class);
+    DataFetcherExecutors dataFetcherExecutorsMock = Mockito.mock(DataFetcherExecutors.class);
+    Mockito.when(dataFetcherExecutorsMock.getQueryExecutor()).thenReturn(Runnable::run);
+
+    shareBatchLoader = new ShareBatchLoader(shareRepositoryMock, dataFetcherExecutorsMock);
+  }
+
+  @Test
+  void givenNodesWithAndWithoutSharesTheLoadShouldReturnAnEntryForEachNode() {
+    // Given
+    String sharedNodeId = UUID.randomUUID().toString();
+    String notSharedNodeId = UUID.randomUUID().toString();
+    Share share1 = createShare(sharedNodeId, "user-1");
+    Share share2 = createShare(sharedNodeId, "user-2");
+
+    Mockito
+      .when(shareRepositoryMock.getShares(ArgumentMatchers.<List<String>>any()))
+      .thenReturn(List.of(share1, share2));
+
+    // When
+    Map<String, List<Share>> result = shareBatchLoader
+      .load(Set.of(sharedNodeId, notSharedNodeId))
+      .toCompletableFuture()
+      .join();
+
+    // Then
+    Assertions.assertThat(result).hasSize(2);
+    Assertions.assertThat(result.get(sharedNodeId)).containsExactly(share1, share2);
+    Assertions.assertThat(result.get(notSharedNodeId)).isEmpty();
+  }
+
+  @Test
+  void givenALargeBatchOfSharedNodesTheDataLoaderShouldCompleteEachKeyWithItsShares() {
+    // Given
+    List<String> nodeIds = IntStream
+      .range(0, 5_000)
+      .mapToObj(i -> UUID.randomUUID().toString())
+      .collect(Collectors.toList());
+
+    // Each node i has (i % 4) shares, so some nodes do not have shares at all
+    List<Share> shares = new ArrayList<>();
+    for (int i = 0; i < nodeIds.size(); i++) {
+      for (int share = 0; share < i % 4; share++) {
+        shares.add(createShare(nodeIds.get(i), "user-" + share));
+      }
+    }
+    Collections.shuffle(shares, new Random(42));
+
+    Mockito
+      .when(shareRepositoryMock.getShares(ArgumentMatchers.<List<String>>any()))
+      .thenReturn(shares);
+
+    DataLoader<String, List<Share>> dataLoader =
+      DataLoaderFactory.newMappedDataLoader(shareBatchLoader);
+
+    // When
+    List<CompletableFuture<List<Share>>> futures = new ArrayList<>();
+    nodeIds.forEach(nodeId -> futures.add(dataLoader.load(nodeId)));
+    dataLoader.dispatchAndJoin();
+
+    // Then
+    for (int i = 0; i < nodeIds.size(); i++) {
+      String nodeId = nodeIds.get(i);
+      List<Share> nodeShares = futures.get(i).join();
+
+      Assertions.assertThat(nodeShares).hasSize(i % 4);
+      Assertions.assertThat(nodeShares).allMatch(share -> nodeId.equals(share.getNodeId()));
+    }
+
+    Mockito
+      .verify(shareRepositoryMock, Mockito.times(1))
+      .getShares(ArgumentMatchers.<List<String>>any());
+  }
+}
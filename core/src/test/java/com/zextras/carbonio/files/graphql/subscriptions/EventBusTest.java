@@ -0,0 +1,141 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.subscriptions;
+
+import com.zextras.carbonio.files.graphql.types.NodeEvent;
+import com.zextras.carbonio.files.graphql.types.NodeEvent.Action;
+import com.zextras.carbonio.files.tasks.PrometheusService;
+import java.util.ArrayList;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+class EventBusTest {
+
+  private PrometheusService prometheusService;
+  private EventBus          eventBus;
+
+  @BeforeEach
+  void setUp() {
+    prometheusService = new PrometheusService();
+    eventBus = new EventBus(prometheusService, 2);
+  }
+
+  @Test
+  void givenASubscriptionOnAFolderThePublishShouldDeliverOnlyTheEventsOfThatFolder() {
+    // Given
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    eventBus
+      .subscribe(
+        NodeEvent.class,
+        event -> "folder-id".equals(event.getFolderId()),
+        NodeEvent::getNodeId
+      )
+      .subscribe(subscriber);
+    subscriber.request(10);
+
+    // When
+    eventBus.publish(new NodeEvent("folder-id", "node-1", Action.CREATED));
+    eventBus.publish(new NodeEvent("another-folder-id", "node-2", Action.CREATED));
+    eventBus.publish("not-a-node-event");
+    eventBus.publish(new NodeEvent("folder-id", "node-3", Action.TRASHED));
+
+    // Then
+    Assertions.assertThat(subscriber.getElements()).containsExactly("node-1", "node-3");
+  }
+
+  @Test
+  void givenASubscriberWithoutDemandThePublishShouldBufferTheEventsUntilTheyAreRequested() {
+    // Given
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    eventBus.subscribe(NodeEvent.class, event -> true, NodeEvent::getNodeId).subscribe(subscriber);
+    eventBus.publish(new NodeEvent("folder-id", "node-1", Action.CREATED));
+
+    // When
+    subscriber.request(1);
+    eventBus.publish(new NodeEvent("folder-id", "node-2", Action.UPDATED));
+
+    // Then
+    Assertions.assertThat(subscriber.getElements()).containsExactly("node-1");
+  }
+
+  @Test
+  void givenAFullBufferThePublishShouldDropTheOldestEventAndIncrementTheDroppedCounter() {
+    // Given
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    eventBus.subscribe(NodeEvent.class, event -> true, NodeEvent::getNodeId).subscribe(subscriber);
+
+    // When
+    eventBus.publish(new NodeEvent("folder-id", "node-1", Action.CREATED));
+    eventBus.publish(new NodeEvent("folder-id", "node-2", Action.CREATED));
+    eventBus.publish(new NodeEvent("folder-id", "node-3", Action.CREATED));
+    subscriber.request(10);
+
+    // Then
+    Assertions.assertThat(subscriber.getElements()).containsExactly("node-2", "node-3");
+    Assertions
+      .assertThat(prometheusService
+        .getRegistry()
+        .get("files.subscriptions.events.dropped")
+        .counter()
+        .count())
+      .isEqualTo(1.0);
+  }
+
+  @Test
+  void givenACancelledSubscriptionThePublishShouldNotDeliverTheEvents() {
+    // Given
+    CollectingSubscriber subscriber = new CollectingSubscriber();
+    eventBus.subscribe(NodeEvent.class, event -> true, NodeEvent::getNodeId).subscribe(subscriber);
+    subscriber.request(10);
+
+    // When
+    subscriber.cancel();
+    eventBus.publish(new NodeEvent("folder-id", "node-1", Action.CREATED));
+
+    // Then
+    Assertions.assertThat(subscriber.getElements()).isEmpty();
+    Assertions
+      .assertThat(prometheusService.getRegistry().get("files.subscriptions.active").gauge().value())
+      .isEqualTo(0.0);
+  }
+
+  private static class CollectingSubscriber implements Subscriber<String> {
+
+    private final List<String> elements = new ArrayList<>();
+    private       Subscription subscription;
+
+    void request(long elements) {
+      subscription.request(elements);
+    }
+
+    void cancel() {
+      subscription.cancel();
+    }
+
+    List<String> getElements() {
+      return elements;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(String element) {
+      elements.add(element);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {}
+
+    @Override
+    public void onComplete() {}
+  }
+}
@@ -0,0 +1,204 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.types;
+
+import com.zextras.carbonio.files.Files.GraphQL;
+import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the conversion of a page of nodes into the objects returned by the data fetchers: the
+ * {@link NodeView} against the two {@link HashMap}s (the data and the local context) that were
+ * built for each node before it. Each invocation converts the whole page and reads the fields
+ * usually requested by the clients, as the property data fetchers do.
+ * <p>
+ * It is not run by the unit or the integration tests. Run it with the GC profiler, that reports
+ * the allocation rate and the bytes allocated per page (<code>gc.alloc.rate.norm</code>):
+ * <pre>
+ * mvn -pl core test-compile dependency:build-classpath -Dmdep.outputFile=target/test.classpath
+ * java -cp core/target/test-classes:core/target/classes:$(cat core/target/test.classpath) \
+ *   com.zextras.carbonio.files.graphql.types.NodeViewBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class NodeViewBenchmark {
+
+  private static final String   REQUESTER_ID = "aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa";
+  private static final String[] READ_FIELDS  = {
+    GraphQL.Node.ID,
+    GraphQL.Node.NAME,
+    GraphQL.Node.TYPE,
+    GraphQL.Node.UPDATED_AT,
+    GraphQL.Node.FLAGGED,
+    GraphQL.Node.EXTENSION,
+    GraphQL.Node.ROOT_ID,
+    GraphQL.FileVersion.SIZE,
+    GraphQL.FileVersion.MIME_TYPE
+  };
+
+  @Param({"1000"})
+  private int pageSize;
+
+  private Node[]        nodes;
+  private FileVersion[] fileVersions;
+  private boolean[]     flags;
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+      .include(NodeViewBenchmark.class.getSimpleName())
+      .addProfiler(GCProfiler.class)
+      .build()
+    ).run();
+  }
+
+  @Setup
+  public void setUp() {
+    nodes = new Node[pageSize];
+    fileVersions = new FileVersion[pageSize];
+    flags = new boolean[pageSize];
+
+    String parentId = UUID.randomUUID().toString();
+    for (int i = 0; i < pageSize; i++) {
+      boolean isFolder = i % 5 == 0;
+      String nodeId = UUID.randomUUID().toString();
+      nodes[i] = new Node(
+        nodeId,
+        REQUESTER_ID,
+        REQUESTER_ID,
+        parentId,
+        1_700_000_000_000L + i,
+        1_700_000_500_000L + i,
+        isFolder ? "folder " + i : "document " + i + ".txt",
+        i % 2 == 0 ? "description " + i : null,
+        isFolder ? NodeType.FOLDER : NodeType.TEXT,
+        "LOCAL_ROOT," + parentId,
+        isFolder ? 0L : 1024L * i
+      );
+      fileVersions[i] = isFolder
+        ? null
+        : new FileVersion(
+          nodeId,
+          REQUESTER_ID,
+          1_700_000_600_000L + i,
+          1,
+          "text/plain",
+          1024L * i,
+          "digest" + i,
+          false
+        );
+      flags[i] = i % 3 == 0;
+    }
+  }
+
+  @Benchmark
+  public void nodeView(Blackhole blackhole) {
+    for (int i = 0; i < pageSize; i++) {
+      NodeView nodeView = NodeView.createFromNode(
+        nodes[i],
+        Optional.ofNullable(fileVersions[i]),
+        Optional.of(flags[i]),
+        true
+      );
+
+      for (String field : READ_FIELDS) {
+        blackhole.consume(nodeView.get(field));
+      }
+      blackhole.consume(nodeView.get(GraphQL.Node.OWNER));
+    }
+  }
+
+  @Benchmark
+  public void hashMaps(Blackhole blackhole) {
+    for (int i = 0; i < pageSize; i++) {
+      Map<String, Object> nodeContext = new HashMap<>();
+      Map<String, Object> result = createNodeMap(
+        nodes[i],
+        Optional.ofNullable(fileVersions[i]),
+        flags[i],
+        nodeContext
+      );
+
+      for (String field : READ_FIELDS) {
+        blackhole.consume(result.get(field));
+      }
+      blackhole.consume(nodeContext.get(GraphQL.Node.OWNER));
+    }
+  }
+
+  /**
+   * The conversion that the data fetchers did before the {@link NodeView}: the flag is passed
+   * already resolved, as it is for the view, so that only the conversion itself is compared.
+   */
+  private static Map<String, Object> createNodeMap(
+    Node node,
+    Optional<FileVersion> optFileVersion,
+    boolean flagged,
+    Map<String, Object> nodeContext
+  ) {
+    Map<String, Object> result = new HashMap<>();
+    result.put(GraphQL.Node.ID, node.getId());
+    result.put(GraphQL.Node.CREATED_AT, node.getCreatedAt());
+    result.put(GraphQL.Node.UPDATED_AT, node.getUpdatedAt());
+    result.put(GraphQL.Node.NAME, node.getName());
+    result.put(GraphQL.Node.TYPE, node.getNodeType().name());
+    result.put(GraphQL.Node.ROOT_ID, NodeType.ROOT.equals(node.getNodeType())
+      ? node.getId()
+      : node.getAncestorsList().get(0));
+    result.put(GraphQL.Node.FLAGGED, flagged);
+    node.getDescription().ifPresent(description ->
+      result.put(GraphQL.Node.DESCRIPTION, description)
+    );
+    node.getParentId().ifPresent(parentId -> nodeContext.put(GraphQL.Node.PARENT, parentId));
+
+    if (!NodeType.FOLDER.equals(node.getNodeType()) && !NodeType.ROOT.equals(node.getNodeType())) {
+      node.getExtension().ifPresent(extension -> result.put(GraphQL.Node.EXTENSION, extension));
+      optFileVersion.ifPresent(fileVersion -> {
+        result.put(GraphQL.Node.UPDATED_AT, fileVersion.getUpdatedAt());
+        result.put(GraphQL.Node.LAST_EDITOR, fileVersion.getLastEditorId());
+        result.put(GraphQL.FileVersion.VERSION, fileVersion.getVersion());
+        result.put(GraphQL.FileVersion.MIME_TYPE, fileVersion.getMimeType());
+        result.put(GraphQL.FileVersion.SIZE, fileVersion.getSize());
+        result.put(GraphQL.FileVersion.KEEP_FOREVER, fileVersion.isKeptForever());
+        result.put(GraphQL.FileVersion.DIGEST, fileVersion.getDigest());
+        fileVersion.getClonedFromVersion().ifPresent(clonedFromVersion ->
+          result.put(GraphQL.FileVersion.CLONED_FROM_VERSION, clonedFromVersion)
+        );
+        nodeContext.put(GraphQL.Node.LAST_EDITOR, fileVersion.getLastEditorId());
+      });
+    }
+
+    nodeContext.put(GraphQL.Node.OWNER, node.getOwnerId());
+    nodeContext.put(GraphQL.Node.CREATOR, node.getCreatorId());
+    nodeContext.put(GraphQL.Node.ID, node.getId());
+    return result;
+  }
+}
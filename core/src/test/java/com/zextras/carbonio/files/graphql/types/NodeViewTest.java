@@ -0,0 +1,131 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.graphql.types;
+
+import com.zextras.carbonio.files.Files;
+import com.zextras.carbonio.files.dal.dao.ebean.FileVersion;
+import com.zextras.carbonio.files.dal.dao.ebean.Node;
+import com.zextras.carbonio.files.dal.dao.ebean.NodeType;
+import java.util.Map;
+import java.util.Optional;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class NodeViewTest {
+
+  @Test
+  void givenAFileWithItsVersionTheCreateFromNodeShouldExposeTheAttributesOfTheVersion() {
+    // Given
+    Node nodeMock = Mockito.mock(Node.class);
+    Mockito.when(nodeMock.getId()).thenReturn("file-id");
+    Mockito.when(nodeMock.getNodeType()).thenReturn(NodeType.TEXT);
+    Mockito.when(nodeMock.getName()).thenReturn("file");
+    Mockito.when(nodeMock.getExtension()).thenReturn(Optional.of("txt"));
+    Mockito.when(nodeMock.getUpdatedAt()).thenReturn(5L);
+    Mockito.when(nodeMock.getAncestorIds()).thenReturn("LOCAL_ROOT,folder-id");
+    Mockito.when(nodeMock.getParentId()).thenReturn(Optional.of("folder-id"));
+    Mockito.when(nodeMock.getOwnerId()).thenReturn("owner-id");
+    Mockito.when(nodeMock.getCreatorId()).thenReturn("creator-id");
+
+    FileVersion fileVersionMock = Mockito.mock(FileVersion.class);
+    Mockito.when(fileVersionMock.getVersion()).thenReturn(2);
+    Mockito.when(fileVersionMock.getUpdatedAt()).thenReturn(10L);
+    Mockito.when(fileVersionMock.getLastEditorId()).thenReturn("editor-id");
+    Mockito.when(fileVersionMock.getMimeType()).thenReturn("text/plain");
+    Mockito.when(fileVersionMock.getClonedFromVersion()).thenReturn(Optional.empty());
+
+    // When
+    NodeView nodeView = NodeView.createFromNode(
+      nodeMock,
+      Optional.of(fileVersionMock),
+      Optional.of(true),
+      false
+    );
+
+    // Then
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.ID)).isEqualTo("file-id");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.TYPE)).isEqualTo("TEXT");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.ROOT_ID)).isEqualTo("LOCAL_ROOT");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.EXTENSION)).isEqualTo("txt");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.FLAGGED)).isEqualTo(true);
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.UPDATED_AT)).isEqualTo(10L);
+    Assertions.assertThat(nodeView.get(Files.GraphQL.FileVersion.VERSION)).isEqualTo(2);
+    Assertions
+      .assertThat(nodeView.get(Files.GraphQL.FileVersion.MIME_TYPE))
+      .isEqualTo("text/plain");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.LAST_EDITOR)).isEqualTo("editor-id");
+    Assertions.assertThat(nodeView.get(Files.GraphQL.Node.DESCRIPTION)).isNull();
+    Assertions.assertThat(nodeView.get(Files.GraphQL.FileVersion.CLONED_FROM_VERSION)).isNull();
+  }
+
+  @Test
+  void givenAFolderTheViewUsedAsLocalContextShouldContainTheIdsOfTheRelatedEntities() {
+    // Given
+    Node nodeMock = Mockito.mock(Node.class);
+    Mockito.when(nodeMock.getId()).thenReturn("folder-id");
+    Mockito.when(nodeMock.getNodeType()).thenReturn(NodeType.FOLDER);
+    Mockito.when(nodeMock.getAncestorIds()).thenReturn("LOCAL_ROOT");
+    Mockito.when(nodeMock.getParentId()).thenReturn(Optional.of("LOCAL_ROOT"));
+    Mockito.when(nodeMock.getOwnerId()).thenReturn("owner-id");
+    Mockito.when(nodeMock.getCreatorId()).thenReturn("creator-id");
+    Mockito.when(nodeMock.getDescription()).thenReturn(Optional.of("description"));
+
+    // When
+    Map<String, String> localContext = (Map) NodeView.createFromNode(
+      nodeMock,
+      Optional.empty(),
+      Optional.empty(),
+      true
+    );
+
+    // Then
+    Assertions.assertThat(localContext.get(Files.GraphQL.Node.ID)).isEqualTo("folder-id");
+    Assertions.assertThat(localContext.get(Files.GraphQL.Node.PARENT)).isEqualTo("LOCAL_ROOT");
+    Assertions.assertThat(localContext.get(Files.GraphQL.Node.OWNER)).isEqualTo("owner-id");
+    Assertions.assertThat(localContext.get(Files.GraphQL.Node.CREATOR)).isEqualTo("creator-id");
+    Assertions.assertThat(localContext.get(Files.GraphQL.Node.LAST_EDITOR)).isNull();
+    Assertions.assertThat(localContext.containsKey(Files.GraphQL.Node.FLAGGED)).isFalse();
+    Assertions
+      .assertThat(localContext.get(Files.GraphQL.Node.DESCRIPTION))
+      .isEqualTo("description");
+    Mockito.verify(nodeMock, Mockito.never()).getCustomAttributes();
+    Mockito.verify(nodeMock, Mockito.never()).getFileVersions();
+  }
+
+  @Test
+  void givenANodeViewTheEntrySetShouldContainOnlyTheAttributesWithAValue() {
+    // Given
+    Node nodeMock = Mockito.mock(Node.class);
+    Mockito.when(nodeMock.getId()).thenReturn("LOCAL_ROOT");
+    Mockito.when(nodeMock.getNodeType()).thenReturn(NodeType.ROOT);
+    Mockito.when(nodeMock.getName()).thenReturn("ROOT");
+    Mockito.when(nodeMock.getParentId()).thenReturn(Optional.empty());
+    Mockito.when(nodeMock.getOwnerId()).thenReturn("owner-id");
+    Mockito.when(nodeMock.getCreatorId()).thenReturn("creator-id");
+
+    // When
+    NodeView nodeView = NodeView.createFromNode(
+      nodeMock,
+      Optional.empty(),
+      Optional.empty(),
+      false
+    );
+
+    // Then
+    Assertions
+      .assertThat(nodeView.keySet())
+      .containsExactly(
+        Files.GraphQL.Node.ID,
+        Files.GraphQL.Node.CREATED_AT,
+        Files.GraphQL.Node.UPDATED_AT,
+        Files.GraphQL.Node.NAME,
+        Files.GraphQL.Node.TYPE,
+        Files.GraphQL.Node.ROOT_ID,
+        Files.GraphQL.Node.OWNER,
+        Files.GraphQL.Node.CREATOR
+      );
+  }
+}
@@ -5,6 +5,7 @@
 package com.zextras.carbonio.files.netty;
 
 import com.zextras.carbonio.files.graphql.controllers.GraphQLController;
+import com.zextras.carbonio.files.graphql.controllers.GraphQLWebSocketController;
 import com.zextras.carbonio.files.graphql.controllers.PublicGraphQLController;
 import com.zextras.carbonio.files.rest.controllers.BlobController;
 import com.zextras.carbonio.files.rest.controllers.CollaborationLinkController;
@@ -33,6 +34,7 @@ class HttpRoutingHandlerTest {
 
   private HealthController healthControllerMock;
   private GraphQLController graphQLControllerMock;
+  private GraphQLWebSocketController graphQLWebSocketControllerMock;
   private PublicGraphQLController publicGraphQLControllerMock;
   private BlobController blobControllerMock;
   private PublicBlobController publicBlobControllerMock;
@@ -51,6 +53,7 @@ class HttpRoutingHandlerTest {
   void initTest() {
     healthControllerMock = Mockito.mock(HealthController.class);
     graphQLControllerMock = Mockito.mock(GraphQLController.class);
+    graphQLWebSocketControllerMock = Mockito.mock(GraphQLWebSocketController.class);
     blobControllerMock = Mockito.mock(BlobController.class);
     publicBlobControllerMock = Mockito.mock(PublicBlobController.class);
     authenticationHandlerMock = Mockito.mock(AuthenticationHandler.class);
@@ -73,6 +76,7 @@ class HttpRoutingHandlerTest {
         new HttpRoutingHandler(
             healthControllerMock,
             graphQLControllerMock,
+            () -> graphQLWebSocketControllerMock,
             blobControllerMock,
             publicBlobControllerMock,
             authenticationHandlerMock,
@@ -156,6 +160,30 @@ class HttpRoutingHandlerTest {
     Mockito.verify(channelHandlerContextMock, Mockito.times(1)).fireChannelRead(httpRequestMock);
   }
 
+  @ParameterizedTest
+  @ValueSource(strings = {"/graphql/ws/", "/graphql/ws"})
+  void givenAGraphqlWebSocketRequestHttpRoutingHandlerShouldAddTheRightHandlersInTheChannelPipeline(
+      String uri) {
+    // Given
+    Mockito.when(channelPipelineMock.addLast(Mockito.any(HttpObjectAggregator.class)))
+        .thenReturn(channelPipelineMock);
+    Mockito.when(httpRequestMock.uri()).thenReturn(uri);
+
+    // When
+    httpRoutingHandler.channelRead0(channelHandlerContextMock, httpRequestMock);
+
+    // Then
+    Mockito.verify(channelPipelineMock, Mockito.times(1))
+        .addLast(Mockito.any(HttpObjectAggregator.class));
+    Mockito.verify(channelPipelineMock, Mockito.times(1))
+        .addLast("auth-handler", authenticationHandlerMock);
+    Mockito.verify(channelPipelineMock, Mockito.times(1))
+        .addLast("graphql-ws-handler", graphQLWebSocketControllerMock);
+    Mockito.verify(channelPipelineMock, Mockito.times(1))
+        .addLast("exceptions-handler", exceptionsHandlerMock);
+    Mockito.verify(channelHandlerContextMock, Mockito.times(1)).fireChannelRead(httpRequestMock);
+  }
+
   @ParameterizedTest
   @ValueSource(strings = {"/public/graphql/", "/public/graphql"})
   void givenAPublicGraphqlRequestHttpRoutingHandlerShouldAddTheRightHandlersInTheChannelPipeline(
@@ -336,6 +364,7 @@ class HttpRoutingHandlerTest {
         "/health/live/invalid",
         "/health/ready/invalid",
         "/graphql/invalid",
+        "/graphql/ws/invalid",
         "/download/invalid",
         "/download/8caeef71-6f72-439c-847a-38e90efd0965/invalid",
         "/download/8caeef71-6f72-439c-847a-38e90efd0965/1/invalid",
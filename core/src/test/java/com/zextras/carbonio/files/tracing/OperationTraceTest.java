@@ -0,0 +1,73 @@
+// SPDX-FileCopyrightText: 2024 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: AGPL-3.0-only
+
+package com.zextras.carbonio.files.tracing;
+
+import com.zextras.carbonio.files.tracing.OperationTrace.SpanType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class OperationTraceTest {
+
+  @Test
+  void givenATraceBoundToTheCurrentThreadTheSpanShouldBeRecordedInIt() {
+    // Given
+    OperationTrace trace = new OperationTrace("findNodes", true, 10);
+
+    // When
+    String result = trace.call(() -> OperationTrace.span(SpanType.HTTP, "call", () -> "value"));
+
+    // Then
+    List<Map<String, Object>> spans =
+      (List<Map<String, Object>>) trace.toSpecification().get("spans");
+
+    Assertions.assertThat(result).isEqualTo("value");
+    Assertions.assertThat(spans).hasSize(1);
+    Assertions.assertThat(spans.get(0)).containsEntry("type", "HTTP").containsEntry("name", "call");
+    Assertions.assertThat(OperationTrace.current()).isEmpty();
+  }
+
+  @Test
+  void givenAPropagatingExecutorTheTaskShouldRunWithTheTraceOfTheSubmittingThread() {
+    // Given
+    OperationTrace trace = new OperationTrace("findNodes", true, 10);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    // When
+    CompletableFuture<Boolean> isTraced = trace.call(() -> CompletableFuture.supplyAsync(
+      () -> OperationTrace.current().filter(trace::equals).isPresent(),
+      OperationTrace.propagate(executorService)
+    ));
+    CompletableFuture<Boolean> isNotTraced = CompletableFuture.supplyAsync(
+      () -> OperationTrace.current().isPresent(),
+      OperationTrace.propagate(executorService)
+    );
+
+    // Then
+    Assertions.assertThat(isTraced.join()).isTrue();
+    Assertions.assertThat(isNotTraced.join()).isFalse();
+    executorService.shutdown();
+  }
+
+  @Test
+  void givenMoreSpansThanTheMaximumTheTraceShouldKeepOnlyTheFirstOnes() {
+    // Given
+    OperationTrace trace = new OperationTrace("findNodes", false, 2);
+
+    // When
+    for (int index = 0; index < 5; index++) {
+      trace.record(SpanType.SQL, "select " + index, System.nanoTime(), System.nanoTime());
+    }
+
+    // Then
+    Map<String, Object> specification = trace.toSpecification();
+    Assertions.assertThat((List<?>) specification.get("spans")).hasSize(2);
+    Assertions.assertThat(specification).containsEntry("droppedSpans", 3);
+  }
+}